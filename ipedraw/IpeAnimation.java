@@ -0,0 +1,144 @@
+package de.uniwue.smooth.draw;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A page that shows an animation as a sequence of views, for example the
+ * steps of an algorithm.
+ *
+ * The page has some static layers, which are drawn once and shown in every
+ * view, and one layer for each frame, which contains only what the frame adds
+ * to the static layers. Every layer is collected in its own buffer by its own
+ * writer, so static layers and frames can be drawn in any order. writePage()
+ * then writes the page with one view per frame into the target. Compared to
+ * one page per frame that repeats the static content, the file grows only by
+ * the frames themselves.
+ *
+ * Usage: Create the animation with the names of the static layers and draw
+ * them with the writers returned by getLayer(). Call newFrame() for every
+ * step and draw its changes with the returned writer. Finally call
+ * writePage().
+ */
+public class IpeAnimation {
+
+	/**
+	 * Prefix of the names of the frame layers, which are numbered from 1.
+	 */
+	public static final String FRAME_PREFIX = "frame";
+
+	private final IpeWriter target;
+	private final int staticLayers;
+	private final List<String> names = new ArrayList<String>();
+	private final List<StringBuilder> buffers = new ArrayList<StringBuilder>();
+	private final List<IpeWriter> writers = new ArrayList<IpeWriter>();
+	private boolean written = false;
+
+	/**
+	 * Creates an animation for the next page of a writer.
+	 *
+	 * @param target
+	 *            the writer
+	 * @param staticLayers
+	 *            names of the layers shown in every view
+	 */
+	public IpeAnimation(IpeWriter target, String... staticLayers) {
+		if (target == null)
+			throw new NullPointerException("target");
+		this.target = target;
+		this.staticLayers = staticLayers.length;
+		for (String name : staticLayers) {
+			if (names.contains(name))
+				throw new IllegalArgumentException("duplicate layer: " + name);
+			if (name.matches(FRAME_PREFIX + "[0-9]+"))
+				throw new IllegalArgumentException("reserved layer name: "
+						+ name);
+			addLayer(name);
+		}
+	}
+
+	/**
+	 * Returns the writer of a static layer.
+	 *
+	 * @param name
+	 *            name of the layer
+	 * @return the writer
+	 */
+	public IpeWriter getLayer(String name) {
+		int i = names.indexOf(name);
+		if (i < 0 || i >= staticLayers)
+			throw new IllegalArgumentException("no static layer: " + name);
+		return writers.get(i);
+	}
+
+	/**
+	 * Adds a frame and returns the writer of its layer.
+	 *
+	 * @return the writer
+	 */
+	public IpeWriter newFrame() {
+		if (written)
+			throw new IllegalStateException("page already written");
+		return addLayer(FRAME_PREFIX + (getFrameCount() + 1));
+	}
+
+	/**
+	 * Returns the number of frames.
+	 *
+	 * @return
+	 */
+	public int getFrameCount() {
+		return names.size() - staticLayers;
+	}
+
+	/**
+	 * Writes the page into the target: as first page with the header if the
+	 * header has not been written, as new page otherwise. There is one view
+	 * for every frame, or a single view of the static layers if there are no
+	 * frames. Objects drawn into the target afterwards go into the first
+	 * layer.
+	 *
+	 * @throws IOException
+	 */
+	public void writePage() throws IOException {
+		if (written)
+			throw new IllegalStateException("page already written");
+		if (names.isEmpty())
+			throw new IllegalStateException("a page needs a layer");
+		written = true;
+		String[] layers = names.toArray(new String[names.size()]);
+		String[][] views;
+		if (getFrameCount() == 0) {
+			views = new String[][] { layers };
+		} else {
+			views = new String[getFrameCount()][];
+			for (int f = 0; f < views.length; f++) {
+				views[f] = Arrays.copyOf(layers, staticLayers + 1);
+				views[f][staticLayers] = layers[staticLayers + f];
+			}
+		}
+		if (target.isHeaderWritten())
+			target.newPage(layers, views);
+		else
+			target.writeHeader(layers, views);
+		for (int i = 0; i < layers.length; i++) {
+			writers.get(i).close();
+			target.writeFragment(buffers.get(i));
+			buffers.set(i, null);
+		}
+		target.setLayer(layers[0]);
+	}
+
+	private IpeWriter addLayer(String name) {
+		StringBuilder sb = new StringBuilder();
+		IpeWriter w = target.newFragmentWriter(sb,
+				IpeWriter.DEFAULT_BUFFER_SIZE);
+		w.setLayer(name);
+		names.add(name);
+		buffers.add(sb);
+		writers.add(w);
+		return w;
+	}
+}
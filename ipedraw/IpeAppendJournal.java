@@ -0,0 +1,171 @@
+package de.uniwue.smooth.draw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appending to a document in place, see IpeWriter.openForAppend().
+ *
+ * The end of the document, "&lt;/page&gt;" and "&lt;/ipe&gt;", is cut off and
+ * new content is written in its place. Before the file is changed, its length
+ * up to the cut and the removed end are saved in a journal next to it (the
+ * file name with ".journal" appended), which is written under a temporary
+ * name and then renamed, so that it is either complete or missing. The
+ * journal is deleted when the new end has been written and forced to the
+ * disk. If the writer is not closed, for example because the process dies,
+ * recover() restores the document as it was before from the journal. If the
+ * process died after the new end was forced to the disk, but before the
+ * journal was deleted, the document is complete and recover() only deletes
+ * the journal.
+ */
+final class IpeAppendJournal {
+
+	private static final String SUFFIX = ".journal";
+	private static final int TAIL_SEARCH = 4096;
+
+	private final Path journal;
+	private final FileChannel file;
+
+	private IpeAppendJournal(Path journal, FileChannel file) {
+		this.journal = journal;
+		this.file = file;
+	}
+
+	/**
+	 * Returns the channel of the document, positioned where new content is
+	 * written.
+	 */
+	FileChannel getChannel() {
+		return file;
+	}
+
+	/**
+	 * Recovers the document if necessary, cuts off its end and writes the
+	 * journal.
+	 */
+	static IpeAppendJournal begin(Path document) throws IOException {
+		recover(document);
+		FileChannel file = FileChannel.open(document, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			long cut = findEnd(file);
+			byte[] tail = read(file, cut, (int) (file.size() - cut));
+			Path journal = journalOf(document);
+			Path temp = journal.resolveSibling(journal.getFileName() + ".tmp");
+			ByteBuffer b = ByteBuffer.allocate(8 + tail.length);
+			b.putLong(cut).put(tail).flip();
+			try (FileChannel j = FileChannel.open(temp,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (b.hasRemaining())
+					j.write(b);
+				j.force(true);
+			}
+			Files.move(temp, journal, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			file.truncate(cut);
+			file.position(cut);
+			return new IpeAppendJournal(journal, file);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		} catch (RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Forces the new content to the disk and deletes the journal. Must be
+	 * called after the new end has been written, before the channel is
+	 * closed.
+	 */
+	void commit() throws IOException {
+		file.force(true);
+		Files.delete(journal);
+	}
+
+	/**
+	 * Restores a document from its journal, if there is one. A journal left
+	 * behind by a document whose new end has been written is deleted.
+	 *
+	 * @return true if the document was restored
+	 */
+	static boolean recover(Path document) throws IOException {
+		Path journal = journalOf(document);
+		if (!Files.exists(journal))
+			return false;
+		ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(journal));
+		if (b.remaining() < 8)
+			throw new IOException("invalid journal: " + journal);
+		long cut = b.getLong();
+		try (FileChannel file = FileChannel.open(document,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			if (file.size() < cut)
+				throw new IOException("document shorter than in journal: "
+						+ document);
+			if (hasEndAfter(file, cut)) {
+				Files.delete(journal);
+				return false;
+			}
+			file.truncate(cut);
+			file.position(cut);
+			while (b.hasRemaining())
+				file.write(b);
+			file.force(true);
+		}
+		Files.delete(journal);
+		return true;
+	}
+
+	private static Path journalOf(Path document) {
+		return document.resolveSibling(document.getFileName() + SUFFIX);
+	}
+
+	/**
+	 * Returns the position of the "&lt;/page&gt;" that ends the last page,
+	 * which must be followed by "&lt;/ipe&gt;" and white space only.
+	 */
+	private static long findEnd(FileChannel file) throws IOException {
+		long size = file.size();
+		int n = (int) Math.min(size, TAIL_SEARCH);
+		String tail = new String(read(file, size - n, n),
+				StandardCharsets.ISO_8859_1);
+		int page = tail.lastIndexOf("</page>");
+		if (page < 0
+				|| !tail.substring(page + "</page>".length()).trim()
+						.equals("</ipe>"))
+			throw new IOException("document does not end with </page></ipe>");
+		return size - n + page;
+	}
+
+	/**
+	 * Returns whether the document ends with "&lt;/page&gt;" and
+	 * "&lt;/ipe&gt;" written after the cut.
+	 */
+	private static boolean hasEndAfter(FileChannel file, long cut)
+			throws IOException {
+		if (file.size() == cut)
+			return false;
+		try {
+			return findEnd(file) >= cut;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static byte[] read(FileChannel file, long position, int length)
+			throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(length);
+		while (b.hasRemaining())
+			if (file.read(b, position + b.position()) < 0)
+				throw new IOException("unexpected end of file");
+		return b.array();
+	}
+}
@@ -0,0 +1,404 @@
+package de.uniwue.smooth.draw;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Writer that hands its output to a dedicated I/O thread, so that the
+ * thread drawing into an IpeWriter on it does not wait for the disk or the
+ * network.
+ *
+ * Output is copied into chunks, which pass through a bounded queue to the I/O
+ * thread; the chunks are recycled, so the memory needed is fixed. When the
+ * queue is full, the producer waits for the I/O thread, but at most for the
+ * timeout given to the constructor; then it fails with an IOException. A
+ * timeout of 0 never waits, and Long.MAX_VALUE waits indefinitely. The
+ * timeout does not apply to close(), which always waits until the
+ * destination is closed.
+ *
+ * flush() returns when everything written before has been written and
+ * flushed by the I/O thread; close() returns when everything has been written
+ * and the destination is closed. An IpeWriter on this sink thus writes
+ * getIpeEnd() to the destination before its close() returns. Errors of the
+ * I/O thread are thrown by the next write(), flush() or close().
+ *
+ * Usage: new IpeWriter(new IpeAsyncSink(Files.newBufferedWriter(path))).
+ */
+public class IpeAsyncSink extends Writer {
+
+	/**
+	 * Default number of characters of a chunk.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * Default number of chunks in the queue.
+	 */
+	public static final int DEFAULT_CAPACITY = 16;
+
+	/** A chunk of output, or a request to flush or close. */
+	private static final class Chunk {
+		final char[] chars;
+		int length = 0;
+		CountDownLatch done = null;
+		boolean close = false;
+
+		Chunk(char[] chars) {
+			this.chars = chars;
+		}
+	}
+
+	private final Writer writer;
+	private final IpeChannelSink channel;
+	private final ArrayBlockingQueue<Chunk> queue;
+	private final ArrayBlockingQueue<Chunk> free;
+	private final long timeoutNanos;
+	private final Thread thread;
+
+	private Chunk current;
+	private boolean closed = false;
+	private long stalls = 0;
+	private volatile IOException failure = null;
+
+	/**
+	 * Creates a sink with the default chunk size and capacity that waits
+	 * indefinitely when the queue is full.
+	 *
+	 * @param out
+	 *            the destination
+	 */
+	public IpeAsyncSink(Writer out) {
+		this(out, DEFAULT_CHUNK_SIZE, DEFAULT_CAPACITY, Long.MAX_VALUE,
+				TimeUnit.NANOSECONDS, null);
+	}
+
+	/**
+	 * Creates a sink.
+	 *
+	 * @param out
+	 *            the destination
+	 * @param chunkSize
+	 *            number of characters of a chunk
+	 * @param capacity
+	 *            number of chunks that can wait for the I/O thread
+	 * @param timeout
+	 *            how long a producer waits when the queue is full
+	 * @param unit
+	 *            unit of the timeout
+	 * @param threadFactory
+	 *            factory of the I/O thread, for example a factory of virtual
+	 *            threads, or null for a daemon platform thread
+	 */
+	public IpeAsyncSink(Writer out, int chunkSize, int capacity, long timeout,
+			TimeUnit unit, ThreadFactory threadFactory) {
+		this(out, null, chunkSize, capacity, timeout, unit, threadFactory);
+		if (out == null)
+			throw new NullPointerException("out");
+	}
+
+	/**
+	 * Creates a sink that writes UTF-8 to a channel, for example a
+	 * FileChannel. The I/O thread encodes the output as described for
+	 * IpeWriter(WritableByteChannel).
+	 *
+	 * @param channel
+	 *            the destination
+	 * @param chunkSize
+	 *            number of characters of a chunk
+	 * @param capacity
+	 *            number of chunks that can wait for the I/O thread
+	 * @param timeout
+	 *            how long a producer waits when the queue is full
+	 * @param unit
+	 *            unit of the timeout
+	 * @param threadFactory
+	 *            factory of the I/O thread, for example a factory of virtual
+	 *            threads, or null for a daemon platform thread
+	 */
+	public IpeAsyncSink(WritableByteChannel channel, int chunkSize,
+			int capacity, long timeout, TimeUnit unit,
+			ThreadFactory threadFactory) {
+		this(null, new IpeChannelSink(channel), chunkSize, capacity, timeout,
+				unit, threadFactory);
+	}
+
+	private IpeAsyncSink(Writer writer, IpeChannelSink channel, int chunkSize,
+			int capacity, long timeout, TimeUnit unit,
+			ThreadFactory threadFactory) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunkSize must be positive: "
+					+ chunkSize);
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive: "
+					+ capacity);
+		if (timeout < 0)
+			throw new IllegalArgumentException("timeout must not be negative: "
+					+ timeout);
+		this.writer = writer;
+		this.channel = channel;
+		this.timeoutNanos = unit.toNanos(timeout);
+		this.queue = new ArrayBlockingQueue<Chunk>(capacity);
+		// one chunk more, which the producer fills
+		this.free = new ArrayBlockingQueue<Chunk>(capacity + 1);
+		for (int i = 0; i < capacity; i++)
+			free.add(new Chunk(new char[chunkSize]));
+		this.current = new Chunk(new char[chunkSize]);
+		Runnable io = new Runnable() {
+			public void run() {
+				drain();
+			}
+		};
+		if (threadFactory != null) {
+			thread = threadFactory.newThread(io);
+		} else {
+			thread = new Thread(io, "IpeAsyncSink");
+			thread.setDaemon(true);
+		}
+		thread.start();
+	}
+
+	/**
+	 * Returns how often a producer had to wait because the queue was full.
+	 *
+	 * @return
+	 */
+	public long getStallCount() {
+		synchronized (lock) {
+			return stalls;
+		}
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		synchronized (lock) {
+			ensureOpen();
+			while (len > 0) {
+				Chunk c = current;
+				int n = Math.min(len, c.chars.length - c.length);
+				System.arraycopy(cbuf, off, c.chars, c.length, n);
+				c.length += n;
+				off += n;
+				len -= n;
+				if (c.length == c.chars.length)
+					submit(take(free));
+			}
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		synchronized (lock) {
+			ensureOpen();
+			while (len > 0) {
+				Chunk c = current;
+				int n = Math.min(len, c.chars.length - c.length);
+				str.getChars(off, off + n, c.chars, c.length);
+				c.length += n;
+				off += n;
+				len -= n;
+				if (c.length == c.chars.length)
+					submit(take(free));
+			}
+		}
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		write(new char[] { (char) c }, 0, 1);
+	}
+
+	/**
+	 * Waits until the I/O thread has written and flushed everything written
+	 * before.
+	 */
+	@Override
+	public void flush() throws IOException {
+		synchronized (lock) {
+			ensureOpen();
+			await(request(false));
+		}
+	}
+
+	/**
+	 * Waits until the I/O thread has written everything and closed the
+	 * destination. Closing a closed sink has no effect.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (closed)
+				return;
+			closed = true;
+			await(request(true));
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed)
+			throw new IOException("sink is closed");
+		checkFailure();
+	}
+
+	/**
+	 * Queues the current chunk, if it is not empty, and a request to flush or
+	 * close.
+	 */
+	private CountDownLatch request(boolean close) throws IOException {
+		Chunk r = new Chunk(null);
+		r.done = new CountDownLatch(1);
+		r.close = close;
+		if (current.length > 0)
+			submit(close ? null : take(free));
+		if (close)
+			putUninterruptibly(r);
+		else
+			put(r);
+		return r.done;
+	}
+
+	private void await(CountDownLatch done) throws IOException {
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("waiting for output interrupted");
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Queues the current chunk and continues with the given one.
+	 */
+	private void submit(Chunk next) throws IOException {
+		put(current);
+		if (next != null) {
+			next.length = 0;
+			current = next;
+		}
+	}
+
+	/**
+	 * Takes a free chunk, waiting for the I/O thread if necessary.
+	 */
+	private Chunk take(ArrayBlockingQueue<Chunk> q) throws IOException {
+		Chunk c = q.poll();
+		if (c != null)
+			return c;
+		stalls++;
+		try {
+			c = q.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("waiting for output interrupted");
+		}
+		if (c == null)
+			throw new IOException("output stalled for more than "
+					+ timeoutNanos / 1000000 + " ms");
+		return c;
+	}
+
+	private void put(Chunk c) throws IOException {
+		// there is always room for a chunk that came from the free queue;
+		// requests may have to wait
+		if (queue.offer(c))
+			return;
+		stalls++;
+		try {
+			if (!queue.offer(c, timeoutNanos, TimeUnit.NANOSECONDS))
+				throw new IOException("output stalled for more than "
+						+ timeoutNanos / 1000000 + " ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("waiting for output interrupted");
+		}
+	}
+
+	/**
+	 * Queues a request to close without a timeout, so that the I/O thread
+	 * closes the destination and ends even if the producer gives up waiting.
+	 */
+	private void putUninterruptibly(Chunk c) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				queue.put(c);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * The loop of the I/O thread. After an error, chunks are discarded until
+	 * the sink is closed. The thread ends with the request to close, even if
+	 * closing the destination fails.
+	 */
+	private void drain() {
+		boolean open = true;
+		while (open) {
+			Chunk c;
+			try {
+				c = queue.take();
+			} catch (InterruptedException e) {
+				// keep going, the producer waits for its requests
+				fail(new InterruptedIOException("output thread interrupted"));
+				continue;
+			}
+			try {
+				if (c.done == null) {
+					if (failure == null) {
+						if (channel != null)
+							channel.write(c.chars, 0, c.length);
+						else
+							writer.write(c.chars, 0, c.length);
+					}
+					free.offer(c);
+				} else if (c.close) {
+					open = false;
+					if (channel != null)
+						channel.close();
+					else
+						writer.close();
+				} else if (failure == null) {
+					if (channel != null)
+						channel.flush();
+					else
+						writer.flush();
+				}
+			} catch (IOException e) {
+				fail(e);
+			} catch (RuntimeException e) {
+				fail(new IOException(e));
+			} finally {
+				// wake the producer only after a failure has been stored
+				if (c.done != null)
+					c.done.countDown();
+			}
+		}
+	}
+
+	/**
+	 * Throws an error of the I/O thread. A new exception is thrown every time,
+	 * since the same one may be thrown by several calls.
+	 */
+	private void checkFailure() throws IOException {
+		IOException e = failure;
+		if (e != null)
+			throw new IOException("writing the output failed: "
+					+ e.getMessage(), e);
+	}
+
+	private void fail(IOException e) {
+		if (failure == null)
+			failure = e;
+	}
+}
@@ -0,0 +1,268 @@
+package de.uniwue.smooth.draw;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The drawing primitives of IpeDraw, implemented by the writers of the
+ * output formats: IpeWriter for Ipe documents and IpeSvgWriter for SVG
+ * previews. Code that only uses these methods, for example
+ * IpeScene.write(), works with every format.
+ *
+ * Colors, pens, dash styles and sizes are the names of getIpeConf() or
+ * absolute values, as for IpeWriter. Coordinates are in the coordinate
+ * system of Ipe, with the y-axis pointing up.
+ */
+public interface IpeBackend extends Closeable {
+
+	/**
+	 * Starts the document and opens the first page with the single layer
+	 * "alpha".
+	 *
+	 * @throws IOException
+	 */
+	void writeHeader() throws IOException;
+
+	/**
+	 * Starts the document and opens the first page with the given layers.
+	 * Objects go into the first layer until setLayer() is called.
+	 *
+	 * @param layers
+	 *            names of the layers of the first page
+	 * @throws IOException
+	 */
+	void writeHeader(String... layers) throws IOException;
+
+	/**
+	 * Closes the current page and opens a new one with the single layer
+	 * "alpha".
+	 *
+	 * @throws IOException
+	 */
+	void newPage() throws IOException;
+
+	/**
+	 * Closes the current page and opens a new one with the given layers.
+	 * Objects go into the first layer until setLayer() is called.
+	 *
+	 * @param layers
+	 *            names of the layers of the new page
+	 * @throws IOException
+	 */
+	void newPage(String... layers) throws IOException;
+
+	/**
+	 * Puts the following objects into a layer of the current page.
+	 *
+	 * @param layer
+	 *            name of the layer
+	 */
+	void setLayer(String layer);
+
+	/**
+	 * Draws a mark.
+	 *
+	 * @param x
+	 *            x-coordinate
+	 * @param y
+	 *            y-coordinate
+	 * @param shape
+	 *            shape: disk, fdisk, circle, box, square, fsquare, cross
+	 * @param color
+	 *            color
+	 * @param size
+	 *            size: tiny, small, normal, large
+	 * @throws IOException
+	 */
+	void drawMark(double x, double y, String shape, String color, String size)
+			throws IOException;
+
+	/**
+	 * Draws a rectangle.
+	 *
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	void drawBox(double x1, double y1, double x2, double y2, String color,
+			String pen, String dash) throws IOException;
+
+	/**
+	 * Draws a path between points given as packed coordinates x0, y0, x1, y1,
+	 * ... The path uses the points offset, ..., offset + length - 1.
+	 *
+	 * @param xy
+	 *            packed coordinates of the points
+	 * @param offset
+	 *            index of the first point (not of the first coordinate)
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	void drawPath(double[] xy, int offset, int length, String color,
+			String pen, String dash) throws IOException;
+
+	/**
+	 * Draws an edge.
+	 *
+	 * @param x1
+	 *            x-coordinate of the source
+	 * @param y1
+	 *            y-coordinate of the source
+	 * @param x2
+	 *            x-coordinate of the target
+	 * @param y2
+	 *            y-coordinate of the target
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	void drawEdge(double x1, double y1, double x2, double y2, String color,
+			String pen, String dash) throws IOException;
+
+	/**
+	 * Writes a text label. The text is copied into the output as it is, so
+	 * it must not contain markup characters.
+	 *
+	 * @param text
+	 *            the text
+	 * @param x
+	 *            x-coordinate
+	 * @param y
+	 *            y-coordinate
+	 * @param color
+	 *            color
+	 * @param size
+	 *            size: normal, large, Large, LARGE, huge, Huge, small,
+	 *            footnote, tiny
+	 * @throws IOException
+	 */
+	void writeText(String text, double x, double y, String color, String size)
+			throws IOException;
+
+	/**
+	 * Draws a circle.
+	 *
+	 * @param x
+	 *            x-coordinate of the center
+	 * @param y
+	 *            y-coordinate of the center
+	 * @param radius
+	 *            radius
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	void drawCircle(double x, double y, double radius, String color,
+			String pen, String dash) throws IOException;
+
+	/**
+	 * Draws a circular arc counterclockwise from the start to the end point.
+	 *
+	 * @param xCenter
+	 *            x-coordinate of the center
+	 * @param yCenter
+	 *            y-coordinate of the center
+	 * @param xStart
+	 *            x-coordinate of the start point
+	 * @param yStart
+	 *            y-coordinate of the start point
+	 * @param xEnd
+	 *            x-coordinate of the end point
+	 * @param yEnd
+	 *            y-coordinate of the end point
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	void drawCircularArc(double xCenter, double yCenter, double xStart,
+			double yStart, double xEnd, double yEnd, String color, String pen,
+			String dash) throws IOException;
+
+	/**
+	 * Draws a spline with control points given as packed coordinates, see
+	 * drawPath(double[], int, int, String, String, String).
+	 *
+	 * @param xy
+	 *            packed coordinates of the control points
+	 * @param offset
+	 *            index of the first control point
+	 * @param length
+	 *            number of control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	void drawSpline(double[] xy, int offset, int length, String color,
+			String pen, String dash) throws IOException;
+
+	/**
+	 * Draws a splinegon, a closed spline, with control points given as packed
+	 * coordinates, see drawPath(double[], int, int, String, String, String).
+	 *
+	 * @param xy
+	 *            packed coordinates of the control points
+	 * @param offset
+	 *            index of the first control point
+	 * @param length
+	 *            number of control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	void drawSplinegon(double[] xy, int offset, int length, String color,
+			String pen, String dash) throws IOException;
+
+	/**
+	 * Closes the current page and the document.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	void close() throws IOException;
+}
@@ -0,0 +1,261 @@
+package de.uniwue.smooth.draw;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the pixels of a bitmap into a zlib stream, in parallel.
+ *
+ * The rows are cut into chunks of about CHUNK_BYTES bytes, which are
+ * compressed independently by tasks on an executor into raw deflate data. A
+ * chunk is primed with the last 32 KiB before it as dictionary, so the
+ * compression is nearly as good as in one piece. Every chunk but the last
+ * ends with a sync flush, which pads it to a byte boundary, so the chunks can
+ * simply be concatenated. The Adler-32 checksums of the chunks are combined
+ * into the one of the whole stream.
+ *
+ * Every task converts its own rows, and the previous rows for the dictionary,
+ * into bytes, so the uncompressed bitmap is never held in memory as a whole.
+ */
+final class IpeBitmapEncoder {
+
+	/** Number of uncompressed bytes of a chunk. */
+	static final int CHUNK_BYTES = 1 << 18;
+
+	private static final int DICTIONARY_BYTES = 1 << 15;
+	private static final int ADLER_BASE = 65521;
+
+	/**
+	 * The pixels of a bitmap, row by row from the top, with 1 (gray) or 3
+	 * (RGB) bytes per pixel. getRow() is called concurrently.
+	 */
+	abstract static class Pixels {
+		final int width, height, components;
+
+		Pixels(int width, int height, int components) {
+			if (width <= 0 || height <= 0)
+				throw new IllegalArgumentException("empty bitmap: " + width
+						+ "x" + height);
+			this.width = width;
+			this.height = height;
+			this.components = components;
+		}
+
+		/**
+		 * Puts the bytes of a row into b at offset, using tmp if needed.
+		 */
+		abstract void getRow(int row, byte[] b, int offset, int[] tmp);
+	}
+
+	/** Pixels as 0xRRGGBB. */
+	static Pixels of(final int[] rgb, int width, int height) {
+		checkLength(rgb.length, width, height, 1);
+		return new Pixels(width, height, 3) {
+			void getRow(int row, byte[] b, int offset, int[] tmp) {
+				for (int c = 0, i = row * width; c < width; c++, i++) {
+					b[offset++] = (byte) (rgb[i] >> 16);
+					b[offset++] = (byte) (rgb[i] >> 8);
+					b[offset++] = (byte) rgb[i];
+				}
+			}
+		};
+	}
+
+	/** Pixels as 1 or 3 bytes. */
+	static Pixels of(final byte[] pixels, int width, int height,
+			int components) {
+		if (components != 1 && components != 3)
+			throw new IllegalArgumentException(
+					"components must be 1 or 3: " + components);
+		checkLength(pixels.length, width, height, components);
+		return new Pixels(width, height, components) {
+			void getRow(int row, byte[] b, int offset, int[] tmp) {
+				int n = width * this.components;
+				System.arraycopy(pixels, row * n, b, offset, n);
+			}
+		};
+	}
+
+	/** Pixels of an image; gray images stay gray. */
+	static Pixels of(final BufferedImage image) {
+		boolean gray = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+		return new Pixels(image.getWidth(), image.getHeight(), gray ? 1 : 3) {
+			void getRow(int row, byte[] b, int offset, int[] tmp) {
+				if (components == 1) {
+					Object gray = image.getRaster().getDataElements(0, row,
+							width, 1, null);
+					System.arraycopy(gray, 0, b, offset, width);
+					return;
+				}
+				image.getRGB(0, row, width, 1, tmp, 0, width);
+				for (int c = 0; c < width; c++) {
+					b[offset++] = (byte) (tmp[c] >> 16);
+					b[offset++] = (byte) (tmp[c] >> 8);
+					b[offset++] = (byte) tmp[c];
+				}
+			}
+		};
+	}
+
+	private static void checkLength(int length, int width, int height,
+			int components) {
+		if (length < (long) width * height * components)
+			throw new IndexOutOfBoundsException("bitmap of " + width + "x"
+					+ height + " needs " + (long) width * height * components
+					+ " values");
+	}
+
+	/** A compressed chunk. */
+	private static final class Chunk {
+		byte[] data;
+		int length;
+		int adler;
+		long rawLength;
+	}
+
+	/**
+	 * Compresses the pixels. The result is the zlib stream in pieces, which
+	 * have to be concatenated.
+	 *
+	 * @param executor
+	 *            executor for the chunks, or null to compress them in the
+	 *            calling thread
+	 * @param level
+	 *            compression level of Deflater
+	 */
+	static List<byte[]> encode(final Pixels pixels, ExecutorService executor,
+			final int level) throws IOException {
+		final int rowBytes = pixels.width * pixels.components;
+		final int rowsPerChunk = Math.max(1, CHUNK_BYTES / rowBytes);
+		int chunks = (pixels.height + rowsPerChunk - 1) / rowsPerChunk;
+		List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+		List<byte[]> result = new ArrayList<byte[]>();
+		// zlib header: deflate with 32 KiB window, no dictionary
+		result.add(new byte[] { 0x78, (byte) 0x9c });
+		long adler = 1;
+		try {
+			for (int k = 0; k < chunks; k++) {
+				final int from = k * rowsPerChunk;
+				final int to = Math.min(pixels.height, from + rowsPerChunk);
+				if (executor == null || chunks == 1) {
+					Chunk c = compress(pixels, rowBytes, from, to, level);
+					adler = combine(adler, c);
+					result.add(trim(c));
+				} else {
+					futures.add(executor.submit(new Callable<Chunk>() {
+						public Chunk call() {
+							return compress(pixels, rowBytes, from, to, level);
+						}
+					}));
+				}
+			}
+			for (Future<Chunk> f : futures) {
+				Chunk c = await(f);
+				adler = combine(adler, c);
+				result.add(trim(c));
+			}
+		} finally {
+			for (Future<Chunk> f : futures)
+				f.cancel(true);
+		}
+		result.add(new byte[] { (byte) (adler >> 24), (byte) (adler >> 16),
+				(byte) (adler >> 8), (byte) adler });
+		return result;
+	}
+
+	private static Chunk compress(Pixels pixels, int rowBytes, int from,
+			int to, int level) {
+		int[] tmp = new int[pixels.width];
+		byte[] raw = new byte[(to - from) * rowBytes];
+		for (int r = from; r < to; r++)
+			pixels.getRow(r, raw, (r - from) * rowBytes, tmp);
+		Deflater deflater = new Deflater(level, true);
+		try {
+			if (from > 0) {
+				int dictRows = Math.min(from, (DICTIONARY_BYTES + rowBytes - 1)
+						/ rowBytes);
+				byte[] dict = new byte[dictRows * rowBytes];
+				for (int r = from - dictRows; r < from; r++)
+					pixels.getRow(r, dict, (r - from + dictRows) * rowBytes,
+							tmp);
+				int n = Math.min(dict.length, DICTIONARY_BYTES);
+				deflater.setDictionary(dict, dict.length - n, n);
+			}
+			deflater.setInput(raw);
+			boolean last = to == pixels.height;
+			if (last)
+				deflater.finish();
+			Chunk c = new Chunk();
+			c.data = new byte[raw.length / 4 + 64];
+			while (true) {
+				if (c.length == c.data.length)
+					c.data = Arrays.copyOf(c.data, 2 * c.data.length);
+				c.length += deflater.deflate(c.data, c.length, c.data.length
+						- c.length, last ? Deflater.NO_FLUSH
+						: Deflater.SYNC_FLUSH);
+				// a sync flush is complete if it did not fill the output
+				if (last ? deflater.finished() : c.length < c.data.length)
+					break;
+			}
+			Adler32 a = new Adler32();
+			a.update(raw);
+			c.adler = (int) a.getValue();
+			c.rawLength = raw.length;
+			return c;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Returns the Adler-32 checksum of the data so far followed by a chunk.
+	 */
+	private static long combine(long adler, Chunk c) {
+		long rem = c.rawLength % ADLER_BASE;
+		long sum1 = adler & 0xffff;
+		long sum2 = (rem * sum1) % ADLER_BASE;
+		sum1 += (c.adler & 0xffff) + ADLER_BASE - 1;
+		sum2 += ((adler >> 16) & 0xffff) + ((c.adler >>> 16) & 0xffff)
+				+ ADLER_BASE - rem;
+		if (sum1 >= ADLER_BASE)
+			sum1 -= ADLER_BASE;
+		if (sum1 >= ADLER_BASE)
+			sum1 -= ADLER_BASE;
+		if (sum2 >= 2 * ADLER_BASE)
+			sum2 -= 2 * ADLER_BASE;
+		if (sum2 >= ADLER_BASE)
+			sum2 -= ADLER_BASE;
+		return sum1 | (sum2 << 16);
+	}
+
+	private static byte[] trim(Chunk c) {
+		return c.length == c.data.length ? c.data : Arrays.copyOf(c.data,
+				c.length);
+	}
+
+	private static Chunk await(Future<Chunk> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("compression interrupted");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+}
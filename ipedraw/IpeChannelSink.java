@@ -0,0 +1,184 @@
+package de.uniwue.smooth.draw;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Byte output of an IpeWriter to a channel, for example a FileChannel. Text
+ * is encoded as UTF-8 by a loop that copies ASCII characters (almost all of
+ * the output) directly, without a CharsetEncoder, and collected in a direct
+ * ByteBuffer, which the channel writes without copying it again. Direct
+ * buffers are expensive to allocate, so they are taken from a small pool
+ * that is shared by all writers.
+ *
+ * The preamble and the default style sheet are kept encoded.
+ */
+final class IpeChannelSink implements Closeable, Flushable {
+
+	/** Size of the direct buffers; the channel is written in such blocks. */
+	static final int BUFFER_SIZE = 1 << 16;
+
+	private static final int MAX_POOLED = 16;
+	private static final ConcurrentLinkedQueue<ByteBuffer> POOL = new ConcurrentLinkedQueue<ByteBuffer>();
+	private static final AtomicInteger pooled = new AtomicInteger();
+
+	/** getIpePreamble() and getIpeStyle(), encoded on first use. */
+	private static final class Header {
+		static final byte[] BYTES = (IpeDraw.getIpePreamble() + IpeDraw
+				.getIpeStyle()).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private final WritableByteChannel channel;
+	private ByteBuffer bytes;
+	private final byte[] scratch = new byte[4096];
+	/** A high surrogate whose low surrogate has not been written yet. */
+	private char highSurrogate = 0;
+	private long byteCount = 0;
+
+	IpeChannelSink(WritableByteChannel channel) {
+		if (channel == null)
+			throw new NullPointerException("channel");
+		this.channel = channel;
+		ByteBuffer b = POOL.poll();
+		if (b != null)
+			pooled.decrementAndGet();
+		else
+			b = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		b.clear();
+		this.bytes = b;
+	}
+
+	/**
+	 * Writes the preamble and the default style sheet.
+	 */
+	void writeHeader() throws IOException {
+		write(Header.BYTES, 0, Header.BYTES.length);
+	}
+
+	/**
+	 * Writes characters in UTF-8.
+	 */
+	void write(char[] c, int off, int len) throws IOException {
+		byte[] s = scratch;
+		int end = off + len;
+		int i = off;
+		while (i < end) {
+			int n = 0;
+			// leave room for the longest sequence
+			int limit = s.length - 4;
+			while (i < end && n < limit) {
+				char ch = c[i++];
+				if (ch < 0x80 && highSurrogate == 0) {
+					s[n++] = (byte) ch;
+				} else {
+					n = encode(ch, s, n);
+				}
+			}
+			write(s, 0, n);
+		}
+	}
+
+	/**
+	 * Writes bytes.
+	 */
+	void write(byte[] b, int off, int len) throws IOException {
+		byteCount += len;
+		while (len > 0) {
+			if (!bytes.hasRemaining())
+				drain();
+			int n = Math.min(len, bytes.remaining());
+			bytes.put(b, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes written, including those still buffered.
+	 */
+	long getByteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * Writes all buffered bytes to the channel.
+	 */
+	@Override
+	public void flush() throws IOException {
+		drain();
+	}
+
+	/**
+	 * Writes all buffered bytes, returns the buffer to the pool and closes
+	 * the channel.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (bytes == null)
+			return;
+		try {
+			if (highSurrogate != 0) {
+				// an unpaired surrogate at the end
+				highSurrogate = 0;
+				write(new byte[] { '?' }, 0, 1);
+			}
+			drain();
+		} finally {
+			ByteBuffer b = bytes;
+			bytes = null;
+			if (pooled.incrementAndGet() <= MAX_POOLED)
+				POOL.offer(b);
+			else
+				pooled.decrementAndGet();
+			channel.close();
+		}
+	}
+
+	private void drain() throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining())
+			channel.write(bytes);
+		bytes.clear();
+	}
+
+	/**
+	 * Encodes a character that is not ASCII, or follows a high surrogate.
+	 * Unpaired surrogates become '?', like in String.getBytes().
+	 */
+	private int encode(char ch, byte[] s, int n) {
+		if (highSurrogate != 0) {
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if (Character.isLowSurrogate(ch)) {
+				int cp = Character.toCodePoint(high, ch);
+				s[n++] = (byte) (0xf0 | (cp >> 18));
+				s[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+				s[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+				s[n++] = (byte) (0x80 | (cp & 0x3f));
+				return n;
+			}
+			s[n++] = '?';
+		}
+		if (ch < 0x80) {
+			s[n++] = (byte) ch;
+		} else if (ch < 0x800) {
+			s[n++] = (byte) (0xc0 | (ch >> 6));
+			s[n++] = (byte) (0x80 | (ch & 0x3f));
+		} else if (Character.isHighSurrogate(ch)) {
+			highSurrogate = ch;
+		} else if (Character.isLowSurrogate(ch)) {
+			s[n++] = '?';
+		} else {
+			s[n++] = (byte) (0xe0 | (ch >> 12));
+			s[n++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+			s[n++] = (byte) (0x80 | (ch & 0x3f));
+		}
+		return n;
+	}
+}
@@ -0,0 +1,249 @@
+package de.uniwue.smooth.draw;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lets many threads draw into one IpeWriter at the same time.
+ *
+ * Every thread (or task) draws with its own producer, an IpeWriter created by
+ * newProducer(), which formats the objects without any synchronization. When
+ * its buffer is full, and when it is closed, the producer puts the buffer as
+ * a piece of complete objects into a lock-free queue. Whichever thread finds
+ * the target idle then copies all queued pieces into the target; the target
+ * is only ever used by one thread at a time, but no thread waits for it.
+ *
+ * Without ordering, pieces are written as they arrive; every piece states the
+ * layer of its first object, so the layers are right in any order. With
+ * ordering, the output is the same as if the producers had written one after
+ * another in the order they were created, independent of the scheduling:
+ * pieces of a producer are held back until all earlier producers are closed.
+ * This needs memory for the held pieces, so producers should be created in
+ * the order in which they will finish, roughly.
+ *
+ * Usage: create the producers from the thread that owns the target, draw in
+ * the worker threads, close every producer, and call drain() in the owning
+ * thread after the workers are done. Until then, the target must not be used
+ * directly. The objects go into the page and layer that were current when the
+ * producer was created. Styles of the palette of the target must be defined
+ * before the producers are created.
+ *
+ * Long paths are kept completely in the buffer of their producer, since a
+ * piece must not end in the middle of an object.
+ */
+public class IpeConcurrentSink {
+
+	/**
+	 * Default number of characters of a piece.
+	 */
+	public static final int DEFAULT_PIECE_SIZE = 1 << 15;
+
+	private static final int MAX_FREE_BUFFERS = 64;
+
+	/** A piece of a producer; the piece without text closes the producer. */
+	private static final class Piece {
+		final int producer;
+		final StringBuilder text;
+
+		Piece(int producer, StringBuilder text) {
+			this.producer = producer;
+			this.text = text;
+		}
+	}
+
+	private final IpeWriter target;
+	private final boolean ordered;
+	private final int pieceSize;
+	private final AtomicInteger producers = new AtomicInteger();
+
+	private final ConcurrentLinkedQueue<Piece> queue = new ConcurrentLinkedQueue<Piece>();
+	private final AtomicBoolean writing = new AtomicBoolean();
+	private final ConcurrentLinkedQueue<StringBuilder> freeBuffers = new ConcurrentLinkedQueue<StringBuilder>();
+	private final AtomicInteger freeBufferCount = new AtomicInteger();
+	private volatile IOException failure = null;
+
+	// only used by the thread that is writing
+	private int next = 0;
+	private final Map<Integer, List<Piece>> held = new HashMap<Integer, List<Piece>>();
+
+	/**
+	 * Creates a sink that writes the pieces in the order they arrive.
+	 *
+	 * @param target
+	 *            the writer
+	 */
+	public IpeConcurrentSink(IpeWriter target) {
+		this(target, false, DEFAULT_PIECE_SIZE);
+	}
+
+	/**
+	 * Creates a sink.
+	 *
+	 * @param target
+	 *            the writer
+	 * @param ordered
+	 *            whether the output of the producers is written in the order
+	 *            in which they were created
+	 * @param pieceSize
+	 *            number of characters a producer collects before it queues
+	 *            them
+	 */
+	public IpeConcurrentSink(IpeWriter target, boolean ordered, int pieceSize) {
+		if (target == null)
+			throw new NullPointerException("target");
+		if (pieceSize <= 0)
+			throw new IllegalArgumentException("pieceSize must be positive: "
+					+ pieceSize);
+		this.target = target;
+		this.ordered = ordered;
+		this.pieceSize = pieceSize;
+	}
+
+	/**
+	 * Creates a writer for one thread. Its objects go into the current layer
+	 * of the target. It must be closed when it is done, which queues its last
+	 * piece; it never writes getIpeEnd().
+	 *
+	 * @return the writer
+	 */
+	public IpeWriter newProducer() {
+		return target.newPieceWriter(new Producer(producers.getAndIncrement()),
+				pieceSize);
+	}
+
+	/**
+	 * Returns the number of producers created.
+	 *
+	 * @return
+	 */
+	public int getProducerCount() {
+		return producers.get();
+	}
+
+	/**
+	 * Writes the queued pieces into the target, unless another thread is
+	 * doing so. After all producers are closed and their threads are done,
+	 * one call writes everything.
+	 *
+	 * @throws IOException
+	 *             if writing a piece into the target failed, now or in
+	 *             another thread
+	 */
+	public void drain() throws IOException {
+		while (!queue.isEmpty() && writing.compareAndSet(false, true)) {
+			try {
+				if (failure != null)
+					throw failure;
+				Piece p;
+				while ((p = queue.poll()) != null)
+					write(p);
+			} catch (IOException e) {
+				if (failure == null)
+					failure = e;
+				throw e;
+			} finally {
+				writing.set(false);
+			}
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	private void write(Piece p) throws IOException {
+		if (ordered && p.producer != next) {
+			List<Piece> pieces = held.get(p.producer);
+			if (pieces == null)
+				held.put(p.producer, pieces = new ArrayList<Piece>());
+			pieces.add(p);
+			return;
+		}
+		while (p.text != null || ordered) {
+			if (p.text != null) {
+				target.writeFragment(p.text);
+				recycle(p.text);
+				return;
+			}
+			// the current producer is done; continue with the next one
+			List<Piece> pieces = held.remove(++next);
+			if (pieces == null)
+				return;
+			p = pieces.get(pieces.size() - 1);
+			for (int i = 0; i < pieces.size() - 1; i++)
+				write(pieces.get(i));
+			if (p.text != null) {
+				write(p);
+				return;
+			}
+		}
+	}
+
+	private StringBuilder newBuffer(int capacity) {
+		StringBuilder sb = freeBuffers.poll();
+		if (sb == null)
+			return new StringBuilder(Math.max(capacity, pieceSize + 256));
+		freeBufferCount.decrementAndGet();
+		return sb;
+	}
+
+	private void recycle(StringBuilder sb) {
+		if (freeBufferCount.incrementAndGet() <= MAX_FREE_BUFFERS) {
+			sb.setLength(0);
+			freeBuffers.offer(sb);
+		} else {
+			freeBufferCount.decrementAndGet();
+		}
+	}
+
+	private void submit(int producer, StringBuilder text) throws IOException {
+		queue.offer(new Piece(producer, text));
+		drain();
+	}
+
+	/**
+	 * The sink of a producer. IpeWriter hands it its buffer after complete
+	 * objects only.
+	 */
+	private final class Producer implements Appendable, Closeable {
+		private final int id;
+		private boolean closed = false;
+
+		Producer(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public Appendable append(CharSequence csq) throws IOException {
+			return append(csq, 0, csq.length());
+		}
+
+		@Override
+		public Appendable append(CharSequence csq, int start, int end)
+				throws IOException {
+			if (end > start)
+				submit(id, newBuffer(end - start).append(csq, start, end));
+			return this;
+		}
+
+		@Override
+		public Appendable append(char c) throws IOException {
+			submit(id, newBuffer(1).append(c));
+			return this;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed)
+				return;
+			closed = true;
+			if (ordered)
+				submit(id, null);
+		}
+	}
+}
@@ -0,0 +1,374 @@
+package de.uniwue.smooth.draw;
+
+import java.util.Arrays;
+
+/**
+ * Fitting of cubic Bezier curves to densely sampled curves, with the
+ * least-squares algorithm of Schneider ("An Algorithm for Automatically
+ * Fitting Digitized Curves", Graphics Gems, 1990).
+ *
+ * A range of points is fitted by one cubic curve whose end points are the
+ * first and last point of the range and whose end tangents are estimated
+ * from their neighbors. The inner control points are chosen by least
+ * squares, and the parameters of the points are improved by Newton steps a
+ * few times. If a point is still farther than the tolerance from its place
+ * on the curve, the range is split at the farthest point, with a common
+ * tangent on both sides, and the parts are fitted separately. Thus every
+ * point is within the tolerance of the resulting curve, which is smooth at
+ * the joints.
+ *
+ * Curves are fitted in chunks of at most CHUNK_POINTS points, which bounds
+ * the running time of the first attempts. Repeated points are ignored.
+ *
+ * IpeWriter.drawCurve() and drawCurves() write the fitted curves as paths.
+ */
+public final class IpeCurveFitter {
+
+	/**
+	 * Largest number of points that are fitted by one Bezier curve.
+	 */
+	public static final int CHUNK_POINTS = 1 << 10;
+
+	/**
+	 * Number of reparameterizations before a range is split.
+	 */
+	private static final int MAX_ITERATIONS = 4;
+
+	private IpeCurveFitter() {
+	}
+
+	/**
+	 * Fits Bezier curves to points.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param tolerance
+	 *            largest allowed distance of a point from the fitted curve
+	 * @return the control points, see fit(double[], double[], int, int,
+	 *         double)
+	 */
+	public static double[] fit(double[] x, double[] y, double tolerance) {
+		return fit(x, y, 0, x.length, tolerance);
+	}
+
+	/**
+	 * Fits Bezier curves to the points offset, ..., offset + length - 1 of
+	 * the given arrays. The result are the packed coordinates x0, y0, x1, y1,
+	 * ... of the control points: the first point, followed by two inner
+	 * control points and an end point for every curve. A single point gives
+	 * a curve that starts and ends there.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points, at least 1
+	 * @param tolerance
+	 *            largest allowed distance of a point from the fitted curve
+	 * @return the control points
+	 */
+	public static double[] fit(double[] x, double[] y, int offset, int length,
+			double tolerance) {
+		IpeDraw.checkPoints(x.length, offset, y.length, offset, 1, length);
+		checkTolerance(tolerance);
+		double[] px = new double[length];
+		double[] py = new double[length];
+		int n = 0;
+		for (int i = offset; i < offset + length; i++)
+			n = addDistinct(px, py, n, x[i], y[i]);
+		return new Fit(px, py, n, tolerance).run();
+	}
+
+	/**
+	 * Fits Bezier curves to points with int coordinates, see fit(double[],
+	 * double[], int, int, double).
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points, at least 1
+	 * @param tolerance
+	 *            largest allowed distance of a point from the fitted curve
+	 * @return the control points
+	 */
+	public static double[] fit(int[] x, int[] y, int offset, int length,
+			double tolerance) {
+		IpeDraw.checkPoints(x, offset, y, offset, 1, length);
+		checkTolerance(tolerance);
+		double[] px = new double[length];
+		double[] py = new double[length];
+		int n = 0;
+		for (int i = offset; i < offset + length; i++)
+			n = addDistinct(px, py, n, x[i], y[i]);
+		return new Fit(px, py, n, tolerance).run();
+	}
+
+	private static void checkTolerance(double tolerance) {
+		if (!(tolerance > 0) || Double.isInfinite(tolerance))
+			throw new IllegalArgumentException("invalid tolerance: "
+					+ tolerance);
+	}
+
+	private static int addDistinct(double[] px, double[] py, int n, double x,
+			double y) {
+		if (n > 0 && px[n - 1] == x && py[n - 1] == y)
+			return n;
+		px[n] = x;
+		py[n] = y;
+		return n + 1;
+	}
+
+	/**
+	 * The state of fitting one curve: the distinct points, the parameters of
+	 * the range being fitted, the current candidate and the result.
+	 */
+	private static final class Fit {
+		private final double[] px, py;
+		private final int n;
+		private final double sqTolerance;
+		private double[] u = new double[16];
+		private double c1x, c1y, c2x, c2y;
+		private int split;
+		private double[] out = new double[32];
+		private int outCount = 0;
+
+		// ranges still to be fitted: first and last point, and tangents
+		private int[] ranges = new int[32];
+		private double[] tangents = new double[64];
+		private int top = 0;
+
+		Fit(double[] px, double[] py, int n, double tolerance) {
+			this.px = px;
+			this.py = py;
+			this.n = n;
+			this.sqTolerance = tolerance * tolerance;
+		}
+
+		double[] run() {
+			append(px[0], py[0]);
+			if (n == 1) {
+				for (int i = 0; i < 3; i++)
+					append(px[0], py[0]);
+				return Arrays.copyOf(out, outCount);
+			}
+			for (int start = 0; start < n - 1; start += CHUNK_POINTS - 1) {
+				int end = Math.min(n - 1, start + CHUNK_POINTS - 1);
+				double[] t1 = start == 0 ? direction(1, 0)
+						: centerTangent(start);
+				double[] t2 = end == n - 1 ? direction(n - 2, n - 1)
+						: centerTangent(end);
+				if (start > 0) {
+					t1[0] = -t1[0];
+					t1[1] = -t1[1];
+				}
+				push(start, end, t1[0], t1[1], t2[0], t2[1]);
+				while (top > 0) {
+					top--;
+					int first = ranges[2 * top], last = ranges[2 * top + 1];
+					double t1x = tangents[4 * top];
+					double t1y = tangents[4 * top + 1];
+					double t2x = tangents[4 * top + 2];
+					double t2y = tangents[4 * top + 3];
+					if (fitRange(first, last, t1x, t1y, t2x, t2y))
+						continue;
+					// the left part is fitted first, so it is pushed last
+					int s = split;
+					double[] c = centerTangent(s);
+					push(s, last, -c[0], -c[1], t2x, t2y);
+					push(first, s, t1x, t1y, c[0], c[1]);
+				}
+			}
+			return Arrays.copyOf(out, outCount);
+		}
+
+		/**
+		 * Fits one curve to the points first, ..., last with the given unit
+		 * tangents, which point into the curve. Appends the curve and returns
+		 * true if it is within the tolerance, and sets split otherwise.
+		 */
+		private boolean fitRange(int first, int last, double t1x, double t1y,
+				double t2x, double t2y) {
+			if (last - first == 1) {
+				double d = Math.hypot(px[last] - px[first], py[last]
+						- py[first]) / 3;
+				append(px[first] + t1x * d, py[first] + t1y * d);
+				append(px[last] + t2x * d, py[last] + t2y * d);
+				append(px[last], py[last]);
+				return true;
+			}
+			chordLengthParameters(first, last);
+			generate(first, last, t1x, t1y, t2x, t2y);
+			double error = maxError(first, last);
+			if (error > 4 * sqTolerance)
+				return false;
+			for (int i = 0; error > sqTolerance && i < MAX_ITERATIONS; i++) {
+				reparameterize(first, last);
+				generate(first, last, t1x, t1y, t2x, t2y);
+				error = maxError(first, last);
+			}
+			if (error > sqTolerance)
+				return false;
+			append(c1x, c1y);
+			append(c2x, c2y);
+			append(px[last], py[last]);
+			return true;
+		}
+
+		/**
+		 * Sets the parameters of the points to their relative distances
+		 * along the polyline.
+		 */
+		private void chordLengthParameters(int first, int last) {
+			if (u.length < last - first + 1)
+				u = new double[Math.max(2 * u.length, last - first + 1)];
+			u[0] = 0;
+			for (int i = first + 1; i <= last; i++)
+				u[i - first] = u[i - first - 1]
+						+ Math.hypot(px[i] - px[i - 1], py[i] - py[i - 1]);
+			double total = u[last - first];
+			for (int i = 1; i <= last - first; i++)
+				u[i] /= total;
+		}
+
+		/**
+		 * Chooses the inner control points by least squares for the current
+		 * parameters.
+		 */
+		private void generate(int first, int last, double t1x, double t1y,
+				double t2x, double t2y) {
+			double x0 = px[first], y0 = py[first];
+			double x3 = px[last], y3 = py[last];
+			double c00 = 0, c01 = 0, c11 = 0, r0 = 0, r1 = 0;
+			for (int i = first; i <= last; i++) {
+				double t = u[i - first], s = 1 - t;
+				double b0 = s * s * s, b1 = 3 * t * s * s;
+				double b2 = 3 * t * t * s, b3 = t * t * t;
+				double a0x = t1x * b1, a0y = t1y * b1;
+				double a1x = t2x * b2, a1y = t2y * b2;
+				c00 += a0x * a0x + a0y * a0y;
+				c01 += a0x * a1x + a0y * a1y;
+				c11 += a1x * a1x + a1y * a1y;
+				double dx = px[i] - (x0 * (b0 + b1) + x3 * (b2 + b3));
+				double dy = py[i] - (y0 * (b0 + b1) + y3 * (b2 + b3));
+				r0 += a0x * dx + a0y * dy;
+				r1 += a1x * dx + a1y * dy;
+			}
+			double det = c00 * c11 - c01 * c01;
+			double alpha1 = det == 0 ? 0 : (r0 * c11 - r1 * c01) / det;
+			double alpha2 = det == 0 ? 0 : (c00 * r1 - c01 * r0) / det;
+			// fall back to a third of the chord if the solution is degenerate
+			double chord = Math.hypot(x3 - x0, y3 - y0);
+			if (alpha1 < 1e-6 * chord || alpha2 < 1e-6 * chord) {
+				alpha1 = chord / 3;
+				alpha2 = chord / 3;
+			}
+			c1x = x0 + t1x * alpha1;
+			c1y = y0 + t1y * alpha1;
+			c2x = x3 + t2x * alpha2;
+			c2y = y3 + t2y * alpha2;
+		}
+
+		/**
+		 * Returns the largest squared distance of a point from its place on
+		 * the candidate, and sets split to that point.
+		 */
+		private double maxError(int first, int last) {
+			double max = 0;
+			split = (first + last) / 2;
+			for (int i = first + 1; i < last; i++) {
+				double t = u[i - first], s = 1 - t;
+				double b0 = s * s * s, b1 = 3 * t * s * s;
+				double b2 = 3 * t * t * s, b3 = t * t * t;
+				double dx = px[first] * b0 + c1x * b1 + c2x * b2 + px[last]
+						* b3 - px[i];
+				double dy = py[first] * b0 + c1y * b1 + c2y * b2 + py[last]
+						* b3 - py[i];
+				double d = dx * dx + dy * dy;
+				if (d > max) {
+					max = d;
+					split = i;
+				}
+			}
+			return max;
+		}
+
+		/**
+		 * Moves the parameters of the points to their closest places on the
+		 * candidate by a Newton step.
+		 */
+		private void reparameterize(int first, int last) {
+			double x0 = px[first], y0 = py[first];
+			double x3 = px[last], y3 = py[last];
+			for (int i = first + 1; i < last; i++) {
+				double t = u[i - first], s = 1 - t;
+				double b0 = s * s * s, b1 = 3 * t * s * s;
+				double b2 = 3 * t * t * s, b3 = t * t * t;
+				// the candidate and its first two derivatives at t
+				double qx = x0 * b0 + c1x * b1 + c2x * b2 + x3 * b3 - px[i];
+				double qy = y0 * b0 + c1y * b1 + c2y * b2 + y3 * b3 - py[i];
+				double d1x = 3 * ((c1x - x0) * s * s + 2 * (c2x - c1x) * s * t
+						+ (x3 - c2x) * t * t);
+				double d1y = 3 * ((c1y - y0) * s * s + 2 * (c2y - c1y) * s * t
+						+ (y3 - c2y) * t * t);
+				double d2x = 6 * ((c2x - 2 * c1x + x0) * s + (x3 - 2 * c2x + c1x)
+						* t);
+				double d2y = 6 * ((c2y - 2 * c1y + y0) * s + (y3 - 2 * c2y + c1y)
+						* t);
+				double denominator = d1x * d1x + d1y * d1y + qx * d2x + qy
+						* d2y;
+				if (denominator != 0)
+					u[i - first] = Math.min(1, Math.max(0, t
+							- (qx * d1x + qy * d1y) / denominator));
+			}
+		}
+
+		/**
+		 * Returns the unit vector from point from to point to.
+		 */
+		private double[] direction(int to, int from) {
+			double dx = px[to] - px[from], dy = py[to] - py[from];
+			double d = Math.hypot(dx, dy);
+			return new double[] { dx / d, dy / d };
+		}
+
+		/**
+		 * Returns the unit tangent at an inner point, pointing backwards.
+		 */
+		private double[] centerTangent(int i) {
+			if (px[i - 1] == px[i + 1] && py[i - 1] == py[i + 1])
+				return direction(i - 1, i);
+			return direction(i - 1, i + 1);
+		}
+
+		private void push(int first, int last, double t1x, double t1y,
+				double t2x, double t2y) {
+			if (2 * top + 2 > ranges.length) {
+				ranges = Arrays.copyOf(ranges, 2 * ranges.length);
+				tangents = Arrays.copyOf(tangents, 2 * tangents.length);
+			}
+			ranges[2 * top] = first;
+			ranges[2 * top + 1] = last;
+			tangents[4 * top] = t1x;
+			tangents[4 * top + 1] = t1y;
+			tangents[4 * top + 2] = t2x;
+			tangents[4 * top + 3] = t2y;
+			top++;
+		}
+
+		private void append(double x, double y) {
+			if (outCount + 2 > out.length)
+				out = Arrays.copyOf(out, 2 * out.length);
+			out[outCount++] = x;
+			out[outCount++] = y;
+		}
+	}
+}
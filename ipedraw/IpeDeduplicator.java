@@ -0,0 +1,341 @@
+package de.uniwue.smooth.draw;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Recognizes marks, edges, rectangles and circles that were drawn before. An
+ * IpeWriter with a deduplicator (see IpeWriter.setDeduplicator()) silently
+ * drops such repeated objects, for example undirected edges that are listed
+ * in both directions, or vertices that are drawn by several passes.
+ *
+ * Two objects are equal if they have the same kind and style and their
+ * coordinates agree after rounding to multiples of the quantum. Edges are
+ * undirected, so (a, b) equals (b, a); rectangles are equal if they have the
+ * same corners, circles if they have the same center and radius. With
+ * quantum 0, coordinates must be exactly equal.
+ *
+ * Every object seen is stored as a 64-bit fingerprint of its quantized
+ * coordinates and style in an open-addressing hash set of longs, which takes
+ * at most 32 bytes per object and allocates nothing per object. Different objects
+ * have equal fingerprints with probability about n^2 / 2^65 for n objects,
+ * less than 10^-7 for a million objects.
+ */
+public class IpeDeduplicator {
+
+	private static final int MARK = 0, EDGE = 1, BOX = 2, CIRCLE = 3;
+	private static final long STYLE_SEED = 0x2545F4914F6CDD1DL;
+
+	private final double quantum;
+	private final long[] duplicates = new long[4];
+
+	// the set of fingerprints; 0 marks an empty slot
+	private long[] keys = new long[64];
+	private int size = 0;
+	private boolean containsZero = false;
+
+	// styles, with the last one remembered by identity
+	private final Map<String, Integer> attributeNumber = new HashMap<String, Integer>();
+	private String lastA, lastB, lastC;
+	private long lastStyle;
+
+	/**
+	 * Creates a deduplicator that only identifies exactly equal coordinates.
+	 */
+	public IpeDeduplicator() {
+		this(0);
+	}
+
+	/**
+	 * Creates a deduplicator that identifies coordinates that are equal after
+	 * rounding to multiples of quantum.
+	 *
+	 * @param quantum
+	 *            the grid that coordinates are rounded to, or 0
+	 */
+	public IpeDeduplicator(double quantum) {
+		if (!(quantum >= 0) || Double.isInfinite(quantum))
+			throw new IllegalArgumentException("invalid quantum: " + quantum);
+		this.quantum = quantum;
+	}
+
+	public double getQuantum() {
+		return quantum;
+	}
+
+	/**
+	 * Records a mark.
+	 *
+	 * @param x
+	 *            x-coordinate
+	 * @param y
+	 *            y-coordinate
+	 * @param shape
+	 *            shape
+	 * @param color
+	 *            color
+	 * @param size
+	 *            size
+	 * @return true if the mark is new, false if it is a duplicate
+	 */
+	public boolean addMark(double x, double y, String shape, String color,
+			String size) {
+		long h = mix(MARK, style(shape, color, size));
+		h = mix(h, quantize(x));
+		h = mix(h, quantize(y));
+		return add(MARK, h);
+	}
+
+	/**
+	 * Records an edge. The edges (a, b) and (b, a) are equal.
+	 *
+	 * @param x1
+	 *            x-coordinate of point 1
+	 * @param y1
+	 *            y-coordinate of point 1
+	 * @param x2
+	 *            x-coordinate of point 2
+	 * @param y2
+	 *            y-coordinate of point 2
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width
+	 * @param dash
+	 *            dash style
+	 * @return true if the edge is new, false if it is a duplicate
+	 */
+	public boolean addEdge(double x1, double y1, double x2, double y2,
+			String color, String pen, String dash) {
+		long qx1 = quantize(x1), qy1 = quantize(y1);
+		long qx2 = quantize(x2), qy2 = quantize(y2);
+		if (qx2 < qx1 || (qx2 == qx1 && qy2 < qy1)) {
+			long t = qx1;
+			qx1 = qx2;
+			qx2 = t;
+			t = qy1;
+			qy1 = qy2;
+			qy2 = t;
+		}
+		long h = mix(EDGE, style(color, pen, dash));
+		h = mix(h, qx1);
+		h = mix(h, qy1);
+		h = mix(h, qx2);
+		h = mix(h, qy2);
+		return add(EDGE, h);
+	}
+
+	/**
+	 * Records a rectangle. Rectangles with the same corners are equal,
+	 * whichever corners were given.
+	 *
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width
+	 * @param dash
+	 *            dash style
+	 * @return true if the rectangle is new, false if it is a duplicate
+	 */
+	public boolean addBox(double x1, double y1, double x2, double y2,
+			String color, String pen, String dash) {
+		long qx1 = quantize(x1), qy1 = quantize(y1);
+		long qx2 = quantize(x2), qy2 = quantize(y2);
+		long h = mix(BOX, style(color, pen, dash));
+		h = mix(h, Math.min(qx1, qx2));
+		h = mix(h, Math.min(qy1, qy2));
+		h = mix(h, Math.max(qx1, qx2));
+		h = mix(h, Math.max(qy1, qy2));
+		return add(BOX, h);
+	}
+
+	/**
+	 * Records a circle.
+	 *
+	 * @param x
+	 *            x-coordinate of the center
+	 * @param y
+	 *            y-coordinate of the center
+	 * @param radius
+	 *            radius
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width
+	 * @param dash
+	 *            dash style
+	 * @return true if the circle is new, false if it is a duplicate
+	 */
+	public boolean addCircle(double x, double y, double radius, String color,
+			String pen, String dash) {
+		long h = mix(CIRCLE, style(color, pen, dash));
+		h = mix(h, quantize(x));
+		h = mix(h, quantize(y));
+		h = mix(h, quantize(Math.abs(radius)));
+		return add(CIRCLE, h);
+	}
+
+	/**
+	 * Returns the number of duplicate marks seen so far.
+	 *
+	 * @return
+	 */
+	public long getDuplicateMarkCount() {
+		return duplicates[MARK];
+	}
+
+	/**
+	 * Returns the number of duplicate edges seen so far.
+	 *
+	 * @return
+	 */
+	public long getDuplicateEdgeCount() {
+		return duplicates[EDGE];
+	}
+
+	/**
+	 * Returns the number of duplicate rectangles seen so far.
+	 *
+	 * @return
+	 */
+	public long getDuplicateBoxCount() {
+		return duplicates[BOX];
+	}
+
+	/**
+	 * Returns the number of duplicate circles seen so far.
+	 *
+	 * @return
+	 */
+	public long getDuplicateCircleCount() {
+		return duplicates[CIRCLE];
+	}
+
+	/**
+	 * Returns the number of duplicates of all kinds seen so far.
+	 *
+	 * @return
+	 */
+	public long getDuplicateCount() {
+		return duplicates[MARK] + duplicates[EDGE] + duplicates[BOX]
+				+ duplicates[CIRCLE];
+	}
+
+	/**
+	 * Returns the number of distinct objects recorded.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Forgets all objects recorded, for example at the start of a new page.
+	 * The counts of duplicates are kept.
+	 */
+	public void clear() {
+		Arrays.fill(keys, 0);
+		size = 0;
+		containsZero = false;
+	}
+
+	/**
+	 * Adds the counts of duplicates of another deduplicator, for example the
+	 * one of a page rendered concurrently.
+	 */
+	void addDuplicates(IpeDeduplicator d) {
+		for (int i = 0; i < duplicates.length; i++)
+			duplicates[i] += d.duplicates[i];
+	}
+
+	private long quantize(double v) {
+		if (quantum == 0)
+			return Double.doubleToLongBits(v == 0 ? 0 : v);
+		return Math.round(v / quantum);
+	}
+
+	/**
+	 * Returns a key for a style. The attributes are numbered, so that lookups
+	 * do not allocate.
+	 */
+	private long style(String a, String b, String c) {
+		if (a == lastA && b == lastB && c == lastC)
+			return lastStyle;
+		lastA = a;
+		lastB = b;
+		lastC = c;
+		lastStyle = mix(mix(mix(STYLE_SEED, number(a)), number(b)), number(c));
+		return lastStyle;
+	}
+
+	private int number(String attribute) {
+		Integer n = attributeNumber.get(attribute);
+		if (n == null) {
+			n = attributeNumber.size() + 1;
+			attributeNumber.put(attribute, n);
+		}
+		return n;
+	}
+
+	private static long mix(long h, long v) {
+		h = (h ^ v) * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 31);
+	}
+
+	/**
+	 * Adds a fingerprint to the set and counts it as a duplicate of the given
+	 * kind if it was there already.
+	 */
+	private boolean add(int kind, long key) {
+		key ^= key >>> 29;
+		key *= 0xBF58476D1CE4E5B9L;
+		key ^= key >>> 32;
+		if (key == 0) {
+			if (containsZero) {
+				duplicates[kind]++;
+				return false;
+			}
+			containsZero = true;
+			size++;
+			return true;
+		}
+		int mask = keys.length - 1;
+		int slot = (int) key & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				duplicates[kind]++;
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		if (++size * 2 > keys.length)
+			rehash();
+		return true;
+	}
+
+	private void rehash() {
+		long[] old = keys;
+		int n = 2 * old.length;
+		int mask = n - 1;
+		keys = new long[n];
+		for (long key : old) {
+			if (key == 0)
+				continue;
+			int slot = (int) key & mask;
+			while (keys[slot] != 0)
+				slot = (slot + 1) & mask;
+			keys[slot] = key;
+		}
+	}
+}
@@ -0,0 +1,805 @@
+package de.uniwue.smooth.draw;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Draws marks and edges into an IpeWriter, or a density map of them if there
+ * are too many to be useful as single objects.
+ *
+ * Every mark and edge is counted in a grid of square or hexagonal bins over a
+ * rectangular area: a mark in the bin that contains it, an edge once in every
+ * bin it passes through. Edges are sampled in steps of half a bin, so a bin
+ * whose corner an edge only cuts may not count it. As long as there are at
+ * most getThreshold() elements, they are also kept as objects. finish() then
+ * writes either these objects, or the density map: for every bin that is not
+ * empty a filled polygon whose color shows how many elements it contains, or
+ * a single bitmap with one pixel per bin. The size of the density map depends
+ * only on the number of bins, not on the number of elements. Elements outside
+ * the area are not counted in the map. Nothing can be drawn after finish().
+ *
+ * Large batches given to drawMarks() and drawEdges() are binned in parallel
+ * on an executor, by default the common fork-join pool, with a grid per
+ * task; the grids are added up afterwards. Every task bins at least as many
+ * elements as there are bins, and the grids of all tasks have at most
+ * MAX_TASK_BINS bins together, so large grids are binned by fewer tasks or
+ * sequentially.
+ *
+ * Everything is written into the layer of the target that is current when
+ * the density map is created. The density map is not thread-safe.
+ */
+public class IpeDensityMap {
+
+	/** Shape of square bins. */
+	public static final int SQUARE = 0;
+	/** Shape of hexagonal bins; binSize is the distance of their centers. */
+	public static final int HEX = 1;
+
+	/**
+	 * Default number of elements above which the density map is drawn.
+	 */
+	public static final long DEFAULT_THRESHOLD = 100000;
+
+	/** Light to dark blue, see colorbrewer2.org. */
+	private static final int[] DEFAULT_COLORS = { 0xf7fbff, 0xdeebf7,
+			0xc6dbef, 0x9ecae1, 0x6baed6, 0x4292c6, 0x2171b5, 0x084594 };
+
+	/** Minimal number of elements binned by one task. */
+	private static final int PARALLEL_CHUNK = 1 << 16;
+
+	/** Maximal number of bins. */
+	private static final int MAX_BINS = 1 << 26;
+
+	/** Maximal number of bins of the grids of all tasks of a batch. */
+	private static final int MAX_TASK_BINS = 1 << 24;
+
+	/** Maximal number of polygons written as one path. */
+	private static final int POLYGONS_PER_PATH = 4096;
+
+	private final IpeWriter target;
+	private final String layer;
+	private final double xMin, yMin, xMax, yMax;
+	private final double binSize;
+	private final int shape;
+	// vertical distance of the rows of hexagons
+	private final double rowHeight;
+	private final int columns, rows;
+	private final int[] counts;
+	private final EdgeBins edgeBins = new EdgeBins();
+
+	private long threshold = DEFAULT_THRESHOLD;
+	private boolean bitmap = false;
+	private boolean logScale = true;
+	private int[] colors = DEFAULT_COLORS;
+	private ExecutorService executor = ForkJoinPool.commonPool();
+
+	private long elements = 0;
+	private long outside = 0;
+	private StringBuilder objects = new StringBuilder();
+	private IpeWriter objectWriter;
+	private boolean finished = false;
+
+	/**
+	 * Creates a density map of a rectangular area.
+	 *
+	 * @param target
+	 *            the writer
+	 * @param xMin
+	 *            left-most x-coordinate
+	 * @param yMin
+	 *            bottom-most y-coordinate
+	 * @param xMax
+	 *            right-most x-coordinate
+	 * @param yMax
+	 *            top-most y-coordinate
+	 * @param binSize
+	 *            width of a square bin, or distance of the centers of
+	 *            neighboring hexagonal bins
+	 * @param shape
+	 *            SQUARE or HEX
+	 */
+	public IpeDensityMap(IpeWriter target, double xMin, double yMin,
+			double xMax, double yMax, double binSize, int shape) {
+		if (!(xMin < xMax && yMin < yMax))
+			throw new IllegalArgumentException("empty area: " + xMin + " "
+					+ yMin + " " + xMax + " " + yMax);
+		if (!(binSize > 0))
+			throw new IllegalArgumentException("binSize must be positive: "
+					+ binSize);
+		if (shape != SQUARE && shape != HEX)
+			throw new IllegalArgumentException("unknown shape: " + shape);
+		this.target = target;
+		this.layer = target.getLayer();
+		this.xMin = xMin;
+		this.yMin = yMin;
+		this.xMax = xMax;
+		this.yMax = yMax;
+		this.binSize = binSize;
+		this.shape = shape;
+		double c, r;
+		if (shape == SQUARE) {
+			rowHeight = binSize;
+			c = Math.max(1, Math.ceil((xMax - xMin) / binSize));
+			r = Math.max(1, Math.ceil((yMax - yMin) / binSize));
+		} else {
+			// the radius of a hexagon is binSize / sqrt(3)
+			rowHeight = binSize * Math.sqrt(3) / 2;
+			// one more column on each side for the odd rows
+			c = Math.ceil((xMax - xMin) / binSize) + 2;
+			r = Math.ceil((yMax - yMin) / rowHeight) + 2;
+		}
+		if (c * r > MAX_BINS)
+			throw new IllegalArgumentException("too many bins: " + c + "x" + r);
+		columns = (int) c;
+		rows = (int) r;
+		counts = new int[columns * rows];
+		objectWriter = target.newFragmentWriter(objects,
+				IpeWriter.DEFAULT_BUFFER_SIZE);
+		if (layer != null)
+			objectWriter.setLayer(layer);
+	}
+
+	/**
+	 * Sets the number of elements above which the density map is drawn
+	 * instead of the elements. The default is DEFAULT_THRESHOLD.
+	 *
+	 * @param threshold
+	 *            the number of elements
+	 */
+	public void setThreshold(long threshold) {
+		if (threshold < 0)
+			throw new IllegalArgumentException(
+					"threshold must not be negative: " + threshold);
+		this.threshold = threshold;
+		if (elements > threshold)
+			dropObjects();
+	}
+
+	/**
+	 * Returns the number of elements above which the density map is drawn.
+	 *
+	 * @return
+	 */
+	public long getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Sets whether the density map is drawn as a bitmap with one pixel per
+	 * bin instead of polygons. Only possible with square bins. Empty bins are
+	 * white. The default is false.
+	 *
+	 * @param bitmap
+	 *            whether to draw a bitmap
+	 */
+	public void setBitmap(boolean bitmap) {
+		if (bitmap && shape != SQUARE)
+			throw new IllegalStateException("a bitmap needs square bins");
+		this.bitmap = bitmap;
+	}
+
+	/**
+	 * Sets the colors of the density classes, from the lowest density to the
+	 * highest. The default has eight shades of blue.
+	 *
+	 * @param rgb
+	 *            colors as 0xRRGGBB
+	 */
+	public void setColors(int... rgb) {
+		if (rgb.length == 0)
+			throw new IllegalArgumentException("no colors given");
+		this.colors = rgb.clone();
+	}
+
+	/**
+	 * Sets whether the density classes divide the logarithm of the number of
+	 * elements in a bin into equal intervals, or the number itself. The
+	 * default is true, since a few bins usually have much more elements than
+	 * the others.
+	 *
+	 * @param logScale
+	 *            whether to use a logarithmic scale
+	 */
+	public void setLogScale(boolean logScale) {
+		this.logScale = logScale;
+	}
+
+	/**
+	 * Sets the executor that bins large batches.
+	 *
+	 * @param executor
+	 *            the executor; it is not shut down by the density map
+	 */
+	public void setExecutor(ExecutorService executor) {
+		if (executor == null)
+			throw new NullPointerException("executor");
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the number of elements drawn.
+	 *
+	 * @return
+	 */
+	public long getElementCount() {
+		return elements;
+	}
+
+	/**
+	 * Returns the number of elements that lie entirely outside the area.
+	 *
+	 * @return
+	 */
+	public long getOutsideCount() {
+		return outside;
+	}
+
+	/**
+	 * Returns whether finish() draws the density map instead of the elements.
+	 *
+	 * @return
+	 */
+	public boolean isAggregated() {
+		return elements > threshold;
+	}
+
+	/**
+	 * Returns the number of elements counted in a bin.
+	 *
+	 * @param x
+	 *            x-coordinate of a point in the bin
+	 * @param y
+	 *            y-coordinate of a point in the bin
+	 * @return the number, or 0 if the point is outside the area
+	 */
+	public int getCount(double x, double y) {
+		int b = bin(x, y);
+		return b < 0 ? 0 : counts[b];
+	}
+
+	/**
+	 * Draws a mark.
+	 *
+	 * @param x
+	 *            x-coordinate
+	 * @param y
+	 *            y-coordinate
+	 * @param shape
+	 *            shape: disk, fdisk, circle, box, square, fsquare, cross
+	 * @param color
+	 *            color
+	 * @param size
+	 *            size: tiny, small, normal, large
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             if finish() has been called
+	 */
+	public void drawMark(double x, double y, String shape, String color,
+			String size) throws IOException {
+		add(1);
+		if (objectWriter != null)
+			objectWriter.drawMark(x, y, shape, color, size);
+		int b = bin(x, y);
+		if (b >= 0)
+			counts[b]++;
+		else
+			outside++;
+	}
+
+	/**
+	 * Draws the marks at the points offset, ..., offset + length - 1 of the
+	 * given arrays.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param shape
+	 *            shape: disk, fdisk, circle, box, square, fsquare, cross
+	 * @param color
+	 *            color
+	 * @param size
+	 *            size: tiny, small, normal, large
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             if finish() has been called
+	 */
+	public void drawMarks(int[] x, int[] y, int offset, int length,
+			String shape, String color, String size) throws IOException {
+		IpeDraw.checkPoints(x, offset, y, offset, 1, length);
+		add(length);
+		if (objectWriter != null)
+			objectWriter.drawMarks(x, y, offset, length, shape, color, size);
+		binAll(x, null, y, null, null, null, null, null, offset, length);
+	}
+
+	/**
+	 * Draws the marks at the points offset, ..., offset + length - 1 of the
+	 * given arrays of double coordinates.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param shape
+	 *            shape: disk, fdisk, circle, box, square, fsquare, cross
+	 * @param color
+	 *            color
+	 * @param size
+	 *            size: tiny, small, normal, large
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             if finish() has been called
+	 */
+	public void drawMarks(double[] x, double[] y, int offset, int length,
+			String shape, String color, String size) throws IOException {
+		IpeDraw.checkPoints(x.length, offset, y.length, offset, 1, length);
+		add(length);
+		if (objectWriter != null)
+			objectWriter.drawMarks(x, y, offset, length, shape, color, size);
+		binAll(null, x, null, y, null, null, null, null, offset, length);
+	}
+
+	/**
+	 * Draws an edge.
+	 *
+	 * @param x1
+	 *            x-coordinate of the source
+	 * @param y1
+	 *            y-coordinate of the source
+	 * @param x2
+	 *            x-coordinate of the target
+	 * @param y2
+	 *            y-coordinate of the target
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             if finish() has been called
+	 */
+	public void drawEdge(double x1, double y1, double x2, double y2,
+			String color, String pen, String dash) throws IOException {
+		add(1);
+		if (objectWriter != null)
+			objectWriter.drawEdge(x1, y1, x2, y2, color, pen, dash);
+		if (!binSegment(x1, y1, x2, y2, counts, edgeBins))
+			outside++;
+	}
+
+	/**
+	 * Draws the edges offset, ..., offset + length - 1, where edge i goes from
+	 * (x1[i], y1[i]) to (x2[i], y2[i]).
+	 *
+	 * @param x1
+	 *            x-coordinates of the sources
+	 * @param y1
+	 *            y-coordinates of the sources
+	 * @param x2
+	 *            x-coordinates of the targets
+	 * @param y2
+	 *            y-coordinates of the targets
+	 * @param offset
+	 *            index of the first edge
+	 * @param length
+	 *            number of edges
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             if finish() has been called
+	 */
+	public void drawEdges(int[] x1, int[] y1, int[] x2, int[] y2, int offset,
+			int length, String color, String pen, String dash)
+			throws IOException {
+		IpeDraw.checkPoints(x1, offset, y1, offset, 1, length);
+		IpeDraw.checkPoints(x2, offset, y2, offset, 1, length);
+		add(length);
+		if (objectWriter != null)
+			for (int i = offset; i < offset + length; i++)
+				objectWriter.drawEdge(x1[i], y1[i], x2[i], y2[i], color, pen,
+						dash);
+		binAll(x1, null, y1, null, x2, null, y2, null, offset, length);
+	}
+
+	/**
+	 * Draws the edges offset, ..., offset + length - 1 with double
+	 * coordinates, where edge i goes from (x1[i], y1[i]) to (x2[i], y2[i]).
+	 *
+	 * @param x1
+	 *            x-coordinates of the sources
+	 * @param y1
+	 *            y-coordinates of the sources
+	 * @param x2
+	 *            x-coordinates of the targets
+	 * @param y2
+	 *            y-coordinates of the targets
+	 * @param offset
+	 *            index of the first edge
+	 * @param length
+	 *            number of edges
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             if finish() has been called
+	 */
+	public void drawEdges(double[] x1, double[] y1, double[] x2, double[] y2,
+			int offset, int length, String color, String pen, String dash)
+			throws IOException {
+		IpeDraw.checkPoints(x1.length, offset, y1.length, offset, 1, length);
+		IpeDraw.checkPoints(x2.length, offset, y2.length, offset, 1, length);
+		add(length);
+		if (objectWriter != null)
+			for (int i = offset; i < offset + length; i++)
+				objectWriter.drawEdge(x1[i], y1[i], x2[i], y2[i], color, pen,
+						dash);
+		binAll(null, x1, null, y1, null, x2, null, y2, offset, length);
+	}
+
+	/**
+	 * Writes the elements or the density map into the target. Afterwards,
+	 * nothing can be drawn.
+	 *
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		if (finished)
+			throw new IllegalStateException("already finished");
+		finished = true;
+		if (objectWriter != null) {
+			objectWriter.close();
+			target.writeFragment(objects);
+			objects = null;
+			return;
+		}
+		if (layer != null)
+			target.setLayer(layer);
+		int max = 0;
+		for (int c : counts)
+			max = Math.max(max, c);
+		if (bitmap)
+			writeBitmap(max);
+		else
+			writePolygons(max);
+	}
+
+	private void add(long n) {
+		if (finished)
+			throw new IllegalStateException("already finished");
+		elements += n;
+		if (elements > threshold && objectWriter != null)
+			dropObjects();
+	}
+
+	/**
+	 * Stops keeping the elements as objects.
+	 */
+	private void dropObjects() {
+		objectWriter = null;
+		objects = null;
+	}
+
+	/**
+	 * Returns the density class of a bin that is not empty.
+	 */
+	private int densityClass(int count, int max) {
+		int n = colors.length;
+		int c;
+		if (max <= 1)
+			c = n - 1;
+		else if (logScale)
+			c = (int) (n * Math.log(count) / Math.log(max));
+		else
+			c = (int) ((long) n * (count - 1) / (max - 1));
+		return Math.min(n - 1, c);
+	}
+
+	private void writeBitmap(int max) throws IOException {
+		int[] rgb = new int[columns * rows];
+		for (int r = 0; r < rows; r++) {
+			// the first row of the bitmap is the top one
+			int line = (rows - 1 - r) * columns;
+			for (int c = 0; c < columns; c++) {
+				int count = counts[r * columns + c];
+				rgb[line + c] = count == 0 ? 0xffffff
+						: colors[densityClass(count, max)];
+			}
+		}
+		target.drawBitmap(columns, rows, rgb, xMin, yMin, xMin + columns
+				* binSize, yMin + rows * binSize);
+	}
+
+	private void writePolygons(int max) throws IOException {
+		int corners = shape == SQUARE ? 4 : 6;
+		double[] xy = new double[2 * corners * POLYGONS_PER_PATH];
+		IpeNumberFormat f = target.getNumberFormat();
+		for (int k = 0; k < colors.length; k++) {
+			StringBuilder fill = new StringBuilder();
+			for (int shift = 16; shift >= 0; shift -= 8) {
+				int v = (colors[k] >> shift) & 0xff;
+				f.append(fill, Math.round(v / 0.255) / 1000.0);
+				if (shift > 0)
+					fill.append(' ');
+			}
+			int n = 0;
+			for (int b = 0; b < counts.length; b++) {
+				if (counts[b] == 0 || densityClass(counts[b], max) != k)
+					continue;
+				corners(b, xy, 2 * corners * n);
+				if (++n == POLYGONS_PER_PATH) {
+					target.fillPolygons(xy, n, corners, fill.toString());
+					n = 0;
+				}
+			}
+			if (n > 0)
+				target.fillPolygons(xy, n, corners, fill.toString());
+		}
+	}
+
+	/**
+	 * Puts the corners of a bin into xy, counterclockwise.
+	 */
+	private void corners(int bin, double[] xy, int offset) {
+		int r = bin / columns, c = bin % columns;
+		if (shape == SQUARE) {
+			double x = xMin + c * binSize, y = yMin + r * binSize;
+			xy[offset] = x;
+			xy[offset + 1] = y;
+			xy[offset + 2] = x + binSize;
+			xy[offset + 3] = y;
+			xy[offset + 4] = x + binSize;
+			xy[offset + 5] = y + binSize;
+			xy[offset + 6] = x;
+			xy[offset + 7] = y + binSize;
+		} else {
+			double x = xMin + (c - 1 + 0.5 * (r & 1)) * binSize;
+			double y = yMin + r * rowHeight;
+			double h = binSize / 2, radius = rowHeight * 2 / 3;
+			xy[offset] = x + h;
+			xy[offset + 1] = y - radius / 2;
+			xy[offset + 2] = x + h;
+			xy[offset + 3] = y + radius / 2;
+			xy[offset + 4] = x;
+			xy[offset + 5] = y + radius;
+			xy[offset + 6] = x - h;
+			xy[offset + 7] = y + radius / 2;
+			xy[offset + 8] = x - h;
+			xy[offset + 9] = y - radius / 2;
+			xy[offset + 10] = x;
+			xy[offset + 11] = y - radius;
+		}
+	}
+
+	/**
+	 * Returns the bin of a point, or -1 if it is outside the area.
+	 */
+	private int bin(double x, double y) {
+		if (!(x >= xMin && x <= xMax && y >= yMin && y <= yMax))
+			return -1;
+		if (shape == SQUARE) {
+			int c = Math.min(columns - 1, (int) ((x - xMin) / binSize));
+			int r = Math.min(rows - 1, (int) ((y - yMin) / binSize));
+			return r * columns + c;
+		}
+		// the nearest center: round to a row and a center in it, and check
+		// the neighboring row if the point is close to it
+		double py = (y - yMin) / rowHeight;
+		int r = (int) Math.floor(py + 0.5);
+		double px = (x - xMin) / binSize - 0.5 * (r & 1);
+		int c = (int) Math.floor(px + 0.5);
+		double py1 = py - r;
+		if (Math.abs(py1) * 3 > 1) {
+			double px1 = px - c;
+			double px2 = px1 + (px < c ? 0.5 : -0.5);
+			double py2 = py1 + (py < r ? 1 : -1);
+			if (px1 * px1 * binSize * binSize + py1 * py1 * rowHeight
+					* rowHeight > px2 * px2 * binSize * binSize + py2 * py2
+					* rowHeight * rowHeight) {
+				if (px < c)
+					c -= 1 - (r & 1);
+				else
+					c += r & 1;
+				r += py < r ? -1 : 1;
+			}
+		}
+		c++;
+		if (c < 0 || c >= columns || r < 0 || r >= rows)
+			return -1;
+		return r * columns + c;
+	}
+
+	/**
+	 * The bins that an edge passes through, reused for all edges binned by a
+	 * thread.
+	 */
+	private static final class EdgeBins {
+		int[] bins = new int[64];
+		int size = 0;
+
+		void add(int bin) {
+			if (size == bins.length)
+				bins = Arrays.copyOf(bins, 2 * size);
+			bins[size++] = bin;
+		}
+
+		/**
+		 * Counts every distinct bin once and forgets the bins.
+		 */
+		void countInto(int[] grid) {
+			if (size > 2)
+				Arrays.sort(bins, 0, size);
+			for (int i = 0; i < size; i++)
+				if (i == 0 || bins[i] != bins[i - 1])
+					grid[bins[i]]++;
+			size = 0;
+		}
+	}
+
+	/**
+	 * Counts a segment once in every bin it passes through, by sampling it in
+	 * steps of half a bin after clipping it to the area. A sample may fall
+	 * into a bin that was left before, for example through rounding when
+	 * the segment runs along the border of bins, so the bins are collected
+	 * and counted when they are distinct.
+	 *
+	 * @return false if the segment is outside the area
+	 */
+	private boolean binSegment(double x1, double y1, double x2, double y2,
+			int[] grid, EdgeBins edge) {
+		double dx = x2 - x1, dy = y2 - y1;
+		double t0 = 0, t1 = 1;
+		// Liang-Barsky clipping
+		double[] p = { -dx, dx, -dy, dy };
+		double[] q = { x1 - xMin, xMax - x1, y1 - yMin, yMax - y1 };
+		for (int i = 0; i < 4; i++) {
+			if (p[i] == 0) {
+				if (q[i] < 0)
+					return false;
+			} else {
+				double t = q[i] / p[i];
+				if (p[i] < 0)
+					t0 = Math.max(t0, t);
+				else
+					t1 = Math.min(t1, t);
+			}
+		}
+		if (!(t0 <= t1))
+			return false;
+		double length = (t1 - t0) * Math.sqrt(dx * dx + dy * dy);
+		int steps = (int) Math.min(Integer.MAX_VALUE - 1,
+				Math.ceil(2 * length / binSize));
+		int previous = -1;
+		for (int s = 0; s <= steps; s++) {
+			double t = steps == 0 ? t0 : t0 + (t1 - t0) * s / steps;
+			int b = bin(x1 + t * dx, y1 + t * dy);
+			if (b >= 0 && b != previous) {
+				edge.add(b);
+				previous = b;
+			}
+		}
+		edge.countInto(grid);
+		return true;
+	}
+
+	/**
+	 * Bins the points or segments from, ..., to - 1 into a grid. The
+	 * coordinates are taken from the int arrays if they are not null, and
+	 * from the double arrays otherwise; without x2, the elements are points.
+	 *
+	 * @return the number of elements outside the area
+	 */
+	private long binRange(int[] x1i, double[] x1d, int[] y1i, double[] y1d,
+			int[] x2i, double[] x2d, int[] y2i, double[] y2d, int from,
+			int to, int[] grid) {
+		long out = 0;
+		boolean segments = x2i != null || x2d != null;
+		EdgeBins edge = segments ? new EdgeBins() : null;
+		for (int i = from; i < to; i++) {
+			double x = x1i != null ? x1i[i] : x1d[i];
+			double y = y1i != null ? y1i[i] : y1d[i];
+			if (segments) {
+				if (!binSegment(x, y, x2i != null ? x2i[i] : x2d[i],
+						y2i != null ? y2i[i] : y2d[i], grid, edge))
+					out++;
+			} else {
+				int b = bin(x, y);
+				if (b >= 0)
+					grid[b]++;
+				else
+					out++;
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Bins a batch, in parallel if it is large.
+	 */
+	private void binAll(final int[] x1i, final double[] x1d, final int[] y1i,
+			final double[] y1d, final int[] x2i, final double[] x2d,
+			final int[] y2i, final double[] y2d, int offset, int length)
+			throws IOException {
+		int tasks = Math.min(Runtime.getRuntime().availableProcessors(),
+				length / Math.max(PARALLEL_CHUNK, counts.length));
+		tasks = Math.min(tasks, MAX_TASK_BINS / counts.length);
+		if (tasks <= 1) {
+			outside += binRange(x1i, x1d, y1i, y1d, x2i, x2d, y2i, y2d, offset,
+					offset + length, counts);
+			return;
+		}
+		final long[] out = new long[tasks];
+		List<Future<int[]>> futures = new ArrayList<Future<int[]>>();
+		try {
+			for (int t = 0; t < tasks; t++) {
+				final int task = t;
+				final int from = offset + (int) ((long) length * t / tasks);
+				final int to = offset + (int) ((long) length * (t + 1) / tasks);
+				futures.add(executor.submit(new Callable<int[]>() {
+					public int[] call() {
+						int[] grid = new int[counts.length];
+						out[task] = binRange(x1i, x1d, y1i, y1d, x2i, x2d, y2i,
+								y2d, from, to, grid);
+						return grid;
+					}
+				}));
+			}
+			for (Future<int[]> f : futures) {
+				int[] grid = await(f);
+				for (int b = 0; b < grid.length; b++)
+					counts[b] += grid[b];
+			}
+		} finally {
+			for (Future<int[]> f : futures)
+				f.cancel(true);
+		}
+		for (long o : out)
+			outside += o;
+	}
+
+	private static int[] await(Future<int[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("binning interrupted");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+}
@@ -1,7 +1,5 @@
 package de.uniwue.smooth.draw;
 
-import java.text.DecimalFormat;
-
 /**
  * This class helps creating ipe-files in Java by providing functions for most
  * common objects. Currently supports: Mark, Rectangle, Path, Edge, Text
@@ -11,11 +9,46 @@ import java.text.DecimalFormat;
  * object in Ipe. Every file has to start with getIpePreamble(), followed by
  * getIpeConf(), and has to end with getIpeEnd().
  * 
+ * All objects can be given with int or double coordinates. Double coordinates
+ * are written with the IpeNumberFormat set by setNumberFormat().
+ * 
  * @author Martin Fink
  * @author Philipp Kindermann
  */
 public class IpeDraw {
 
+	/**
+	 * Format of the radius of circles and arcs with integer coordinates.
+	 */
+	static final IpeNumberFormat RADIUS_FORMAT = IpeNumberFormat
+			.withPrecision(3);
+
+	private static volatile IpeNumberFormat numberFormat = IpeNumberFormat.SHORTEST;
+
+	/**
+	 * Sets the format of double coordinates for all threads. The default
+	 * writes the shortest decimal number that reads back as the same double;
+	 * a fixed precision quantizes coordinates and keeps files smaller.
+	 * 
+	 * @param format
+	 *            the number format, for example
+	 *            IpeNumberFormat.withPrecision(2)
+	 */
+	public static void setNumberFormat(IpeNumberFormat format) {
+		if (format == null)
+			throw new NullPointerException("format");
+		numberFormat = format;
+	}
+
+	/**
+	 * Returns the format of double coordinates.
+	 * 
+	 * @return
+	 */
+	public static IpeNumberFormat getNumberFormat() {
+		return numberFormat;
+	}
+
 	/**
 	 * Draws a mark.
 	 * 
@@ -81,6 +114,43 @@ public class IpeDraw {
 		return drawIpeMark(x, y, "disk", "black", "normal");
 	}
 
+	/**
+	 * Draws a mark at a point with double coordinates. Coordinates are
+	 * written with the number format set by setNumberFormat().
+	 * 
+	 * @param x
+	 *            x-coordinate
+	 * @param y
+	 *            y-coordinate
+	 * @param shape
+	 * 			  shape: disk, fdisk, circle, box, square, fsquare, cross
+	 * @param color
+	 *            color
+	 * @param size
+	 *            size: tiny, small, normal, large
+	 * @return
+	 */
+	public static String drawIpeMark(double x, double y, String shape,
+			String color, String size) {
+		StringBuilder sb = new StringBuilder(96);
+		appendMark(sb, numberFormat, x, y, shape, color, size);
+		return sb.toString();
+	}
+
+	/**
+	 * Draws a mark of shape "disk" with color "black" and size "normal" at a
+	 * point with double coordinates.
+	 * 
+	 * @param x
+	 *            x-coordinate
+	 * @param y
+	 *            y-coordinate
+	 * @return
+	 */
+	public static String drawIpeMark(double x, double y) {
+		return drawIpeMark(x, y, "disk", "black", "normal");
+	}
+
 	/**
 	 * Draws a rectangle.
 	 * 
@@ -167,6 +237,52 @@ public class IpeDraw {
 		return drawIpeBox(x1, y1, x2, y2, "black", "normal", "normal");
 	}
 
+	/**
+	 * Draws a rectangle with double coordinates. Coordinates are written with
+	 * the number format set by setNumberFormat().
+	 * 
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpeBox(double x1, double y1, double x2,
+			double y2, String color, String pen, String dash) {
+		StringBuilder sb = new StringBuilder(160);
+		appendBox(sb, numberFormat, x1, y1, x2, y2, color, pen, dash);
+		return sb.toString();
+	}
+
+	/**
+	 * Draws an undashed rectangle with double coordinates, pen width "normal"
+	 * and color "black".
+	 * 
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @return
+	 */
+	public static String drawIpeBox(double x1, double y1, double x2, double y2) {
+		return drawIpeBox(x1, y1, x2, y2, "black", "normal", "normal");
+	}
+
 	/**
 	 * Draws a path between points.
 	 * 
@@ -185,13 +301,59 @@ public class IpeDraw {
 	 */
 	public static String drawIpePath(int[] x, int[] y, String color,
 			String pen, String dash) {
-		String s = "<path stroke=\"" + color + "\" pen=\"" + pen + "\" dash=\""
-				+ dash + "\">\n " + x[0] + " " + y[0] + " m\n ";
-		for (int i = 1; i < x.length; i++) {
-			s += x[i] + " " + y[i] + " l\n ";
-		}
-		s += "</path>\n";
-		return s;
+		return drawIpePath(x, y, 0, x.length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a path between the points offset, ..., offset + length - 1 of the
+	 * given arrays.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpePath(int[] x, int[] y, int offset, int length,
+			String color, String pen, String dash) {
+		return drawPoints(PATH, x, offset, y, offset, 1, length, color, pen,
+				dash);
+	}
+
+	/**
+	 * Draws a path between points given as packed coordinates x0, y0, x1, y1,
+	 * ... The path uses the points offset, ..., offset + length - 1.
+	 *
+	 * @param xy
+	 *            packed coordinates of the points
+	 * @param offset
+	 *            index of the first point (not of the first coordinate)
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpePath(int[] xy, int offset, int length,
+			String color, String pen, String dash) {
+		return drawPoints(PATH, xy, 2 * offset, xy, 2 * offset + 1, 2, length,
+				color, pen, dash);
 	}
 
 	/**
@@ -240,6 +402,69 @@ public class IpeDraw {
 		return drawIpePath(x, y, "black", "normal", "normal");
 	}
 
+	/**
+	 * Draws a path with double coordinates. Coordinates are written with
+	 * the number format set by setNumberFormat().
+	 * 
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpePath(double[] x, double[] y, String color,
+			String pen, String dash) {
+		return drawIpePath(x, y, 0, x.length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a path with the points offset, ..., offset + length - 1 of
+	 * the given arrays of double coordinates.
+	 * 
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpePath(double[] x, double[] y, int offset,
+			int length, String color, String pen, String dash) {
+		return drawPoints(PATH, x, offset, y, offset, 1, length, color, pen,
+				dash);
+	}
+
+	/**
+	 * Draws an undashed path with double coordinates, pen width "normal"
+	 * and color "black".
+	 * 
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @return
+	 */
+	public static String drawIpePath(double[] x, double[] y) {
+		return drawIpePath(x, y, "black", "normal", "normal");
+	}
+
 	/**
 	 * Draws an edge between two points.
 	 * 
@@ -262,8 +487,11 @@ public class IpeDraw {
 	 */
 	public static String drawIpeEdge(int x1, int y1, int x2, int y2,
 			String color, String pen, String dash) {
-		return drawIpePath(new int[] { x1, x2 }, new int[] { y1, y2 }, color,
-				pen, dash);
+		StringBuilder sb = new StringBuilder(96);
+		appendPathHeader(sb, color, pen, dash);
+		sb.append(x1).append(' ').append(y1).append(" m\n ").append(x2)
+				.append(' ').append(y2).append(" l\n </path>\n");
+		return sb.toString();
 	}
 
 	/**
@@ -285,8 +513,7 @@ public class IpeDraw {
 	 */
 	public static String drawIpeEdge(int x1, int y1, int x2, int y2,
 			String color, String pen) {
-		return drawIpePath(new int[] { x1, x2 }, new int[] { y1, y2 }, color,
-				pen);
+		return drawIpeEdge(x1, y1, x2, y2, color, pen, "normal");
 	}
 
 	/**
@@ -306,7 +533,7 @@ public class IpeDraw {
 	 */
 	public static String drawIpeEdge(int x1, int y1, int x2, int y2,
 			String color) {
-		return drawIpePath(new int[] { x1, x2 }, new int[] { y1, y2 }, color);
+		return drawIpeEdge(x1, y1, x2, y2, color, "normal", "normal");
 	}
 
 	/**
@@ -324,7 +551,53 @@ public class IpeDraw {
 	 * @return
 	 */
 	public static String drawIpeEdge(int x1, int y1, int x2, int y2) {
-		return drawIpePath(new int[] { x1, x2 }, new int[] { y1, y2 });
+		return drawIpeEdge(x1, y1, x2, y2, "black", "normal", "normal");
+	}
+
+	/**
+	 * Draws an edge between two points with double coordinates. Coordinates
+	 * are written with the number format set by setNumberFormat().
+	 * 
+	 * @param x1
+	 *            x-coordinate of point 1
+	 * @param y1
+	 *            y-coordinate of point 1
+	 * @param x2
+	 *            x-coordinate of point 2
+	 * @param y2
+	 *            y-coordinate of point 2
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpeEdge(double x1, double y1, double x2,
+			double y2, String color, String pen, String dash) {
+		StringBuilder sb = new StringBuilder(128);
+		appendEdge(sb, numberFormat, x1, y1, x2, y2, color, pen, dash);
+		return sb.toString();
+	}
+
+	/**
+	 * Draws an undashed edge between two points with double coordinates, pen
+	 * width "normal" and color "black".
+	 * 
+	 * @param x1
+	 *            x-coordinate of point 1
+	 * @param y1
+	 *            y-coordinate of point 1
+	 * @param x2
+	 *            x-coordinate of point 2
+	 * @param y2
+	 *            y-coordinate of point 2
+	 * @return
+	 */
+	public static String drawIpeEdge(double x1, double y1, double x2, double y2) {
+		return drawIpeEdge(x1, y1, x2, y2, "black", "normal", "normal");
 	}
 
 	/**
@@ -387,6 +660,45 @@ public class IpeDraw {
 		return writeIpeText(text, x, y, "black", "normal");
 	}
 
+	/**
+	 * Places a text label at a point with double coordinates. Coordinates are
+	 * written with the number format set by setNumberFormat().
+	 * 
+	 * @param text
+	 *            The text
+	 * @param x
+	 *            x-coordinate of the box
+	 * @param y
+	 *            y-coordinate of the box
+	 * @param color
+	 *            text-color
+	 * @param size
+	 *            text-size
+	 * @return
+	 */
+	public static String writeIpeText(String text, double x, double y,
+			String color, String size) {
+		StringBuilder sb = new StringBuilder(192 + text.length());
+		appendText(sb, numberFormat, text, x, y, color, size);
+		return sb.toString();
+	}
+
+	/**
+	 * Places a text label at a point with double coordinates with normal
+	 * text-size and text-color "black".
+	 * 
+	 * @param text
+	 *            The text
+	 * @param x
+	 *            x-coordinate of the box
+	 * @param y
+	 *            y-coordinate of the box
+	 * @return
+	 */
+	public static String writeIpeText(String text, double x, double y) {
+		return writeIpeText(text, x, y, "black", "normal");
+	}
+
 	/**
 	 * Draws a circle.
 	 * 
@@ -407,7 +719,7 @@ public class IpeDraw {
 	 */
 	public static String drawIpeCircle(int x, int y, double radius,
 			String color, String pen, String dash) {
-		String sf = new DecimalFormat("####.000").format(radius);
+		String sf = RADIUS_FORMAT.format(radius);
 		return "<path stroke=\"" + color + "\" pen=\"" + pen + "\" dash=\""
 				+ dash + "\">\n " + sf + " 0 0 " + sf + " " + x + " " + y
 				+ " e\n</path>\n";
@@ -465,6 +777,48 @@ public class IpeDraw {
 		return drawIpeCircle(x, y, radius, "black", "normal", "normal");
 	}
 
+	/**
+	 * Draws a circle with double coordinates. Coordinates and radius are
+	 * written with the number format set by setNumberFormat().
+	 * 
+	 * @param x
+	 *            x-coordinate of the center
+	 * @param y
+	 *            y-coordinate of the center
+	 * @param radius
+	 *            radius
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpeCircle(double x, double y, double radius,
+			String color, String pen, String dash) {
+		StringBuilder sb = new StringBuilder(128);
+		appendCircle(sb, numberFormat, x, y, radius, color, pen, dash);
+		return sb.toString();
+	}
+
+	/**
+	 * Draws an undashed circle with double coordinates, pen width "normal"
+	 * and color "black".
+	 * 
+	 * @param x
+	 *            x-coordinate of the center
+	 * @param y
+	 *            y-coordinate of the center
+	 * @param radius
+	 *            radius
+	 * @return
+	 */
+	public static String drawIpeCircle(double x, double y, double radius) {
+		return drawIpeCircle(x, y, radius, "black", "normal", "normal");
+	}
+
 	/**
 	 * Draws a circular arc in a mathematical positive sense.
 	 * 
@@ -494,7 +848,7 @@ public class IpeDraw {
 			String pen, String dash) {
 		double radius = Math.sqrt(Math.pow(xStart - xCenter, 2)
 				+ Math.pow(yStart - yCenter, 2));
-		String sf = new DecimalFormat("####.000").format(radius);
+		String sf = RADIUS_FORMAT.format(radius);
 		return "<path stroke=\"" + color + "\" pen=\"" + pen + "\" dash=\""
 				+ dash + "\">\n " + xStart + " " + yStart + " m\n " + sf
 				+ " 0 0 " + sf + " " + xCenter + " " + yCenter + " " + xEnd
@@ -589,6 +943,88 @@ public class IpeDraw {
 		return drawIpeSemiCircle(xStart, yStart, xEnd, yEnd, "black");
 	}
 
+	/**
+	 * Draws a circular arc in a mathematical positive sense with double
+	 * coordinates. Coordinates and radius are written with the number format
+	 * set by setNumberFormat().
+	 * 
+	 * @param xCenter
+	 *            x-coordinate of the center
+	 * @param yCenter
+	 *            y-coordinate of the center
+	 * @param xStart
+	 *            x-coordinate of the starting point on the circle
+	 * @param yStart
+	 *            y-coordinate of the starting point on the circle
+	 * @param xEnd
+	 *            x-coordinate of the end point on the circle
+	 * @param yEnd
+	 *            y-coordinate of the end point on the circle
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpeCircularArc(double xCenter, double yCenter,
+			double xStart, double yStart, double xEnd, double yEnd,
+			String color, String pen, String dash) {
+		StringBuilder sb = new StringBuilder(160);
+		appendCircularArc(sb, numberFormat, xCenter, yCenter, xStart, yStart,
+				xEnd, yEnd, color, pen, dash);
+		return sb.toString();
+	}
+
+	/**
+	 * Draws an undashed circular arc in a mathematical positive sense with
+	 * double coordinates, pen width "normal" and color "black".
+	 * 
+	 * @param xCenter
+	 *            x-coordinate of the center
+	 * @param yCenter
+	 *            y-coordinate of the center
+	 * @param xStart
+	 *            x-coordinate of the starting point on the circle
+	 * @param yStart
+	 *            y-coordinate of the starting point on the circle
+	 * @param xEnd
+	 *            x-coordinate of the end point on the circle
+	 * @param yEnd
+	 *            y-coordinate of the end point on the circle
+	 * @return
+	 */
+	public static String drawIpeCircularArc(double xCenter, double yCenter,
+			double xStart, double yStart, double xEnd, double yEnd) {
+		return drawIpeCircularArc(xCenter, yCenter, xStart, yStart, xEnd, yEnd,
+				"black", "normal", "normal");
+	}
+
+	/**
+	 * Draws an undashed semicircle in a mathematical positive sense with
+	 * double coordinates and pen width "normal". The center is the midpoint
+	 * of the start and end point.
+	 * 
+	 * @param xStart
+	 *            x-coordinate of the starting point on the circle
+	 * @param yStart
+	 *            y-coordinate of the starting point on the circle
+	 * @param xEnd
+	 *            x-coordinate of the end point on the circle
+	 * @param yEnd
+	 *            y-coordinate of the end point on the circle
+	 * @param color
+	 *            color
+	 * @return
+	 */
+	public static String drawIpeSemiCircle(double xStart, double yStart,
+			double xEnd, double yEnd, String color) {
+		return drawIpeCircularArc((xStart + xEnd) / 2, (yStart + yEnd) / 2,
+				xStart, yStart, xEnd, yEnd, color, "normal", "normal");
+	}
+
 	/**
 	 * Draws a spline.
 	 * 
@@ -607,13 +1043,61 @@ public class IpeDraw {
 	 */
 	public static String drawIpeSpline(int[] x, int[] y, String color,
 			String pen, String dash) {
-		String s = "<path stroke=\"" + color + "\" pen=\"" + pen + "\" dash=\""
-				+ dash + "\">\n " + x[0] + " " + y[0] + " m";
-		for (int i = 1; i < x.length; i++) {
-			s += "\n " + x[i] + " " + y[i];
-		}
-		s += " s\n</path>\n";
-		return s;
+		return drawIpeSpline(x, y, 0, x.length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a spline through the control points offset, ..., offset + length
+	 * - 1 of the given arrays.
+	 *
+	 * @param x
+	 *            x-coordinates of the control points.
+	 * @param y
+	 *            y-coordinates of the control points.
+	 * @param offset
+	 *            index of the first control point
+	 * @param length
+	 *            number of control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpeSpline(int[] x, int[] y, int offset,
+			int length, String color, String pen, String dash) {
+		return drawPoints(SPLINE, x, offset, y, offset, 1, length, color, pen,
+				dash);
+	}
+
+	/**
+	 * Draws a spline through control points given as packed coordinates x0,
+	 * y0, x1, y1, ... The spline uses the control points offset, ..., offset +
+	 * length - 1.
+	 *
+	 * @param xy
+	 *            packed coordinates of the control points
+	 * @param offset
+	 *            index of the first control point (not of the first
+	 *            coordinate)
+	 * @param length
+	 *            number of control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpeSpline(int[] xy, int offset, int length,
+			String color, String pen, String dash) {
+		return drawPoints(SPLINE, xy, 2 * offset, xy, 2 * offset + 1, 2,
+				length, color, pen, dash);
 	}
 
 	/**
@@ -662,6 +1146,69 @@ public class IpeDraw {
 		return IpeDraw.drawIpeSpline(x, y, "black", "normal", "normal");
 	}
 
+	/**
+	 * Draws a spline with double coordinates. Coordinates are written with
+	 * the number format set by setNumberFormat().
+	 * 
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpeSpline(double[] x, double[] y, String color,
+			String pen, String dash) {
+		return drawIpeSpline(x, y, 0, x.length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a spline with the control points offset, ..., offset + length - 1 of
+	 * the given arrays of double coordinates.
+	 * 
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpeSpline(double[] x, double[] y, int offset,
+			int length, String color, String pen, String dash) {
+		return drawPoints(SPLINE, x, offset, y, offset, 1, length, color, pen,
+				dash);
+	}
+
+	/**
+	 * Draws an undashed spline with double coordinates, pen width "normal"
+	 * and color "black".
+	 * 
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @return
+	 */
+	public static String drawIpeSpline(double[] x, double[] y) {
+		return drawIpeSpline(x, y, "black", "normal", "normal");
+	}
+
 	/**
 	 * Draws a splinegon.
 	 * 
@@ -680,13 +1227,337 @@ public class IpeDraw {
 	 */
 	public static String drawIpeSplinegon(int[] x, int[] y, String color,
 			String pen, String dash) {
-		String s = "<path stroke=\"" + color + "\" pen=\"" + pen + "\" dash=\""
-				+ dash + "\">\n " + x[0] + " " + y[0];
-		for (int i = 1; i < x.length; i++) {
-			s += "\n " + x[i] + " " + y[i];
+		return drawIpeSplinegon(x, y, 0, x.length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a splinegon with the control points offset, ..., offset + length -
+	 * 1 of the given arrays.
+	 *
+	 * @param x
+	 *            x-coordinates of the control points.
+	 * @param y
+	 *            y-coordinates of the control points.
+	 * @param offset
+	 *            index of the first control point
+	 * @param length
+	 *            number of control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpeSplinegon(int[] x, int[] y, int offset,
+			int length, String color, String pen, String dash) {
+		return drawPoints(SPLINEGON, x, offset, y, offset, 1, length, color,
+				pen, dash);
+	}
+
+	/**
+	 * Draws a splinegon with control points given as packed coordinates x0,
+	 * y0, x1, y1, ... The splinegon uses the control points offset, ...,
+	 * offset + length - 1.
+	 *
+	 * @param xy
+	 *            packed coordinates of the control points
+	 * @param offset
+	 *            index of the first control point (not of the first
+	 *            coordinate)
+	 * @param length
+	 *            number of control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpeSplinegon(int[] xy, int offset, int length,
+			String color, String pen, String dash) {
+		return drawPoints(SPLINEGON, xy, 2 * offset, xy, 2 * offset + 1, 2,
+				length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a splinegon with double coordinates. Coordinates are written with
+	 * the number format set by setNumberFormat().
+	 * 
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpeSplinegon(double[] x, double[] y, String color,
+			String pen, String dash) {
+		return drawIpeSplinegon(x, y, 0, x.length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a splinegon with the control points offset, ..., offset + length - 1 of
+	 * the given arrays of double coordinates.
+	 * 
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return
+	 */
+	public static String drawIpeSplinegon(double[] x, double[] y, int offset,
+			int length, String color, String pen, String dash) {
+		return drawPoints(SPLINEGON, x, offset, y, offset, 1, length, color, pen,
+				dash);
+	}
+
+	/**
+	 * Draws an undashed splinegon with double coordinates, pen width "normal"
+	 * and color "black".
+	 * 
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @return
+	 */
+	public static String drawIpeSplinegon(double[] x, double[] y) {
+		return drawIpeSplinegon(x, y, "black", "normal", "normal");
+	}
+
+	static final int PATH = 0;
+	static final int SPLINE = 1;
+	static final int SPLINEGON = 2;
+
+	/**
+	 * Creates a path, spline or splinegon. Point i has the coordinates
+	 * x[xOff + i * stride] and y[yOff + i * stride].
+	 */
+	private static String drawPoints(int kind, int[] x, int xOff, int[] y,
+			int yOff, int stride, int length, String color, String pen,
+			String dash) {
+		checkPoints(x, xOff, y, yOff, stride, length);
+		StringBuilder sb = new StringBuilder(64 + 16 * length);
+		appendPathHeader(sb, color, pen, dash);
+		appendPoints(sb, kind, x, xOff, y, yOff, stride, 0, length);
+		appendPathEnd(sb, kind);
+		return sb.toString();
+	}
+
+	/**
+	 * Creates a path, spline or splinegon with double coordinates. Point i has
+	 * the coordinates x[xOff + i * stride] and y[yOff + i * stride].
+	 */
+	private static String drawPoints(int kind, double[] x, int xOff,
+			double[] y, int yOff, int stride, int length, String color,
+			String pen, String dash) {
+		checkPoints(x.length, xOff, y.length, yOff, stride, length);
+		StringBuilder sb = new StringBuilder(64 + 24 * length);
+		appendPathHeader(sb, color, pen, dash);
+		appendPoints(sb, numberFormat, kind, x, xOff, y, yOff, stride, 0,
+				length);
+		appendPathEnd(sb, kind);
+		return sb.toString();
+	}
+
+	/**
+	 * Checks that the points 0, ..., length - 1 exist in the given arrays.
+	 */
+	static void checkPoints(int[] x, int xOff, int[] y, int yOff, int stride,
+			int length) {
+		checkPoints(x.length, xOff, y.length, yOff, stride, length);
+	}
+
+	/**
+	 * Checks that the points 0, ..., length - 1 exist in arrays of the given
+	 * lengths, where point i has the coordinates x[xOff + i * stride] and
+	 * y[yOff + i * stride].
+	 */
+	static void checkPoints(int xLength, int xOff, int yLength, int yOff,
+			int stride, int length) {
+		if (length < 1)
+			throw new IllegalArgumentException("at least one point required");
+		if (xOff < 0 || yOff < 0
+				|| xOff + (long) (length - 1) * stride >= xLength
+				|| yOff + (long) (length - 1) * stride >= yLength)
+			throw new IndexOutOfBoundsException("points " + length
+					+ " from offset " + Math.min(xOff, yOff)
+					+ " out of bounds");
+	}
+
+	/**
+	 * Appends the opening path tag with the given style, including the
+	 * newline and space preceding the first point.
+	 */
+	static void appendPathHeader(StringBuilder sb, String color, String pen,
+			String dash) {
+		sb.append("<path stroke=\"").append(color).append("\" pen=\"")
+				.append(pen).append("\" dash=\"").append(dash).append("\">\n ");
+	}
+
+	/**
+	 * Appends the points from, ..., to - 1 of a path, spline or splinegon.
+	 * Point i has the coordinates x[xOff + i * stride] and y[yOff + i *
+	 * stride]; point 0 is the first point of the object.
+	 */
+	static void appendPoints(StringBuilder sb, int kind, int[] x, int xOff,
+			int[] y, int yOff, int stride, int from, int to) {
+		int xi = xOff + from * stride;
+		int yi = yOff + from * stride;
+		for (int i = from; i < to; i++, xi += stride, yi += stride) {
+			if (kind == PATH) {
+				sb.append(x[xi]).append(' ').append(y[yi])
+						.append(i == 0 ? " m\n " : " l\n ");
+			} else {
+				if (i > 0)
+					sb.append("\n ");
+				sb.append(x[xi]).append(' ').append(y[yi]);
+				if (i == 0 && kind == SPLINE)
+					sb.append(" m");
+			}
 		}
-		s += " u\n</path>\n";
-		return s;
+	}
+
+	/**
+	 * Appends the points from, ..., to - 1 of a path, spline or splinegon with
+	 * double coordinates. Point i has the coordinates x[xOff + i * stride] and
+	 * y[yOff + i * stride]; point 0 is the first point of the object.
+	 */
+	static void appendPoints(StringBuilder sb, IpeNumberFormat f, int kind,
+			double[] x, int xOff, double[] y, int yOff, int stride, int from,
+			int to) {
+		int xi = xOff + from * stride;
+		int yi = yOff + from * stride;
+		for (int i = from; i < to; i++, xi += stride, yi += stride) {
+			if (kind == PATH) {
+				appendPoint(sb, f, x[xi], y[yi]).append(
+						i == 0 ? " m\n " : " l\n ");
+			} else {
+				if (i > 0)
+					sb.append("\n ");
+				appendPoint(sb, f, x[xi], y[yi]);
+				if (i == 0 && kind == SPLINE)
+					sb.append(" m");
+			}
+		}
+	}
+
+	static StringBuilder appendPoint(StringBuilder sb, IpeNumberFormat f,
+			double x, double y) {
+		f.append(sb, x).append(' ');
+		return f.append(sb, y);
+	}
+
+	static void appendMark(StringBuilder sb, IpeNumberFormat f, double x,
+			double y, String shape, String color, String size) {
+		sb.append("<use name=\"mark/").append(shape).append("(sx)\" pos=\"");
+		appendPoint(sb, f, x, y).append("\" size=\"").append(size)
+				.append("\" stroke=\"").append(color).append("\"/>\n");
+	}
+
+	static void appendBox(StringBuilder sb, IpeNumberFormat f, double x1,
+			double y1, double x2, double y2, String color, String pen,
+			String dash) {
+		appendPathHeader(sb, color, pen, dash);
+		appendBoxPoints(sb, f, x1, y1, x2, y2);
+	}
+
+	static void appendBoxPoints(StringBuilder sb, IpeNumberFormat f,
+			double x1, double y1, double x2, double y2) {
+		appendPoint(sb, f, x1, y2).append(" m\n ");
+		appendPoint(sb, f, x1, y1).append(" l\n ");
+		appendPoint(sb, f, x2, y1).append(" l\n ");
+		appendPoint(sb, f, x2, y2).append(" l\n h\n</path>\n");
+	}
+
+	static void appendEdge(StringBuilder sb, IpeNumberFormat f, double x1,
+			double y1, double x2, double y2, String color, String pen,
+			String dash) {
+		appendPathHeader(sb, color, pen, dash);
+		appendEdgePoints(sb, f, x1, y1, x2, y2);
+	}
+
+	static void appendEdgePoints(StringBuilder sb, IpeNumberFormat f,
+			double x1, double y1, double x2, double y2) {
+		appendPoint(sb, f, x1, y1).append(" m\n ");
+		appendPoint(sb, f, x2, y2).append(" l\n </path>\n");
+	}
+
+	static void appendText(StringBuilder sb, IpeNumberFormat f, String text,
+			double x, double y, String color, String size) {
+		sb.append("<text transformations=\"translations\" pos=\"");
+		appendPoint(sb, f, x, y)
+				.append("\" stroke=\"")
+				.append(color)
+				.append("\" type=\"label\" width=\"190\" height=\"10\" depth=\"0\" valign=\"baseline\" size=\"")
+				.append(size).append("\">").append(text).append("</text>");
+	}
+
+	static void appendCircle(StringBuilder sb, IpeNumberFormat f, double x,
+			double y, double radius, String color, String pen, String dash) {
+		appendPathHeader(sb, color, pen, dash);
+		appendCirclePoints(sb, f, x, y, radius);
+	}
+
+	static void appendCirclePoints(StringBuilder sb, IpeNumberFormat f,
+			double x, double y, double radius) {
+		appendPoint(sb, f, radius, 0).append(" 0 ");
+		appendPoint(sb, f, radius, x).append(' ');
+		f.append(sb, y).append(" e\n</path>\n");
+	}
+
+	static void appendCircularArc(StringBuilder sb, IpeNumberFormat f,
+			double xCenter, double yCenter, double xStart, double yStart,
+			double xEnd, double yEnd, String color, String pen, String dash) {
+		appendPathHeader(sb, color, pen, dash);
+		appendCircularArcPoints(sb, f, xCenter, yCenter, xStart, yStart, xEnd,
+				yEnd);
+	}
+
+	static void appendCircularArcPoints(StringBuilder sb, IpeNumberFormat f,
+			double xCenter, double yCenter, double xStart, double yStart,
+			double xEnd, double yEnd) {
+		double radius = Math.hypot(xStart - xCenter, yStart - yCenter);
+		appendPoint(sb, f, xStart, yStart).append(" m\n ");
+		appendPoint(sb, f, radius, 0).append(" 0 ");
+		appendPoint(sb, f, radius, xCenter).append(' ');
+		appendPoint(sb, f, yCenter, xEnd).append(' ');
+		f.append(sb, yEnd).append(" a\n</path>\n");
+	}
+
+	/**
+	 * Appends the end of a path, spline or splinegon, including the closing
+	 * path tag.
+	 */
+	static void appendPathEnd(StringBuilder sb, int kind) {
+		if (kind == PATH)
+			sb.append("</path>\n");
+		else if (kind == SPLINE)
+			sb.append(" s\n</path>\n");
+		else
+			sb.append(" u\n</path>\n");
 	}
 
 	/**
@@ -768,6 +1639,47 @@ public class IpeDraw {
 	 * @return
 	 */
 	public static String getIpeConf() {
-		return "    <ipestyle name=\"basic\">\n    <symbol name=\"arrow/arc(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"sym-stroke\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -1 -0.333 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"arrow/farc(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"white\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -1 -0.333 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"mark/circle(sx)\" transformations=\"translations\">\n    <path fill=\"sym-stroke\">\n    0.6 0 0 0.6 0 0 e\n    0.4 0 0 0.4 0 0 e\n    </path>\n    </symbol>\n    <symbol name=\"mark/disk(sx)\" transformations=\"translations\">\n    <path fill=\"sym-stroke\">\n    0.6 0 0 0.6 0 0 e\n    </path>\n    </symbol>\n    <symbol name=\"mark/fdisk(sfx)\" transformations=\"translations\">\n    <group>\n    <path fill=\"sym-fill\">\n    0.5 0 0 0.5 0 0 e\n    </path>\n    <path fill=\"sym-stroke\" fillrule=\"eofill\">\n    0.6 0 0 0.6 0 0 e\n    0.4 0 0 0.4 0 0 e\n    </path>\n    </group>\n    </symbol>\n    <symbol name=\"mark/box(sx)\" transformations=\"translations\">\n    <path fill=\"sym-stroke\" fillrule=\"eofill\">\n    -0.6 -0.6 m\n    0.6 -0.6 l\n    0.6 0.6 l\n    -0.6 0.6 l\n    h\n    -0.4 -0.4 m\n    0.4 -0.4 l\n    0.4 0.4 l\n    -0.4 0.4 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"mark/square(sx)\" transformations=\"translations\">\n    <path fill=\"sym-stroke\">\n    -0.6 -0.6 m\n    0.6 -0.6 l\n    0.6 0.6 l\n    -0.6 0.6 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"mark/fsquare(sfx)\" transformations=\"translations\">\n    <group>\n    <path fill=\"sym-fill\">\n    -0.5 -0.5 m\n    0.5 -0.5 l\n    0.5 0.5 l\n    -0.5 0.5 l\n    h\n    </path>\n    <path fill=\"sym-stroke\" fillrule=\"eofill\">\n    -0.6 -0.6 m\n    0.6 -0.6 l\n    0.6 0.6 l\n    -0.6 0.6 l\n    h\n    -0.4 -0.4 m\n    0.4 -0.4 l\n    0.4 0.4 l\n    -0.4 0.4 l\n    h\n    </path>\n    </group>\n    </symbol>\n    <symbol name=\"mark/cross(sx)\" transformations=\"translations\">\n    <group>\n    <path fill=\"sym-stroke\">\n    -0.43 -0.57 m\n    0.57 0.43 l\n    0.43 0.57 l\n    -0.57 -0.43 l\n    h\n    </path>\n    <path fill=\"sym-stroke\">\n    -0.43 0.57 m\n    0.57 -0.43 l\n    0.43 -0.57 l\n    -0.57 0.43 l\n    h\n    </path>\n    </group>\n    </symbol>\n    <symbol name=\"arrow/fnormal(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"white\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -1 -0.333 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"arrow/pointed(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"sym-stroke\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -0.8 0 l\n    -1 -0.333 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"arrow/fpointed(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"white\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -0.8 0 l\n    -1 -0.333 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"arrow/linear(spx)\">\n    <path stroke=\"sym-stroke\" pen=\"sym-pen\">\n    -1 0.333 m\n    0 0 l\n    -1 -0.333 l\n    </path>\n    </symbol>\n    <symbol name=\"arrow/fdouble(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"white\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -1 -0.333 l\n    h\n    -1 0 m\n    -2 0.333 l\n    -2 -0.333 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"arrow/double(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"sym-stroke\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -1 -0.333 l\n    h\n    -1 0 m\n    -2 0.333 l\n    -2 -0.333 l\n    h\n    </path>\n    </symbol>\n    <pen name=\"heavier\" value=\"0.8\"/>\n    <pen name=\"fat\" value=\"1.2\"/>\n    <pen name=\"ultrafat\" value=\"2\"/>\n    <symbolsize name=\"large\" value=\"5\"/>\n    <symbolsize name=\"small\" value=\"2\"/>\n    <symbolsize name=\"tiny\" value=\"1.1\"/>\n    <arrowsize name=\"large\" value=\"10\"/>\n    <arrowsize name=\"small\" value=\"5\"/>\n    <arrowsize name=\"tiny\" value=\"3\"/>\n    <color name=\"red\" value=\"1 0 0\"/>\n    <color name=\"green\" value=\"0 1 0\"/>\n    <color name=\"blue\" value=\"0 0 1\"/>\n    <color name=\"yellow\" value=\"1 1 0\"/>\n    <color name=\"orange\" value=\"1 0.647 0\"/>\n    <color name=\"gold\" value=\"1 0.843 0\"/>\n    <color name=\"purple\" value=\"0.627 0.125 0.941\"/>\n    <color name=\"gray\" value=\"0.745\"/>\n    <color name=\"brown\" value=\"0.647 0.165 0.165\"/>\n    <color name=\"navy\" value=\"0 0 0.502\"/>\n    <color name=\"pink\" value=\"1 0.753 0.796\"/>\n    <color name=\"seagreen\" value=\"0.18 0.545 0.341\"/>\n    <color name=\"turquoise\" value=\"0.251 0.878 0.816\"/>\n    <color name=\"violet\" value=\"0.933 0.51 0.933\"/>\n    <color name=\"darkblue\" value=\"0 0 0.545\"/>\n    <color name=\"darkcyan\" value=\"0 0.545 0.545\"/>\n    <color name=\"darkgray\" value=\"0.663\"/>\n    <color name=\"darkgreen\" value=\"0 0.392 0\"/>\n    <color name=\"darkmagenta\" value=\"0.545 0 0.545\"/>\n    <color name=\"darkorange\" value=\"1 0.549 0\"/>\n    <color name=\"darkred\" value=\"0.545 0 0\"/>\n    <color name=\"lightblue\" value=\"0.678 0.847 0.902\"/>\n    <color name=\"lightcyan\" value=\"0.878 1 1\"/>\n    <color name=\"lightgray\" value=\"0.827\"/>\n    <color name=\"lightgreen\" value=\"0.565 0.933 0.565\"/>\n    <color name=\"lightyellow\" value=\"1 1 0.878\"/>\n    <dashstyle name=\"dashed\" value=\"[4] 0\"/>\n    <dashstyle name=\"dotted\" value=\"[1 3] 0\"/>\n    <dashstyle name=\"dash dotted\" value=\"[4 2 1 2] 0\"/>\n    <dashstyle name=\"dash dot dotted\" value=\"[4 2 1 2 1 2] 0\"/>\n    <textsize name=\"large\" value=\"\\large\"/>\n    <textsize name=\"Large\" value=\"\\Large\"/>\n    <textsize name=\"LARGE\" value=\"\\LARGE\"/>\n    <textsize name=\"huge\" value=\"\\huge\"/>\n    <textsize name=\"Huge\" value=\"\\Huge\"/>\n    <textsize name=\"small\" value=\"\\small\"/>\n    <textsize name=\"footnote\" value=\"\\footnotesize\"/>\n    <textsize name=\"tiny\" value=\"\\tiny\"/>\n    <textstyle name=\"center\" begin=\"\\begin{center}\" end=\"\\end{center}\"/>\n    <textstyle name=\"itemize\" begin=\"\\begin{itemize}\" end=\"\\end{itemize}\"/>\n    <textstyle name=\"item\" begin=\"\\begin{itemize}\\item{}\" end=\"\\end{itemize}\"/>\n    <gridsize name=\"4 pts\" value=\"4\"/>\n    <gridsize name=\"8 pts (~3 mm)\" value=\"8\"/>\n    <gridsize name=\"16 pts (~6 mm)\" value=\"16\"/>\n    <gridsize name=\"32 pts (~12 mm)\" value=\"32\"/>\n    <gridsize name=\"10 pts (~3.5 mm)\" value=\"10\"/>\n    <gridsize name=\"20 pts (~7 mm)\" value=\"20\"/>\n    <gridsize name=\"14 pts (~5 mm)\" value=\"14\"/>\n    <gridsize name=\"28 pts (~10 mm)\" value=\"28\"/>\n    <gridsize name=\"56 pts (~20 mm)\" value=\"56\"/>\n    <anglesize name=\"90 deg\" value=\"90\"/>\n    <anglesize name=\"60 deg\" value=\"60\"/>\n    <anglesize name=\"45 deg\" value=\"45\"/>\n    <anglesize name=\"30 deg\" value=\"30\"/>\n    <anglesize name=\"22.5 deg\" value=\"22.5\"/>\n    <tiling name=\"falling\" angle=\"-60\" step=\"4\" width=\"1\"/>\n    <tiling name=\"rising\" angle=\"30\" step=\"4\" width=\"1\"/>\n    <layout paper=\"1000 1000\" origin=\"0 0\" frame=\"1000 1000\" skip=\"32\" crop=\"yes\"/>\n    </ipestyle>\n    <page>\n    <layer name=\"alpha\"/>\n    <view layers=\"alpha\" active=\"alpha\"/>\n";
+		return getIpeStyle() + getIpeFirstPage();
+	}
+
+	/**
+	 * The opening of the first page in getIpeConf().
+	 * 
+	 * @return
+	 */
+	static String getIpeFirstPage() {
+		return "    <page>\n    <layer name=\"alpha\"/>\n    <view layers=\"alpha\" active=\"alpha\"/>\n";
+	}
+
+	/**
+	 * The style sheet of getIpeConf(), without the opening of the first page.
+	 * 
+	 * @return
+	 */
+	static String getIpeStyle() {
+		return IPE_STYLE;
 	}
+
+	/**
+	 * The style sheet of getIpeConf() with the colors, pens and dash styles
+	 * of the given palette.
+	 */
+	static String getIpeStyle(IpePalette palette) {
+		StringBuilder sb = new StringBuilder(16384);
+		sb.append(STYLE_SYMBOLS);
+		palette.appendPens(sb);
+		sb.append(STYLE_SIZES);
+		palette.appendColors(sb);
+		palette.appendDashes(sb);
+		sb.append(STYLE_TEXT_AND_LAYOUT);
+		return sb.toString();
+	}
+
+	private static final String STYLE_SYMBOLS = "    <ipestyle name=\"basic\">\n    <symbol name=\"arrow/arc(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"sym-stroke\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -1 -0.333 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"arrow/farc(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"white\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -1 -0.333 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"mark/circle(sx)\" transformations=\"translations\">\n    <path fill=\"sym-stroke\">\n    0.6 0 0 0.6 0 0 e\n    0.4 0 0 0.4 0 0 e\n    </path>\n    </symbol>\n    <symbol name=\"mark/disk(sx)\" transformations=\"translations\">\n    <path fill=\"sym-stroke\">\n    0.6 0 0 0.6 0 0 e\n    </path>\n    </symbol>\n    <symbol name=\"mark/fdisk(sfx)\" transformations=\"translations\">\n    <group>\n    <path fill=\"sym-fill\">\n    0.5 0 0 0.5 0 0 e\n    </path>\n    <path fill=\"sym-stroke\" fillrule=\"eofill\">\n    0.6 0 0 0.6 0 0 e\n    0.4 0 0 0.4 0 0 e\n    </path>\n    </group>\n    </symbol>\n    <symbol name=\"mark/box(sx)\" transformations=\"translations\">\n    <path fill=\"sym-stroke\" fillrule=\"eofill\">\n    -0.6 -0.6 m\n    0.6 -0.6 l\n    0.6 0.6 l\n    -0.6 0.6 l\n    h\n    -0.4 -0.4 m\n    0.4 -0.4 l\n    0.4 0.4 l\n    -0.4 0.4 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"mark/square(sx)\" transformations=\"translations\">\n    <path fill=\"sym-stroke\">\n    -0.6 -0.6 m\n    0.6 -0.6 l\n    0.6 0.6 l\n    -0.6 0.6 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"mark/fsquare(sfx)\" transformations=\"translations\">\n    <group>\n    <path fill=\"sym-fill\">\n    -0.5 -0.5 m\n    0.5 -0.5 l\n    0.5 0.5 l\n    -0.5 0.5 l\n    h\n    </path>\n    <path fill=\"sym-stroke\" fillrule=\"eofill\">\n    -0.6 -0.6 m\n    0.6 -0.6 l\n    0.6 0.6 l\n    -0.6 0.6 l\n    h\n    -0.4 -0.4 m\n    0.4 -0.4 l\n    0.4 0.4 l\n    -0.4 0.4 l\n    h\n    </path>\n    </group>\n    </symbol>\n    <symbol name=\"mark/cross(sx)\" transformations=\"translations\">\n    <group>\n    <path fill=\"sym-stroke\">\n    -0.43 -0.57 m\n    0.57 0.43 l\n    0.43 0.57 l\n    -0.57 -0.43 l\n    h\n    </path>\n    <path fill=\"sym-stroke\">\n    -0.43 0.57 m\n    0.57 -0.43 l\n    0.43 -0.57 l\n    -0.57 0.43 l\n    h\n    </path>\n    </group>\n    </symbol>\n    <symbol name=\"arrow/fnormal(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"white\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -1 -0.333 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"arrow/pointed(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"sym-stroke\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -0.8 0 l\n    -1 -0.333 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"arrow/fpointed(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"white\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -0.8 0 l\n    -1 -0.333 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"arrow/linear(spx)\">\n    <path stroke=\"sym-stroke\" pen=\"sym-pen\">\n    -1 0.333 m\n    0 0 l\n    -1 -0.333 l\n    </path>\n    </symbol>\n    <symbol name=\"arrow/fdouble(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"white\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -1 -0.333 l\n    h\n    -1 0 m\n    -2 0.333 l\n    -2 -0.333 l\n    h\n    </path>\n    </symbol>\n    <symbol name=\"arrow/double(spx)\">\n    <path stroke=\"sym-stroke\" fill=\"sym-stroke\" pen=\"sym-pen\">\n    0 0 m\n    -1 0.333 l\n    -1 -0.333 l\n    h\n    -1 0 m\n    -2 0.333 l\n    -2 -0.333 l\n    h\n    </path>\n    </symbol>\n";
+
+	private static final String STYLE_SIZES = "    <symbolsize name=\"large\" value=\"5\"/>\n    <symbolsize name=\"small\" value=\"2\"/>\n    <symbolsize name=\"tiny\" value=\"1.1\"/>\n    <arrowsize name=\"large\" value=\"10\"/>\n    <arrowsize name=\"small\" value=\"5\"/>\n    <arrowsize name=\"tiny\" value=\"3\"/>\n";
+
+	private static final String STYLE_TEXT_AND_LAYOUT = "    <textsize name=\"large\" value=\"\\large\"/>\n    <textsize name=\"Large\" value=\"\\Large\"/>\n    <textsize name=\"LARGE\" value=\"\\LARGE\"/>\n    <textsize name=\"huge\" value=\"\\huge\"/>\n    <textsize name=\"Huge\" value=\"\\Huge\"/>\n    <textsize name=\"small\" value=\"\\small\"/>\n    <textsize name=\"footnote\" value=\"\\footnotesize\"/>\n    <textsize name=\"tiny\" value=\"\\tiny\"/>\n    <textstyle name=\"center\" begin=\"\\begin{center}\" end=\"\\end{center}\"/>\n    <textstyle name=\"itemize\" begin=\"\\begin{itemize}\" end=\"\\end{itemize}\"/>\n    <textstyle name=\"item\" begin=\"\\begin{itemize}\\item{}\" end=\"\\end{itemize}\"/>\n    <gridsize name=\"4 pts\" value=\"4\"/>\n    <gridsize name=\"8 pts (~3 mm)\" value=\"8\"/>\n    <gridsize name=\"16 pts (~6 mm)\" value=\"16\"/>\n    <gridsize name=\"32 pts (~12 mm)\" value=\"32\"/>\n    <gridsize name=\"10 pts (~3.5 mm)\" value=\"10\"/>\n    <gridsize name=\"20 pts (~7 mm)\" value=\"20\"/>\n    <gridsize name=\"14 pts (~5 mm)\" value=\"14\"/>\n    <gridsize name=\"28 pts (~10 mm)\" value=\"28\"/>\n    <gridsize name=\"56 pts (~20 mm)\" value=\"56\"/>\n    <anglesize name=\"90 deg\" value=\"90\"/>\n    <anglesize name=\"60 deg\" value=\"60\"/>\n    <anglesize name=\"45 deg\" value=\"45\"/>\n    <anglesize name=\"30 deg\" value=\"30\"/>\n    <anglesize name=\"22.5 deg\" value=\"22.5\"/>\n    <tiling name=\"falling\" angle=\"-60\" step=\"4\" width=\"1\"/>\n    <tiling name=\"rising\" angle=\"30\" step=\"4\" width=\"1\"/>\n    <layout paper=\"1000 1000\" origin=\"0 0\" frame=\"1000 1000\" skip=\"32\" crop=\"yes\"/>\n    </ipestyle>\n";
+
+	private static final String IPE_STYLE = getIpeStyle(new IpePalette());
 }
\ No newline at end of file
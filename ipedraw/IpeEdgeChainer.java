@@ -0,0 +1,445 @@
+package de.uniwue.smooth.draw;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges edges into long paths. Instead of one path per edge, edges with the
+ * same style that share endpoints are decomposed into trails (walks that use
+ * every edge once), and every trail is written as a single path with the m
+ * and l operators of drawIpePath(). The picture stays the same, except that
+ * the edges meet in line joins, but the file gets smaller and Ipe loads it
+ * faster. Only edges with dash "normal" are chained: in a path, the dash
+ * pattern would run on across the joints instead of restarting at every
+ * edge, so dashed edges are written as separate paths.
+ *
+ * The decomposition uses the fewest possible trails: a connected set of
+ * edges with k vertices of odd degree becomes max(1, k / 2) paths. It is
+ * computed with Hierholzer's algorithm after connecting all vertices of odd
+ * degree to a virtual vertex, in time linear in the number of edges.
+ *
+ * Edges are either collected with addEdge(), where endpoints with exactly
+ * equal coordinates are identified, or given as a graph in CSR form to
+ * drawEdges().
+ *
+ * The paths are written style by style: for addEdge() in the order in which
+ * the styles were first used, for drawEdges() in the order of the table of
+ * styles. Within a style, the order follows the trails. Where edges of
+ * different styles cross, the one drawn on top may therefore differ from the
+ * order in which the edges were given.
+ */
+public class IpeEdgeChainer {
+
+	// vertices
+	private int vertexCount = 0;
+	private double[] vx = new double[16];
+	private double[] vy = new double[16];
+	private long[] keyX = new long[32];
+	private long[] keyY = new long[32];
+	private int[] keyVertex = new int[32];
+
+	// edges
+	private int edgeCount = 0;
+	private int[] ea = new int[16];
+	private int[] eb = new int[16];
+	private int[] es = new int[16];
+
+	// styles
+	private final List<String[]> styles = new ArrayList<String[]>();
+	private final Map<List<String>, Integer> styleIndex = new HashMap<List<String>, Integer>();
+
+	/**
+	 * Creates an empty chainer.
+	 */
+	public IpeEdgeChainer() {
+		Arrays.fill(keyVertex, -1);
+	}
+
+	/**
+	 * Adds an edge between two points.
+	 *
+	 * @param x1
+	 *            x-coordinate of point 1
+	 * @param y1
+	 *            y-coordinate of point 1
+	 * @param x2
+	 *            x-coordinate of point 2
+	 * @param y2
+	 *            y-coordinate of point 2
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 */
+	public void addEdge(double x1, double y1, double x2, double y2,
+			String color, String pen, String dash) {
+		int a = vertex(x1, y1);
+		int b = vertex(x2, y2);
+		if (edgeCount == ea.length) {
+			int n = 2 * edgeCount;
+			ea = Arrays.copyOf(ea, n);
+			eb = Arrays.copyOf(eb, n);
+			es = Arrays.copyOf(es, n);
+		}
+		ea[edgeCount] = a;
+		eb[edgeCount] = b;
+		es[edgeCount] = style(color, pen, dash);
+		edgeCount++;
+	}
+
+	/**
+	 * Returns the number of edges added.
+	 *
+	 * @return
+	 */
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * Writes the added edges as paths.
+	 *
+	 * @param w
+	 *            the writer
+	 * @return number of paths written
+	 * @throws IOException
+	 */
+	public int write(IpeWriter w) throws IOException {
+		return chain(w, vx, vy, vertexCount, ea, eb, es, edgeCount,
+				styles.toArray(new String[styles.size()][]));
+	}
+
+	/**
+	 * Draws the edges of a graph in CSR form as paths. The edges leaving
+	 * vertex u are (u, targets[k]) for offsets[u] &lt;= k &lt; offsets[u + 1].
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x
+	 *            x-coordinates of the vertices
+	 * @param y
+	 *            y-coordinates of the vertices
+	 * @param offsets
+	 *            CSR offsets, one more than there are vertices
+	 * @param targets
+	 *            CSR targets
+	 * @param undirected
+	 *            if true, every edge is listed in both directions, and only
+	 *            (u, v) with u &lt;= v is drawn
+	 * @param edgeStyles
+	 *            table of {color, pen, dash}
+	 * @param edgeStyle
+	 *            index into edgeStyles for every entry of targets, or null
+	 * @return number of paths written
+	 * @throws IOException
+	 */
+	public static int drawEdges(IpeWriter w, double[] x, double[] y,
+			int[] offsets, int[] targets, boolean undirected,
+			String[][] edgeStyles, int[] edgeStyle) throws IOException {
+		int n = x.length;
+		if (y.length != n || offsets.length != n + 1)
+			throw new IllegalArgumentException("array lengths do not match");
+		if (offsets[n] > targets.length)
+			throw new IllegalArgumentException("offsets exceed targets");
+		if (edgeStyle != null && edgeStyle.length < offsets[n])
+			throw new IllegalArgumentException("edgeStyle is too short");
+		if (edgeStyles.length == 0)
+			throw new IllegalArgumentException("no edge style given");
+		for (int k = 0; k < offsets[n]; k++) {
+			if (targets[k] < 0 || targets[k] >= n)
+				throw new IndexOutOfBoundsException("target " + targets[k]
+						+ " of entry " + k + " out of bounds");
+			if (edgeStyle != null
+					&& (edgeStyle[k] < 0 || edgeStyle[k] >= edgeStyles.length))
+				throw new IndexOutOfBoundsException("edge style index "
+						+ edgeStyle[k] + " of entry " + k + " out of bounds");
+		}
+		int m = 0;
+		for (int u = 0; u < n; u++)
+			for (int k = offsets[u]; k < offsets[u + 1]; k++)
+				if (!undirected || targets[k] >= u)
+					m++;
+		int[] a = new int[m];
+		int[] b = new int[m];
+		int[] s = new int[m];
+		int e = 0;
+		for (int u = 0; u < n; u++) {
+			for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+				if (undirected && targets[k] < u)
+					continue;
+				a[e] = u;
+				b[e] = targets[k];
+				s[e] = edgeStyle == null ? 0 : edgeStyle[k];
+				e++;
+			}
+		}
+		return chain(w, x, y, n, a, b, s, m, edgeStyles);
+	}
+
+	/**
+	 * Decomposes the edges (a[e], b[e]) of every style s[e] into trails and
+	 * writes them.
+	 */
+	private static int chain(IpeWriter w, double[] x, double[] y, int n,
+			int[] a, int[] b, int[] s, int m, String[][] styles)
+			throws IOException {
+		// sort the edges by style (counting sort)
+		int[] styleStart = new int[styles.length + 1];
+		for (int e = 0; e < m; e++)
+			styleStart[s[e] + 1]++;
+		for (int i = 0; i < styles.length; i++)
+			styleStart[i + 1] += styleStart[i];
+		int[] order = new int[m];
+		int[] fill = styleStart.clone();
+		for (int e = 0; e < m; e++)
+			order[fill[s[e]]++] = e;
+
+		Trails t = new Trails(n);
+		int paths = 0;
+		for (int i = 0; i < styles.length; i++) {
+			if (styleStart[i] == styleStart[i + 1])
+				continue;
+			String[] style = styles[i];
+			if (!"normal".equals(style[2])) {
+				// a chained path would restart its dash pattern only at its
+				// start, so dashed edges stay separate
+				for (int k = styleStart[i]; k < styleStart[i + 1]; k++) {
+					int e = order[k];
+					w.drawEdge(x[a[e]], y[a[e]], x[b[e]], y[b[e]], style[0],
+							style[1], style[2]);
+				}
+				paths += styleStart[i + 1] - styleStart[i];
+				continue;
+			}
+			paths += t.write(w, x, y, a, b, order, styleStart[i],
+					styleStart[i + 1], style[0], style[1], style[2]);
+		}
+		return paths;
+	}
+
+	/**
+	 * Working memory of the trail decomposition, reused for all styles.
+	 */
+	private static final class Trails {
+		/** Local id of every global vertex, or -1. */
+		final int[] local;
+		int[] global;
+		int[] degree;
+		int[] adjStart;
+		int[] adjEdge;
+		int[] ptr;
+		int[] ends;
+		boolean[] used;
+		int[] stackVertex;
+		int[] stackEdge;
+		double[] px = new double[16];
+		double[] py = new double[16];
+
+		Trails(int n) {
+			local = new int[n];
+			Arrays.fill(local, -1);
+		}
+
+		/**
+		 * Writes the edges order[from], ..., order[to - 1] as paths.
+		 */
+		int write(IpeWriter w, double[] x, double[] y, int[] a, int[] b,
+				int[] order, int from, int to, String color, String pen,
+				String dash) throws IOException {
+			int m = to - from;
+			// local vertices; the virtual vertex gets the last id
+			global = ensure(global, 2 * m + 1);
+			int nv = 0;
+			for (int i = from; i < to; i++) {
+				int e = order[i];
+				if (local[a[e]] < 0) {
+					local[a[e]] = nv;
+					global[nv++] = a[e];
+				}
+				if (local[b[e]] < 0) {
+					local[b[e]] = nv;
+					global[nv++] = b[e];
+				}
+			}
+			int virtual = nv;
+			degree = ensure(degree, nv + 1);
+			Arrays.fill(degree, 0, nv + 1, 0);
+			for (int i = from; i < to; i++) {
+				int e = order[i];
+				degree[local[a[e]]]++;
+				degree[local[b[e]]]++;
+			}
+			// edges 0..m-1 are real, edges m.. connect odd vertices to virtual
+			int edges = m;
+			for (int v = 0; v < nv; v++)
+				if ((degree[v] & 1) != 0)
+					edges++;
+			ends = ensure(ends, 2 * edges);
+			for (int i = 0; i < m; i++) {
+				int e = order[from + i];
+				ends[2 * i] = local[a[e]];
+				ends[2 * i + 1] = local[b[e]];
+			}
+			int extra = m;
+			for (int v = 0; v < nv; v++) {
+				if ((degree[v] & 1) != 0) {
+					ends[2 * extra] = v;
+					ends[2 * extra + 1] = virtual;
+					extra++;
+				}
+			}
+			// adjacency in CSR form; half-edge 2 * e + j leaves ends[2e + j]
+			adjStart = ensure(adjStart, nv + 2);
+			Arrays.fill(adjStart, 0, nv + 2, 0);
+			for (int h = 0; h < 2 * edges; h++)
+				adjStart[ends[h] + 1]++;
+			for (int v = 0; v <= nv; v++)
+				adjStart[v + 1] += adjStart[v];
+			adjEdge = ensure(adjEdge, 2 * edges);
+			ptr = ensure(ptr, nv + 1);
+			System.arraycopy(adjStart, 0, ptr, 0, nv + 1);
+			for (int h = 0; h < 2 * edges; h++)
+				adjEdge[ptr[ends[h]]++] = h;
+			System.arraycopy(adjStart, 0, ptr, 0, nv + 1);
+			if (used == null || used.length < edges)
+				used = new boolean[Math.max(edges, 16)];
+			else
+				Arrays.fill(used, 0, edges, false);
+			stackVertex = ensure(stackVertex, edges + 1);
+			stackEdge = ensure(stackEdge, edges + 1);
+
+			int paths = 0;
+			int length = 0;
+			// start at the virtual vertex so that open trails are not rotated
+			for (int start = nv; start >= 0; start--) {
+				if (ptr[start] == adjStart[start + 1])
+					continue;
+				// iterative Hierholzer; vertices leave the stack in circuit
+				// order, each with the edge it was entered by
+				int top = 0;
+				stackVertex[0] = start;
+				stackEdge[0] = -1;
+				while (top >= 0) {
+					int u = stackVertex[top];
+					int end = adjStart[u + 1];
+					while (ptr[u] < end && used[adjEdge[ptr[u]] >> 1])
+						ptr[u]++;
+					if (ptr[u] < end) {
+						int h = adjEdge[ptr[u]++];
+						used[h >> 1] = true;
+						top++;
+						stackVertex[top] = ends[h ^ 1];
+						stackEdge[top] = h >> 1;
+					} else {
+						// u is the next vertex of the circuit
+						if (u != virtual)
+							length = addPoint(length, x[global[u]],
+									y[global[u]]);
+						int e = stackEdge[top];
+						if (e < 0 || e >= m) {
+							// a virtual edge or the start ends the trail
+							if (length > 1) {
+								w.drawPath(px, py, 0, length, color, pen, dash);
+								paths++;
+							}
+							length = 0;
+						}
+						top--;
+					}
+				}
+			}
+			for (int v = 0; v < nv; v++)
+				local[global[v]] = -1;
+			return paths;
+		}
+
+		private int addPoint(int length, double x, double y) {
+			if (length == px.length) {
+				px = Arrays.copyOf(px, 2 * length);
+				py = Arrays.copyOf(py, 2 * length);
+			}
+			px[length] = x;
+			py[length] = y;
+			return length + 1;
+		}
+
+		private static int[] ensure(int[] array, int size) {
+			return array != null && array.length >= size ? array
+					: new int[Math.max(size, 16)];
+		}
+	}
+
+	private int style(String color, String pen, String dash) {
+		List<String> key = Arrays.asList(color, pen, dash);
+		Integer index = styleIndex.get(key);
+		if (index == null) {
+			index = styles.size();
+			styles.add(new String[] { color, pen, dash });
+			styleIndex.put(key, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the vertex at the given point, creating it if necessary. The
+	 * vertices are kept in an open-addressing hash table keyed by the bits of
+	 * the coordinates.
+	 */
+	private int vertex(double x, double y) {
+		long bx = Double.doubleToLongBits(x == 0 ? 0 : x);
+		long by = Double.doubleToLongBits(y == 0 ? 0 : y);
+		int mask = keyVertex.length - 1;
+		int slot = hash(bx, by) & mask;
+		while (keyVertex[slot] >= 0) {
+			if (keyX[slot] == bx && keyY[slot] == by)
+				return keyVertex[slot];
+			slot = (slot + 1) & mask;
+		}
+		if (vertexCount == vx.length) {
+			vx = Arrays.copyOf(vx, 2 * vertexCount);
+			vy = Arrays.copyOf(vy, 2 * vertexCount);
+		}
+		vx[vertexCount] = x;
+		vy[vertexCount] = y;
+		keyX[slot] = bx;
+		keyY[slot] = by;
+		keyVertex[slot] = vertexCount;
+		if (++vertexCount * 2 > keyVertex.length)
+			rehash();
+		return vertexCount - 1;
+	}
+
+	private void rehash() {
+		long[] oldX = keyX, oldY = keyY;
+		int[] oldVertex = keyVertex;
+		int n = 2 * oldVertex.length;
+		keyX = new long[n];
+		keyY = new long[n];
+		keyVertex = new int[n];
+		Arrays.fill(keyVertex, -1);
+		for (int i = 0; i < oldVertex.length; i++) {
+			if (oldVertex[i] < 0)
+				continue;
+			int slot = hash(oldX[i], oldY[i]) & (n - 1);
+			while (keyVertex[slot] >= 0)
+				slot = (slot + 1) & (n - 1);
+			keyX[slot] = oldX[i];
+			keyY[slot] = oldY[i];
+			keyVertex[slot] = oldVertex[i];
+		}
+	}
+
+	private static int hash(long bx, long by) {
+		long h = bx * 0x9E3779B97F4A7C15L + by;
+		h ^= h >>> 29;
+		h *= 0xBF58476D1CE4E5B9L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,323 @@
+package de.uniwue.smooth.draw;
+
+import java.io.IOException;
+
+/**
+ * Writes whole graphs in one pass. The graph is given by vertex coordinates
+ * and by its edges in compressed sparse row (CSR) form: the edges leaving
+ * vertex u are (u, targets[k]) for offsets[u] &lt;= k &lt; offsets[u + 1].
+ *
+ * Styles are given as tables; a vertex style is {shape, color, size} as for
+ * drawIpeMark(), an edge style is {color, pen, dash} as for drawIpeEdge().
+ * The optional style index arrays select an entry of the table for every
+ * vertex or for every edge (indexed like targets); without them, the first
+ * entry is used for all. Nothing is allocated per vertex or edge.
+ *
+ * Edges are written before the vertices, so that the marks are drawn on top.
+ * The whole input is checked before anything is written; invalid offsets,
+ * targets or style indices throw an IllegalArgumentException.
+ */
+public class IpeGraphExport {
+
+	private static final String[][] DEFAULT_VERTEX_STYLES = { { "disk",
+			"black", "normal" } };
+	private static final String[][] DEFAULT_EDGE_STYLES = { { "black",
+			"normal", "normal" } };
+
+	private IpeGraphExport() {
+	}
+
+	/**
+	 * Draws a graph with black disks and black edges.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x
+	 *            x-coordinates of the vertices
+	 * @param y
+	 *            y-coordinates of the vertices
+	 * @param offsets
+	 *            CSR offsets, one more than there are vertices
+	 * @param targets
+	 *            CSR targets
+	 * @param undirected
+	 *            if true, every edge is listed in both directions, and only
+	 *            (u, v) with u &lt;= v is drawn
+	 * @throws IOException
+	 */
+	public static void drawGraph(IpeWriter w, double[] x, double[] y,
+			int[] offsets, int[] targets, boolean undirected)
+			throws IOException {
+		drawGraph(w, x, y, offsets, targets, undirected, DEFAULT_VERTEX_STYLES,
+				null, DEFAULT_EDGE_STYLES, null);
+	}
+
+	/**
+	 * Draws a graph.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x
+	 *            x-coordinates of the vertices
+	 * @param y
+	 *            y-coordinates of the vertices
+	 * @param offsets
+	 *            CSR offsets, one more than there are vertices
+	 * @param targets
+	 *            CSR targets
+	 * @param undirected
+	 *            if true, every edge is listed in both directions, and only
+	 *            (u, v) with u &lt;= v is drawn
+	 * @param vertexStyles
+	 *            table of {shape, color, size}
+	 * @param vertexStyle
+	 *            index into vertexStyles for every vertex, or null
+	 * @param edgeStyles
+	 *            table of {color, pen, dash}
+	 * @param edgeStyle
+	 *            index into edgeStyles for every entry of targets, or null
+	 * @throws IOException
+	 */
+	public static void drawGraph(IpeWriter w, double[] x, double[] y,
+			int[] offsets, int[] targets, boolean undirected,
+			String[][] vertexStyles, int[] vertexStyle, String[][] edgeStyles,
+			int[] edgeStyle) throws IOException {
+		checkEdges(x.length, y.length, offsets, targets, edgeStyles, edgeStyle);
+		checkVertices(x.length, y.length, vertexStyles, vertexStyle);
+		writeEdges(w, x, y, offsets, targets, undirected, edgeStyles, edgeStyle);
+		writeVertices(w, x, y, vertexStyles, vertexStyle);
+	}
+
+	/**
+	 * Draws a graph with integer coordinates.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x
+	 *            x-coordinates of the vertices
+	 * @param y
+	 *            y-coordinates of the vertices
+	 * @param offsets
+	 *            CSR offsets, one more than there are vertices
+	 * @param targets
+	 *            CSR targets
+	 * @param undirected
+	 *            if true, every edge is listed in both directions, and only
+	 *            (u, v) with u &lt;= v is drawn
+	 * @param vertexStyles
+	 *            table of {shape, color, size}
+	 * @param vertexStyle
+	 *            index into vertexStyles for every vertex, or null
+	 * @param edgeStyles
+	 *            table of {color, pen, dash}
+	 * @param edgeStyle
+	 *            index into edgeStyles for every entry of targets, or null
+	 * @throws IOException
+	 */
+	public static void drawGraph(IpeWriter w, int[] x, int[] y, int[] offsets,
+			int[] targets, boolean undirected, String[][] vertexStyles,
+			int[] vertexStyle, String[][] edgeStyles, int[] edgeStyle)
+			throws IOException {
+		checkEdges(x.length, y.length, offsets, targets, edgeStyles, edgeStyle);
+		checkVertices(x.length, y.length, vertexStyles, vertexStyle);
+		writeEdges(w, x, y, offsets, targets, undirected, edgeStyles, edgeStyle);
+		writeVertices(w, x, y, vertexStyles, vertexStyle);
+	}
+
+	/**
+	 * Draws the edges of a graph.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x
+	 *            x-coordinates of the vertices
+	 * @param y
+	 *            y-coordinates of the vertices
+	 * @param offsets
+	 *            CSR offsets, one more than there are vertices
+	 * @param targets
+	 *            CSR targets
+	 * @param undirected
+	 *            if true, every edge is listed in both directions, and only
+	 *            (u, v) with u &lt;= v is drawn
+	 * @param edgeStyles
+	 *            table of {color, pen, dash}
+	 * @param edgeStyle
+	 *            index into edgeStyles for every entry of targets, or null
+	 * @throws IOException
+	 */
+	public static void drawEdges(IpeWriter w, double[] x, double[] y,
+			int[] offsets, int[] targets, boolean undirected,
+			String[][] edgeStyles, int[] edgeStyle) throws IOException {
+		checkEdges(x.length, y.length, offsets, targets, edgeStyles, edgeStyle);
+		writeEdges(w, x, y, offsets, targets, undirected, edgeStyles, edgeStyle);
+	}
+
+	/**
+	 * Draws the vertices of a graph as marks.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x
+	 *            x-coordinates of the vertices
+	 * @param y
+	 *            y-coordinates of the vertices
+	 * @param vertexStyles
+	 *            table of {shape, color, size}
+	 * @param vertexStyle
+	 *            index into vertexStyles for every vertex, or null
+	 * @throws IOException
+	 */
+	public static void drawVertices(IpeWriter w, double[] x, double[] y,
+			String[][] vertexStyles, int[] vertexStyle) throws IOException {
+		checkVertices(x.length, y.length, vertexStyles, vertexStyle);
+		writeVertices(w, x, y, vertexStyles, vertexStyle);
+	}
+
+	/**
+	 * Draws the edges of a graph with integer coordinates.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x
+	 *            x-coordinates of the vertices
+	 * @param y
+	 *            y-coordinates of the vertices
+	 * @param offsets
+	 *            CSR offsets, one more than there are vertices
+	 * @param targets
+	 *            CSR targets
+	 * @param undirected
+	 *            if true, every edge is listed in both directions, and only
+	 *            (u, v) with u &lt;= v is drawn
+	 * @param edgeStyles
+	 *            table of {color, pen, dash}
+	 * @param edgeStyle
+	 *            index into edgeStyles for every entry of targets, or null
+	 * @throws IOException
+	 */
+	public static void drawEdges(IpeWriter w, int[] x, int[] y, int[] offsets,
+			int[] targets, boolean undirected, String[][] edgeStyles,
+			int[] edgeStyle) throws IOException {
+		checkEdges(x.length, y.length, offsets, targets, edgeStyles, edgeStyle);
+		writeEdges(w, x, y, offsets, targets, undirected, edgeStyles, edgeStyle);
+	}
+
+	/**
+	 * Draws the vertices of a graph with integer coordinates as marks.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x
+	 *            x-coordinates of the vertices
+	 * @param y
+	 *            y-coordinates of the vertices
+	 * @param vertexStyles
+	 *            table of {shape, color, size}
+	 * @param vertexStyle
+	 *            index into vertexStyles for every vertex, or null
+	 * @throws IOException
+	 */
+	public static void drawVertices(IpeWriter w, int[] x, int[] y,
+			String[][] vertexStyles, int[] vertexStyle) throws IOException {
+		checkVertices(x.length, y.length, vertexStyles, vertexStyle);
+		writeVertices(w, x, y, vertexStyles, vertexStyle);
+	}
+
+	private static void writeEdges(IpeWriter w, double[] x, double[] y,
+			int[] offsets, int[] targets, boolean undirected,
+			String[][] edgeStyles, int[] edgeStyle) throws IOException {
+		for (int u = 0; u < x.length; u++) {
+			for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+				int v = targets[k];
+				if (undirected && v < u)
+					continue;
+				String[] s = edgeStyles[edgeStyle == null ? 0 : edgeStyle[k]];
+				w.drawEdge(x[u], y[u], x[v], y[v], s[0], s[1], s[2]);
+			}
+		}
+	}
+
+	private static void writeEdges(IpeWriter w, int[] x, int[] y,
+			int[] offsets, int[] targets, boolean undirected,
+			String[][] edgeStyles, int[] edgeStyle) throws IOException {
+		for (int u = 0; u < x.length; u++) {
+			for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+				int v = targets[k];
+				if (undirected && v < u)
+					continue;
+				String[] s = edgeStyles[edgeStyle == null ? 0 : edgeStyle[k]];
+				w.drawEdge(x[u], y[u], x[v], y[v], s[0], s[1], s[2]);
+			}
+		}
+	}
+
+	private static void writeVertices(IpeWriter w, double[] x, double[] y,
+			String[][] vertexStyles, int[] vertexStyle) throws IOException {
+		for (int u = 0; u < x.length; u++) {
+			String[] s = vertexStyles[vertexStyle == null ? 0 : vertexStyle[u]];
+			w.drawMark(x[u], y[u], s[0], s[1], s[2]);
+		}
+	}
+
+	private static void writeVertices(IpeWriter w, int[] x, int[] y,
+			String[][] vertexStyles, int[] vertexStyle) throws IOException {
+		for (int u = 0; u < x.length; u++) {
+			String[] s = vertexStyles[vertexStyle == null ? 0 : vertexStyle[u]];
+			w.drawMark(x[u], y[u], s[0], s[1], s[2]);
+		}
+	}
+
+	/**
+	 * Checks the edges before anything is written, so that bad input does not
+	 * leave a part of the graph in the writer.
+	 */
+	private static void checkEdges(int xLength, int yLength, int[] offsets,
+			int[] targets, String[][] edgeStyles, int[] edgeStyle) {
+		if (xLength != yLength)
+			throw new IllegalArgumentException("x and y differ in length");
+		if (offsets.length != xLength + 1)
+			throw new IllegalArgumentException(
+					"offsets needs one entry more than there are vertices");
+		if (offsets[0] < 0)
+			throw new IllegalArgumentException("offsets[0] is negative");
+		for (int u = 0; u < xLength; u++)
+			if (offsets[u + 1] < offsets[u])
+				throw new IllegalArgumentException("offsets decrease at vertex "
+						+ u);
+		if (offsets[xLength] > targets.length)
+			throw new IllegalArgumentException("offsets exceed targets");
+		if (edgeStyles.length == 0)
+			throw new IllegalArgumentException("no edge style given");
+		if (edgeStyle != null && edgeStyle.length < offsets[xLength])
+			throw new IllegalArgumentException("edgeStyle is too short");
+		for (int k = offsets[0]; k < offsets[xLength]; k++) {
+			if (targets[k] < 0 || targets[k] >= xLength)
+				throw new IllegalArgumentException("target " + targets[k]
+						+ " of entry " + k + " is not a vertex");
+			if (edgeStyle != null
+					&& (edgeStyle[k] < 0 || edgeStyle[k] >= edgeStyles.length))
+				throw new IllegalArgumentException("edge style index "
+						+ edgeStyle[k] + " of entry " + k + " out of range");
+		}
+	}
+
+	/**
+	 * Checks the vertices before anything is written.
+	 */
+	private static void checkVertices(int xLength, int yLength,
+			String[][] vertexStyles, int[] vertexStyle) {
+		if (xLength != yLength)
+			throw new IllegalArgumentException("x and y differ in length");
+		if (vertexStyles.length == 0)
+			throw new IllegalArgumentException("no vertex style given");
+		if (vertexStyle == null)
+			return;
+		if (vertexStyle.length < xLength)
+			throw new IllegalArgumentException("vertexStyle is too short");
+		for (int u = 0; u < xLength; u++)
+			if (vertexStyle[u] < 0 || vertexStyle[u] >= vertexStyles.length)
+				throw new IllegalArgumentException("vertex style index "
+						+ vertexStyle[u] + " of vertex " + u + " out of range");
+	}
+}
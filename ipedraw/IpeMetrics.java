@@ -0,0 +1,311 @@
+package de.uniwue.smooth.draw;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Counts what an IpeWriter writes, and how long formatting and writing take.
+ * A writer only collects metrics if it has been given an IpeMetrics (see
+ * IpeWriter.setMetrics()); otherwise it skips all of this.
+ *
+ * Objects are counted by kind, using the kinds of IpeScene; uses of symbols
+ * other than marks have the kind SYMBOL, and bitmaps the kind IMAGE. Objects
+ * dropped by a deduplicator are not counted. Formatting time is the time
+ * spent in the drawing methods of the writer, without the time spent handing
+ * the buffer to the sink, which is the writing time. Measuring costs two
+ * calls of System.nanoTime() per object.
+ *
+ * The writer also emits Flight Recorder events, if a recording has enabled
+ * them: "de.uniwue.smooth.draw.Flush" for every buffer handed to the sink,
+ * and "de.uniwue.smooth.draw.WriterClosed" with the totals when the writer is
+ * closed.
+ *
+ * The metrics are updated by the thread of the writer without
+ * synchronization; other threads should read a snapshot() taken by that
+ * thread, or read them after the writer is closed.
+ */
+public class IpeMetrics {
+
+	/** Kind of uses of symbols other than marks. */
+	public static final byte SYMBOL = 9;
+	/** Kind of bitmaps. */
+	public static final byte IMAGE = 10;
+
+	private final long[] objects = new long[IMAGE + 1];
+	private long points = 0;
+	private long paths = 0;
+	private long maxPoints = 0;
+	private long chars = 0;
+	private long bytes = 0;
+	private long flushes = 0;
+	private long formatNanos = 0;
+	private long writeNanos = 0;
+
+	// the object being written
+	private int kind = -1;
+	private long start;
+	private long writeNanosAtStart;
+
+	/**
+	 * Creates empty metrics.
+	 */
+	public IpeMetrics() {
+	}
+
+	private IpeMetrics(IpeMetrics m) {
+		System.arraycopy(m.objects, 0, objects, 0, objects.length);
+		points = m.points;
+		paths = m.paths;
+		maxPoints = m.maxPoints;
+		chars = m.chars;
+		bytes = m.bytes;
+		flushes = m.flushes;
+		formatNanos = m.formatNanos;
+		writeNanos = m.writeNanos;
+	}
+
+	/**
+	 * Returns a copy of the current values.
+	 *
+	 * @return
+	 */
+	public IpeMetrics snapshot() {
+		return new IpeMetrics(this);
+	}
+
+	/**
+	 * Returns the number of objects of a kind.
+	 *
+	 * @param kind
+	 *            a kind of IpeScene, SYMBOL or IMAGE
+	 * @return
+	 */
+	public long getObjectCount(byte kind) {
+		return objects[kind];
+	}
+
+	/**
+	 * Returns the number of objects of all kinds.
+	 *
+	 * @return
+	 */
+	public long getObjectCount() {
+		long n = 0;
+		for (long o : objects)
+			n += o;
+		return n;
+	}
+
+	/**
+	 * Returns the number of points of paths, splines and splinegons, before
+	 * simplification.
+	 *
+	 * @return
+	 */
+	public long getPointCount() {
+		return points;
+	}
+
+	/**
+	 * Returns the largest number of points of a path, spline or splinegon.
+	 *
+	 * @return
+	 */
+	public long getMaxPointCount() {
+		return maxPoints;
+	}
+
+	/**
+	 * Returns the average number of points of paths, splines and splinegons.
+	 *
+	 * @return
+	 */
+	public double getMeanPointCount() {
+		return paths == 0 ? 0 : (double) points / paths;
+	}
+
+	/**
+	 * Returns the number of characters handed to the sink.
+	 *
+	 * @return
+	 */
+	public long getCharCount() {
+		return chars;
+	}
+
+	/**
+	 * Returns the number of bytes written to a channel, or the number of
+	 * characters for other sinks, which is the same for ASCII output.
+	 *
+	 * @return
+	 */
+	public long getByteCount() {
+		return bytes;
+	}
+
+	/**
+	 * Returns how often the buffer was handed to the sink.
+	 *
+	 * @return
+	 */
+	public long getFlushCount() {
+		return flushes;
+	}
+
+	/**
+	 * Returns the time spent formatting objects, in nanoseconds.
+	 *
+	 * @return
+	 */
+	public long getFormatNanos() {
+		return formatNanos;
+	}
+
+	/**
+	 * Returns the time spent handing the buffer to the sink, in nanoseconds.
+	 *
+	 * @return
+	 */
+	public long getWriteNanos() {
+		return writeNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "IpeMetrics[objects=" + getObjectCount() + ", points=" + points
+				+ ", chars=" + chars + ", bytes=" + bytes + ", flushes="
+				+ flushes + ", formatMillis=" + formatNanos / 1000000
+				+ ", writeMillis=" + writeNanos / 1000000 + "]";
+	}
+
+	void beginObject(byte kind) {
+		this.kind = kind;
+		writeNanosAtStart = writeNanos;
+		start = System.nanoTime();
+	}
+
+	/**
+	 * Ends the object started by beginObject(); does nothing if there is
+	 * none, for example after an object dropped as a duplicate.
+	 */
+	void endObject() {
+		endObjects(1);
+	}
+
+	/**
+	 * Ends a batch of objects started by beginObject(), such as the marks of
+	 * IpeWriter.drawMarks().
+	 */
+	void endObjects(long count) {
+		if (kind < 0)
+			return;
+		formatNanos += System.nanoTime() - start
+				- (writeNanos - writeNanosAtStart);
+		objects[kind] += count;
+		kind = -1;
+	}
+
+	/**
+	 * Adds the objects, points and formatting time of metrics collected by
+	 * another writer, for example the writer of a page rendered concurrently.
+	 */
+	void add(IpeMetrics m) {
+		for (int i = 0; i < objects.length; i++)
+			objects[i] += m.objects[i];
+		points += m.points;
+		paths += m.paths;
+		maxPoints = Math.max(maxPoints, m.maxPoints);
+		formatNanos += m.formatNanos;
+	}
+
+	void addPoints(int n) {
+		points += n;
+		paths++;
+		if (n > maxPoints)
+			maxPoints = n;
+	}
+
+	/**
+	 * Returns a Flush event to be committed by wrote(), or null if it is not
+	 * enabled.
+	 */
+	FlushEvent beginWrite() {
+		FlushEvent e = new FlushEvent();
+		if (!e.isEnabled())
+			return null;
+		e.begin();
+		return e;
+	}
+
+	/**
+	 * Records that the buffer was handed to the sink.
+	 *
+	 * @param event
+	 *            the event returned by beginWrite()
+	 * @param n
+	 *            number of characters
+	 * @param totalBytes
+	 *            number of bytes written so far, or -1 to count characters
+	 * @param nanos
+	 *            time taken
+	 */
+	void wrote(FlushEvent event, int n, long totalBytes, long nanos) {
+		chars += n;
+		bytes = totalBytes < 0 ? bytes + n : totalBytes;
+		flushes++;
+		writeNanos += nanos;
+		if (event != null) {
+			event.characters = n;
+			event.commit();
+		}
+	}
+
+	void closed() {
+		ClosedEvent e = new ClosedEvent();
+		if (!e.isEnabled())
+			return;
+		e.objects = getObjectCount();
+		e.points = points;
+		e.characters = chars;
+		e.bytes = bytes;
+		e.formatTime = formatNanos;
+		e.writeTime = writeNanos;
+		e.commit();
+	}
+
+	@Name("de.uniwue.smooth.draw.Flush")
+	@Label("Ipe Flush")
+	@Category("Ipe")
+	@Description("Buffer of an IpeWriter handed to its sink")
+	static final class FlushEvent extends Event {
+		@Label("Characters")
+		long characters;
+	}
+
+	@Name("de.uniwue.smooth.draw.WriterClosed")
+	@Label("Ipe Writer Closed")
+	@Category("Ipe")
+	@Description("Totals of an IpeWriter with metrics")
+	static final class ClosedEvent extends Event {
+		@Label("Objects")
+		long objects;
+		@Label("Points")
+		long points;
+		@Label("Characters")
+		long characters;
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+		@Label("Format Time")
+		@Timespan
+		long formatTime;
+		@Label("Write Time")
+		@Timespan
+		long writeTime;
+	}
+}
@@ -0,0 +1,181 @@
+package de.uniwue.smooth.draw;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fast, locale-independent formatting of coordinates for Ipe files.
+ *
+ * A format either rounds numbers to a fixed number of digits after the
+ * decimal point, with halves rounded away from zero, or writes the shortest decimal number that reads back as the
+ * same double ("round-trip"). Trailing zeros are never written, so integral
+ * values are written as integers. Instances are immutable and can be shared
+ * between threads.
+ */
+public final class IpeNumberFormat {
+
+	/**
+	 * Writes the shortest decimal number that reads back as the same double.
+	 */
+	public static final IpeNumberFormat SHORTEST = new IpeNumberFormat(-1);
+
+	/**
+	 * Largest number of digits after the decimal point for a fixed precision.
+	 */
+	public static final int MAX_PRECISION = 15;
+
+	private static final long[] POW10 = new long[MAX_PRECISION + 1];
+	private static final double[] DPOW10 = new double[MAX_PRECISION + 1];
+	private static final IpeNumberFormat[] FIXED = new IpeNumberFormat[MAX_PRECISION + 1];
+
+	/**
+	 * Scaled values at least this large are not handled by the fast path,
+	 * because they cannot be represented exactly as a long in a double.
+	 */
+	private static final double FAST_LIMIT = 9.0e15;
+
+	static {
+		long p = 1;
+		for (int i = 0; i <= MAX_PRECISION; i++) {
+			POW10[i] = p;
+			DPOW10[i] = p;
+			FIXED[i] = new IpeNumberFormat(i);
+			p *= 10;
+		}
+	}
+
+	private final int precision;
+
+	private IpeNumberFormat(int precision) {
+		this.precision = precision;
+	}
+
+	/**
+	 * Returns a format that rounds to the given number of digits after the
+	 * decimal point. For example, a precision of 0 writes integers, and a
+	 * precision of 3 quantizes to multiples of 0.001.
+	 *
+	 * @param digits
+	 *            number of digits after the decimal point: 0 to MAX_PRECISION
+	 * @return
+	 */
+	public static IpeNumberFormat withPrecision(int digits) {
+		if (digits < 0 || digits > MAX_PRECISION)
+			throw new IllegalArgumentException("precision out of range: "
+					+ digits);
+		return FIXED[digits];
+	}
+
+	/**
+	 * Returns the number of digits after the decimal point, or -1 for
+	 * SHORTEST.
+	 *
+	 * @return
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Formats a number.
+	 *
+	 * @param v
+	 *            the number, which has to be finite
+	 * @return
+	 */
+	public String format(double v) {
+		return append(new StringBuilder(24), v).toString();
+	}
+
+	/**
+	 * Appends a formatted number.
+	 *
+	 * @param sb
+	 *            the target
+	 * @param v
+	 *            the number, which has to be finite
+	 * @return sb
+	 */
+	public StringBuilder append(StringBuilder sb, double v) {
+		if (Double.isNaN(v) || Double.isInfinite(v))
+			throw new IllegalArgumentException("not a finite number: " + v);
+		if (precision >= 0)
+			appendFixed(sb, v, precision);
+		else
+			appendShortest(sb, v);
+		return sb;
+	}
+
+	/**
+	 * Rounds halves away from zero in both paths, so that the result does not
+	 * depend on the magnitude of v.
+	 */
+	private static void appendFixed(StringBuilder sb, double v, int digits) {
+		double scaled = v * DPOW10[digits];
+		if (Math.abs(scaled) >= FAST_LIMIT) {
+			appendPlain(sb, new BigDecimal(v).setScale(digits,
+					RoundingMode.HALF_UP));
+			return;
+		}
+		// Math.round() rounds halves up, also for negative numbers
+		appendScaled(sb, scaled < 0 ? -Math.round(-scaled) : Math
+				.round(scaled), digits);
+	}
+
+	private static void appendShortest(StringBuilder sb, double v) {
+		// Most coordinates have few digits; try them first.
+		for (int digits = 0; digits <= MAX_PRECISION; digits++) {
+			double scaled = v * DPOW10[digits];
+			if (Math.abs(scaled) >= FAST_LIMIT)
+				break;
+			long q = Math.round(scaled);
+			if (q / DPOW10[digits] == v) {
+				appendScaled(sb, q, digits);
+				return;
+			}
+		}
+		appendPlain(sb, new BigDecimal(Double.toString(v)));
+	}
+
+	private static void appendPlain(StringBuilder sb, BigDecimal d) {
+		d = d.stripTrailingZeros();
+		if (d.signum() == 0)
+			sb.append('0');
+		else
+			sb.append(d.scale() < 0 ? d.setScale(0).toPlainString() : d
+					.toPlainString());
+	}
+
+	/**
+	 * Appends q * 10^-digits without trailing zeros.
+	 */
+	private static void appendScaled(StringBuilder sb, long q, int digits) {
+		if (q == 0) {
+			sb.append('0');
+			return;
+		}
+		while (digits > 0 && q % 10 == 0) {
+			q /= 10;
+			digits--;
+		}
+		if (q < 0) {
+			sb.append('-');
+			q = -q;
+		}
+		if (digits == 0) {
+			sb.append(q);
+			return;
+		}
+		long frac = q % POW10[digits];
+		sb.append(q / POW10[digits]).append('.');
+		for (int d = digits - 1; d > 0 && frac < POW10[d]; d--)
+			sb.append('0');
+		sb.append(frac);
+	}
+
+	@Override
+	public String toString() {
+		return precision < 0 ? "IpeNumberFormat[shortest]"
+				: "IpeNumberFormat[precision=" + precision + "]";
+	}
+}
@@ -0,0 +1,186 @@
+package de.uniwue.smooth.draw;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Writes documents with many pages by producing the pages concurrently.
+ *
+ * Every page is written into its own buffer by a task on an executor, for
+ * example a ForkJoinPool or (on Java 21) a virtual-thread executor. The
+ * finished pages are copied into the output writer in page order, between the
+ * header and getIpeEnd(). At most maxPagesInFlight pages are rendered or
+ * waiting to be written at any time, which bounds the memory needed.
+ *
+ * The pages are written with the settings of the output writer: number
+ * format, palette, simplification tolerance and mark grouping. The header is
+ * written before the pages are rendered, so the palette is frozen;
+ * writePage() may draw with its styles, but must not add new ones. If the
+ * output writer has metrics, the objects and points of every page are added
+ * to them, and the formatting time is the sum over all threads. If it has a
+ * deduplicator, every page is deduplicated by its own one with the same
+ * quantum, so duplicates are only dropped within a page; their counts are
+ * added to the deduplicator of the output writer.
+ */
+public class IpePageRenderer {
+
+	/**
+	 * The pages of a document. writePage() is called concurrently for
+	 * different pages, so it must not modify shared state. IpeScene is a page
+	 * source.
+	 */
+	public interface PageSource {
+
+		/**
+		 * Returns the number of pages.
+		 *
+		 * @return
+		 */
+		int getPageCount();
+
+		/**
+		 * Returns the names of the layers of a page.
+		 *
+		 * @param page
+		 *            index of the page
+		 * @return
+		 */
+		String[] getLayerNames(int page);
+
+		/**
+		 * Writes the objects of a page, without opening or closing the page.
+		 *
+		 * @param w
+		 *            the writer
+		 * @param page
+		 *            index of the page
+		 * @throws IOException
+		 */
+		void writePage(IpeWriter w, int page) throws IOException;
+	}
+
+	private final ExecutorService executor;
+	private final int maxPagesInFlight;
+
+	/**
+	 * Creates a renderer on the common fork-join pool with twice as many pages
+	 * in flight as there are processors.
+	 */
+	public IpePageRenderer() {
+		this(ForkJoinPool.commonPool(), 2 * Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	/**
+	 * Creates a renderer.
+	 *
+	 * @param executor
+	 *            executor that renders the pages; it is not shut down by the
+	 *            renderer
+	 * @param maxPagesInFlight
+	 *            maximal number of pages that are rendered or wait to be
+	 *            written at the same time
+	 */
+	public IpePageRenderer(ExecutorService executor, int maxPagesInFlight) {
+		if (maxPagesInFlight < 1)
+			throw new IllegalArgumentException(
+					"maxPagesInFlight must be positive: " + maxPagesInFlight);
+		this.executor = executor;
+		this.maxPagesInFlight = maxPagesInFlight;
+	}
+
+	/**
+	 * Writes all pages of the source as a document. The writer must be fresh;
+	 * it has to be closed by the caller, which writes getIpeEnd(). Nothing is
+	 * written if the source has no pages.
+	 *
+	 * @param source
+	 *            the pages
+	 * @param out
+	 *            the writer
+	 * @throws IOException
+	 */
+	public void render(final PageSource source, final IpeWriter out)
+			throws IOException {
+		final int pages = source.getPageCount();
+		if (pages == 0)
+			return;
+		out.writeHeader(source.getLayerNames(0));
+		final IpeMetrics metrics = out.getMetrics();
+		final IpeDeduplicator deduplicator = out.getDeduplicator();
+		Deque<Future<Page>> inFlight = new ArrayDeque<Future<Page>>();
+		int submitted = 0;
+		try {
+			for (int page = 0; page < pages; page++) {
+				while (submitted < pages && inFlight.size() < maxPagesInFlight) {
+					final int p = submitted++;
+					inFlight.add(executor.submit(new Callable<Page>() {
+						public Page call() throws IOException {
+							Page result = new Page();
+							IpeWriter w = out.newFragmentWriter(result.body,
+									IpeWriter.DEFAULT_BUFFER_SIZE);
+							if (metrics != null) {
+								result.metrics = new IpeMetrics();
+								w.setMetrics(result.metrics);
+							}
+							if (deduplicator != null) {
+								result.deduplicator = new IpeDeduplicator(
+										deduplicator.getQuantum());
+								w.setDeduplicator(result.deduplicator);
+							}
+							w.assumeLayer(source.getLayerNames(p)[0]);
+							source.writePage(w, p);
+							w.flush();
+							return result;
+						}
+					}));
+				}
+				Page rendered = await(inFlight.removeFirst());
+				if (page > 0)
+					out.newPage(source.getLayerNames(page));
+				out.writeFragment(rendered.body);
+				if (metrics != null)
+					metrics.add(rendered.metrics);
+				if (deduplicator != null)
+					deduplicator.addDuplicates(rendered.deduplicator);
+			}
+		} finally {
+			for (Future<Page> f : inFlight)
+				f.cancel(true);
+		}
+	}
+
+	/**
+	 * A rendered page, with the metrics and deduplicator of its writer.
+	 */
+	private static final class Page {
+		final StringBuilder body = new StringBuilder();
+		IpeMetrics metrics;
+		IpeDeduplicator deduplicator;
+	}
+
+	private static Page await(Future<Page> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("rendering interrupted");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+}
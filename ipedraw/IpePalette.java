@@ -0,0 +1,329 @@
+package de.uniwue.smooth.draw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The colors, pen widths and dash styles of a document, and the styles of
+ * paths built from them.
+ *
+ * A new palette contains the named colors, pens and dash styles of
+ * getIpeConf(). Arbitrary RGB colors, pen widths and dash patterns can be
+ * added; each distinct value gets a name (for example "rgb-ff8000",
+ * "pen-0.35" or "dash-4-2") and is defined in the style sheet that
+ * IpeWriter.writeHeader() generates from the palette. Values that equal a
+ * defined one get its name, so color(1, 0, 0) is "red", and black and white,
+ * which Ipe predefines, are "black" and "white".
+ *
+ * The palette is frozen when a writer has written a header with it, since
+ * the style sheet cannot change afterwards. Values added later are not
+ * named; their absolute value (for example "1 0.5 0") is returned, which Ipe
+ * accepts as well.
+ *
+ * A style is a combination of color, pen and dash. style() numbers the
+ * distinct styles and keeps the opening path tag for each, so that the
+ * IpeWriter methods taking a style number copy that tag instead of building
+ * it for every object.
+ *
+ * The palette is not thread-safe.
+ */
+public class IpePalette {
+
+	private static final String[][] STANDARD_PENS = { { "heavier", "0.8" },
+			{ "fat", "1.2" }, { "ultrafat", "2" } };
+
+	private static final String[][] STANDARD_COLORS = { { "red", "1 0 0" },
+			{ "green", "0 1 0" }, { "blue", "0 0 1" }, { "yellow", "1 1 0" },
+			{ "orange", "1 0.647 0" }, { "gold", "1 0.843 0" },
+			{ "purple", "0.627 0.125 0.941" }, { "gray", "0.745" },
+			{ "brown", "0.647 0.165 0.165" }, { "navy", "0 0 0.502" },
+			{ "pink", "1 0.753 0.796" }, { "seagreen", "0.18 0.545 0.341" },
+			{ "turquoise", "0.251 0.878 0.816" },
+			{ "violet", "0.933 0.51 0.933" }, { "darkblue", "0 0 0.545" },
+			{ "darkcyan", "0 0.545 0.545" }, { "darkgray", "0.663" },
+			{ "darkgreen", "0 0.392 0" }, { "darkmagenta", "0.545 0 0.545" },
+			{ "darkorange", "1 0.549 0" }, { "darkred", "0.545 0 0" },
+			{ "lightblue", "0.678 0.847 0.902" },
+			{ "lightcyan", "0.878 1 1" }, { "lightgray", "0.827" },
+			{ "lightgreen", "0.565 0.933 0.565" },
+			{ "lightyellow", "1 1 0.878" } };
+
+	/** Colors that Ipe defines itself, so they are not in the style sheet. */
+	private static final String[][] PREDEFINED_COLORS = { { "black", "0" },
+			{ "white", "1" } };
+
+	private static final String[][] STANDARD_DASHES = {
+			{ "dashed", "[4] 0" }, { "dotted", "[1 3] 0" },
+			{ "dash dotted", "[4 2 1 2] 0" },
+			{ "dash dot dotted", "[4 2 1 2 1 2] 0" } };
+
+	private static final IpeNumberFormat COLOR_FORMAT = IpeNumberFormat
+			.withPrecision(3);
+
+	// name -> value, in the order of definition, and value -> name
+	private final Map<String, String> pens = new LinkedHashMap<String, String>();
+	private final Map<String, String> colors = new LinkedHashMap<String, String>();
+	private final Map<String, String> dashes = new LinkedHashMap<String, String>();
+	private final Map<String, String> penNames = new HashMap<String, String>();
+	private final Map<String, String> colorNames = new HashMap<String, String>();
+	private final Map<String, String> dashNames = new HashMap<String, String>();
+	private boolean frozen = false;
+
+	// styles
+	private final Map<List<String>, Integer> styleIndex = new HashMap<List<String>, Integer>();
+	private final List<String[]> styles = new ArrayList<String[]>();
+	private final List<String> pathHeaders = new ArrayList<String>();
+
+	/**
+	 * Creates a palette with the colors, pens and dash styles of
+	 * getIpeConf().
+	 */
+	public IpePalette() {
+		for (String[] e : STANDARD_PENS)
+			define(pens, penNames, e[0], e[1]);
+		for (String[] e : PREDEFINED_COLORS)
+			colorNames.put(e[1], e[0]);
+		for (String[] e : STANDARD_COLORS)
+			define(colors, colorNames, e[0], e[1]);
+		for (String[] e : STANDARD_DASHES)
+			define(dashes, dashNames, e[0], e[1]);
+	}
+
+	/**
+	 * Returns the name of an RGB color. The components are rounded to 8 bits.
+	 *
+	 * @param r
+	 *            red component, between 0 and 1
+	 * @param g
+	 *            green component, between 0 and 1
+	 * @param b
+	 *            blue component, between 0 and 1
+	 * @return the name, or the value if the palette is frozen
+	 */
+	public String color(double r, double g, double b) {
+		return color((component(r) << 16) | (component(g) << 8)
+				| component(b));
+	}
+
+	/**
+	 * Returns the name of an RGB color given as 0xRRGGBB.
+	 *
+	 * @param rgb
+	 *            the color
+	 * @return the name, or the value if the palette is frozen
+	 */
+	public String color(int rgb) {
+		int r = (rgb >> 16) & 0xff, g = (rgb >> 8) & 0xff, b = rgb & 0xff;
+		StringBuilder value = new StringBuilder();
+		COLOR_FORMAT.append(value, r / 255.0);
+		if (g != r || b != r) {
+			COLOR_FORMAT.append(value.append(' '), g / 255.0);
+			COLOR_FORMAT.append(value.append(' '), b / 255.0);
+		}
+		String hex = Integer.toHexString(0x1000000 | (rgb & 0xffffff));
+		return intern(colors, colorNames, "rgb-" + hex.substring(1),
+				value.toString());
+	}
+
+	/**
+	 * Returns the name of a pen width.
+	 *
+	 * @param width
+	 *            the width in points
+	 * @return the name, or the value if the palette is frozen
+	 */
+	public String pen(double width) {
+		if (!(width >= 0) || Double.isInfinite(width))
+			throw new IllegalArgumentException("invalid pen width: " + width);
+		String value = IpeNumberFormat.SHORTEST.format(width);
+		return intern(pens, penNames, "pen-" + value, value);
+	}
+
+	/**
+	 * Returns the name of a dash style that alternates dashes and gaps of the
+	 * given lengths.
+	 *
+	 * @param pattern
+	 *            lengths of the dashes and gaps in points
+	 * @return the name, or the value if the palette is frozen
+	 */
+	public String dash(double... pattern) {
+		if (pattern.length == 0)
+			return "normal";
+		StringBuilder name = new StringBuilder("dash");
+		StringBuilder value = new StringBuilder("[");
+		for (int i = 0; i < pattern.length; i++) {
+			if (!(pattern[i] >= 0) || Double.isInfinite(pattern[i]))
+				throw new IllegalArgumentException("invalid dash pattern: "
+						+ Arrays.toString(pattern));
+			String length = IpeNumberFormat.SHORTEST.format(pattern[i]);
+			name.append('-').append(length);
+			value.append(i == 0 ? "" : " ").append(length);
+		}
+		value.append("] 0");
+		return intern(dashes, dashNames, name.toString(), value.toString());
+	}
+
+	/**
+	 * Returns the number of a style. Color, pen and dash are names or values
+	 * as accepted by the drawing methods of IpeDraw, for example names
+	 * returned by color(), pen() and dash().
+	 *
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width
+	 * @param dash
+	 *            dash style
+	 * @return the number of the style
+	 */
+	public int style(String color, String pen, String dash) {
+		List<String> key = Arrays.asList(color, pen, dash);
+		Integer index = styleIndex.get(key);
+		if (index == null) {
+			for (String s : key)
+				if (s == null)
+					throw new NullPointerException("attribute");
+			index = styles.size();
+			styles.add(new String[] { color, pen, dash });
+			StringBuilder sb = new StringBuilder();
+			IpeDraw.appendPathHeader(sb, color, pen, dash);
+			pathHeaders.add(sb.toString());
+			styleIndex.put(key, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the number of styles.
+	 *
+	 * @return
+	 */
+	public int getStyleCount() {
+		return styles.size();
+	}
+
+	/**
+	 * Returns the color of a style.
+	 *
+	 * @param style
+	 *            number of the style
+	 * @return
+	 */
+	public String getColor(int style) {
+		return styles.get(style)[0];
+	}
+
+	/**
+	 * Returns the pen of a style.
+	 *
+	 * @param style
+	 *            number of the style
+	 * @return
+	 */
+	public String getPen(int style) {
+		return styles.get(style)[1];
+	}
+
+	/**
+	 * Returns the dash of a style.
+	 *
+	 * @param style
+	 *            number of the style
+	 * @return
+	 */
+	public String getDash(int style) {
+		return styles.get(style)[2];
+	}
+
+	/**
+	 * Returns whether the style sheet of the palette has been written.
+	 *
+	 * @return
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Returns the opening path tag of a style, including the newline and
+	 * space preceding the first point.
+	 */
+	String getPathHeader(int style) {
+		return pathHeaders.get(style);
+	}
+
+	void freeze() {
+		frozen = true;
+	}
+
+	/**
+	 * Returns the value of a named color, or null if the name is not defined.
+	 */
+	String colorValue(String name) {
+		return colors.get(name);
+	}
+
+	/**
+	 * Returns the value of a named pen, or null if the name is not defined.
+	 */
+	String penValue(String name) {
+		return pens.get(name);
+	}
+
+	/**
+	 * Returns the value of a named dash style, or null if the name is not
+	 * defined.
+	 */
+	String dashValue(String name) {
+		return dashes.get(name);
+	}
+
+	void appendPens(StringBuilder sb) {
+		append(sb, "pen", pens);
+	}
+
+	void appendColors(StringBuilder sb) {
+		append(sb, "color", colors);
+	}
+
+	void appendDashes(StringBuilder sb) {
+		append(sb, "dashstyle", dashes);
+	}
+
+	private static void append(StringBuilder sb, String tag,
+			Map<String, String> entries) {
+		for (Map.Entry<String, String> e : entries.entrySet())
+			sb.append("    <").append(tag).append(" name=\"").append(e.getKey())
+					.append("\" value=\"").append(e.getValue()).append("\"/>\n");
+	}
+
+	private static void define(Map<String, String> values,
+			Map<String, String> names, String name, String value) {
+		values.put(name, value);
+		if (!names.containsKey(value))
+			names.put(value, name);
+	}
+
+	private String intern(Map<String, String> values,
+			Map<String, String> names, String name, String value) {
+		String known = names.get(value);
+		if (known != null)
+			return known;
+		if (frozen)
+			return value;
+		define(values, names, name, value);
+		return name;
+	}
+
+	private static int component(double c) {
+		if (!(c >= 0 && c <= 1))
+			throw new IllegalArgumentException("color component not in [0, 1]: "
+					+ c);
+		return (int) Math.round(c * 255);
+	}
+}
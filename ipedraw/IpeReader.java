@@ -0,0 +1,698 @@
+package de.uniwue.smooth.draw;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads documents written by IpeDraw and IpeWriter.
+ *
+ * The reader streams through the XML with StAX, without building a tree, and
+ * hands every object to a Handler, or adds it to an IpeScene (see
+ * readScene()). It understands the objects that IpeDraw writes: marks, text
+ * labels, and paths made of the operators m, l, h (polylines, edges and
+ * rectangles), e (circles), a (circular arcs), s (splines) and u
+ * (splinegons). Objects inside groups are read as if they were not grouped.
+ *
+ * Other objects, for example uses of symbols other than marks, images, paths
+ * with several subpaths, ellipses, Bezier curves (as written by
+ * IpeWriter.drawCurve()), and objects or groups that are transformed by a
+ * matrix, are skipped and counted (see getSkippedCount()).
+ * The style sheets, and the views of the pages, are ignored.
+ *
+ * Document type declarations are not processed, and external entities are
+ * not resolved.
+ */
+public class IpeReader {
+
+	/**
+	 * Receives the contents of a document. Arrays passed to the methods are
+	 * only valid during the call.
+	 */
+	public interface Handler {
+
+		/**
+		 * Starts a page. The following objects are in its first layer until
+		 * layer() is called.
+		 *
+		 * @param layers
+		 *            names of the layers of the page
+		 */
+		void page(String[] layers);
+
+		/**
+		 * Puts the following objects into the given layer of the current
+		 * page.
+		 *
+		 * @param layer
+		 *            name of the layer
+		 */
+		void layer(String layer);
+
+		void mark(double x, double y, String shape, String color, String size);
+
+		void box(double x1, double y1, double x2, double y2, String color,
+				String pen, String dash);
+
+		void edge(double x1, double y1, double x2, double y2, String color,
+				String pen, String dash);
+
+		/**
+		 * A path, spline or splinegon through the points 0, ..., length - 1.
+		 * Closed polylines other than rectangles are passed as paths that
+		 * end at their first point.
+		 *
+		 * @param kind
+		 *            IpeScene.PATH, IpeScene.SPLINE or IpeScene.SPLINEGON
+		 */
+		void path(byte kind, double[] x, double[] y, int length, String color,
+				String pen, String dash);
+
+		/**
+		 * A text label. The text is passed as writeText() expects it, with
+		 * the characters &amp;, &lt; and &gt; escaped.
+		 */
+		void text(String text, double x, double y, String color, String size);
+
+		void circle(double x, double y, double radius, String color,
+				String pen, String dash);
+
+		void arc(double xCenter, double yCenter, double xStart, double yStart,
+				double xEnd, double yEnd, String color, String pen, String dash);
+	}
+
+	private final XMLInputFactory factory;
+
+	private long objects = 0;
+	private long skipped = 0;
+
+	// content of the current element
+	private char[] chars = new char[1024];
+	private int length;
+
+	// the points and operators of the current path
+	private double[] nums = new double[16];
+	private int numCount;
+	private double[] px = new double[16], py = new double[16];
+	private int pointCount;
+	private final StringBuilder ops = new StringBuilder();
+
+	/**
+	 * Creates a reader.
+	 */
+	public IpeReader() {
+		factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+				Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+	}
+
+	/**
+	 * Returns the number of objects read by the last call of read().
+	 *
+	 * @return
+	 */
+	public long getObjectCount() {
+		return objects;
+	}
+
+	/**
+	 * Returns the number of objects skipped by the last call of read().
+	 *
+	 * @return
+	 */
+	public long getSkippedCount() {
+		return skipped;
+	}
+
+	/**
+	 * Reads a document into a new scene, with the pages and layers of the
+	 * document.
+	 *
+	 * @param in
+	 *            the document; it is not closed
+	 * @return the scene
+	 * @throws IOException
+	 *             if the document cannot be read or is not well-formed
+	 */
+	public IpeScene readScene(InputStream in) throws IOException {
+		SceneBuilder builder = new SceneBuilder();
+		read(in, builder);
+		return builder.finish();
+	}
+
+	/**
+	 * Reads a document into a new scene, see readScene(InputStream).
+	 *
+	 * @param in
+	 *            the document; it is not closed
+	 * @return the scene
+	 * @throws IOException
+	 */
+	public IpeScene readScene(Reader in) throws IOException {
+		SceneBuilder builder = new SceneBuilder();
+		read(in, builder);
+		return builder.finish();
+	}
+
+	/**
+	 * Reads a document and passes its pages and objects to a handler.
+	 *
+	 * @param in
+	 *            the document; it is not closed
+	 * @param handler
+	 *            the handler
+	 * @throws IOException
+	 *             if the document cannot be read or is not well-formed
+	 */
+	public void read(InputStream in, Handler handler) throws IOException {
+		try {
+			read(factory.createXMLStreamReader(in), handler);
+		} catch (XMLStreamException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads a document and passes its pages and objects to a handler.
+	 *
+	 * @param in
+	 *            the document; it is not closed
+	 * @param handler
+	 *            the handler
+	 * @throws IOException
+	 */
+	public void read(Reader in, Handler handler) throws IOException {
+		try {
+			read(factory.createXMLStreamReader(in), handler);
+		} catch (XMLStreamException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	private void read(XMLStreamReader r, Handler handler)
+			throws XMLStreamException, IOException {
+		objects = 0;
+		skipped = 0;
+		try {
+			while (r.hasNext()) {
+				if (r.next() != XMLStreamConstants.START_ELEMENT)
+					continue;
+				if (r.getLocalName().equals("page"))
+					readPage(r, handler);
+				else if (!r.getLocalName().equals("ipe"))
+					skipElement(r);
+			}
+		} finally {
+			r.close();
+		}
+	}
+
+	private void readPage(XMLStreamReader r, Handler handler)
+			throws XMLStreamException, IOException {
+		List<String> layers = new ArrayList<String>();
+		boolean started = false;
+		String[] layer = new String[1];
+		while (true) {
+			int event = r.next();
+			if (event == XMLStreamConstants.END_ELEMENT)
+				break;
+			if (event != XMLStreamConstants.START_ELEMENT)
+				continue;
+			String name = r.getLocalName();
+			if (name.equals("layer") && !started) {
+				layers.add(r.getAttributeValue(null, "name"));
+				skipElement(r);
+				continue;
+			}
+			if (!started) {
+				if (layers.isEmpty())
+					layers.add("alpha");
+				handler.page(layers.toArray(new String[layers.size()]));
+				layer[0] = layers.get(0);
+				started = true;
+			}
+			if (name.equals("view") || name.equals("notes")
+					|| name.equals("layer"))
+				skipElement(r);
+			else
+				readObject(r, handler, layer, true);
+		}
+		if (!started)
+			handler.page(layers.isEmpty() ? new String[] { "alpha" } : layers
+					.toArray(new String[layers.size()]));
+	}
+
+	/**
+	 * Reads an object whose start tag is the current event, up to its end
+	 * tag. layer[0] is the layer of the previous object.
+	 */
+	private void readObject(XMLStreamReader r, Handler handler,
+			String[] layer, boolean topLevel) throws XMLStreamException,
+			IOException {
+		String name = r.getLocalName();
+		if (r.getAttributeValue(null, "matrix") != null) {
+			skipped++;
+			skipElement(r);
+			return;
+		}
+		if (topLevel) {
+			String l = r.getAttributeValue(null, "layer");
+			if (l != null && !l.equals(layer[0])) {
+				handler.layer(l);
+				layer[0] = l;
+			}
+		}
+		if (name.equals("path")) {
+			readPath(r, handler);
+		} else if (name.equals("use")) {
+			readUse(r, handler);
+		} else if (name.equals("text")) {
+			readText(r, handler);
+		} else if (name.equals("group")) {
+			while (true) {
+				int event = r.next();
+				if (event == XMLStreamConstants.END_ELEMENT)
+					break;
+				if (event == XMLStreamConstants.START_ELEMENT)
+					readObject(r, handler, layer, false);
+			}
+		} else {
+			skipped++;
+			skipElement(r);
+		}
+	}
+
+	private void readUse(XMLStreamReader r, Handler handler)
+			throws XMLStreamException, IOException {
+		String name = attribute(r, "name", "");
+		String pos = r.getAttributeValue(null, "pos");
+		int open = name.indexOf('(');
+		if (!name.startsWith("mark/") || pos == null) {
+			skipped++;
+			skipElement(r);
+			return;
+		}
+		String shape = name.substring(5, open < 0 ? name.length() : open);
+		String size = attribute(r, "size", "normal");
+		String color = attribute(r, "stroke", "black");
+		skipElement(r);
+		pos.getChars(0, pos.length(), chars(pos.length()), 0);
+		length = pos.length();
+		if (parseNumbers(r) != 2) {
+			skipped++;
+			return;
+		}
+		handler.mark(nums[0], nums[1], shape, color, size);
+		objects++;
+	}
+
+	private void readText(XMLStreamReader r, Handler handler)
+			throws XMLStreamException, IOException {
+		String pos = r.getAttributeValue(null, "pos");
+		String color = attribute(r, "stroke", "black");
+		String size = attribute(r, "size", "normal");
+		readContent(r, true);
+		String text = new String(chars, 0, length);
+		if (pos == null) {
+			skipped++;
+			return;
+		}
+		pos.getChars(0, pos.length(), chars(pos.length()), 0);
+		length = pos.length();
+		if (parseNumbers(r) != 2) {
+			skipped++;
+			return;
+		}
+		handler.text(text, nums[0], nums[1], color, size);
+		objects++;
+	}
+
+	private void readPath(XMLStreamReader r, Handler handler)
+			throws XMLStreamException, IOException {
+		String color = attribute(r, "stroke", "black");
+		String pen = attribute(r, "pen", "normal");
+		String dash = attribute(r, "dash", "normal");
+		readContent(r, false);
+		if (!parsePath(r)) {
+			skipped++;
+			return;
+		}
+		objects++;
+		String o = ops.toString();
+		double[] v = nums;
+		if (o.equals("e")) {
+			if (!isCircleMatrix(v, 0)) {
+				objects--;
+				skipped++;
+				return;
+			}
+			handler.circle(v[4], v[5], v[0], color, pen, dash);
+		} else if (o.equals("ma")) {
+			if (!isCircleMatrix(v, 0)) {
+				objects--;
+				skipped++;
+				return;
+			}
+			handler.arc(v[4], v[5], px[0], py[0], v[6], v[7], color, pen,
+					dash);
+		} else if (o.equals("ms")) {
+			handler.path(IpeScene.SPLINE, px, py, pointCount, color, pen,
+					dash);
+		} else if (o.equals("u")) {
+			handler.path(IpeScene.SPLINEGON, px, py, pointCount, color, pen,
+					dash);
+		} else if (o.endsWith("h")) {
+			if (pointCount == 4 && px[0] == px[1] && py[1] == py[2]
+					&& px[2] == px[3] && py[3] == py[0]) {
+				handler.box(px[1], py[1], px[3], py[3], color, pen, dash);
+			} else {
+				addPoint(px[0], py[0]);
+				handler.path(IpeScene.PATH, px, py, pointCount, color, pen,
+						dash);
+			}
+		} else if (pointCount == 2) {
+			handler.edge(px[0], py[0], px[1], py[1], color, pen, dash);
+		} else {
+			handler.path(IpeScene.PATH, px, py, pointCount, color, pen, dash);
+		}
+	}
+
+	/**
+	 * Parses the content of a path into points, operators and the operands of
+	 * the last operator. Returns false if the path is not one that IpeDraw
+	 * writes.
+	 */
+	private boolean parsePath(XMLStreamReader r) throws IOException {
+		ops.setLength(0);
+		pointCount = 0;
+		numCount = 0;
+		char[] c = chars;
+		int i = 0, n = length;
+		while (true) {
+			while (i < n && c[i] <= ' ')
+				i++;
+			if (i == n)
+				break;
+			char ch = c[i];
+			if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z')) {
+				if (i + 1 < n && c[i + 1] > ' ')
+					return false;
+				if (!operator(ch))
+					return false;
+				i++;
+			} else {
+				int end = i;
+				while (end < n && c[end] > ' ')
+					end++;
+				if (numCount == nums.length)
+					nums = Arrays.copyOf(nums, 2 * numCount);
+				nums[numCount++] = parseNumber(r, c, i, end);
+				i = end;
+			}
+		}
+		String o = ops.toString();
+		if (numCount != 0 || o.isEmpty())
+			return false;
+		if (o.equals("e") || o.equals("ma") || o.equals("ms")
+				|| o.equals("u"))
+			return true;
+		// a polyline: m l l ... with an optional h
+		int last = o.endsWith("h") ? o.length() - 1 : o.length();
+		if (o.charAt(0) != 'm' || last < 2)
+			return false;
+		for (int k = 1; k < last; k++)
+			if (o.charAt(k) != 'l')
+				return false;
+		return true;
+	}
+
+	/**
+	 * Applies an operator to the pending operands. The operands of e and a
+	 * are kept in nums.
+	 */
+	private boolean operator(char op) {
+		switch (op) {
+		case 'm':
+		case 'l':
+			if (numCount != 2 || (op == 'm') != (ops.length() == 0))
+				return false;
+			addPoint(nums[0], nums[1]);
+			numCount = 0;
+			break;
+		case 'h':
+			if (numCount != 0)
+				return false;
+			break;
+		case 'e':
+			if (numCount != 6 || ops.length() != 0)
+				return false;
+			numCount = 0;
+			break;
+		case 'a':
+			if (numCount != 8)
+				return false;
+			numCount = 0;
+			break;
+		case 's':
+		case 'u':
+			if (numCount % 2 != 0 || numCount == 0)
+				return false;
+			for (int k = 0; k < numCount; k += 2)
+				addPoint(nums[k], nums[k + 1]);
+			numCount = 0;
+			break;
+		default:
+			return false;
+		}
+		ops.append(op);
+		return true;
+	}
+
+	private void addPoint(double x, double y) {
+		if (pointCount == px.length) {
+			px = Arrays.copyOf(px, 2 * pointCount);
+			py = Arrays.copyOf(py, 2 * pointCount);
+		}
+		px[pointCount] = x;
+		py[pointCount] = y;
+		pointCount++;
+	}
+
+	private static boolean isCircleMatrix(double[] v, int i) {
+		return v[i] == v[i + 3] && v[i + 1] == 0 && v[i + 2] == 0
+				&& v[i] > 0;
+	}
+
+	/**
+	 * Parses the numbers in chars[0, length) into nums and returns how many
+	 * there are.
+	 */
+	private int parseNumbers(XMLStreamReader r) throws IOException {
+		numCount = 0;
+		char[] c = chars;
+		int i = 0, n = length;
+		while (true) {
+			while (i < n && c[i] <= ' ')
+				i++;
+			if (i == n)
+				return numCount;
+			int end = i;
+			while (end < n && c[end] > ' ')
+				end++;
+			if (numCount == nums.length)
+				nums = Arrays.copyOf(nums, 2 * numCount);
+			nums[numCount++] = parseNumber(r, c, i, end);
+			i = end;
+		}
+	}
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Parses a number. Numbers without exponent whose digits form an integer
+	 * below 2^53, which covers most of what IpeNumberFormat writes, are
+	 * converted exactly (by one correctly rounded division) without creating
+	 * a String.
+	 */
+	private static double parseNumber(XMLStreamReader r, char[] c, int from,
+			int to) throws IOException {
+		int i = from;
+		boolean negative = false;
+		if (c[i] == '-' || c[i] == '+') {
+			negative = c[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0, decimals = -1;
+		for (; i < to; i++) {
+			char ch = c[i];
+			if (ch >= '0' && ch <= '9') {
+				mantissa = 10 * mantissa + (ch - '0');
+				digits++;
+				if (decimals >= 0)
+					decimals++;
+			} else if (ch == '.' && decimals < 0) {
+				decimals = 0;
+			} else {
+				break;
+			}
+		}
+		if (i == to && digits > 0 && digits <= 18 && mantissa <= 1L << 53) {
+			double v = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals]
+					: mantissa;
+			return negative ? -v : v;
+		}
+		String s = new String(c, from, to - from);
+		try {
+			return Double.parseDouble(s);
+		} catch (NumberFormatException e) {
+			throw new IOException("invalid number \"" + s + "\" at line "
+					+ r.getLocation().getLineNumber());
+		}
+	}
+
+	/**
+	 * Collects the character content of the current element into chars, up
+	 * to its end tag. Text is escaped again for writeText().
+	 */
+	private void readContent(XMLStreamReader r, boolean escape)
+			throws XMLStreamException {
+		length = 0;
+		int depth = 1;
+		while (depth > 0) {
+			int event = r.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if (depth == 1
+					&& (event == XMLStreamConstants.CHARACTERS
+							|| event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE)) {
+				char[] text = r.getTextCharacters();
+				int start = r.getTextStart(), n = r.getTextLength();
+				if (!escape) {
+					System.arraycopy(text, start, chars(length + n), length, n);
+					length += n;
+					continue;
+				}
+				for (int k = start; k < start + n; k++) {
+					char ch = text[k];
+					String entity = ch == '&' ? "&amp;" : ch == '<' ? "&lt;"
+							: ch == '>' ? "&gt;" : null;
+					if (entity == null) {
+						chars(length + 1)[length++] = ch;
+					} else {
+						entity.getChars(0, entity.length(),
+								chars(length + entity.length()), length);
+						length += entity.length();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns chars with room for at least n characters, keeping its content.
+	 */
+	private char[] chars(int n) {
+		if (chars.length < n)
+			chars = Arrays.copyOf(chars, Math.max(n, 2 * chars.length));
+		return chars;
+	}
+
+	/**
+	 * Skips the current element and its content, up to its end tag.
+	 */
+	private static void skipElement(XMLStreamReader r)
+			throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = r.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+
+	private static String attribute(XMLStreamReader r, String name,
+			String defaultValue) {
+		String value = r.getAttributeValue(null, name);
+		return value != null ? value : defaultValue;
+	}
+
+	/**
+	 * Adds the objects to a scene.
+	 */
+	private static final class SceneBuilder implements Handler {
+		private final IpeScene scene = new IpeScene(false);
+		private int page = -1;
+
+		IpeScene finish() {
+			if (page < 0)
+				scene.addPage();
+			return scene;
+		}
+
+		public void page(String[] layers) {
+			page = scene.addPage(layers);
+		}
+
+		public void layer(String layer) {
+			int id = scene.getLayer(page, layer);
+			if (id < 0)
+				scene.addLayer(page, layer);
+			else
+				scene.setCurrentLayer(id);
+		}
+
+		public void mark(double x, double y, String shape, String color,
+				String size) {
+			scene.addMark(x, y, shape, color, size);
+		}
+
+		public void box(double x1, double y1, double x2, double y2,
+				String color, String pen, String dash) {
+			scene.addBox(x1, y1, x2, y2, color, pen, dash);
+		}
+
+		public void edge(double x1, double y1, double x2, double y2,
+				String color, String pen, String dash) {
+			scene.addEdge(x1, y1, x2, y2, color, pen, dash);
+		}
+
+		public void path(byte kind, double[] x, double[] y, int length,
+				String color, String pen, String dash) {
+			scene.addPath(kind, x, y, 0, length, color, pen, dash);
+		}
+
+		public void text(String text, double x, double y, String color,
+				String size) {
+			scene.addText(text, x, y, color, size);
+		}
+
+		public void circle(double x, double y, double radius, String color,
+				String pen, String dash) {
+			scene.addCircle(x, y, radius, color, pen, dash);
+		}
+
+		public void arc(double xCenter, double yCenter, double xStart,
+				double yStart, double xEnd, double yEnd, String color,
+				String pen, String dash) {
+			scene.addCircularArc(xCenter, yCenter, xStart, yStart, xEnd, yEnd,
+					color, pen, dash);
+		}
+	}
+}
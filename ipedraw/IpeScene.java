@@ -0,0 +1,854 @@
+package de.uniwue.smooth.draw;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A drawing that is kept in memory, so that objects can be moved or
+ * recolored after they were added and the document can be written again
+ * without rebuilding it.
+ *
+ * The scene is organized into pages, and every page into layers. Objects are
+ * not stored as Java objects but in columns of primitive arrays: the kind of
+ * every object, an index into a table of interned attributes (colors, pens,
+ * dashes, ...), and an offset into a shared array of coordinates. An edge
+ * thus needs about 45 bytes, so that millions of objects fit into a few
+ * hundred megabytes.
+ *
+ * Objects are identified by the int returned when they are added. They are
+ * written with the same element formats as IpeDraw, using double coordinates.
+ *
+ * Documents written by IpeDraw can be read into a scene by
+ * IpeReader.readScene().
+ *
+ * The scene is not thread-safe, but pages can be written concurrently by
+ * IpePageRenderer as long as the scene is not modified.
+ */
+public class IpeScene implements IpePageRenderer.PageSource {
+
+	/** Kind of a mark. */
+	public static final byte MARK = 0;
+	/** Kind of a rectangle. */
+	public static final byte BOX = 1;
+	/** Kind of a path. */
+	public static final byte PATH = 2;
+	/** Kind of an edge. */
+	public static final byte EDGE = 3;
+	/** Kind of a text label. */
+	public static final byte TEXT = 4;
+	/** Kind of a circle. */
+	public static final byte CIRCLE = 5;
+	/** Kind of a circular arc. */
+	public static final byte ARC = 6;
+	/** Kind of a spline. */
+	public static final byte SPLINE = 7;
+	/** Kind of a splinegon. */
+	public static final byte SPLINEGON = 8;
+	/** Kind of a removed object. */
+	public static final byte REMOVED = -1;
+
+	// per object
+	private int size = 0;
+	private byte[] kind = new byte[16];
+	private int[] attr = new int[16];
+	private int[] next = new int[16];
+	/** coordStart[i] is the first coordinate of object i; size + 1 entries. */
+	private int[] coordStart = new int[17];
+
+	// shared coordinates: x0, y0, x1, y1, ...
+	private double[] coords = new double[64];
+
+	// interned attributes
+	private final List<String[]> attrs = new ArrayList<String[]>();
+	private final Map<List<String>, Integer> attrIndex = new HashMap<List<String>, Integer>();
+
+	// layers, each a linked list of its objects in insertion order
+	private int layerCount = 0;
+	private String[] layerName = new String[4];
+	private int[] layerHead = new int[4];
+	private int[] layerTail = new int[4];
+
+	// pages, each a list of layers
+	private final List<int[]> pages = new ArrayList<int[]>();
+
+	private int currentLayer;
+	private int lastAttr = -1;
+	private int removed = 0;
+
+	/**
+	 * Creates a scene with one page that has the layer "alpha".
+	 */
+	public IpeScene() {
+		this(true);
+	}
+
+	/**
+	 * Creates a scene, without pages if withPage is false. Then a page must
+	 * be added before any object.
+	 */
+	IpeScene(boolean withPage) {
+		if (withPage)
+			addPage();
+	}
+
+	/**
+	 * Adds a page with the given layers and makes its first layer the current
+	 * layer. Without arguments, the page gets the layer "alpha".
+	 *
+	 * @param layers
+	 *            names of the layers
+	 * @return index of the page
+	 */
+	public int addPage(String... layers) {
+		if (layers.length == 0)
+			layers = new String[] { "alpha" };
+		int[] ids = new int[layers.length];
+		for (int i = 0; i < layers.length; i++)
+			ids[i] = newLayer(layers[i]);
+		pages.add(ids);
+		currentLayer = ids[0];
+		return pages.size() - 1;
+	}
+
+	/**
+	 * Adds a layer to a page and makes it the current layer.
+	 *
+	 * @param page
+	 *            index of the page
+	 * @param name
+	 *            name of the layer
+	 * @return id of the layer
+	 */
+	public int addLayer(int page, String name) {
+		int[] ids = pages.get(page);
+		ids = Arrays.copyOf(ids, ids.length + 1);
+		ids[ids.length - 1] = newLayer(name);
+		pages.set(page, ids);
+		currentLayer = ids[ids.length - 1];
+		return currentLayer;
+	}
+
+	/**
+	 * Returns the id of a layer of a page.
+	 *
+	 * @param page
+	 *            index of the page
+	 * @param name
+	 *            name of the layer
+	 * @return id of the layer, or -1 if the page has no such layer
+	 */
+	public int getLayer(int page, String name) {
+		for (int id : pages.get(page))
+			if (layerName[id].equals(name))
+				return id;
+		return -1;
+	}
+
+	/**
+	 * Sets the layer that new objects are added to.
+	 *
+	 * @param layer
+	 *            id of the layer
+	 */
+	public void setCurrentLayer(int layer) {
+		if (layer < 0 || layer >= layerCount)
+			throw new IndexOutOfBoundsException("no layer " + layer);
+		currentLayer = layer;
+	}
+
+	/**
+	 * Returns the number of pages.
+	 *
+	 * @return
+	 */
+	@Override
+	public int getPageCount() {
+		return pages.size();
+	}
+
+	/**
+	 * Returns the number of objects that were added and not removed.
+	 *
+	 * @return
+	 */
+	public int getObjectCount() {
+		return size - removed;
+	}
+
+	private int newLayer(String name) {
+		if (layerCount == layerName.length) {
+			int n = 2 * layerCount;
+			layerName = Arrays.copyOf(layerName, n);
+			layerHead = Arrays.copyOf(layerHead, n);
+			layerTail = Arrays.copyOf(layerTail, n);
+		}
+		layerName[layerCount] = name;
+		layerHead[layerCount] = -1;
+		layerTail[layerCount] = -1;
+		return layerCount++;
+	}
+
+	/**
+	 * Adds a mark.
+	 *
+	 * @param x
+	 *            x-coordinate
+	 * @param y
+	 *            y-coordinate
+	 * @param shape
+	 *            shape: disk, fdisk, circle, box, square, fsquare, cross
+	 * @param color
+	 *            color
+	 * @param size
+	 *            size: tiny, small, normal, large
+	 * @return id of the object
+	 */
+	public int addMark(double x, double y, String shape, String color,
+			String size) {
+		int id = newObject(MARK, intern(shape, color, size), 2);
+		put(coordStart[id], x, y);
+		return id;
+	}
+
+	/**
+	 * Adds a rectangle.
+	 *
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return id of the object
+	 */
+	public int addBox(double x1, double y1, double x2, double y2,
+			String color, String pen, String dash) {
+		int id = newObject(BOX, intern(color, pen, dash), 4);
+		put(put(coordStart[id], x1, y1), x2, y2);
+		return id;
+	}
+
+	/**
+	 * Adds an edge between two points.
+	 *
+	 * @param x1
+	 *            x-coordinate of point 1
+	 * @param y1
+	 *            y-coordinate of point 1
+	 * @param x2
+	 *            x-coordinate of point 2
+	 * @param y2
+	 *            y-coordinate of point 2
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return id of the object
+	 */
+	public int addEdge(double x1, double y1, double x2, double y2,
+			String color, String pen, String dash) {
+		int id = newObject(EDGE, intern(color, pen, dash), 4);
+		put(put(coordStart[id], x1, y1), x2, y2);
+		return id;
+	}
+
+	/**
+	 * Adds a path, spline or splinegon through the points offset, ..., offset
+	 * + length - 1 of the given arrays.
+	 *
+	 * @param kind
+	 *            PATH, SPLINE or SPLINEGON
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return id of the object
+	 */
+	public int addPath(byte kind, double[] x, double[] y, int offset,
+			int length, String color, String pen, String dash) {
+		if (kind != PATH && kind != SPLINE && kind != SPLINEGON)
+			throw new IllegalArgumentException("not a path kind: " + kind);
+		IpeDraw.checkPoints(x.length, offset, y.length, offset, 1, length);
+		int id = newObject(kind, intern(color, pen, dash), 2 * length);
+		int c = coordStart[id];
+		for (int i = 0; i < length; i++) {
+			coords[c++] = x[offset + i];
+			coords[c++] = y[offset + i];
+		}
+		return id;
+	}
+
+	/**
+	 * Adds a path, spline or splinegon through the given points.
+	 *
+	 * @param kind
+	 *            PATH, SPLINE or SPLINEGON
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return id of the object
+	 */
+	public int addPath(byte kind, double[] x, double[] y, String color,
+			String pen, String dash) {
+		return addPath(kind, x, y, 0, x.length, color, pen, dash);
+	}
+
+	/**
+	 * Adds a text label. The text is interned together with its style, so
+	 * repeated labels are stored once.
+	 *
+	 * @param text
+	 *            The text
+	 * @param x
+	 *            x-coordinate of the box
+	 * @param y
+	 *            y-coordinate of the box
+	 * @param color
+	 *            text-color
+	 * @param size
+	 *            text-size
+	 * @return id of the object
+	 */
+	public int addText(String text, double x, double y, String color,
+			String size) {
+		int id = newObject(TEXT, intern(color, size, text), 2);
+		put(coordStart[id], x, y);
+		return id;
+	}
+
+	/**
+	 * Adds a circle.
+	 *
+	 * @param x
+	 *            x-coordinate of the center
+	 * @param y
+	 *            y-coordinate of the center
+	 * @param radius
+	 *            radius
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return id of the object
+	 */
+	public int addCircle(double x, double y, double radius, String color,
+			String pen, String dash) {
+		int id = newObject(CIRCLE, intern(color, pen, dash), 3);
+		coords[put(coordStart[id], x, y)] = radius;
+		return id;
+	}
+
+	/**
+	 * Adds a circular arc in a mathematical positive sense.
+	 *
+	 * @param xCenter
+	 *            x-coordinate of the center
+	 * @param yCenter
+	 *            y-coordinate of the center
+	 * @param xStart
+	 *            x-coordinate of the starting point on the circle
+	 * @param yStart
+	 *            y-coordinate of the starting point on the circle
+	 * @param xEnd
+	 *            x-coordinate of the end point on the circle
+	 * @param yEnd
+	 *            y-coordinate of the end point on the circle
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return id of the object
+	 */
+	public int addCircularArc(double xCenter, double yCenter, double xStart,
+			double yStart, double xEnd, double yEnd, String color, String pen,
+			String dash) {
+		int id = newObject(ARC, intern(color, pen, dash), 6);
+		put(put(put(coordStart[id], xCenter, yCenter), xStart, yStart), xEnd,
+				yEnd);
+		return id;
+	}
+
+	/**
+	 * Returns the kind of an object, or REMOVED.
+	 *
+	 * @param id
+	 *            id of the object
+	 * @return
+	 */
+	public byte getKind(int id) {
+		checkId(id);
+		return kind[id];
+	}
+
+	/**
+	 * Returns the number of points of an object. Circles have one point (the
+	 * center), arcs three (center, start and end), boxes and edges two.
+	 *
+	 * @param id
+	 *            id of the object
+	 * @return
+	 */
+	public int getPointCount(int id) {
+		checkId(id);
+		return kind[id] == CIRCLE ? 1 : (coordStart[id + 1] - coordStart[id]) / 2;
+	}
+
+	/**
+	 * Returns the x-coordinate of a point of an object.
+	 *
+	 * @param id
+	 *            id of the object
+	 * @param point
+	 *            index of the point
+	 * @return
+	 */
+	public double getX(int id, int point) {
+		return coords[coordIndex(id, point)];
+	}
+
+	/**
+	 * Returns the y-coordinate of a point of an object.
+	 *
+	 * @param id
+	 *            id of the object
+	 * @param point
+	 *            index of the point
+	 * @return
+	 */
+	public double getY(int id, int point) {
+		return coords[coordIndex(id, point) + 1];
+	}
+
+	/**
+	 * Moves a point of an object.
+	 *
+	 * @param id
+	 *            id of the object
+	 * @param point
+	 *            index of the point
+	 * @param x
+	 *            new x-coordinate
+	 * @param y
+	 *            new y-coordinate
+	 */
+	public void setPoint(int id, int point, double x, double y) {
+		int c = coordIndex(id, point);
+		coords[c] = x;
+		coords[c + 1] = y;
+	}
+
+	/**
+	 * Moves all points of an object.
+	 *
+	 * @param id
+	 *            id of the object
+	 * @param dx
+	 *            translation in x-direction
+	 * @param dy
+	 *            translation in y-direction
+	 */
+	public void translate(int id, double dx, double dy) {
+		int n = getPointCount(id);
+		for (int c = coordStart[id], end = c + 2 * n; c < end; c += 2) {
+			coords[c] += dx;
+			coords[c + 1] += dy;
+		}
+	}
+
+	/**
+	 * Returns the radius of a circle.
+	 *
+	 * @param id
+	 *            id of the circle
+	 * @return
+	 */
+	public double getRadius(int id) {
+		checkKind(id, CIRCLE);
+		return coords[coordStart[id] + 2];
+	}
+
+	/**
+	 * Changes the radius of a circle.
+	 *
+	 * @param id
+	 *            id of the circle
+	 * @param radius
+	 *            the new radius
+	 */
+	public void setRadius(int id, double radius) {
+		checkKind(id, CIRCLE);
+		coords[coordStart[id] + 2] = radius;
+	}
+
+	/**
+	 * Returns the color of an object.
+	 *
+	 * @param id
+	 *            id of the object
+	 * @return
+	 */
+	public String getColor(int id) {
+		checkId(id);
+		return attrs.get(attr[id])[colorIndex(kind[id])];
+	}
+
+	/**
+	 * Changes the color of an object.
+	 *
+	 * @param id
+	 *            id of the object
+	 * @param color
+	 *            the new color
+	 */
+	public void setColor(int id, String color) {
+		checkId(id);
+		String[] a = attrs.get(attr[id]).clone();
+		a[colorIndex(kind[id])] = color;
+		attr[id] = intern(a);
+	}
+
+	/**
+	 * Returns the attributes of an object: shape, color and size for marks;
+	 * color, size and the text for text labels; color, pen and dash for all
+	 * other objects. The returned array must not be modified.
+	 *
+	 * @param id
+	 *            id of the object
+	 * @return
+	 */
+	public String[] getAttributes(int id) {
+		checkId(id);
+		return attrs.get(attr[id]);
+	}
+
+	/**
+	 * Stores the bounding box {xMin, yMin, xMax, yMax} of an object in box.
+	 * The box of an arc is that of its whole circle, the box of a spline that
+	 * of its control points. Marks and text labels are treated as points.
+	 *
+	 * @param id
+	 *            id of the object
+	 * @param box
+	 *            receives the bounding box; needs four entries
+	 */
+	public void getBoundingBox(int id, double[] box) {
+		checkId(id);
+		int c = coordStart[id];
+		double[] v = coords;
+		if (kind[id] == CIRCLE || kind[id] == ARC) {
+			double r = kind[id] == CIRCLE ? v[c + 2] : Math.hypot(v[c + 2]
+					- v[c], v[c + 3] - v[c + 1]);
+			box[0] = v[c] - r;
+			box[1] = v[c + 1] - r;
+			box[2] = v[c] + r;
+			box[3] = v[c + 1] + r;
+			return;
+		}
+		box[0] = box[2] = v[c];
+		box[1] = box[3] = v[c + 1];
+		for (int end = coordStart[id + 1]; c < end; c += 2) {
+			box[0] = Math.min(box[0], v[c]);
+			box[1] = Math.min(box[1], v[c + 1]);
+			box[2] = Math.max(box[2], v[c]);
+			box[3] = Math.max(box[3], v[c + 1]);
+		}
+	}
+
+	/**
+	 * Removes an object. Its id stays valid, with kind REMOVED.
+	 *
+	 * @param id
+	 *            id of the object
+	 */
+	public void remove(int id) {
+		checkId(id);
+		if (kind[id] != REMOVED) {
+			kind[id] = REMOVED;
+			removed++;
+		}
+	}
+
+	/**
+	 * Writes the whole scene as a document. The writer, for example an
+	 * IpeWriter or an IpeSvgWriter, must be fresh; it has to be closed by the
+	 * caller.
+	 *
+	 * @param w
+	 *            the writer
+	 * @throws IOException
+	 */
+	public void write(IpeBackend w) throws IOException {
+		for (int p = 0; p < pages.size(); p++) {
+			String[] names = getLayerNames(p);
+			if (p == 0)
+				w.writeHeader(names);
+			else
+				w.newPage(names);
+			writeLayers(w, p);
+		}
+	}
+
+	/**
+	 * Writes the objects of a page, without opening or closing the page.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param page
+	 *            index of the page
+	 * @throws IOException
+	 */
+	@Override
+	public void writePage(IpeWriter w, int page) throws IOException {
+		writeLayers(w, page);
+	}
+
+	private void writeLayers(IpeBackend w, int page) throws IOException {
+		int[] ids = pages.get(page);
+		for (int l = 0; l < ids.length; l++) {
+			if (ids.length > 1)
+				w.setLayer(layerName[ids[l]]);
+			for (int id = layerHead[ids[l]]; id >= 0; id = next[id])
+				writeObject(w, id);
+		}
+	}
+
+	/**
+	 * Returns the names of the layers of a page.
+	 *
+	 * @param page
+	 *            index of the page
+	 * @return
+	 */
+	@Override
+	public String[] getLayerNames(int page) {
+		int[] ids = pages.get(page);
+		String[] names = new String[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			names[i] = layerName[ids[i]];
+		return names;
+	}
+
+	/**
+	 * Writes a single object.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param id
+	 *            id of the object
+	 * @throws IOException
+	 */
+	public void writeObject(IpeBackend w, int id) throws IOException {
+		checkId(id);
+		String[] a = attrs.get(attr[id]);
+		int c = coordStart[id];
+		double[] v = coords;
+		switch (kind[id]) {
+		case MARK:
+			w.drawMark(v[c], v[c + 1], a[0], a[1], a[2]);
+			break;
+		case BOX:
+			w.drawBox(v[c], v[c + 1], v[c + 2], v[c + 3], a[0], a[1], a[2]);
+			break;
+		case EDGE:
+			w.drawEdge(v[c], v[c + 1], v[c + 2], v[c + 3], a[0], a[1], a[2]);
+			break;
+		case TEXT:
+			w.writeText(a[2], v[c], v[c + 1], a[0], a[1]);
+			break;
+		case CIRCLE:
+			w.drawCircle(v[c], v[c + 1], v[c + 2], a[0], a[1], a[2]);
+			break;
+		case ARC:
+			w.drawCircularArc(v[c], v[c + 1], v[c + 2], v[c + 3], v[c + 4],
+					v[c + 5], a[0], a[1], a[2]);
+			break;
+		case PATH:
+			w.drawPath(v, c / 2, getPointCount(id), a[0], a[1], a[2]);
+			break;
+		case SPLINE:
+			w.drawSpline(v, c / 2, getPointCount(id), a[0], a[1], a[2]);
+			break;
+		case SPLINEGON:
+			w.drawSplinegon(v, c / 2, getPointCount(id), a[0], a[1], a[2]);
+			break;
+		default: // removed
+		}
+	}
+
+	/**
+	 * Returns the ids of the layers of a page. The array must not be
+	 * modified.
+	 */
+	int[] getLayerIds(int page) {
+		return pages.get(page);
+	}
+
+	String getLayerName(int layer) {
+		return layerName[layer];
+	}
+
+	/**
+	 * Returns the index of the interned attributes of an object; objects
+	 * with equal attributes have equal indices.
+	 */
+	int getAttributeIndex(int id) {
+		return attr[id];
+	}
+
+	/**
+	 * Returns the first object of a layer, or -1 if it is empty. Removed
+	 * objects stay in their layer.
+	 */
+	int firstObject(int layer) {
+		return layerHead[layer];
+	}
+
+	/**
+	 * Returns the object following id in its layer, or -1.
+	 */
+	int nextObject(int id) {
+		return next[id];
+	}
+
+	/**
+	 * Returns the shared coordinate array; object id starts at
+	 * getCoordinateStart(id). The array is replaced when the scene grows.
+	 */
+	double[] getCoordinates() {
+		return coords;
+	}
+
+	int getCoordinateStart(int id) {
+		return coordStart[id];
+	}
+
+	private int newObject(byte k, int a, int coordCount) {
+		if (size == kind.length) {
+			int n = size + (size >> 1);
+			kind = Arrays.copyOf(kind, n);
+			attr = Arrays.copyOf(attr, n);
+			next = Arrays.copyOf(next, n);
+			coordStart = Arrays.copyOf(coordStart, n + 1);
+		}
+		int start = coordStart[size];
+		// paths are written as packed points, so they start at an even
+		// index; only a circle, with its single radius, ends at an odd one
+		if ((start & 1) != 0 && (k == PATH || k == SPLINE || k == SPLINEGON))
+			coordStart[size] = ++start;
+		if (start + coordCount > coords.length)
+			coords = Arrays.copyOf(coords,
+					Math.max(start + coordCount, coords.length + (coords.length >> 1)));
+		int id = size++;
+		kind[id] = k;
+		attr[id] = a;
+		next[id] = -1;
+		coordStart[size] = start + coordCount;
+		if (layerTail[currentLayer] < 0)
+			layerHead[currentLayer] = id;
+		else
+			next[layerTail[currentLayer]] = id;
+		layerTail[currentLayer] = id;
+		return id;
+	}
+
+	/**
+	 * Stores a point at coordinate index c and returns the index after it.
+	 */
+	private int put(int c, double x, double y) {
+		coords[c] = x;
+		coords[c + 1] = y;
+		return c + 2;
+	}
+
+	/**
+	 * Interns three attributes. Consecutive objects usually have the same
+	 * attributes, so the last result is remembered.
+	 */
+	private int intern(String a0, String a1, String a2) {
+		if (lastAttr >= 0) {
+			String[] last = attrs.get(lastAttr);
+			if (last[0].equals(a0) && last[1].equals(a1) && last[2].equals(a2))
+				return lastAttr;
+		}
+		lastAttr = intern(new String[] { a0, a1, a2 });
+		return lastAttr;
+	}
+
+	private int intern(String[] values) {
+		for (String v : values)
+			if (v == null)
+				throw new NullPointerException("attribute");
+		List<String> key = Arrays.asList(values);
+		Integer index = attrIndex.get(key);
+		if (index == null) {
+			index = attrs.size();
+			attrs.add(values);
+			attrIndex.put(key, index);
+		}
+		return index;
+	}
+
+	private static int colorIndex(byte k) {
+		return k == MARK ? 1 : 0;
+	}
+
+	private int coordIndex(int id, int point) {
+		if (point < 0 || point >= getPointCount(id))
+			throw new IndexOutOfBoundsException("object " + id
+					+ " has no point " + point);
+		return coordStart[id] + 2 * point;
+	}
+
+	private void checkKind(int id, byte k) {
+		checkId(id);
+		if (kind[id] != k)
+			throw new IllegalArgumentException("object " + id
+					+ " has kind " + kind[id]);
+	}
+
+	private void checkId(int id) {
+		if (id < 0 || id >= size)
+			throw new IndexOutOfBoundsException("no object " + id);
+	}
+}
@@ -0,0 +1,367 @@
+package de.uniwue.smooth.draw;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A spatial index of the objects of one page of an IpeScene, for writing only
+ * the objects that may be visible in a viewport, or for cutting a large page
+ * into tiles.
+ *
+ * The index is a uniform grid over the bounding box of the page. Every
+ * object is entered into all cells that its bounding box overlaps; cells and
+ * their entries are stored in two int arrays in compressed row form. A query
+ * visits the cells overlapping the viewport, so its cost depends on the
+ * number of objects nearby and not on the size of the page.
+ *
+ * The index is a snapshot: objects that are added, moved or removed after it
+ * was built are not seen. Query results are written in the order of the
+ * page, layer by layer, so the stacking of the objects is kept.
+ */
+public class IpeSceneIndex {
+
+	/** Upper bound for the number of cells. */
+	private static final int MAX_CELLS = 1 << 22;
+
+	private final IpeScene scene;
+	private final String[] layerNames;
+
+	/** The objects in page order, and the index of their layer in the page. */
+	private final int[] objects;
+	private final int[] layerOf;
+	/** Bounding boxes of the objects: xMin, yMin, xMax, yMax, ... */
+	private final double[] boxes;
+
+	private final double x0, y0, cellSize;
+	private final int columns, rows;
+	/** Entries of cell r * columns + c, in compressed row form. */
+	private final int[] cellStart;
+	private final int[] cellItems;
+
+	/** Objects already reported by the current query have mark == stamp. */
+	private final int[] mark;
+	private int stamp = 0;
+
+	/**
+	 * Builds the index of a page with a cell size chosen from the number and
+	 * the average size of the objects.
+	 *
+	 * @param scene
+	 *            the scene
+	 * @param page
+	 *            index of the page
+	 */
+	public IpeSceneIndex(IpeScene scene, int page) {
+		this(scene, page, 0);
+	}
+
+	/**
+	 * Builds the index of a page.
+	 *
+	 * @param scene
+	 *            the scene
+	 * @param page
+	 *            index of the page
+	 * @param cellSize
+	 *            side length of the cells, or 0 to choose it automatically
+	 */
+	public IpeSceneIndex(IpeScene scene, int page, double cellSize) {
+		if (!(cellSize >= 0))
+			throw new IllegalArgumentException("invalid cell size: "
+					+ cellSize);
+		this.scene = scene;
+		int[] layers = scene.getLayerIds(page);
+		layerNames = scene.getLayerNames(page);
+
+		// collect the objects in page order
+		int n = 0;
+		for (int l = 0; l < layers.length; l++)
+			for (int id = scene.firstObject(layers[l]); id >= 0; id = scene
+					.nextObject(id))
+				if (scene.getKind(id) != IpeScene.REMOVED)
+					n++;
+		objects = new int[n];
+		layerOf = new int[n];
+		boxes = new double[4 * n];
+		mark = new int[n];
+		double[] box = new double[4];
+		double xMin = Double.POSITIVE_INFINITY, yMin = xMin;
+		double xMax = Double.NEGATIVE_INFINITY, yMax = xMax;
+		int k = 0;
+		for (int l = 0; l < layers.length; l++) {
+			for (int id = scene.firstObject(layers[l]); id >= 0; id = scene
+					.nextObject(id)) {
+				if (scene.getKind(id) == IpeScene.REMOVED)
+					continue;
+				scene.getBoundingBox(id, box);
+				objects[k] = id;
+				layerOf[k] = l;
+				System.arraycopy(box, 0, boxes, 4 * k, 4);
+				xMin = Math.min(xMin, box[0]);
+				yMin = Math.min(yMin, box[1]);
+				xMax = Math.max(xMax, box[2]);
+				yMax = Math.max(yMax, box[3]);
+				k++;
+			}
+		}
+		if (n == 0) {
+			xMin = yMin = xMax = yMax = 0;
+		}
+		double width = xMax - xMin, height = yMax - yMin;
+		if (cellSize == 0) {
+			// about one object per cell, but large objects should not
+			// overlap too many cells
+			double extent = 0;
+			for (int i = 0; i < n; i++)
+				extent += Math.max(boxes[4 * i + 2] - boxes[4 * i],
+						boxes[4 * i + 3] - boxes[4 * i + 1]);
+			cellSize = Math.max(Math.sqrt(width * height / Math.max(1, n)),
+					extent / Math.max(1, n));
+		}
+		if (!(cellSize > 0))
+			cellSize = Math.max(Math.max(width, height) / Math.max(1, n), 1);
+		while ((Math.floor(width / cellSize) + 1)
+				* (Math.floor(height / cellSize) + 1) > MAX_CELLS)
+			cellSize *= 2;
+		this.x0 = xMin;
+		this.y0 = yMin;
+		this.cellSize = cellSize;
+		columns = (int) (width / cellSize) + 1;
+		rows = (int) (height / cellSize) + 1;
+
+		// count the entries per cell, then fill them in
+		cellStart = new int[columns * rows + 1];
+		long entries = 0;
+		for (int i = 0; i < n; i++) {
+			int c1 = column(boxes[4 * i]), c2 = column(boxes[4 * i + 2]);
+			int r1 = row(boxes[4 * i + 1]), r2 = row(boxes[4 * i + 3]);
+			for (int r = r1; r <= r2; r++)
+				for (int c = c1; c <= c2; c++)
+					cellStart[r * columns + c + 1]++;
+			entries += (long) (c2 - c1 + 1) * (r2 - r1 + 1);
+		}
+		if (entries > Integer.MAX_VALUE - 8)
+			throw new IllegalStateException("too many index entries: "
+					+ entries + "; use larger cells");
+		for (int c = 0; c < columns * rows; c++)
+			cellStart[c + 1] += cellStart[c];
+		cellItems = new int[(int) entries];
+		int[] fill = Arrays.copyOf(cellStart, columns * rows);
+		for (int i = 0; i < n; i++) {
+			int c1 = column(boxes[4 * i]), c2 = column(boxes[4 * i + 2]);
+			int r1 = row(boxes[4 * i + 1]), r2 = row(boxes[4 * i + 3]);
+			for (int r = r1; r <= r2; r++)
+				for (int c = c1; c <= c2; c++)
+					cellItems[fill[r * columns + c]++] = i;
+		}
+	}
+
+	/**
+	 * Returns the bounding box {xMin, yMin, xMax, yMax} of all objects of the
+	 * page.
+	 *
+	 * @return
+	 */
+	public double[] getBounds() {
+		if (objects.length == 0)
+			return new double[4];
+		double[] b = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for (int i = 0; i < objects.length; i++) {
+			b[0] = Math.min(b[0], boxes[4 * i]);
+			b[1] = Math.min(b[1], boxes[4 * i + 1]);
+			b[2] = Math.max(b[2], boxes[4 * i + 2]);
+			b[3] = Math.max(b[3], boxes[4 * i + 3]);
+		}
+		return b;
+	}
+
+	/**
+	 * Returns the ids of the objects whose bounding boxes intersect a
+	 * rectangle, in page order.
+	 *
+	 * @param xMin
+	 *            left-most x-coordinate
+	 * @param yMin
+	 *            bottom-most y-coordinate
+	 * @param xMax
+	 *            right-most x-coordinate
+	 * @param yMax
+	 *            top-most y-coordinate
+	 * @return
+	 */
+	public int[] query(double xMin, double yMin, double xMax, double yMax) {
+		int[] found = find(xMin, yMin, xMax, yMax);
+		for (int i = 0; i < found.length; i++)
+			found[i] = objects[found[i]];
+		return found;
+	}
+
+	/**
+	 * Writes the objects of the page that may be visible in the viewport,
+	 * without opening or closing the page.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param viewport
+	 *            the viewport
+	 * @throws IOException
+	 */
+	public void writePage(IpeWriter w, IpeViewport viewport)
+			throws IOException {
+		double m = viewport.getMargin();
+		int[] found = find(viewport.getXMin() - m, viewport.getYMin() - m,
+				viewport.getXMax() + m, viewport.getYMax() + m);
+		// the layer of the writer is unknown, so it is set for the first object
+		int layer = -1;
+		for (int i : found) {
+			if (layerOf[i] != layer) {
+				layer = layerOf[i];
+				w.setLayer(layerNames[layer]);
+			}
+			viewport.writeObject(w, scene, objects[i]);
+		}
+	}
+
+	/**
+	 * Writes a document with the objects of the page that may be visible in
+	 * the viewport. The writer must be fresh; it has to be closed by the
+	 * caller.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param viewport
+	 *            the viewport
+	 * @throws IOException
+	 */
+	public void write(IpeWriter w, IpeViewport viewport) throws IOException {
+		w.writeHeader(layerNames);
+		writePage(w, viewport);
+	}
+
+	/**
+	 * Cuts the bounding box of the page into tiles of the given size, starting
+	 * at its top left corner, and returns a viewport for every tile in reading
+	 * order. Each viewport translates its tile so that the lower left corner
+	 * of the tile is at the origin of the page.
+	 *
+	 * @param tileWidth
+	 *            width of a tile
+	 * @param tileHeight
+	 *            height of a tile
+	 * @return
+	 */
+	public List<IpeViewport> getTiles(double tileWidth, double tileHeight) {
+		if (!(tileWidth > 0 && tileHeight > 0))
+			throw new IllegalArgumentException("invalid tile size: "
+					+ tileWidth + " x " + tileHeight);
+		double[] b = getBounds();
+		int tileColumns = Math.max(1,
+				(int) Math.ceil((b[2] - b[0]) / tileWidth));
+		int tileRows = Math.max(1, (int) Math.ceil((b[3] - b[1]) / tileHeight));
+		List<IpeViewport> tiles = new ArrayList<IpeViewport>();
+		for (int r = tileRows - 1; r >= 0; r--) {
+			for (int c = 0; c < tileColumns; c++) {
+				double x = b[0] + c * tileWidth, y = b[1] + r * tileHeight;
+				IpeViewport tile = new IpeViewport(x, y, x + tileWidth, y
+						+ tileHeight);
+				tile.setTranslation(-x, -y);
+				tiles.add(tile);
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * Writes a document with one page for every non-empty tile of
+	 * getTiles(tileWidth, tileHeight). The writer must be fresh; it has to be
+	 * closed by the caller. The page frame of IpeDraw is 1000 by 1000 points.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param tileWidth
+	 *            width of a tile
+	 * @param tileHeight
+	 *            height of a tile
+	 * @return number of pages written
+	 * @throws IOException
+	 */
+	public int writeTiles(IpeWriter w, double tileWidth, double tileHeight)
+			throws IOException {
+		int pages = 0;
+		for (IpeViewport tile : getTiles(tileWidth, tileHeight)) {
+			if (isEmpty(tile))
+				continue;
+			if (pages++ == 0)
+				w.writeHeader(layerNames);
+			else
+				w.newPage(layerNames);
+			writePage(w, tile);
+		}
+		if (pages == 0)
+			w.writeHeader(layerNames);
+		return pages;
+	}
+
+	/**
+	 * Tests whether no object may be visible in the viewport.
+	 *
+	 * @param viewport
+	 *            the viewport
+	 * @return
+	 */
+	public boolean isEmpty(IpeViewport viewport) {
+		double m = viewport.getMargin();
+		return find(viewport.getXMin() - m, viewport.getYMin() - m,
+				viewport.getXMax() + m, viewport.getYMax() + m).length == 0;
+	}
+
+	/**
+	 * Returns the positions in objects of the objects whose bounding boxes
+	 * intersect the rectangle, in increasing order.
+	 */
+	private int[] find(double xMin, double yMin, double xMax, double yMax) {
+		if (objects.length == 0 || xMin > x0 + columns * cellSize
+				|| yMin > y0 + rows * cellSize || xMax < x0 || yMax < y0)
+			return new int[0];
+		if (++stamp == 0) {
+			Arrays.fill(mark, 0);
+			stamp = 1;
+		}
+		int c1 = column(xMin), c2 = column(xMax);
+		int r1 = row(yMin), r2 = row(yMax);
+		int[] found = new int[16];
+		int count = 0;
+		for (int r = r1; r <= r2; r++) {
+			for (int c = c1; c <= c2; c++) {
+				int cell = r * columns + c;
+				for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					int i = cellItems[k];
+					if (mark[i] == stamp)
+						continue;
+					mark[i] = stamp;
+					if (boxes[4 * i] > xMax || boxes[4 * i + 2] < xMin
+							|| boxes[4 * i + 1] > yMax
+							|| boxes[4 * i + 3] < yMin)
+						continue;
+					if (count == found.length)
+						found = Arrays.copyOf(found, 2 * count);
+					found[count++] = i;
+				}
+			}
+		}
+		found = Arrays.copyOf(found, count);
+		Arrays.sort(found);
+		return found;
+	}
+
+	private int column(double x) {
+		return Math.max(0, Math.min(columns - 1, (int) ((x - x0) / cellSize)));
+	}
+
+	private int row(double y) {
+		return Math.max(0, Math.min(rows - 1, (int) ((y - y0) / cellSize)));
+	}
+}
@@ -0,0 +1,147 @@
+package de.uniwue.smooth.draw;
+
+import java.util.Arrays;
+
+/**
+ * Simplification of polylines with the Douglas-Peucker algorithm. Points are
+ * removed as long as the simplified polyline stays within the given tolerance
+ * of the original one; the first and the last point are always kept.
+ *
+ * Long polylines are simplified in chunks of CHUNK_POINTS points whose end
+ * points are kept. This bounds the working memory and the worst-case running
+ * time, and lets IpeWriter stream the result.
+ *
+ * IpeWriter.setSimplificationTolerance() applies the simplification to all
+ * paths, splines and splinegons written.
+ */
+public final class IpeSimplifier {
+
+	/**
+	 * Number of points that are simplified together.
+	 */
+	public static final int CHUNK_POINTS = 1 << 16;
+
+	private IpeSimplifier() {
+	}
+
+	/**
+	 * Simplifies a polyline.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param tolerance
+	 *            largest allowed distance of a removed point from the
+	 *            simplified polyline
+	 * @return {x, y}, the coordinates of the remaining points
+	 */
+	public static double[][] simplify(double[] x, double[] y, double tolerance) {
+		int[] kept = new int[x.length];
+		int k = simplify(x, y, 0, x.length, tolerance, kept);
+		double[] sx = new double[k];
+		double[] sy = new double[k];
+		for (int i = 0; i < k; i++) {
+			sx[i] = x[kept[i]];
+			sy[i] = y[kept[i]];
+		}
+		return new double[][] { sx, sy };
+	}
+
+	/**
+	 * Simplifies the polyline through the points offset, ..., offset + length
+	 * - 1 of the given arrays.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param tolerance
+	 *            largest allowed distance of a removed point from the
+	 *            simplified polyline
+	 * @param kept
+	 *            receives the indices (in x and y) of the remaining points in
+	 *            increasing order; needs room for length entries
+	 * @return number of remaining points
+	 */
+	public static int simplify(double[] x, double[] y, int offset, int length,
+			double tolerance, int[] kept) {
+		IpeDraw.checkPoints(x.length, offset, y.length, offset, 1, length);
+		if (kept.length < length)
+			throw new IllegalArgumentException("kept is too short");
+		int count = 0;
+		int[] stack = new int[64];
+		boolean[] keep = new boolean[Math.min(length, CHUNK_POINTS)];
+		for (int start = 0; start < length - 1; start += CHUNK_POINTS - 1) {
+			int end = Math.min(length - 1, start + CHUNK_POINTS - 1);
+			stack = simplifyChunk(x, y, offset + start, offset + end,
+					tolerance * tolerance, keep, stack);
+			// the first point of a chunk is the last of the previous one
+			for (int i = start == 0 ? 0 : 1; i <= end - start; i++)
+				if (keep[i])
+					kept[count++] = offset + start + i;
+		}
+		if (length == 1)
+			kept[count++] = offset;
+		return count;
+	}
+
+	/**
+	 * Runs Douglas-Peucker on the points first, ..., last and sets keep[i -
+	 * first] for the remaining points. Returns the (possibly grown) stack.
+	 */
+	static int[] simplifyChunk(double[] x, double[] y, int first, int last,
+			double sqTolerance, boolean[] keep, int[] stack) {
+		Arrays.fill(keep, 0, last - first + 1, false);
+		keep[0] = true;
+		keep[last - first] = true;
+		int top = 0;
+		stack[top++] = first;
+		stack[top++] = last;
+		while (top > 0) {
+			int b = stack[--top];
+			int a = stack[--top];
+			double ax = x[a], ay = y[a];
+			double dx = x[b] - ax, dy = y[b] - ay;
+			double len2 = dx * dx + dy * dy;
+			double max = -1;
+			int index = -1;
+			for (int i = a + 1; i < b; i++) {
+				double px = x[i] - ax, py = y[i] - ay;
+				double d;
+				if (len2 == 0) {
+					d = px * px + py * py;
+				} else {
+					double t = (px * dx + py * dy) / len2;
+					if (t <= 0) {
+						d = px * px + py * py;
+					} else if (t >= 1) {
+						double qx = x[i] - x[b], qy = y[i] - y[b];
+						d = qx * qx + qy * qy;
+					} else {
+						double c = px * dy - py * dx;
+						d = c * c / len2;
+					}
+				}
+				if (d > max) {
+					max = d;
+					index = i;
+				}
+			}
+			if (index >= 0 && max > sqTolerance) {
+				keep[index - first] = true;
+				if (top + 4 > stack.length)
+					stack = Arrays.copyOf(stack, 2 * stack.length);
+				stack[top++] = a;
+				stack[top++] = index;
+				stack[top++] = index;
+				stack[top++] = b;
+			}
+		}
+		return stack;
+	}
+}
@@ -0,0 +1,627 @@
+package de.uniwue.smooth.draw;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes drawings as SVG, one file per page, through the same methods as
+ * IpeWriter. This gives previews that browsers and image viewers can show
+ * without Ipe or LaTeX.
+ *
+ * The pages are written to the files name-1.svg, name-2.svg, ... in a
+ * directory while they are drawn; only the page being drawn is buffered.
+ * Coordinates are those of Ipe: the objects are put into a group that flips
+ * the y-axis, so they are written without conversion.
+ *
+ * The named colors, pens and dash styles of getIpeConf(), or of the palette
+ * set by setPalette(), are mapped to SVG attributes; absolute values are
+ * accepted as well. Marks are drawn as copies of the symbols of the Ipe
+ * style sheet. Splines are converted to cubic Bezier curves, which matches
+ * the splines of Ipe closely but not exactly. Text is not typeset: labels
+ * show their LaTeX source in a serif font of the corresponding size. Each
+ * layer becomes a group with a data-layer attribute.
+ *
+ * The writer is not thread-safe.
+ */
+public class IpeSvgWriter implements IpeBackend {
+
+	/**
+	 * Number of points of a path that are formatted between two checks of
+	 * the buffer size.
+	 */
+	private static final int CHUNK_POINTS = 256;
+
+	private static final String[][] SYMBOL_SIZES = { { "normal", "3" },
+			{ "large", "5" }, { "small", "2" }, { "tiny", "1.1" } };
+
+	private static final String[][] TEXT_SIZES = { { "normal", "10" },
+			{ "large", "12" }, { "Large", "14.4" }, { "LARGE", "17.28" },
+			{ "huge", "20.74" }, { "Huge", "24.88" }, { "small", "9" },
+			{ "footnote", "8" }, { "tiny", "5" } };
+
+	/** The mark symbols of the Ipe style sheet, drawn in currentColor. */
+	private static final String MARK_DEFS = "<defs>\n"
+			+ "<circle id=\"mark-disk\" r=\"0.6\" fill=\"currentColor\"/>\n"
+			+ "<path id=\"mark-circle\" fill=\"currentColor\" fill-rule=\"evenodd\" d=\"M0.6 0A0.6 0.6 0 0 0 -0.6 0A0.6 0.6 0 0 0 0.6 0ZM0.4 0A0.4 0.4 0 0 0 -0.4 0A0.4 0.4 0 0 0 0.4 0Z\"/>\n"
+			+ "<g id=\"mark-fdisk\"><circle r=\"0.5\" fill=\"white\"/><use xlink:href=\"#mark-circle\"/></g>\n"
+			+ "<path id=\"mark-box\" fill=\"currentColor\" fill-rule=\"evenodd\" d=\"M-0.6 -0.6H0.6V0.6H-0.6ZM-0.4 -0.4H0.4V0.4H-0.4Z\"/>\n"
+			+ "<rect id=\"mark-square\" x=\"-0.6\" y=\"-0.6\" width=\"1.2\" height=\"1.2\" fill=\"currentColor\"/>\n"
+			+ "<g id=\"mark-fsquare\"><rect x=\"-0.5\" y=\"-0.5\" width=\"1\" height=\"1\" fill=\"white\"/><use xlink:href=\"#mark-box\"/></g>\n"
+			+ "<g id=\"mark-cross\" fill=\"currentColor\"><path d=\"M-0.43 -0.57L0.57 0.43L0.43 0.57L-0.57 -0.43Z\"/><path d=\"M-0.43 0.57L0.57 -0.43L0.43 -0.57L-0.57 0.43Z\"/></g>\n"
+			+ "</defs>\n";
+
+	private final Path directory;
+	private final String name;
+	private final List<Path> pageFiles = new ArrayList<Path>();
+	private Writer out = null;
+	private final int bufferSize = IpeWriter.DEFAULT_BUFFER_SIZE;
+	private final StringBuilder buf = new StringBuilder(
+			IpeWriter.DEFAULT_BUFFER_SIZE + 256);
+	private boolean headerWritten = false;
+	private boolean closed = false;
+
+	/** Layer of the next object, and layer whose group is open. */
+	private String currentLayer = null;
+	private String openLayer = null;
+
+	private double pageWidth = 1000, pageHeight = 1000;
+
+	private IpePalette palette = new IpePalette();
+	private IpeNumberFormat numberFormat = IpeDraw.getNumberFormat();
+
+	// SVG attributes of colors and of color, pen and dash combinations
+	private final Map<String, String> svgColors = new HashMap<String, String>();
+	private final Map<List<String>, String> svgStrokes = new HashMap<List<String>, String>();
+
+	/**
+	 * Creates a writer for the pages name-1.svg, name-2.svg, ... in a
+	 * directory. Existing files are replaced.
+	 *
+	 * @param directory
+	 *            the directory
+	 * @param name
+	 *            the common beginning of the file names
+	 */
+	public IpeSvgWriter(Path directory, String name) {
+		if (directory == null)
+			throw new NullPointerException("directory");
+		if (name == null)
+			throw new NullPointerException("name");
+		this.directory = directory;
+		this.name = name;
+	}
+
+	/**
+	 * Sets the palette that resolves the names of colors, pens and dash
+	 * styles, for example the palette of the IpeWriter that draws the same
+	 * objects. By default, a writer has a palette with the colors, pens and
+	 * dash styles of getIpeConf().
+	 *
+	 * @param palette
+	 *            the palette
+	 */
+	public void setPalette(IpePalette palette) {
+		if (palette == null)
+			throw new NullPointerException("palette");
+		this.palette = palette;
+		svgColors.clear();
+		svgStrokes.clear();
+	}
+
+	/**
+	 * Returns the palette.
+	 *
+	 * @return
+	 */
+	public IpePalette getPalette() {
+		return palette;
+	}
+
+	/**
+	 * Sets the format of coordinates. The default is the format of IpeDraw
+	 * at the time the writer was created.
+	 *
+	 * @param format
+	 *            the number format
+	 */
+	public void setNumberFormat(IpeNumberFormat format) {
+		if (format == null)
+			throw new NullPointerException("format");
+		numberFormat = format;
+	}
+
+	/**
+	 * Returns the format of coordinates.
+	 *
+	 * @return
+	 */
+	public IpeNumberFormat getNumberFormat() {
+		return numberFormat;
+	}
+
+	/**
+	 * Sets the size of the pages opened from now on. The default is the
+	 * paper of getIpeConf(), 1000 x 1000.
+	 *
+	 * @param width
+	 *            width in points
+	 * @param height
+	 *            height in points
+	 */
+	public void setPageSize(double width, double height) {
+		if (!(width > 0 && height > 0) || Double.isInfinite(width)
+				|| Double.isInfinite(height))
+			throw new IllegalArgumentException("invalid page size: " + width
+					+ "x" + height);
+		pageWidth = width;
+		pageHeight = height;
+	}
+
+	/**
+	 * Returns the files of the pages opened so far.
+	 *
+	 * @return
+	 */
+	public List<Path> getPageFiles() {
+		return Collections.unmodifiableList(pageFiles);
+	}
+
+	/**
+	 * Opens the first page with the single layer "alpha".
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void writeHeader() throws IOException {
+		writeHeader("alpha");
+	}
+
+	/**
+	 * Opens the first page with the given layers. Objects go into the first
+	 * layer until setLayer() is called.
+	 *
+	 * @param layers
+	 *            names of the layers of the first page
+	 * @throws IOException
+	 */
+	@Override
+	public void writeHeader(String... layers) throws IOException {
+		ensureOpen();
+		if (headerWritten)
+			throw new IllegalStateException("header already written");
+		headerWritten = true;
+		openPage(layers);
+	}
+
+	/**
+	 * Finishes the file of the current page and opens a new page with the
+	 * single layer "alpha".
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void newPage() throws IOException {
+		newPage("alpha");
+	}
+
+	/**
+	 * Finishes the file of the current page and opens a new page with the
+	 * given layers. Objects go into the first layer until setLayer() is
+	 * called.
+	 *
+	 * @param layers
+	 *            names of the layers of the new page
+	 * @throws IOException
+	 */
+	@Override
+	public void newPage(String... layers) throws IOException {
+		ensureOpen();
+		headerWritten = true;
+		if (out != null)
+			closePage();
+		openPage(layers);
+	}
+
+	/**
+	 * Puts the following objects into the given layer of the current page.
+	 *
+	 * @param layer
+	 *            name of a layer declared for the current page
+	 */
+	@Override
+	public void setLayer(String layer) {
+		ensureOpen();
+		if (layer == null)
+			throw new NullPointerException("layer");
+		currentLayer = layer;
+	}
+
+	@Override
+	public void drawMark(double x, double y, String shape, String color,
+			String size) throws IOException {
+		beginObject();
+		double s = lookup(SYMBOL_SIZES, size, 3);
+		buf.append("<use xlink:href=\"#mark-").append(shape)
+				.append("\" transform=\"matrix(");
+		append(s).append(" 0 0 ");
+		append(s).append(' ');
+		append(x).append(' ');
+		append(y).append(")\" color=\"").append(svgColor(color))
+				.append("\"/>\n");
+		endObject();
+	}
+
+	@Override
+	public void drawBox(double x1, double y1, double x2, double y2,
+			String color, String pen, String dash) throws IOException {
+		beginObject();
+		buf.append("<path d=\"M");
+		append(x1).append(' ');
+		append(y1).append('H');
+		append(x2).append('V');
+		append(y2).append('H');
+		append(x1).append("Z\"");
+		buf.append(svgStroke(color, pen, dash)).append("/>\n");
+		endObject();
+	}
+
+	@Override
+	public void drawPath(double[] xy, int offset, int length, String color,
+			String pen, String dash) throws IOException {
+		checkRange(xy, offset, length);
+		beginObject();
+		buf.append("<path d=\"");
+		for (int i = 0; i < length; i++) {
+			buf.append(i == 0 ? "M" : i == 1 ? "L" : " ");
+			append(xy[2 * (offset + i)]).append(' ');
+			append(xy[2 * (offset + i) + 1]);
+			if (i % CHUNK_POINTS == CHUNK_POINTS - 1)
+				drainPart();
+		}
+		buf.append('"').append(svgStroke(color, pen, dash)).append("/>\n");
+		endObject();
+	}
+
+	@Override
+	public void drawEdge(double x1, double y1, double x2, double y2,
+			String color, String pen, String dash) throws IOException {
+		beginObject();
+		buf.append("<path d=\"M");
+		append(x1).append(' ');
+		append(y1).append('L');
+		append(x2).append(' ');
+		append(y2).append('"');
+		buf.append(svgStroke(color, pen, dash)).append("/>\n");
+		endObject();
+	}
+
+	@Override
+	public void writeText(String text, double x, double y, String color,
+			String size) throws IOException {
+		beginObject();
+		buf.append("<text transform=\"matrix(1 0 0 -1 ");
+		append(x).append(' ');
+		append(y).append(")\" fill=\"").append(svgColor(color))
+				.append("\" font-size=\"");
+		append(lookup(TEXT_SIZES, size, 10)).append("\">").append(text)
+				.append("</text>\n");
+		endObject();
+	}
+
+	@Override
+	public void drawCircle(double x, double y, double radius, String color,
+			String pen, String dash) throws IOException {
+		beginObject();
+		buf.append("<circle cx=\"");
+		append(x).append("\" cy=\"");
+		append(y).append("\" r=\"");
+		append(radius).append('"');
+		buf.append(svgStroke(color, pen, dash)).append("/>\n");
+		endObject();
+	}
+
+	@Override
+	public void drawCircularArc(double xCenter, double yCenter, double xStart,
+			double yStart, double xEnd, double yEnd, String color, String pen,
+			String dash) throws IOException {
+		beginObject();
+		double r = Math.hypot(xStart - xCenter, yStart - yCenter);
+		double angle = Math.atan2(yEnd - yCenter, xEnd - xCenter)
+				- Math.atan2(yStart - yCenter, xStart - xCenter);
+		if (angle <= 0)
+			angle += 2 * Math.PI;
+		buf.append("<path d=\"M");
+		append(xStart).append(' ');
+		append(yStart);
+		// the y-axis points up, so a positive sweep is counterclockwise
+		if (xStart == xEnd && yStart == yEnd) {
+			appendArc(r, false, 2 * xCenter - xStart, 2 * yCenter - yStart);
+			appendArc(r, false, xStart, yStart);
+		} else {
+			appendArc(r, angle > Math.PI, xEnd, yEnd);
+		}
+		buf.append('"').append(svgStroke(color, pen, dash)).append("/>\n");
+		endObject();
+	}
+
+	@Override
+	public void drawSpline(double[] xy, int offset, int length, String color,
+			String pen, String dash) throws IOException {
+		checkRange(xy, offset, length);
+		beginObject();
+		buf.append("<path d=\"");
+		appendSpline(xy, offset, length, false);
+		buf.append('"').append(svgStroke(color, pen, dash)).append("/>\n");
+		endObject();
+	}
+
+	@Override
+	public void drawSplinegon(double[] xy, int offset, int length, String color,
+			String pen, String dash) throws IOException {
+		checkRange(xy, offset, length);
+		beginObject();
+		buf.append("<path d=\"");
+		appendSpline(xy, offset, length, true);
+		buf.append('"').append(svgStroke(color, pen, dash)).append("/>\n");
+		endObject();
+	}
+
+	/**
+	 * Finishes the file of the current page. Closing a closed writer has no
+	 * effect.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		if (out != null)
+			closePage();
+	}
+
+	private void openPage(String[] layers) throws IOException {
+		if (layers.length == 0)
+			throw new IllegalArgumentException("a page needs a layer");
+		Path file = directory.resolve(name + "-" + (pageFiles.size() + 1)
+				+ ".svg");
+		out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+		pageFiles.add(file);
+		currentLayer = layers[0];
+		openLayer = null;
+		buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		buf.append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"");
+		append(pageWidth).append("\" height=\"");
+		append(pageHeight).append("\" viewBox=\"0 0 ");
+		append(pageWidth).append(' ');
+		append(pageHeight).append("\">\n");
+		buf.append(MARK_DEFS);
+		buf.append("<g transform=\"matrix(1 0 0 -1 0 ");
+		append(pageHeight).append(")\" font-family=\"serif\">\n");
+	}
+
+	private void closePage() throws IOException {
+		try {
+			if (openLayer != null)
+				buf.append("</g>\n");
+			buf.append("</g>\n</svg>\n");
+			flushBuffer();
+		} finally {
+			Writer w = out;
+			out = null;
+			openLayer = null;
+			w.close();
+		}
+	}
+
+	/**
+	 * Must be called before an object is appended to the buffer. Opens the
+	 * first page if there is none, and the group of the current layer.
+	 */
+	private void beginObject() throws IOException {
+		ensureOpen();
+		if (out == null) {
+			headerWritten = true;
+			openPage(new String[] { "alpha" });
+		}
+		if (!currentLayer.equals(openLayer)) {
+			if (openLayer != null)
+				buf.append("</g>\n");
+			buf.append("<g data-layer=\"").append(currentLayer)
+					.append("\">\n");
+			openLayer = currentLayer;
+		}
+	}
+
+	private void endObject() throws IOException {
+		drainPart();
+	}
+
+	private void drainPart() throws IOException {
+		if (buf.length() >= bufferSize)
+			flushBuffer();
+	}
+
+	private void flushBuffer() throws IOException {
+		out.append(buf);
+		buf.setLength(0);
+	}
+
+	private void ensureOpen() {
+		if (closed)
+			throw new IllegalStateException("writer is closed");
+	}
+
+	private StringBuilder append(double v) {
+		return numberFormat.append(buf, v);
+	}
+
+	private void appendArc(double r, boolean large, double x, double y) {
+		buf.append('A');
+		append(r).append(' ');
+		append(r).append(large ? " 0 1 1 " : " 0 0 1 ");
+		append(x).append(' ');
+		append(y);
+	}
+
+	/**
+	 * Appends a uniform cubic B-spline as Bezier curves. An open spline
+	 * repeats its end points three times, so that it starts and ends there
+	 * like the splines of Ipe; a closed one wraps around.
+	 */
+	private void appendSpline(double[] xy, int offset, int n, boolean cyclic)
+			throws IOException {
+		if (n == 0)
+			return;
+		int segments = cyclic ? n : n + 1;
+		for (int k = 0; k < segments; k++) {
+			int b0 = splinePoint(offset, n, k, cyclic);
+			int b1 = splinePoint(offset, n, k + 1, cyclic);
+			int b2 = splinePoint(offset, n, k + 2, cyclic);
+			int b3 = splinePoint(offset, n, k + 3, cyclic);
+			if (k == 0) {
+				buf.append('M');
+				append((xy[b0] + 4 * xy[b1] + xy[b2]) / 6).append(' ');
+				append((xy[b0 + 1] + 4 * xy[b1 + 1] + xy[b2 + 1]) / 6);
+				buf.append('C');
+			} else {
+				buf.append(' ');
+			}
+			append((2 * xy[b1] + xy[b2]) / 3).append(' ');
+			append((2 * xy[b1 + 1] + xy[b2 + 1]) / 3).append(' ');
+			append((xy[b1] + 2 * xy[b2]) / 3).append(' ');
+			append((xy[b1 + 1] + 2 * xy[b2 + 1]) / 3).append(' ');
+			append((xy[b1] + 4 * xy[b2] + xy[b3]) / 6).append(' ');
+			append((xy[b1 + 1] + 4 * xy[b2 + 1] + xy[b3 + 1]) / 6);
+			if (k % CHUNK_POINTS == CHUNK_POINTS - 1)
+				drainPart();
+		}
+		if (cyclic)
+			buf.append('Z');
+	}
+
+	/**
+	 * Returns the index in xy of the x-coordinate of the k-th B-spline
+	 * control point.
+	 */
+	private static int splinePoint(int offset, int n, int k, boolean cyclic) {
+		int i = cyclic ? k % n : Math.min(n - 1, Math.max(0, k - 2));
+		return 2 * (offset + i);
+	}
+
+	/**
+	 * Returns the fill and stroke attributes of a path, with a leading space.
+	 */
+	private String svgStroke(String color, String pen, String dash) {
+		List<String> key = Arrays.asList(color, pen, dash);
+		String attributes = svgStrokes.get(key);
+		if (attributes == null) {
+			StringBuilder sb = new StringBuilder(" fill=\"none\" stroke=\"");
+			sb.append(svgColor(color)).append("\" stroke-width=\"");
+			String width = "normal".equals(pen) ? null : palette.penValue(pen);
+			if (width == null)
+				width = parses(pen) ? pen : "0.4";
+			sb.append(width).append('"');
+			appendDash(sb, dash);
+			attributes = sb.toString();
+			svgStrokes.put(key, attributes);
+		}
+		return attributes;
+	}
+
+	/**
+	 * Returns a color as #rrggbb, or the name itself if it is neither known
+	 * nor an absolute value.
+	 */
+	private String svgColor(String color) {
+		String svg = svgColors.get(color);
+		if (svg == null) {
+			String value = "black".equals(color) ? "0" : "white"
+					.equals(color) ? "1" : palette.colorValue(color);
+			svg = hexColor(value != null ? value : color);
+			if (svg == null)
+				svg = color;
+			svgColors.put(color, svg);
+		}
+		return svg;
+	}
+
+	/**
+	 * Converts a gray or RGB value of Ipe to #rrggbb, or returns null.
+	 */
+	private static String hexColor(String value) {
+		String[] c = value.trim().split("\\s+");
+		if (c.length != 1 && c.length != 3)
+			return null;
+		int rgb = 0;
+		for (int i = 0; i < 3; i++) {
+			double v;
+			try {
+				v = Double.parseDouble(c[c.length == 1 ? 0 : i]);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if (!(v >= 0 && v <= 1))
+				return null;
+			rgb = (rgb << 8) | (int) Math.round(v * 255);
+		}
+		return "#" + Integer.toHexString(0x1000000 | rgb).substring(1);
+	}
+
+	/**
+	 * Appends the attributes of a dash style like "[4 2] 0", if it is known
+	 * and not solid.
+	 */
+	private void appendDash(StringBuilder sb, String dash) {
+		String value = "normal".equals(dash) ? null : palette.dashValue(dash);
+		if (value == null)
+			value = dash;
+		int open = value.indexOf('['), close = value.indexOf(']');
+		if (open != 0 || close < 0)
+			return;
+		String array = value.substring(1, close).trim();
+		String offset = value.substring(close + 1).trim();
+		if (array.isEmpty())
+			return;
+		sb.append(" stroke-dasharray=\"")
+				.append(array.replaceAll("\\s+", " ")).append('"');
+		if (parses(offset) && Double.parseDouble(offset) != 0)
+			sb.append(" stroke-dashoffset=\"").append(offset).append('"');
+	}
+
+	/**
+	 * Returns the value of a name in a table of names and numbers, the
+	 * number itself if the name is one, or a default.
+	 */
+	private static double lookup(String[][] table, String name, double def) {
+		for (String[] e : table)
+			if (e[0].equals(name))
+				return Double.parseDouble(e[1]);
+		return parses(name) ? Double.parseDouble(name) : def;
+	}
+
+	private static boolean parses(String number) {
+		try {
+			double v = Double.parseDouble(number);
+			return !Double.isNaN(v) && !Double.isInfinite(v);
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private static void checkRange(double[] xy, int offset, int length) {
+		if (offset < 0 || length < 0 || 2L * (offset + (long) length) > xy.length)
+			throw new IndexOutOfBoundsException("points " + offset + " to "
+					+ (offset + length) + " of " + xy.length / 2);
+	}
+}
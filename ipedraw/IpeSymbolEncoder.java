@@ -0,0 +1,292 @@
+package de.uniwue.smooth.draw;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes an IpeScene with repeated shapes replaced by symbols. Circles of the
+ * same radius, rectangles of the same size, arcs and small paths that are
+ * equal up to translation, and that have the same style, are defined once as
+ * a symbol in an additional style sheet; every occurrence is then written as
+ * a short use element with its position, like a mark.
+ *
+ * A shape becomes a symbol if it occurs at least getMinUses() times; paths,
+ * edges, splines and splinegons are considered if they have at most
+ * getMaxPoints() points. Shapes are compared by their exact coordinates
+ * relative to their first point (the center for circles and arcs, the lower
+ * left corner for rectangles).
+ *
+ * The scene has to be known completely before its header can be written, so
+ * the encoder makes two passes: one to find the repeated shapes, one to
+ * write the document.
+ */
+public class IpeSymbolEncoder {
+
+	/**
+	 * Prefix of the names of the symbols.
+	 */
+	public static final String SYMBOL_PREFIX = "shape/";
+
+	private int minUses = 3;
+	private int maxPoints = 16;
+	private int symbolCount = 0;
+	private long uses = 0;
+
+	/**
+	 * A shape up to translation: kind, attributes and relative coordinates.
+	 */
+	private static final class Shape {
+		final byte kind;
+		final int attr;
+		final double[] geometry;
+		final int hash;
+		int first;
+		int count = 0;
+		int symbol = -1;
+
+		Shape(byte kind, int attr, double[] geometry) {
+			this.kind = kind;
+			this.attr = attr;
+			this.geometry = geometry;
+			this.hash = (31 * kind + attr) * 31 + Arrays.hashCode(geometry);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Shape))
+				return false;
+			Shape s = (Shape) o;
+			return kind == s.kind && attr == s.attr
+					&& Arrays.equals(geometry, s.geometry);
+		}
+	}
+
+	/**
+	 * Sets how often a shape has to occur to become a symbol. The default is
+	 * 3; a symbol definition costs about as much as one occurrence.
+	 *
+	 * @param minUses
+	 *            the minimum number of occurrences, at least 2
+	 */
+	public void setMinUses(int minUses) {
+		if (minUses < 2)
+			throw new IllegalArgumentException("minUses must be at least 2: "
+					+ minUses);
+		this.minUses = minUses;
+	}
+
+	public int getMinUses() {
+		return minUses;
+	}
+
+	/**
+	 * Sets the largest number of points of paths that can become symbols.
+	 * The default is 16.
+	 *
+	 * @param maxPoints
+	 *            the number of points, or 0 to consider no paths
+	 */
+	public void setMaxPoints(int maxPoints) {
+		if (maxPoints < 0)
+			throw new IllegalArgumentException("maxPoints must not be negative: "
+					+ maxPoints);
+		this.maxPoints = maxPoints;
+	}
+
+	public int getMaxPoints() {
+		return maxPoints;
+	}
+
+	/**
+	 * Returns the number of symbols defined by the last call of write().
+	 *
+	 * @return
+	 */
+	public int getSymbolCount() {
+		return symbolCount;
+	}
+
+	/**
+	 * Returns the number of objects written as uses of symbols by the last
+	 * call of write().
+	 *
+	 * @return
+	 */
+	public long getUseCount() {
+		return uses;
+	}
+
+	/**
+	 * Writes the whole scene as a document. The writer must be fresh; it has
+	 * to be closed by the caller.
+	 *
+	 * @param scene
+	 *            the scene
+	 * @param w
+	 *            the writer
+	 * @throws IOException
+	 */
+	public void write(IpeScene scene, IpeWriter w) throws IOException {
+		// first pass: number the distinct shapes and count them
+		int objects = 0;
+		for (int p = 0; p < scene.getPageCount(); p++)
+			for (int layer : scene.getLayerIds(p))
+				for (int id = scene.firstObject(layer); id >= 0; id = scene
+						.nextObject(id))
+					objects = Math.max(objects, id + 1);
+		Shape[] shapeOf = new Shape[objects];
+		Map<Shape, Shape> shapes = new HashMap<Shape, Shape>();
+		for (int id = 0; id < objects; id++) {
+			Shape s = shape(scene, id);
+			if (s == null)
+				continue;
+			Shape known = shapes.get(s);
+			if (known == null) {
+				s.first = id;
+				shapes.put(s, known = s);
+			}
+			known.count++;
+			shapeOf[id] = known;
+		}
+
+		// the symbols, in the order of their first occurrence
+		List<Shape> symbols = new ArrayList<Shape>();
+		for (int id = 0; id < objects; id++) {
+			Shape s = shapeOf[id];
+			if (s != null && s.count >= minUses && s.symbol < 0) {
+				s.symbol = symbols.size();
+				symbols.add(s);
+			}
+		}
+		symbolCount = symbols.size();
+		uses = 0;
+		if (!symbols.isEmpty())
+			w.addStyleSheet(styleSheet(scene, symbols, w.getNumberFormat()));
+
+		// second pass: write the pages
+		double[] v = scene.getCoordinates();
+		for (int p = 0; p < scene.getPageCount(); p++) {
+			String[] names = scene.getLayerNames(p);
+			if (p == 0)
+				w.writeHeader(names);
+			else
+				w.newPage(names);
+			int[] layers = scene.getLayerIds(p);
+			for (int l = 0; l < layers.length; l++) {
+				if (layers.length > 1)
+					w.setLayer(names[l]);
+				for (int id = scene.firstObject(layers[l]); id >= 0; id = scene
+						.nextObject(id)) {
+					Shape s = shapeOf[id];
+					if (s == null || s.symbol < 0) {
+						scene.writeObject(w, id);
+						continue;
+					}
+					int c = scene.getCoordinateStart(id);
+					w.drawSymbol(SYMBOL_PREFIX + s.symbol, v[c], v[c + 1]);
+					uses++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the shape of an object relative to its first point, or null if
+	 * it cannot become a symbol.
+	 */
+	private Shape shape(IpeScene scene, int id) {
+		byte kind = scene.getKind(id);
+		double[] v = scene.getCoordinates();
+		int c = scene.getCoordinateStart(id);
+		double x = v[c], y = v[c + 1];
+		double[] g;
+		switch (kind) {
+		case IpeScene.CIRCLE:
+			g = new double[] { v[c + 2] };
+			break;
+		case IpeScene.BOX:
+		case IpeScene.ARC:
+			g = new double[scene.getPointCount(id) * 2 - 2];
+			for (int i = 0; i < g.length; i += 2) {
+				g[i] = v[c + 2 + i] - x;
+				g[i + 1] = v[c + 3 + i] - y;
+			}
+			break;
+		case IpeScene.EDGE:
+		case IpeScene.PATH:
+		case IpeScene.SPLINE:
+		case IpeScene.SPLINEGON:
+			int n = scene.getPointCount(id);
+			if (n > maxPoints)
+				return null;
+			g = new double[2 * n - 2];
+			for (int i = 0; i < g.length; i += 2) {
+				g[i] = v[c + 2 + i] - x;
+				g[i + 1] = v[c + 3 + i] - y;
+			}
+			break;
+		default:
+			return null;
+		}
+		// -0.0 and 0.0 draw the same
+		for (int i = 0; i < g.length; i++)
+			if (g[i] == 0)
+				g[i] = 0;
+		return new Shape(kind, scene.getAttributeIndex(id), g);
+	}
+
+	/**
+	 * Returns the style sheet that defines the symbols, each drawn with its
+	 * first point at the origin.
+	 */
+	private String styleSheet(IpeScene scene, List<Shape> symbols,
+			IpeNumberFormat format) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		IpeWriter w = new IpeWriter(sb);
+		w.setNumberFormat(format);
+		w.writeFragment("<ipestyle name=\"symbols\">\n");
+		for (Shape s : symbols) {
+			String[] a = scene.getAttributes(s.first);
+			double[] g = s.geometry;
+			w.writeFragment("<symbol name=\"" + SYMBOL_PREFIX + s.symbol
+					+ "\">\n");
+			switch (s.kind) {
+			case IpeScene.CIRCLE:
+				w.drawCircle(0, 0, g[0], a[0], a[1], a[2]);
+				break;
+			case IpeScene.BOX:
+				w.drawBox(0, 0, g[0], g[1], a[0], a[1], a[2]);
+				break;
+			case IpeScene.ARC:
+				w.drawCircularArc(0, 0, g[0], g[1], g[2], g[3], a[0], a[1],
+						a[2]);
+				break;
+			case IpeScene.EDGE:
+				w.drawEdge(0, 0, g[0], g[1], a[0], a[1], a[2]);
+				break;
+			default:
+				double[] xy = new double[g.length + 2];
+				System.arraycopy(g, 0, xy, 2, g.length);
+				if (s.kind == IpeScene.PATH)
+					w.drawPath(xy, 0, xy.length / 2, a[0], a[1], a[2]);
+				else if (s.kind == IpeScene.SPLINE)
+					w.drawSpline(xy, 0, xy.length / 2, a[0], a[1], a[2]);
+				else
+					w.drawSplinegon(xy, 0, xy.length / 2, a[0], a[1], a[2]);
+			}
+			w.writeFragment("</symbol>\n");
+		}
+		w.writeFragment("</ipestyle>\n");
+		w.close();
+		return sb.toString();
+	}
+}
@@ -0,0 +1,752 @@
+package de.uniwue.smooth.draw;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A culling stage in front of an IpeWriter: objects that lie entirely outside
+ * a rectangular viewport are dropped, and paths and edges that cross its
+ * border are clipped to it.
+ *
+ * Marks, boxes, circles, arcs and text labels are written unchanged if they
+ * may be visible. Marks and text labels count as visible if their position
+ * lies in the viewport enlarged by the margin, since their extent is not
+ * known. Boxes, circles and arcs are only outlines; they are also dropped if
+ * the viewport lies completely inside them. Splines and splinegons cannot be
+ * cut without changing the curve, so they are written whole if their control
+ * points are not all on one side of the viewport.
+ *
+ * Optionally, all coordinates are translated before they are written, for
+ * example to move the viewport to the origin of the page.
+ *
+ * The viewport keeps scratch arrays for clipping and is not thread-safe. See
+ * IpeSceneIndex for culling the objects of an IpeScene with a spatial index.
+ */
+public class IpeViewport {
+
+	private final double xMin, yMin, xMax, yMax;
+	private double margin = 0;
+	private double dx = 0, dy = 0;
+
+	private long culled = 0;
+	private long clipped = 0;
+
+	/** Result of clipSegment(). */
+	private double t0, t1;
+	/** Points of the clipped pieces of a path: x0, y0, x1, y1, ... */
+	private double[] xy = new double[64];
+
+	/**
+	 * Creates a viewport.
+	 *
+	 * @param xMin
+	 *            left-most x-coordinate
+	 * @param yMin
+	 *            bottom-most y-coordinate
+	 * @param xMax
+	 *            right-most x-coordinate
+	 * @param yMax
+	 *            top-most y-coordinate
+	 */
+	public IpeViewport(double xMin, double yMin, double xMax, double yMax) {
+		if (!(xMin <= xMax && yMin <= yMax))
+			throw new IllegalArgumentException("empty viewport: " + xMin
+					+ " " + yMin + " " + xMax + " " + yMax);
+		this.xMin = xMin;
+		this.yMin = yMin;
+		this.xMax = xMax;
+		this.yMax = yMax;
+	}
+
+	public double getXMin() {
+		return xMin;
+	}
+
+	public double getYMin() {
+		return yMin;
+	}
+
+	public double getXMax() {
+		return xMax;
+	}
+
+	public double getYMax() {
+		return yMax;
+	}
+
+	/**
+	 * Sets how far marks and text labels may lie outside the viewport and
+	 * still be written. The default is 0.
+	 *
+	 * @param margin
+	 *            the margin
+	 */
+	public void setMargin(double margin) {
+		if (!(margin >= 0))
+			throw new IllegalArgumentException("invalid margin: " + margin);
+		this.margin = margin;
+	}
+
+	public double getMargin() {
+		return margin;
+	}
+
+	/**
+	 * Sets a translation that is added to all coordinates written. Culling
+	 * and clipping use the coordinates before translation.
+	 *
+	 * @param dx
+	 *            translation in x-direction
+	 * @param dy
+	 *            translation in y-direction
+	 */
+	public void setTranslation(double dx, double dy) {
+		this.dx = dx;
+		this.dy = dy;
+	}
+
+	/**
+	 * Returns the number of objects dropped so far.
+	 *
+	 * @return
+	 */
+	public long getCulledCount() {
+		return culled;
+	}
+
+	/**
+	 * Returns the number of paths and edges clipped so far.
+	 *
+	 * @return
+	 */
+	public long getClippedCount() {
+		return clipped;
+	}
+
+	/**
+	 * Tests whether a point lies in the viewport.
+	 *
+	 * @param x
+	 *            x-coordinate
+	 * @param y
+	 *            y-coordinate
+	 * @return
+	 */
+	public boolean contains(double x, double y) {
+		return x >= xMin && x <= xMax && y >= yMin && y <= yMax;
+	}
+
+	/**
+	 * Tests whether a rectangle intersects the viewport.
+	 *
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @return
+	 */
+	public boolean intersects(double x1, double y1, double x2, double y2) {
+		return x1 <= xMax && x2 >= xMin && y1 <= yMax && y2 >= yMin;
+	}
+
+	/**
+	 * Draws a mark if it lies in the viewport.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x
+	 *            x-coordinate
+	 * @param y
+	 *            y-coordinate
+	 * @param shape
+	 *            shape: disk, fdisk, circle, box, square, fsquare, cross
+	 * @param color
+	 *            color
+	 * @param size
+	 *            size: tiny, small, normal, large
+	 * @return whether the mark was written
+	 * @throws IOException
+	 */
+	public boolean drawMark(IpeWriter w, double x, double y, String shape,
+			String color, String size) throws IOException {
+		if (!containsWithMargin(x, y))
+			return cull();
+		w.drawMark(x + dx, y + dy, shape, color, size);
+		return true;
+	}
+
+	/**
+	 * Draws a rectangle if its outline may be visible.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return whether the rectangle was written
+	 * @throws IOException
+	 */
+	public boolean drawBox(IpeWriter w, double x1, double y1, double x2,
+			double y2, String color, String pen, String dash)
+			throws IOException {
+		double left = Math.min(x1, x2), right = Math.max(x1, x2);
+		double bottom = Math.min(y1, y2), top = Math.max(y1, y2);
+		if (!intersects(left, bottom, right, top)
+				|| (left < xMin && right > xMax && bottom < yMin && top > yMax))
+			return cull();
+		w.drawBox(x1 + dx, y1 + dy, x2 + dx, y2 + dy, color, pen, dash);
+		return true;
+	}
+
+	/**
+	 * Draws the part of an edge that lies in the viewport.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x1
+	 *            x-coordinate of point 1
+	 * @param y1
+	 *            y-coordinate of point 1
+	 * @param x2
+	 *            x-coordinate of point 2
+	 * @param y2
+	 *            y-coordinate of point 2
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return whether anything was written
+	 * @throws IOException
+	 */
+	public boolean drawEdge(IpeWriter w, double x1, double y1, double x2,
+			double y2, String color, String pen, String dash)
+			throws IOException {
+		if (!clipSegment(x1, y1, x2, y2))
+			return cull();
+		if (t0 > 0 || t1 < 1) {
+			clipped++;
+			double ex = x2 - x1, ey = y2 - y1;
+			x2 = x1 + t1 * ex;
+			y2 = y1 + t1 * ey;
+			x1 += t0 * ex;
+			y1 += t0 * ey;
+		}
+		w.drawEdge(x1 + dx, y1 + dy, x2 + dx, y2 + dy, color, pen, dash);
+		return true;
+	}
+
+	/**
+	 * Writes a text label if its position lies in the viewport.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param text
+	 *            The text
+	 * @param x
+	 *            x-coordinate of the box
+	 * @param y
+	 *            y-coordinate of the box
+	 * @param color
+	 *            text-color
+	 * @param size
+	 *            text-size
+	 * @return whether the label was written
+	 * @throws IOException
+	 */
+	public boolean writeText(IpeWriter w, String text, double x, double y,
+			String color, String size) throws IOException {
+		if (!containsWithMargin(x, y))
+			return cull();
+		w.writeText(text, x + dx, y + dy, color, size);
+		return true;
+	}
+
+	/**
+	 * Draws a circle if its outline may be visible.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x
+	 *            x-coordinate of the center
+	 * @param y
+	 *            y-coordinate of the center
+	 * @param radius
+	 *            radius
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return whether the circle was written
+	 * @throws IOException
+	 */
+	public boolean drawCircle(IpeWriter w, double x, double y, double radius,
+			String color, String pen, String dash) throws IOException {
+		if (!circleVisible(x, y, Math.abs(radius)))
+			return cull();
+		w.drawCircle(x + dx, y + dy, radius, color, pen, dash);
+		return true;
+	}
+
+	/**
+	 * Draws a circular arc if its circle may be visible.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param xCenter
+	 *            x-coordinate of the center
+	 * @param yCenter
+	 *            y-coordinate of the center
+	 * @param xStart
+	 *            x-coordinate of the starting point on the circle
+	 * @param yStart
+	 *            y-coordinate of the starting point on the circle
+	 * @param xEnd
+	 *            x-coordinate of the end point on the circle
+	 * @param yEnd
+	 *            y-coordinate of the end point on the circle
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return whether the arc was written
+	 * @throws IOException
+	 */
+	public boolean drawCircularArc(IpeWriter w, double xCenter,
+			double yCenter, double xStart, double yStart, double xEnd,
+			double yEnd, String color, String pen, String dash)
+			throws IOException {
+		double radius = Math.hypot(xStart - xCenter, yStart - yCenter);
+		if (!circleVisible(xCenter, yCenter, radius))
+			return cull();
+		w.drawCircularArc(xCenter + dx, yCenter + dy, xStart + dx, yStart
+				+ dy, xEnd + dx, yEnd + dy, color, pen, dash);
+		return true;
+	}
+
+	/**
+	 * Draws the parts of a path that lie in the viewport. Every maximal part
+	 * inside the viewport becomes a path of its own.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return whether anything was written
+	 * @throws IOException
+	 */
+	public boolean drawPath(IpeWriter w, double[] x, double[] y, int offset,
+			int length, String color, String pen, String dash)
+			throws IOException {
+		IpeDraw.checkPoints(x.length, offset, y.length, offset, 1, length);
+		return clipPath(w, x, offset, y, offset, 1, length, color, pen, dash);
+	}
+
+	/**
+	 * Draws the parts of a path that lie in the viewport, with the points
+	 * given as x0, y0, x1, y1, ... in one array.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param xy
+	 *            coordinates of the points
+	 * @param offset
+	 *            index of the first point (not of the first coordinate)
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return whether anything was written
+	 * @throws IOException
+	 */
+	public boolean drawPath(IpeWriter w, double[] xy, int offset, int length,
+			String color, String pen, String dash) throws IOException {
+		IpeDraw.checkPoints(xy.length, 2 * offset, xy.length, 2 * offset + 1,
+				2, length);
+		return clipPath(w, xy, 2 * offset, xy, 2 * offset + 1, 2, length,
+				color, pen, dash);
+	}
+
+	/**
+	 * Draws a spline unless its control points lie outside the viewport.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return whether the spline was written
+	 * @throws IOException
+	 */
+	public boolean drawSpline(IpeWriter w, double[] x, double[] y, int offset,
+			int length, String color, String pen, String dash)
+			throws IOException {
+		IpeDraw.checkPoints(x.length, offset, y.length, offset, 1, length);
+		return cullCurve(w, IpeDraw.SPLINE, x, offset, y, offset, 1, length,
+				color, pen, dash);
+	}
+
+	/**
+	 * Draws a spline unless its control points lie outside the viewport, with
+	 * the points given as x0, y0, x1, y1, ... in one array.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param xy
+	 *            coordinates of the control points
+	 * @param offset
+	 *            index of the first point (not of the first coordinate)
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return whether the spline was written
+	 * @throws IOException
+	 */
+	public boolean drawSpline(IpeWriter w, double[] xy, int offset,
+			int length, String color, String pen, String dash)
+			throws IOException {
+		IpeDraw.checkPoints(xy.length, 2 * offset, xy.length, 2 * offset + 1,
+				2, length);
+		return cullCurve(w, IpeDraw.SPLINE, xy, 2 * offset, xy,
+				2 * offset + 1, 2, length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a splinegon unless its control points lie outside the viewport.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return whether the splinegon was written
+	 * @throws IOException
+	 */
+	public boolean drawSplinegon(IpeWriter w, double[] x, double[] y,
+			int offset, int length, String color, String pen, String dash)
+			throws IOException {
+		IpeDraw.checkPoints(x.length, offset, y.length, offset, 1, length);
+		return cullCurve(w, IpeDraw.SPLINEGON, x, offset, y, offset, 1,
+				length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a splinegon unless its control points lie outside the viewport,
+	 * with the points given as x0, y0, x1, y1, ... in one array.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param xy
+	 *            coordinates of the control points
+	 * @param offset
+	 *            index of the first point (not of the first coordinate)
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @return whether the splinegon was written
+	 * @throws IOException
+	 */
+	public boolean drawSplinegon(IpeWriter w, double[] xy, int offset,
+			int length, String color, String pen, String dash)
+			throws IOException {
+		IpeDraw.checkPoints(xy.length, 2 * offset, xy.length, 2 * offset + 1,
+				2, length);
+		return cullCurve(w, IpeDraw.SPLINEGON, xy, 2 * offset, xy,
+				2 * offset + 1, 2, length, color, pen, dash);
+	}
+
+	/**
+	 * Writes an object of a scene if it may be visible.
+	 *
+	 * @param w
+	 *            the writer
+	 * @param scene
+	 *            the scene
+	 * @param id
+	 *            id of the object
+	 * @return whether anything was written
+	 * @throws IOException
+	 */
+	public boolean writeObject(IpeWriter w, IpeScene scene, int id)
+			throws IOException {
+		byte kind = scene.getKind(id);
+		String[] a = scene.getAttributes(id);
+		double[] v = scene.getCoordinates();
+		int c = scene.getCoordinateStart(id);
+		switch (kind) {
+		case IpeScene.MARK:
+			return drawMark(w, v[c], v[c + 1], a[0], a[1], a[2]);
+		case IpeScene.BOX:
+			return drawBox(w, v[c], v[c + 1], v[c + 2], v[c + 3], a[0], a[1],
+					a[2]);
+		case IpeScene.EDGE:
+			return drawEdge(w, v[c], v[c + 1], v[c + 2], v[c + 3], a[0], a[1],
+					a[2]);
+		case IpeScene.TEXT:
+			return writeText(w, a[2], v[c], v[c + 1], a[0], a[1]);
+		case IpeScene.CIRCLE:
+			return drawCircle(w, v[c], v[c + 1], v[c + 2], a[0], a[1], a[2]);
+		case IpeScene.ARC:
+			return drawCircularArc(w, v[c], v[c + 1], v[c + 2], v[c + 3],
+					v[c + 4], v[c + 5], a[0], a[1], a[2]);
+		case IpeScene.PATH:
+			return drawPath(w, v, c / 2, scene.getPointCount(id), a[0], a[1],
+					a[2]);
+		case IpeScene.SPLINE:
+			return drawSpline(w, v, c / 2, scene.getPointCount(id), a[0],
+					a[1], a[2]);
+		case IpeScene.SPLINEGON:
+			return drawSplinegon(w, v, c / 2, scene.getPointCount(id), a[0],
+					a[1], a[2]);
+		default: // removed
+			return false;
+		}
+	}
+
+	private boolean cull() {
+		culled++;
+		return false;
+	}
+
+	private boolean containsWithMargin(double x, double y) {
+		return x >= xMin - margin && x <= xMax + margin && y >= yMin - margin
+				&& y <= yMax + margin;
+	}
+
+	/**
+	 * Tests whether the outline of a circle may intersect the viewport: its
+	 * bounding box does, and the viewport is not inside the circle.
+	 */
+	private boolean circleVisible(double x, double y, double radius) {
+		if (!intersects(x - radius, y - radius, x + radius, y + radius))
+			return false;
+		double fx = Math.max(Math.abs(xMin - x), Math.abs(xMax - x));
+		double fy = Math.max(Math.abs(yMin - y), Math.abs(yMax - y));
+		return fx * fx + fy * fy >= radius * radius;
+	}
+
+	/**
+	 * Clips the segment from (x1, y1) to (x2, y2) to the viewport with the
+	 * algorithm of Liang and Barsky. If the result is not empty, it is the
+	 * part for parameters t0, ..., t1 and true is returned.
+	 */
+	private boolean clipSegment(double x1, double y1, double x2, double y2) {
+		double ex = x2 - x1, ey = y2 - y1;
+		t0 = 0;
+		t1 = 1;
+		return clipT(-ex, x1 - xMin) && clipT(ex, xMax - x1)
+				&& clipT(-ey, y1 - yMin) && clipT(ey, yMax - y1);
+	}
+
+	private boolean clipT(double p, double q) {
+		if (p == 0)
+			return q >= 0;
+		double t = q / p;
+		if (p < 0) {
+			if (t > t1)
+				return false;
+			if (t > t0)
+				t0 = t;
+		} else {
+			if (t < t0)
+				return false;
+			if (t < t1)
+				t1 = t;
+		}
+		return true;
+	}
+
+	private boolean clipPath(IpeWriter w, double[] x, int xOff, double[] y,
+			int yOff, int stride, int length, String color, String pen,
+			String dash) throws IOException {
+		double left = Double.POSITIVE_INFINITY, bottom = left;
+		double right = Double.NEGATIVE_INFINITY, top = right;
+		for (int i = 0, xi = xOff, yi = yOff; i < length; i++, xi += stride, yi += stride) {
+			left = Math.min(left, x[xi]);
+			right = Math.max(right, x[xi]);
+			bottom = Math.min(bottom, y[yi]);
+			top = Math.max(top, y[yi]);
+		}
+		if (!intersects(left, bottom, right, top))
+			return cull();
+		if (left >= xMin && right <= xMax && bottom >= yMin && top <= yMax) {
+			writeCurve(w, IpeDraw.PATH, x, xOff, y, yOff, stride, length,
+					color, pen, dash);
+			return true;
+		}
+		clipped++;
+		boolean written = false;
+		int n = 0; // points of the current piece
+		for (int i = 0, xi = xOff, yi = yOff; i < length - 1; i++, xi += stride, yi += stride) {
+			double x1 = x[xi], y1 = y[yi];
+			double x2 = x[xi + stride], y2 = y[yi + stride];
+			// a segment that only touches the viewport adds nothing
+			if (!clipSegment(x1, y1, x2, y2) || t1 <= t0) {
+				written |= writePiece(w, n, color, pen, dash);
+				n = 0;
+				continue;
+			}
+			double ex = x2 - x1, ey = y2 - y1;
+			if (t0 > 0) {
+				written |= writePiece(w, n, color, pen, dash);
+				n = 0;
+			}
+			if (n == 0)
+				n = addPoint(n, x1 + t0 * ex, y1 + t0 * ey);
+			n = addPoint(n, x1 + t1 * ex, y1 + t1 * ey);
+			if (t1 < 1) {
+				written |= writePiece(w, n, color, pen, dash);
+				n = 0;
+			}
+		}
+		if (length == 1 && contains(x[xOff], y[yOff]))
+			n = addPoint(0, x[xOff], y[yOff]);
+		written |= writePiece(w, n, color, pen, dash);
+		if (!written)
+			culled++;
+		return written;
+	}
+
+	private int addPoint(int n, double x, double y) {
+		if (2 * n + 2 > xy.length)
+			xy = Arrays.copyOf(xy, 2 * xy.length);
+		xy[2 * n] = x + dx;
+		xy[2 * n + 1] = y + dy;
+		return n + 1;
+	}
+
+	private boolean writePiece(IpeWriter w, int n, String color, String pen,
+			String dash) throws IOException {
+		if (n == 0)
+			return false;
+		w.drawPath(xy, 0, n, color, pen, dash);
+		return true;
+	}
+
+	private boolean cullCurve(IpeWriter w, int kind, double[] x, int xOff,
+			double[] y, int yOff, int stride, int length, String color,
+			String pen, String dash) throws IOException {
+		boolean left = true, right = true, below = true, above = true;
+		for (int i = 0, xi = xOff, yi = yOff; i < length; i++, xi += stride, yi += stride) {
+			left &= x[xi] < xMin;
+			right &= x[xi] > xMax;
+			below &= y[yi] < yMin;
+			above &= y[yi] > yMax;
+		}
+		if (left || right || below || above)
+			return cull();
+		writeCurve(w, kind, x, xOff, y, yOff, stride, length, color, pen,
+				dash);
+		return true;
+	}
+
+	/**
+	 * Writes a path, spline or splinegon, translated if necessary.
+	 */
+	private void writeCurve(IpeWriter w, int kind, double[] x, int xOff,
+			double[] y, int yOff, int stride, int length, String color,
+			String pen, String dash) throws IOException {
+		double[] px = x, py = y;
+		if (dx != 0 || dy != 0) {
+			for (int i = 0, xi = xOff, yi = yOff; i < length; i++, xi += stride, yi += stride)
+				addPoint(i, x[xi], y[yi]);
+			px = py = xy;
+			xOff = 0;
+			yOff = 1;
+			stride = 2;
+		}
+		if (stride == 1) {
+			if (kind == IpeDraw.PATH)
+				w.drawPath(px, py, xOff, length, color, pen, dash);
+			else if (kind == IpeDraw.SPLINE)
+				w.drawSpline(px, py, xOff, length, color, pen, dash);
+			else
+				w.drawSplinegon(px, py, xOff, length, color, pen, dash);
+		} else {
+			if (kind == IpeDraw.PATH)
+				w.drawPath(px, xOff / 2, length, color, pen, dash);
+			else if (kind == IpeDraw.SPLINE)
+				w.drawSpline(px, xOff / 2, length, color, pen, dash);
+			else
+				w.drawSplinegon(px, xOff / 2, length, color, pen, dash);
+		}
+	}
+}
@@ -0,0 +1,2793 @@
+package de.uniwue.smooth.draw;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming counterpart of {@link IpeDraw}. Instead of returning a String for
+ * every object, the writer appends the objects straight into a sink (any
+ * Appendable, e.g. a Writer or StringBuilder, an OutputStream, or a channel).
+ * Output is collected in a small internal buffer that is handed to the sink
+ * whenever it is full, so the memory needed does not depend on the size of
+ * the document.
+ *
+ * A writer on a channel, for example a FileChannel, encodes the output itself
+ * into direct byte buffers, which is the fastest way to write large
+ * documents to a file.
+ *
+ * Usage: Call writeHeader() first, which writes getIpePreamble() and
+ * getIpeConf(). Then draw the objects, separate pages by newPage(), and
+ * finally call close(), which writes getIpeEnd(). The output is the same as
+ * concatenating the corresponding Strings of IpeDraw.
+ *
+ * A writer on which writeHeader() is never called only writes the objects
+ * themselves; this can be used to produce fragments of a page.
+ *
+ * The writer is not thread-safe.
+ */
+public class IpeWriter implements IpeBackend, Flushable {
+
+	/**
+	 * Default number of characters that are buffered before they are handed to
+	 * the sink.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/**
+	 * Number of points of a path that are formatted between two checks of
+	 * the buffer size.
+	 */
+	private static final int CHUNK_POINTS = 256;
+
+	/**
+	 * Number of points of the curves that a task of drawCurves() fits.
+	 */
+	private static final int CURVE_BATCH_POINTS = 1 << 14;
+
+	private final Appendable out;
+	private final Writer writer;
+	private final IpeChannelSink channel;
+	private IpeAppendJournal journal = null;
+	private final int bufferSize;
+	private final StringBuilder buf;
+	private char[] chars;
+	private boolean headerWritten = false;
+	private boolean closed = false;
+
+	/**
+	 * Layer that the next object is put into, or null if it stays in the
+	 * layer of the previous object.
+	 */
+	private String pendingLayer = null;
+	private String currentLayer = null;
+	private int objectStart = -1;
+
+	// level of detail
+	private double tolerance = 0;
+	private long removedPoints = 0;
+	private double[] simplifyX, simplifyY;
+	private boolean[] simplifyKeep;
+	private int[] simplifyStack;
+
+	private IpeDeduplicator deduplicator = null;
+
+	private IpeMetrics metrics = null;
+
+	private boolean groupMarks = false;
+
+	private ExecutorService executor = ForkJoinPool.commonPool();
+
+	private IpePalette palette = null;
+
+	/** Style sheets written after the one of IpeDraw. */
+	private final StringBuilder styleSheets = new StringBuilder();
+
+	private IpeNumberFormat numberFormat = IpeDraw.getNumberFormat();
+
+	/**
+	 * Whether the buffer is only handed to the sink after complete objects,
+	 * with the layer stated again by the next object, so that the pieces can
+	 * be written in any order (see IpeConcurrentSink).
+	 */
+	private boolean independentPieces = false;
+
+	/**
+	 * Creates a writer that appends to the given sink.
+	 *
+	 * @param out
+	 *            the sink, for example a Writer or a StringBuilder
+	 */
+	public IpeWriter(Appendable out) {
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a writer that appends to the given sink.
+	 *
+	 * @param out
+	 *            the sink, for example a Writer or a StringBuilder
+	 * @param bufferSize
+	 *            number of characters buffered before they are handed to the
+	 *            sink
+	 */
+	public IpeWriter(Appendable out, int bufferSize) {
+		this(out, null, bufferSize);
+		if (out == null)
+			throw new NullPointerException("out");
+	}
+
+	/**
+	 * Creates a writer that writes UTF-8 encoded output to the given stream.
+	 *
+	 * @param out
+	 *            the stream
+	 */
+	public IpeWriter(OutputStream out) {
+		this(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Creates a writer that writes UTF-8 encoded output to the given channel,
+	 * for example a FileChannel opened with
+	 * FileChannel.open(path, CREATE, WRITE, TRUNCATE_EXISTING). The channel is
+	 * written in blocks of 64 KiB and closed by close().
+	 *
+	 * @param channel
+	 *            the channel
+	 */
+	public IpeWriter(WritableByteChannel channel) {
+		this(null, new IpeChannelSink(channel), DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens a document written by IpeDraw or IpeWriter for adding pages. The
+	 * end of the last page and of the document is removed, so the following
+	 * objects go into the last page until newPage() is called; close()
+	 * writes getIpeEnd() again. The cost does not depend on the size of the
+	 * document.
+	 *
+	 * The document stays valid if the writer is not closed, for example if
+	 * the process dies: the removed end is saved in a journal next to the
+	 * file before it is changed, and the next call of openForAppend() or
+	 * recoverAppend() restores the document from it.
+	 *
+	 * Objects written before the first newPage() state no layer and go into
+	 * the layer of the last object of the document.
+	 *
+	 * @param file
+	 *            the document
+	 * @return the writer
+	 * @throws IOException
+	 *             if the document cannot be opened or does not end like a
+	 *             document written by IpeDraw
+	 */
+	public static IpeWriter openForAppend(Path file) throws IOException {
+		IpeAppendJournal journal = IpeAppendJournal.begin(file);
+		IpeWriter w = new IpeWriter(journal.getChannel());
+		w.journal = journal;
+		w.headerWritten = true;
+		return w;
+	}
+
+	/**
+	 * Restores a document from its journal if a writer returned by
+	 * openForAppend() was not closed. Documents should be recovered before
+	 * they are read.
+	 *
+	 * @param file
+	 *            the document
+	 * @return true if the document was restored, false if there was nothing
+	 *         to do or the appended content was complete
+	 * @throws IOException
+	 */
+	public static boolean recoverAppend(Path file) throws IOException {
+		return IpeAppendJournal.recover(file);
+	}
+
+	private IpeWriter(Appendable out, IpeChannelSink channel, int bufferSize) {
+		if (bufferSize <= 0)
+			throw new IllegalArgumentException("bufferSize must be positive: "
+					+ bufferSize);
+		this.out = out;
+		this.writer = out instanceof Writer ? (Writer) out : null;
+		this.channel = channel;
+		this.bufferSize = bufferSize;
+		this.buf = new StringBuilder(bufferSize + 256);
+	}
+
+	/**
+	 * Sets the format of double coordinates written by this writer. The
+	 * default is the format of IpeDraw at the time the writer was created.
+	 *
+	 * @param format
+	 *            the number format
+	 */
+	public void setNumberFormat(IpeNumberFormat format) {
+		if (format == null)
+			throw new NullPointerException("format");
+		numberFormat = format;
+	}
+
+	/**
+	 * Returns the format of double coordinates.
+	 *
+	 * @return
+	 */
+	public IpeNumberFormat getNumberFormat() {
+		return numberFormat;
+	}
+
+	/**
+	 * Sets the tolerance for simplifying paths, splines and splinegons. If it
+	 * is positive, points are removed with IpeSimplifier as long as the
+	 * simplified polyline stays within this distance of the original one. The
+	 * default 0 writes all points.
+	 *
+	 * @param tolerance
+	 *            largest allowed distance of a removed point, or 0
+	 */
+	public void setSimplificationTolerance(double tolerance) {
+		if (!(tolerance >= 0))
+			throw new IllegalArgumentException("invalid tolerance: "
+					+ tolerance);
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Returns the tolerance for simplifying paths.
+	 *
+	 * @return
+	 */
+	public double getSimplificationTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Returns the number of points that were removed by simplification so
+	 * far.
+	 *
+	 * @return
+	 */
+	public long getRemovedPointCount() {
+		return removedPoints;
+	}
+
+	/**
+	 * Sets a deduplicator that drops marks, rectangles, edges and circles
+	 * that were drawn before. The default null writes all objects.
+	 *
+	 * @param deduplicator
+	 *            the deduplicator, or null
+	 */
+	public void setDeduplicator(IpeDeduplicator deduplicator) {
+		this.deduplicator = deduplicator;
+	}
+
+	/**
+	 * Returns the deduplicator, or null.
+	 *
+	 * @return
+	 */
+	public IpeDeduplicator getDeduplicator() {
+		return deduplicator;
+	}
+
+	/**
+	 * Sets the metrics that this writer updates, or null (the default) to
+	 * collect none.
+	 *
+	 * @param metrics
+	 *            the metrics, or null
+	 */
+	public void setMetrics(IpeMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Returns the metrics that this writer updates, or null.
+	 *
+	 * @return
+	 */
+	public IpeMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets whether drawMarks() puts every run of marks with the same style
+	 * into a group, so that Ipe selects and moves them as a unit. Default is
+	 * false. On the writers of a concurrent sink, a run is split into several
+	 * groups of about the buffer size each.
+	 *
+	 * @param group
+	 *            whether to group marks
+	 */
+	public void setGroupMarks(boolean group) {
+		this.groupMarks = group;
+	}
+
+	/**
+	 * Returns whether drawMarks() groups marks.
+	 *
+	 * @return
+	 */
+	public boolean isGroupMarks() {
+		return groupMarks;
+	}
+
+	/**
+	 * Sets the executor for work that the writer does in parallel, which is
+	 * compressing bitmaps. The default is the common fork-join pool.
+	 *
+	 * @param executor
+	 *            the executor, which is not shut down by the writer, or null
+	 *            to do everything in the calling thread
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the executor for work that the writer does in parallel.
+	 *
+	 * @return
+	 */
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Sets the palette whose colors, pens and dash styles are defined in the
+	 * style sheet, and whose styles can be given by number to drawEdge() and
+	 * the other methods taking a style. Must be called before the header is
+	 * written. By default, a writer has a palette with the colors, pens and
+	 * dash styles of getIpeConf().
+	 *
+	 * @param palette
+	 *            the palette
+	 */
+	public void setPalette(IpePalette palette) {
+		ensureOpen();
+		if (headerWritten)
+			throw new IllegalStateException("header already written");
+		if (palette == null)
+			throw new NullPointerException("palette");
+		this.palette = palette;
+	}
+
+	/**
+	 * Returns the palette.
+	 *
+	 * @return
+	 */
+	public IpePalette getPalette() {
+		if (palette == null) {
+			palette = new IpePalette();
+			if (headerWritten)
+				palette.freeze();
+		}
+		return palette;
+	}
+
+	/**
+	 * Adds a style sheet to the header, after the style sheet of IpeDraw, so
+	 * that it can define further symbols, colors, pens, and so on. Must be
+	 * called before the header is written.
+	 *
+	 * @param styleSheet
+	 *            a complete ipestyle element
+	 */
+	public void addStyleSheet(CharSequence styleSheet) {
+		ensureOpen();
+		if (headerWritten)
+			throw new IllegalStateException("header already written");
+		styleSheets.append(styleSheet);
+	}
+
+	/**
+	 * Writes the preamble and the configuration of the standard objects. This
+	 * also opens the first page.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void writeHeader() throws IOException {
+		ensureOpen();
+		if (headerWritten)
+			throw new IllegalStateException("header already written");
+		headerWritten = true;
+		appendHeader();
+		buf.append(IpeDraw.getIpeFirstPage());
+		currentLayer = "alpha";
+		drainBuffer();
+	}
+
+	/**
+	 * Writes the preamble and the style sheet, and opens the first page with
+	 * the given layers. The page has a single view that shows all layers.
+	 * Objects go into the first layer until setLayer() is called.
+	 *
+	 * @param layers
+	 *            names of the layers of the first page
+	 * @throws IOException
+	 */
+	@Override
+	public void writeHeader(String... layers) throws IOException {
+		ensureOpen();
+		if (headerWritten)
+			throw new IllegalStateException("header already written");
+		headerWritten = true;
+		appendHeader();
+		openPage(layers, null);
+	}
+
+	/**
+	 * Writes the preamble and the style sheet, and opens the first page with
+	 * the given layers and views. Each view shows some of the layers, so that
+	 * objects shared by several views, for example the background of an
+	 * animation, are written only once. The active layer of a view is the
+	 * last one it shows. Objects go into the first layer until setLayer() is
+	 * called.
+	 *
+	 * @param layers
+	 *            names of the layers of the first page
+	 * @param views
+	 *            for every view the names of the layers it shows
+	 * @throws IOException
+	 */
+	public void writeHeader(String[] layers, String[][] views)
+			throws IOException {
+		ensureOpen();
+		if (headerWritten)
+			throw new IllegalStateException("header already written");
+		headerWritten = true;
+		appendHeader();
+		openPage(layers, views);
+	}
+
+	/**
+	 * Returns whether the header has been written.
+	 *
+	 * @return
+	 */
+	public boolean isHeaderWritten() {
+		return headerWritten;
+	}
+
+	/**
+	 * Draws a mark.
+	 *
+	 * @param x
+	 *            x-coordinate
+	 * @param y
+	 *            y-coordinate
+	 * @param shape
+	 *            shape: disk, fdisk, circle, box, square, fsquare, cross
+	 * @param color
+	 *            color
+	 * @param size
+	 *            size: tiny, small, normal, large
+	 * @throws IOException
+	 */
+	public void drawMark(int x, int y, String shape, String color, String size)
+			throws IOException {
+		beginObject(IpeScene.MARK);
+		if (deduplicator != null
+				&& !deduplicator.addMark(x, y, shape, color, size))
+			return;
+		buf.append("<use name=\"mark/").append(shape).append("(sx)\" pos=\"")
+				.append(x).append(' ').append(y).append("\" size=\"")
+				.append(size).append("\" stroke=\"").append(color)
+				.append("\"/>\n");
+		drain();
+	}
+
+	/**
+	 * Draws a mark of shape "disk" with color "black" and size "normal".
+	 *
+	 * @param x
+	 *            x-coordinate
+	 * @param y
+	 *            y-coordinate
+	 * @throws IOException
+	 */
+	public void drawMark(int x, int y) throws IOException {
+		drawMark(x, y, "disk", "black", "normal");
+	}
+
+	/**
+	 * Draws a mark at a point with double coordinates.
+	 *
+	 * @param x
+	 *            x-coordinate
+	 * @param y
+	 *            y-coordinate
+	 * @param shape
+	 *            shape: disk, fdisk, circle, box, square, fsquare, cross
+	 * @param color
+	 *            color
+	 * @param size
+	 *            size: tiny, small, normal, large
+	 * @throws IOException
+	 */
+	@Override
+	public void drawMark(double x, double y, String shape, String color,
+			String size) throws IOException {
+		beginObject(IpeScene.MARK);
+		if (deduplicator != null
+				&& !deduplicator.addMark(x, y, shape, color, size))
+			return;
+		IpeDraw.appendMark(buf, numberFormat, x, y, shape, color, size);
+		drain();
+	}
+
+	/**
+	 * Draws the marks at the points offset, ..., offset + length - 1 of the
+	 * given arrays, all with the same style. This is much faster than calling
+	 * drawMark() for every point, see drawMarks(int[], int[], int, int,
+	 * String[], int[], String[], int[], String[], int[]).
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param shape
+	 *            shape: disk, fdisk, circle, box, square, fsquare, cross
+	 * @param color
+	 *            color
+	 * @param size
+	 *            size: tiny, small, normal, large
+	 * @throws IOException
+	 */
+	public void drawMarks(int[] x, int[] y, int offset, int length,
+			String shape, String color, String size) throws IOException {
+		IpeDraw.checkPoints(x, offset, y, offset, 1, length);
+		drawMarks(x, null, y, null, offset, length, new String[] { shape },
+				null, new String[] { color }, null, new String[] { size }, null);
+	}
+
+	/**
+	 * Draws the marks at the points offset, ..., offset + length - 1 of the
+	 * given arrays of double coordinates, all with the same style.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param shape
+	 *            shape: disk, fdisk, circle, box, square, fsquare, cross
+	 * @param color
+	 *            color
+	 * @param size
+	 *            size: tiny, small, normal, large
+	 * @throws IOException
+	 */
+	public void drawMarks(double[] x, double[] y, int offset, int length,
+			String shape, String color, String size) throws IOException {
+		IpeDraw.checkPoints(x.length, offset, y.length, offset, 1, length);
+		drawMarks(null, x, null, y, offset, length, new String[] { shape },
+				null, new String[] { color }, null, new String[] { size }, null);
+	}
+
+	/**
+	 * Draws the marks at the points offset, ..., offset + length - 1 of the
+	 * given arrays, each with its own style. The style of point i is given by
+	 * indices into the arrays of shapes, colors and sizes: it has the shape
+	 * shapes[shapeIndex[i]], and so on. An index array may be null, then
+	 * every point uses the first element.
+	 *
+	 * The opening and closing parts of the tags are built once per style, not
+	 * once per point, so the time is spent formatting the coordinates. If
+	 * marks are grouped (see setGroupMarks()), every run of consecutive
+	 * points with the same style becomes a group. The marks are drawn in the
+	 * order of the points; sort the points by style first to get fewer and
+	 * larger groups.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param shapes
+	 *            shapes: disk, fdisk, circle, box, square, fsquare, cross
+	 * @param shapeIndex
+	 *            index of the shape of each point, or null
+	 * @param colors
+	 *            colors
+	 * @param colorIndex
+	 *            index of the color of each point, or null
+	 * @param sizes
+	 *            sizes: tiny, small, normal, large
+	 * @param sizeIndex
+	 *            index of the size of each point, or null
+	 * @throws IOException
+	 */
+	public void drawMarks(int[] x, int[] y, int offset, int length,
+			String[] shapes, int[] shapeIndex, String[] colors,
+			int[] colorIndex, String[] sizes, int[] sizeIndex)
+			throws IOException {
+		IpeDraw.checkPoints(x, offset, y, offset, 1, length);
+		drawMarks(x, null, y, null, offset, length, shapes, shapeIndex, colors,
+				colorIndex, sizes, sizeIndex);
+	}
+
+	/**
+	 * Draws the marks at the points offset, ..., offset + length - 1 of the
+	 * given arrays of double coordinates, each with its own style, see
+	 * drawMarks(int[], int[], int, int, String[], int[], String[], int[],
+	 * String[], int[]).
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param shapes
+	 *            shapes: disk, fdisk, circle, box, square, fsquare, cross
+	 * @param shapeIndex
+	 *            index of the shape of each point, or null
+	 * @param colors
+	 *            colors
+	 * @param colorIndex
+	 *            index of the color of each point, or null
+	 * @param sizes
+	 *            sizes: tiny, small, normal, large
+	 * @param sizeIndex
+	 *            index of the size of each point, or null
+	 * @throws IOException
+	 */
+	public void drawMarks(double[] x, double[] y, int offset, int length,
+			String[] shapes, int[] shapeIndex, String[] colors,
+			int[] colorIndex, String[] sizes, int[] sizeIndex)
+			throws IOException {
+		IpeDraw.checkPoints(x.length, offset, y.length, offset, 1, length);
+		drawMarks(null, x, null, y, offset, length, shapes, shapeIndex, colors,
+				colorIndex, sizes, sizeIndex);
+	}
+
+	/**
+	 * Places a symbol of a style sheet, for example one added with
+	 * addStyleSheet().
+	 *
+	 * @param name
+	 *            name of the symbol
+	 * @param x
+	 *            x-coordinate of the origin of the symbol
+	 * @param y
+	 *            y-coordinate of the origin of the symbol
+	 * @throws IOException
+	 */
+	public void drawSymbol(String name, double x, double y) throws IOException {
+		beginObject(symbolKind(name));
+		buf.append("<use name=\"").append(name).append("\" pos=\"");
+		IpeDraw.appendPoint(buf, numberFormat, x, y).append("\"/>\n");
+		drain();
+	}
+
+	/**
+	 * Draws a rectangle.
+	 *
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawBox(int x1, int y1, int x2, int y2, String color,
+			String pen, String dash) throws IOException {
+		beginObject(IpeScene.BOX);
+		if (deduplicator != null
+				&& !deduplicator.addBox(x1, y1, x2, y2, color, pen, dash))
+			return;
+		pathHeader(color, pen, dash);
+		buf.append(x1).append(' ').append(y2).append(" m\n ");
+		buf.append(x1).append(' ').append(y1).append(" l\n ");
+		buf.append(x2).append(' ').append(y1).append(" l\n ");
+		buf.append(x2).append(' ').append(y2).append(" l\n h\n</path>\n");
+		drain();
+	}
+
+	/**
+	 * Draws an undashed rectangle with pen width "normal" and color "black".
+	 *
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @throws IOException
+	 */
+	public void drawBox(int x1, int y1, int x2, int y2) throws IOException {
+		drawBox(x1, y1, x2, y2, "black", "normal", "normal");
+	}
+
+	/**
+	 * Draws a rectangle with double coordinates.
+	 *
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	@Override
+	public void drawBox(double x1, double y1, double x2, double y2,
+			String color, String pen, String dash) throws IOException {
+		beginObject(IpeScene.BOX);
+		if (deduplicator != null
+				&& !deduplicator.addBox(x1, y1, x2, y2, color, pen, dash))
+			return;
+		IpeDraw.appendBox(buf, numberFormat, x1, y1, x2, y2, color, pen, dash);
+		drain();
+	}
+
+	/**
+	 * Draws a rectangle with a style of the palette.
+	 *
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @param style
+	 *            number of a style of the palette
+	 * @throws IOException
+	 */
+	public void drawBox(double x1, double y1, double x2, double y2, int style)
+			throws IOException {
+		beginObject(IpeScene.BOX);
+		String header = stylePathHeader(style);
+		if (deduplicator != null
+				&& !deduplicator.addBox(x1, y1, x2, y2, palette.getColor(style),
+						palette.getPen(style), palette.getDash(style)))
+			return;
+		buf.append(header);
+		IpeDraw.appendBoxPoints(buf, numberFormat, x1, y1, x2, y2);
+		drain();
+	}
+
+	/**
+	 * Draws a path between points.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawPath(int[] x, int[] y, String color, String pen,
+			String dash) throws IOException {
+		drawPath(x, y, 0, x.length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a path between the points offset, ..., offset + length - 1 of the
+	 * given arrays. The time needed is linear in the number of points.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawPath(int[] x, int[] y, int offset, int length,
+			String color, String pen, String dash) throws IOException {
+		drawPoints(IpeDraw.PATH, x, offset, y, offset, 1, length, color, pen,
+				dash);
+	}
+
+	/**
+	 * Draws a path between points given as packed coordinates x0, y0, x1, y1,
+	 * ... The path uses the points offset, ..., offset + length - 1.
+	 *
+	 * @param xy
+	 *            packed coordinates of the points
+	 * @param offset
+	 *            index of the first point (not of the first coordinate)
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawPath(int[] xy, int offset, int length, String color,
+			String pen, String dash) throws IOException {
+		drawPoints(IpeDraw.PATH, xy, 2 * offset, xy, 2 * offset + 1, 2,
+				length, color, pen, dash);
+	}
+
+	/**
+	 * Draws an undashed path between points with pen width "normal" and color
+	 * "black".
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @throws IOException
+	 */
+	public void drawPath(int[] x, int[] y) throws IOException {
+		drawPath(x, y, "black", "normal", "normal");
+	}
+
+	/**
+	 * Draws a path with the points offset, ..., offset + length - 1 of
+	 * the given arrays of double coordinates.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawPath(double[] x, double[] y, int offset, int length,
+			String color, String pen, String dash) throws IOException {
+		drawPoints(IpeDraw.PATH, x, offset, y, offset, 1, length, color, pen,
+				dash);
+	}
+
+	/**
+	 * Draws a path with points given as packed double coordinates x0,
+	 * y0, x1, y1, ... The path uses the points offset, ..., offset +
+	 * length - 1.
+	 *
+	 * @param xy
+	 *            packed coordinates of the points
+	 * @param offset
+	 *            index of the first point (not of the first coordinate)
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	@Override
+	public void drawPath(double[] xy, int offset, int length, String color,
+			String pen, String dash) throws IOException {
+		drawPoints(IpeDraw.PATH, xy, 2 * offset, xy, 2 * offset + 1, 2,
+				length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a path with double coordinates.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawPath(double[] x, double[] y, String color, String pen,
+			String dash) throws IOException {
+		drawPath(x, y, 0, x.length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a path between points through the points offset, ..., offset + length - 1
+	 * with a style of the palette.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param style
+	 *            number of a style of the palette
+	 * @throws IOException
+	 */
+	public void drawPath(double[] x, double[] y, int offset, int length, int style)
+			throws IOException {
+		beginObject(IpeScene.PATH);
+		IpeDraw.checkPoints(x.length, offset, y.length, offset, 1, length);
+		buf.append(stylePathHeader(style));
+		appendPoints(IpeDraw.PATH, x, offset, y, offset, 1, length);
+	}
+
+	/**
+	 * Draws an edge between two points.
+	 *
+	 * @param x1
+	 *            x-coordinate of point 1
+	 * @param y1
+	 *            y-coordinate of point 1
+	 * @param x2
+	 *            x-coordinate of point 2
+	 * @param y2
+	 *            y-coordinate of point 2
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawEdge(int x1, int y1, int x2, int y2, String color,
+			String pen, String dash) throws IOException {
+		beginObject(IpeScene.EDGE);
+		if (deduplicator != null
+				&& !deduplicator.addEdge(x1, y1, x2, y2, color, pen, dash))
+			return;
+		pathHeader(color, pen, dash);
+		buf.append(x1).append(' ').append(y1).append(" m\n ");
+		buf.append(x2).append(' ').append(y2).append(" l\n </path>\n");
+		drain();
+	}
+
+	/**
+	 * Draws an undashed edge between two points with pen width "normal" and
+	 * color "black".
+	 *
+	 * @param x1
+	 *            x-coordinate of point 1
+	 * @param y1
+	 *            y-coordinate of point 1
+	 * @param x2
+	 *            x-coordinate of point 2
+	 * @param y2
+	 *            y-coordinate of point 2
+	 * @throws IOException
+	 */
+	public void drawEdge(int x1, int y1, int x2, int y2) throws IOException {
+		drawEdge(x1, y1, x2, y2, "black", "normal", "normal");
+	}
+
+	/**
+	 * Draws an edge between two points with double coordinates.
+	 *
+	 * @param x1
+	 *            x-coordinate of point 1
+	 * @param y1
+	 *            y-coordinate of point 1
+	 * @param x2
+	 *            x-coordinate of point 2
+	 * @param y2
+	 *            y-coordinate of point 2
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	@Override
+	public void drawEdge(double x1, double y1, double x2, double y2,
+			String color, String pen, String dash) throws IOException {
+		beginObject(IpeScene.EDGE);
+		if (deduplicator != null
+				&& !deduplicator.addEdge(x1, y1, x2, y2, color, pen, dash))
+			return;
+		IpeDraw.appendEdge(buf, numberFormat, x1, y1, x2, y2, color, pen, dash);
+		drain();
+	}
+
+	/**
+	 * Draws an edge between two points with a style of the palette.
+	 *
+	 * @param x1
+	 *            x-coordinate of point 1
+	 * @param y1
+	 *            y-coordinate of point 1
+	 * @param x2
+	 *            x-coordinate of point 2
+	 * @param y2
+	 *            y-coordinate of point 2
+	 * @param style
+	 *            number of a style of the palette
+	 * @throws IOException
+	 */
+	public void drawEdge(double x1, double y1, double x2, double y2, int style)
+			throws IOException {
+		beginObject(IpeScene.EDGE);
+		String header = stylePathHeader(style);
+		if (deduplicator != null
+				&& !deduplicator.addEdge(x1, y1, x2, y2, palette.getColor(style),
+						palette.getPen(style), palette.getDash(style)))
+			return;
+		buf.append(header);
+		IpeDraw.appendEdgePoints(buf, numberFormat, x1, y1, x2, y2);
+		drain();
+	}
+
+	/**
+	 * Places a text label at a specific point.
+	 *
+	 * @param text
+	 *            The text
+	 * @param x
+	 *            x-coordinate of the box
+	 * @param y
+	 *            y-coordinate of the box
+	 * @param color
+	 *            text-color
+	 * @param size
+	 *            text-size
+	 * @throws IOException
+	 */
+	public void writeText(String text, int x, int y, String color, String size)
+			throws IOException {
+		beginObject(IpeScene.TEXT);
+		buf.append("<text transformations=\"translations\" pos=\"").append(x)
+				.append(' ').append(y).append("\" stroke=\"").append(color)
+				.append("\" type=\"label\" width=\"190\" height=\"10\" depth=\"0\" valign=\"baseline\" size=\"")
+				.append(size).append("\">").append(text).append("</text>");
+		drain();
+	}
+
+	/**
+	 * Places a text label at a specific point with normal text-size and
+	 * text-color "black".
+	 *
+	 * @param text
+	 *            The text
+	 * @param x
+	 *            x-coordinate of the box
+	 * @param y
+	 *            y-coordinate of the box
+	 * @throws IOException
+	 */
+	public void writeText(String text, int x, int y) throws IOException {
+		writeText(text, x, y, "black", "normal");
+	}
+
+	/**
+	 * Places a text label at a point with double coordinates.
+	 *
+	 * @param text
+	 *            The text
+	 * @param x
+	 *            x-coordinate of the box
+	 * @param y
+	 *            y-coordinate of the box
+	 * @param color
+	 *            text-color
+	 * @param size
+	 *            text-size
+	 * @throws IOException
+	 */
+	@Override
+	public void writeText(String text, double x, double y, String color,
+			String size) throws IOException {
+		beginObject(IpeScene.TEXT);
+		IpeDraw.appendText(buf, numberFormat, text, x, y, color, size);
+		drain();
+	}
+
+	/**
+	 * Draws a circle.
+	 *
+	 * @param x
+	 *            x-coordinate of the center
+	 * @param y
+	 *            y-coordinate of the center
+	 * @param radius
+	 *            radius
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawCircle(int x, int y, double radius, String color,
+			String pen, String dash) throws IOException {
+		beginObject(IpeScene.CIRCLE);
+		if (deduplicator != null
+				&& !deduplicator.addCircle(x, y, radius, color, pen, dash))
+			return;
+		String sf = IpeDraw.RADIUS_FORMAT.format(radius);
+		pathHeader(color, pen, dash);
+		buf.append(sf).append(" 0 0 ").append(sf).append(' ').append(x)
+				.append(' ').append(y).append(" e\n</path>\n");
+		drain();
+	}
+
+	/**
+	 * Draws an undashed circle with pen width "normal" and color "black".
+	 *
+	 * @param x
+	 *            x-coordinate of the center
+	 * @param y
+	 *            y-coordinate of the center
+	 * @param radius
+	 *            radius
+	 * @throws IOException
+	 */
+	public void drawCircle(int x, int y, double radius) throws IOException {
+		drawCircle(x, y, radius, "black", "normal", "normal");
+	}
+
+	/**
+	 * Draws a circle with double coordinates.
+	 *
+	 * @param x
+	 *            x-coordinate of the center
+	 * @param y
+	 *            y-coordinate of the center
+	 * @param radius
+	 *            radius
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	@Override
+	public void drawCircle(double x, double y, double radius, String color,
+			String pen, String dash) throws IOException {
+		beginObject(IpeScene.CIRCLE);
+		if (deduplicator != null
+				&& !deduplicator.addCircle(x, y, radius, color, pen, dash))
+			return;
+		IpeDraw.appendCircle(buf, numberFormat, x, y, radius, color, pen, dash);
+		drain();
+	}
+
+	/**
+	 * Draws a circle with a style of the palette.
+	 *
+	 * @param x
+	 *            x-coordinate of the center
+	 * @param y
+	 *            y-coordinate of the center
+	 * @param radius
+	 *            radius
+	 * @param style
+	 *            number of a style of the palette
+	 * @throws IOException
+	 */
+	public void drawCircle(double x, double y, double radius, int style)
+			throws IOException {
+		beginObject(IpeScene.CIRCLE);
+		String header = stylePathHeader(style);
+		if (deduplicator != null
+				&& !deduplicator.addCircle(x, y, radius,
+						palette.getColor(style), palette.getPen(style),
+						palette.getDash(style)))
+			return;
+		buf.append(header);
+		IpeDraw.appendCirclePoints(buf, numberFormat, x, y, radius);
+		drain();
+	}
+
+	/**
+	 * Draws a circular arc in a mathematical positive sense.
+	 *
+	 * @param xCenter
+	 *            x-coordinate of the center
+	 * @param yCenter
+	 *            y-coordinate of the center
+	 * @param xStart
+	 *            x-coordinate of the starting point on the circle
+	 * @param yStart
+	 *            y-coordinate of the starting point on the circle
+	 * @param xEnd
+	 *            x-coordinate of the end point on the circle
+	 * @param yEnd
+	 *            y-coordinate of the end point on the circle
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawCircularArc(int xCenter, int yCenter, int xStart,
+			int yStart, int xEnd, int yEnd, String color, String pen,
+			String dash) throws IOException {
+		beginObject(IpeScene.ARC);
+		double dx = xStart - xCenter;
+		double dy = yStart - yCenter;
+		String sf = IpeDraw.RADIUS_FORMAT.format(Math.sqrt(dx * dx + dy * dy));
+		pathHeader(color, pen, dash);
+		buf.append(xStart).append(' ').append(yStart).append(" m\n ")
+				.append(sf).append(" 0 0 ").append(sf).append(' ')
+				.append(xCenter).append(' ').append(yCenter).append(' ')
+				.append(xEnd).append(' ').append(yEnd).append(" a\n</path>\n");
+		drain();
+	}
+
+	/**
+	 * Draws an undashed circular arc in a mathematical positive sense with pen
+	 * width "normal" and color "black".
+	 *
+	 * @param xCenter
+	 *            x-coordinate of the center
+	 * @param yCenter
+	 *            y-coordinate of the center
+	 * @param xStart
+	 *            x-coordinate of the starting point on the circle
+	 * @param yStart
+	 *            y-coordinate of the starting point on the circle
+	 * @param xEnd
+	 *            x-coordinate of the end point on the circle
+	 * @param yEnd
+	 *            y-coordinate of the end point on the circle
+	 * @throws IOException
+	 */
+	public void drawCircularArc(int xCenter, int yCenter, int xStart,
+			int yStart, int xEnd, int yEnd) throws IOException {
+		drawCircularArc(xCenter, yCenter, xStart, yStart, xEnd, yEnd, "black",
+				"normal", "normal");
+	}
+
+	/**
+	 * Draws a circular arc in a mathematical positive sense with double
+	 * coordinates.
+	 *
+	 * @param xCenter
+	 *            x-coordinate of the center
+	 * @param yCenter
+	 *            y-coordinate of the center
+	 * @param xStart
+	 *            x-coordinate of the starting point on the circle
+	 * @param yStart
+	 *            y-coordinate of the starting point on the circle
+	 * @param xEnd
+	 *            x-coordinate of the end point on the circle
+	 * @param yEnd
+	 *            y-coordinate of the end point on the circle
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	@Override
+	public void drawCircularArc(double xCenter, double yCenter, double xStart,
+			double yStart, double xEnd, double yEnd, String color, String pen,
+			String dash) throws IOException {
+		beginObject(IpeScene.ARC);
+		IpeDraw.appendCircularArc(buf, numberFormat, xCenter, yCenter, xStart,
+				yStart, xEnd, yEnd, color, pen, dash);
+		drain();
+	}
+
+	/**
+	 * Draws a circular arc in a mathematical positive sense with a style of
+	 * the palette.
+	 *
+	 * @param xCenter
+	 *            x-coordinate of the center
+	 * @param yCenter
+	 *            y-coordinate of the center
+	 * @param xStart
+	 *            x-coordinate of the starting point on the circle
+	 * @param yStart
+	 *            y-coordinate of the starting point on the circle
+	 * @param xEnd
+	 *            x-coordinate of the end point on the circle
+	 * @param yEnd
+	 *            y-coordinate of the end point on the circle
+	 * @param style
+	 *            number of a style of the palette
+	 * @throws IOException
+	 */
+	public void drawCircularArc(double xCenter, double yCenter, double xStart,
+			double yStart, double xEnd, double yEnd, int style)
+			throws IOException {
+		beginObject(IpeScene.ARC);
+		buf.append(stylePathHeader(style));
+		IpeDraw.appendCircularArcPoints(buf, numberFormat, xCenter, yCenter,
+				xStart, yStart, xEnd, yEnd);
+		drain();
+	}
+
+	/**
+	 * Draws a half circle from the start point to the end point in a
+	 * mathematical positive sense.
+	 *
+	 * @param xStart
+	 *            x-coordinate of the starting point
+	 * @param yStart
+	 *            y-coordinate of the starting point
+	 * @param xEnd
+	 *            x-coordinate of the end point
+	 * @param yEnd
+	 *            y-coordinate of the end point
+	 * @param color
+	 *            color
+	 * @throws IOException
+	 */
+	public void drawSemiCircle(int xStart, int yStart, int xEnd, int yEnd,
+			String color) throws IOException {
+		drawCircularArc((xStart + xEnd) / 2, (yStart + yEnd) / 2, xStart,
+				yStart, xEnd, yEnd, color, "normal", "normal");
+	}
+
+	/**
+	 * Draws a half circle with double coordinates from the start point to the
+	 * end point in a mathematical positive sense.
+	 *
+	 * @param xStart
+	 *            x-coordinate of the starting point
+	 * @param yStart
+	 *            y-coordinate of the starting point
+	 * @param xEnd
+	 *            x-coordinate of the end point
+	 * @param yEnd
+	 *            y-coordinate of the end point
+	 * @param color
+	 *            color
+	 * @throws IOException
+	 */
+	public void drawSemiCircle(double xStart, double yStart, double xEnd,
+			double yEnd, String color) throws IOException {
+		drawCircularArc((xStart + xEnd) / 2, (yStart + yEnd) / 2, xStart,
+				yStart, xEnd, yEnd, color, "normal", "normal");
+	}
+
+	/**
+	 * Draws a spline.
+	 *
+	 * @param x
+	 *            x-coordinates of the control points.
+	 * @param y
+	 *            y-coordinates of the control points.
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawSpline(int[] x, int[] y, String color, String pen,
+			String dash) throws IOException {
+		drawSpline(x, y, 0, x.length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a spline with the control points offset, ..., offset + length - 1
+	 * of the given arrays. The time needed is linear in the number of points.
+	 *
+	 * @param x
+	 *            x-coordinates of the control points.
+	 * @param y
+	 *            y-coordinates of the control points.
+	 * @param offset
+	 *            index of the first control point
+	 * @param length
+	 *            number of control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawSpline(int[] x, int[] y, int offset, int length,
+			String color, String pen, String dash) throws IOException {
+		drawPoints(IpeDraw.SPLINE, x, offset, y, offset, 1, length, color,
+				pen, dash);
+	}
+
+	/**
+	 * Draws a spline with control points given as packed coordinates x0, y0,
+	 * x1, y1, ... The spline uses the control points offset, ..., offset +
+	 * length - 1.
+	 *
+	 * @param xy
+	 *            packed coordinates of the control points
+	 * @param offset
+	 *            index of the first control point (not of the first
+	 *            coordinate)
+	 * @param length
+	 *            number of control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawSpline(int[] xy, int offset, int length, String color,
+			String pen, String dash) throws IOException {
+		drawPoints(IpeDraw.SPLINE, xy, 2 * offset, xy, 2 * offset + 1, 2,
+				length, color, pen, dash);
+	}
+
+	/**
+	 * Draws an undashed spline with pen width "normal" and color "black".
+	 *
+	 * @param x
+	 *            x-coordinates of the control points.
+	 * @param y
+	 *            y-coordinates of the control points.
+	 * @throws IOException
+	 */
+	public void drawSpline(int[] x, int[] y) throws IOException {
+		drawSpline(x, y, "black", "normal", "normal");
+	}
+
+	/**
+	 * Draws a spline with the control points offset, ..., offset + length - 1 of
+	 * the given arrays of double coordinates.
+	 *
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawSpline(double[] x, double[] y, int offset, int length,
+			String color, String pen, String dash) throws IOException {
+		drawPoints(IpeDraw.SPLINE, x, offset, y, offset, 1, length, color, pen,
+				dash);
+	}
+
+	/**
+	 * Draws a spline with control points given as packed double coordinates x0,
+	 * y0, x1, y1, ... The spline uses the control points offset, ..., offset +
+	 * length - 1.
+	 *
+	 * @param xy
+	 *            packed coordinates of the control points
+	 * @param offset
+	 *            index of the first point (not of the first coordinate)
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	@Override
+	public void drawSpline(double[] xy, int offset, int length, String color,
+			String pen, String dash) throws IOException {
+		drawPoints(IpeDraw.SPLINE, xy, 2 * offset, xy, 2 * offset + 1, 2,
+				length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a spline with double coordinates.
+	 *
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawSpline(double[] x, double[] y, String color, String pen,
+			String dash) throws IOException {
+		drawSpline(x, y, 0, x.length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a spline through the control points offset, ..., offset + length - 1
+	 * with a style of the palette.
+	 *
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param style
+	 *            number of a style of the palette
+	 * @throws IOException
+	 */
+	public void drawSpline(double[] x, double[] y, int offset, int length, int style)
+			throws IOException {
+		beginObject(IpeScene.SPLINE);
+		IpeDraw.checkPoints(x.length, offset, y.length, offset, 1, length);
+		buf.append(stylePathHeader(style));
+		appendPoints(IpeDraw.SPLINE, x, offset, y, offset, 1, length);
+	}
+
+	/**
+	 * Draws a splinegon.
+	 *
+	 * @param x
+	 *            x-coordinates of the control points.
+	 * @param y
+	 *            y-coordinates of the control points.
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawSplinegon(int[] x, int[] y, String color, String pen,
+			String dash) throws IOException {
+		drawSplinegon(x, y, 0, x.length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a splinegon with the control points offset, ..., offset + length - 1
+	 * of the given arrays. The time needed is linear in the number of points.
+	 *
+	 * @param x
+	 *            x-coordinates of the control points.
+	 * @param y
+	 *            y-coordinates of the control points.
+	 * @param offset
+	 *            index of the first control point
+	 * @param length
+	 *            number of control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawSplinegon(int[] x, int[] y, int offset, int length,
+			String color, String pen, String dash) throws IOException {
+		drawPoints(IpeDraw.SPLINEGON, x, offset, y, offset, 1, length, color,
+				pen, dash);
+	}
+
+	/**
+	 * Draws a splinegon with control points given as packed coordinates x0, y0,
+	 * x1, y1, ... The splinegon uses the control points offset, ..., offset +
+	 * length - 1.
+	 *
+	 * @param xy
+	 *            packed coordinates of the control points
+	 * @param offset
+	 *            index of the first control point (not of the first
+	 *            coordinate)
+	 * @param length
+	 *            number of control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawSplinegon(int[] xy, int offset, int length, String color,
+			String pen, String dash) throws IOException {
+		drawPoints(IpeDraw.SPLINEGON, xy, 2 * offset, xy, 2 * offset + 1, 2,
+				length, color, pen, dash);
+	}
+
+	/**
+	 * Draws an undashed splinegon with pen width "normal" and color "black".
+	 *
+	 * @param x
+	 *            x-coordinates of the control points.
+	 * @param y
+	 *            y-coordinates of the control points.
+	 * @throws IOException
+	 */
+	public void drawSplinegon(int[] x, int[] y) throws IOException {
+		drawSplinegon(x, y, "black", "normal", "normal");
+	}
+
+	/**
+	 * Draws a splinegon with the control points offset, ..., offset + length - 1 of
+	 * the given arrays of double coordinates.
+	 *
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawSplinegon(double[] x, double[] y, int offset, int length,
+			String color, String pen, String dash) throws IOException {
+		drawPoints(IpeDraw.SPLINEGON, x, offset, y, offset, 1, length, color, pen,
+				dash);
+	}
+
+	/**
+	 * Draws a splinegon with control points given as packed double coordinates x0,
+	 * y0, x1, y1, ... The splinegon uses the control points offset, ..., offset +
+	 * length - 1.
+	 *
+	 * @param xy
+	 *            packed coordinates of the control points
+	 * @param offset
+	 *            index of the first point (not of the first coordinate)
+	 * @param length
+	 *            number of points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	@Override
+	public void drawSplinegon(double[] xy, int offset, int length, String color,
+			String pen, String dash) throws IOException {
+		drawPoints(IpeDraw.SPLINEGON, xy, 2 * offset, xy, 2 * offset + 1, 2,
+				length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a splinegon with double coordinates.
+	 *
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawSplinegon(double[] x, double[] y, String color, String pen,
+			String dash) throws IOException {
+		drawSplinegon(x, y, 0, x.length, color, pen, dash);
+	}
+
+	/**
+	 * Draws a splinegon through the control points offset, ..., offset + length - 1
+	 * with a style of the palette.
+	 *
+	 * @param x
+	 *            x-coordinates of the control points
+	 * @param y
+	 *            y-coordinates of the control points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points
+	 * @param style
+	 *            number of a style of the palette
+	 * @throws IOException
+	 */
+	public void drawSplinegon(double[] x, double[] y, int offset, int length, int style)
+			throws IOException {
+		beginObject(IpeScene.SPLINEGON);
+		IpeDraw.checkPoints(x.length, offset, y.length, offset, 1, length);
+		buf.append(stylePathHeader(style));
+		appendPoints(IpeDraw.SPLINEGON, x, offset, y, offset, 1, length);
+	}
+
+	/**
+	 * Draws a smooth curve through densely sampled points as a path of cubic
+	 * Bezier curves, fitted by IpeCurveFitter. Every point is within the
+	 * tolerance of the path, which usually has far fewer control points than
+	 * the samples. Unless a number format with a fixed precision was set, the
+	 * control points are rounded to a precision that keeps this bound.
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points, at least 1
+	 * @param tolerance
+	 *            largest allowed distance of a point from the path
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawCurve(int[] x, int[] y, int offset, int length,
+			double tolerance, String color, String pen, String dash)
+			throws IOException {
+		ensureOpen();
+		IpeNumberFormat format = curveFormat(tolerance);
+		writeCurve(IpeCurveFitter.fit(x, y, offset, length,
+				fitTolerance(format, tolerance)), format, color, pen, dash);
+	}
+
+	/**
+	 * Draws a smooth curve through densely sampled points with double
+	 * coordinates, see drawCurve(int[], int[], int, int, double, String,
+	 * String, String).
+	 *
+	 * @param x
+	 *            x-coordinates of the points
+	 * @param y
+	 *            y-coordinates of the points
+	 * @param offset
+	 *            index of the first point
+	 * @param length
+	 *            number of points, at least 1
+	 * @param tolerance
+	 *            largest allowed distance of a point from the path
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawCurve(double[] x, double[] y, int offset, int length,
+			double tolerance, String color, String pen, String dash)
+			throws IOException {
+		ensureOpen();
+		IpeNumberFormat format = curveFormat(tolerance);
+		writeCurve(IpeCurveFitter.fit(x, y, offset, length,
+				fitTolerance(format, tolerance)), format, color, pen, dash);
+	}
+
+	/**
+	 * Draws many sampled curves, see drawCurve(int[], int[], int, int,
+	 * double, String, String, String). Curve i has the points x[i][j],
+	 * y[i][j]. The curves are fitted in parallel on the executor of the
+	 * writer (see setExecutor()) and written in their order.
+	 *
+	 * @param x
+	 *            x-coordinates of the points of every curve
+	 * @param y
+	 *            y-coordinates of the points of every curve
+	 * @param tolerance
+	 *            largest allowed distance of a point from its path
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawCurves(int[][] x, int[][] y, double tolerance,
+			String color, String pen, String dash) throws IOException {
+		if (x.length != y.length)
+			throw new IllegalArgumentException("x has " + x.length
+					+ " curves, y has " + y.length);
+		drawCurves(x, null, y, null, x.length, tolerance, color, pen, dash);
+	}
+
+	/**
+	 * Draws many sampled curves with double coordinates, see
+	 * drawCurves(int[][], int[][], double, String, String, String).
+	 *
+	 * @param x
+	 *            x-coordinates of the points of every curve
+	 * @param y
+	 *            y-coordinates of the points of every curve
+	 * @param tolerance
+	 *            largest allowed distance of a point from its path
+	 * @param color
+	 *            color
+	 * @param pen
+	 *            pen width: normal, heavier, fat, ultrafat
+	 * @param dash
+	 *            dash style: normal, dashed, dotted, dash dotted, dash dot
+	 *            dotted
+	 * @throws IOException
+	 */
+	public void drawCurves(double[][] x, double[][] y, double tolerance,
+			String color, String pen, String dash) throws IOException {
+		if (x.length != y.length)
+			throw new IllegalArgumentException("x has " + x.length
+					+ " curves, y has " + y.length);
+		drawCurves(null, x, null, y, x.length, tolerance, color, pen, dash);
+	}
+
+	/**
+	 * Draws a bitmap stretched to a rectangle. The pixels are compressed with
+	 * zlib and embedded into the image object as base64, so the document
+	 * grows with the resolution of the bitmap. Large bitmaps are compressed
+	 * in chunks in parallel on the executor of the writer (see
+	 * setExecutor()).
+	 *
+	 * @param width
+	 *            number of pixels of a row
+	 * @param height
+	 *            number of rows
+	 * @param rgb
+	 *            colors of the pixels as 0xRRGGBB, row by row from the top
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @throws IOException
+	 */
+	public void drawBitmap(int width, int height, int[] rgb, double x1,
+			double y1, double x2, double y2) throws IOException {
+		writeBitmap(IpeBitmapEncoder.of(rgb, width, height), x1, y1, x2, y2);
+	}
+
+	/**
+	 * Draws a bitmap given as bytes stretched to a rectangle, see
+	 * drawBitmap(int, int, int[], double, double, double, double).
+	 *
+	 * @param width
+	 *            number of pixels of a row
+	 * @param height
+	 *            number of rows
+	 * @param pixels
+	 *            the pixels row by row from the top, as one gray value or as
+	 *            red, green and blue values
+	 * @param components
+	 *            number of values per pixel: 1 (gray) or 3 (RGB)
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @throws IOException
+	 */
+	public void drawBitmap(int width, int height, byte[] pixels,
+			int components, double x1, double y1, double x2, double y2)
+			throws IOException {
+		writeBitmap(IpeBitmapEncoder.of(pixels, width, height, components),
+				x1, y1, x2, y2);
+	}
+
+	/**
+	 * Draws an image stretched to a rectangle, see drawBitmap(int, int,
+	 * int[], double, double, double, double). Images of type TYPE_BYTE_GRAY
+	 * are embedded as gray bitmaps, all others as RGB bitmaps; transparency
+	 * is dropped.
+	 *
+	 * @param image
+	 *            the image
+	 * @param x1
+	 *            left-most x-coordinate
+	 * @param y1
+	 *            bottom-most y-coordinate
+	 * @param x2
+	 *            right-most x-coordinate
+	 * @param y2
+	 *            top-most y-coordinate
+	 * @throws IOException
+	 */
+	public void drawBitmap(BufferedImage image, double x1, double y1,
+			double x2, double y2) throws IOException {
+		writeBitmap(IpeBitmapEncoder.of(image), x1, y1, x2, y2);
+	}
+
+	/**
+	 * Fits and writes the curves given by the int arrays xi and yi if they
+	 * are not null, and by xd and yd otherwise. Batches of curves are fitted
+	 * by tasks on the executor, with a bounded number in flight.
+	 */
+	private void drawCurves(final int[][] xi, final double[][] xd,
+			final int[][] yi, final double[][] yd, int count, double tolerance,
+			String color, String pen, String dash) throws IOException {
+		ensureOpen();
+		IpeNumberFormat format = curveFormat(tolerance);
+		final double fitTolerance = fitTolerance(format, tolerance);
+		if (executor == null) {
+			for (int c = 0; c < count; c++)
+				writeCurve(fitCurve(xi, xd, yi, yd, c, fitTolerance), format,
+						color, pen, dash);
+			return;
+		}
+		int maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+		Deque<Future<double[][]>> inFlight = new ArrayDeque<Future<double[][]>>();
+		int next = 0;
+		try {
+			while (next < count || !inFlight.isEmpty()) {
+				while (next < count && inFlight.size() < maxInFlight) {
+					final int from = next;
+					long points = 0;
+					while (next < count && points < CURVE_BATCH_POINTS)
+						points += xi != null ? xi[next++].length
+								: xd[next++].length;
+					final int to = next;
+					inFlight.add(executor.submit(new Callable<double[][]>() {
+						public double[][] call() {
+							double[][] curves = new double[to - from][];
+							for (int c = from; c < to; c++)
+								curves[c - from] = fitCurve(xi, xd, yi, yd, c,
+										fitTolerance);
+							return curves;
+						}
+					}));
+				}
+				for (double[] curve : await(inFlight.removeFirst()))
+					writeCurve(curve, format, color, pen, dash);
+			}
+		} finally {
+			for (Future<double[][]> f : inFlight)
+				f.cancel(true);
+		}
+	}
+
+	private static double[] fitCurve(int[][] xi, double[][] xd, int[][] yi,
+			double[][] yd, int c, double tolerance) {
+		if (xi != null)
+			return IpeCurveFitter.fit(xi[c], yi[c], 0, xi[c].length, tolerance);
+		return IpeCurveFitter.fit(xd[c], yd[c], 0, xd[c].length, tolerance);
+	}
+
+	/**
+	 * Writes control points returned by IpeCurveFitter as a path.
+	 */
+	private void writeCurve(double[] curve, IpeNumberFormat format,
+			String color, String pen, String dash) throws IOException {
+		beginObject(IpeScene.PATH);
+		if (metrics != null)
+			metrics.addPoints(curve.length / 2);
+		pathHeader(color, pen, dash);
+		IpeDraw.appendPoint(buf, format, curve[0], curve[1]).append(" m\n ");
+		for (int i = 2; i < curve.length; i += 6) {
+			IpeDraw.appendPoint(buf, format, curve[i], curve[i + 1]).append(' ');
+			IpeDraw.appendPoint(buf, format, curve[i + 2], curve[i + 3])
+					.append(' ');
+			IpeDraw.appendPoint(buf, format, curve[i + 4], curve[i + 5])
+					.append(" c\n ");
+			if (i / 6 % CHUNK_POINTS == CHUNK_POINTS - 1)
+				drainPart();
+		}
+		IpeDraw.appendPathEnd(buf, IpeDraw.PATH);
+		drain();
+	}
+
+	/**
+	 * Returns the format of the control points of curves: the number format
+	 * of the writer if it has a fixed precision, and otherwise the coarsest
+	 * one whose rounding stays below a tenth of the tolerance.
+	 */
+	private IpeNumberFormat curveFormat(double tolerance) {
+		if (numberFormat.getPrecision() >= 0 || !(tolerance > 0)
+				|| Double.isInfinite(tolerance))
+			return numberFormat;
+		int digits = (int) Math.ceil(-Math.log10(tolerance / 10));
+		return IpeNumberFormat.withPrecision(Math.max(0,
+				Math.min(IpeNumberFormat.MAX_PRECISION, digits)));
+	}
+
+	/**
+	 * Returns the tolerance for fitting that leaves room for rounding the
+	 * control points with the given format.
+	 */
+	private double fitTolerance(IpeNumberFormat format, double tolerance) {
+		if (format == numberFormat)
+			return tolerance;
+		// rounding moves a control point, and thus the curve, by at most
+		// half a unit in both coordinates
+		double rounding = Math.sqrt(0.5)
+				* Math.pow(10, -format.getPrecision());
+		return Math.max(tolerance / 2, tolerance - rounding);
+	}
+
+	private static double[][] await(Future<double[][]> future)
+			throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("curve fitting interrupted");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	private void writeBitmap(IpeBitmapEncoder.Pixels pixels, double x1,
+			double y1, double x2, double y2) throws IOException {
+		beginObject(IpeMetrics.IMAGE);
+		List<byte[]> data = IpeBitmapEncoder.encode(pixels, executor,
+				Deflater.DEFAULT_COMPRESSION);
+		long length = 0;
+		for (byte[] d : data)
+			length += d.length;
+		buf.append("<image rect=\"");
+		IpeDraw.appendPoint(buf, numberFormat, x1, y1).append(' ');
+		IpeDraw.appendPoint(buf, numberFormat, x2, y2).append("\" width=\"")
+				.append(pixels.width).append("\" height=\"")
+				.append(pixels.height).append("\" ColorSpace=\"")
+				.append(pixels.components == 1 ? "DeviceGray" : "DeviceRGB")
+				.append("\" BitsPerComponent=\"8\" Filter=\"FlateDecode\""
+						+ " length=\"").append(length)
+				.append("\" encoding=\"base64\">\n");
+		appendBase64(data);
+		buf.append("</image>\n");
+		drain();
+	}
+
+	/**
+	 * Appends the concatenation of byte arrays as base64 in lines of 76
+	 * characters.
+	 */
+	private void appendBase64(List<byte[]> data) throws IOException {
+		Base64.Encoder encoder = Base64.getEncoder();
+		// lines of 57 bytes, 64 lines at a time
+		byte[] block = new byte[57 * 64];
+		byte[] encoded = new byte[4 * block.length / 3];
+		int n = 0;
+		for (int d = 0; d < data.size(); d++) {
+			byte[] bytes = data.get(d);
+			boolean last = d == data.size() - 1;
+			for (int i = 0; i < bytes.length || last && n > 0;) {
+				int k = Math.min(block.length - n, bytes.length - i);
+				System.arraycopy(bytes, i, block, n, k);
+				i += k;
+				n += k;
+				if (n < block.length && !(last && i == bytes.length))
+					continue;
+				int m = encoder.encode(n == block.length ? block : Arrays
+						.copyOf(block, n), encoded);
+				for (int j = 0; j < m; j += 76) {
+					int end = Math.min(m, j + 76);
+					for (int c = j; c < end; c++)
+						buf.append((char) encoded[c]);
+					buf.append('\n');
+				}
+				n = 0;
+				drainPart();
+			}
+		}
+	}
+
+	/**
+	 * Fills polygons with the same number of corners as the subpaths of a
+	 * single path without outline.
+	 *
+	 * @param xy
+	 *            packed coordinates of the corners x0, y0, x1, y1, ...
+	 * @param count
+	 *            number of polygons
+	 * @param corners
+	 *            number of corners of each polygon
+	 * @param fill
+	 *            fill color, a name or "r g b"
+	 */
+	void fillPolygons(double[] xy, int count, int corners, String fill)
+			throws IOException {
+		beginObject(IpeScene.PATH);
+		buf.append("<path fill=\"").append(fill).append("\">\n");
+		for (int p = 0, k = 0; p < count; p++) {
+			for (int c = 0; c < corners; c++, k += 2)
+				IpeDraw.appendPoint(buf, numberFormat, xy[k], xy[k + 1])
+						.append(c == 0 ? " m\n" : " l\n");
+			buf.append("h\n");
+			if (p % 256 == 255)
+				drainPart();
+		}
+		buf.append("</path>\n");
+		drain();
+	}
+
+	/**
+	 * Closes the current page and opens a new one.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void newPage() throws IOException {
+		ensureOpen();
+		buf.append(IpeDraw.newPage());
+		pendingLayer = null;
+		currentLayer = "alpha";
+		drainBuffer();
+	}
+
+	/**
+	 * Closes the current page and opens a new one with the given layers. The
+	 * page has a single view that shows all layers. Objects go into the first
+	 * layer until setLayer() is called.
+	 *
+	 * @param layers
+	 *            names of the layers of the new page
+	 * @throws IOException
+	 */
+	@Override
+	public void newPage(String... layers) throws IOException {
+		ensureOpen();
+		buf.append("</page>\n");
+		openPage(layers, null);
+	}
+
+	/**
+	 * Closes the current page and opens a new one with the given layers and
+	 * views, see writeHeader(String[], String[][]).
+	 *
+	 * @param layers
+	 *            names of the layers of the new page
+	 * @param views
+	 *            for every view the names of the layers it shows
+	 * @throws IOException
+	 */
+	public void newPage(String[] layers, String[][] views) throws IOException {
+		ensureOpen();
+		buf.append("</page>\n");
+		openPage(layers, views);
+	}
+
+	/**
+	 * Puts the following objects into the given layer of the current page.
+	 *
+	 * @param layer
+	 *            name of a layer declared for the current page
+	 */
+	@Override
+	public void setLayer(String layer) {
+		ensureOpen();
+		if (layer.equals(currentLayer)) {
+			pendingLayer = null;
+			return;
+		}
+		pendingLayer = layer;
+		objectStart = -1;
+	}
+
+	/**
+	 * Writes objects that were produced by another writer, for example a
+	 * writer on a StringBuilder used by another thread, into the current page.
+	 * The fragment should set the layer of its first object if the page has
+	 * several layers.
+	 *
+	 * @param fragment
+	 *            the objects
+	 * @throws IOException
+	 */
+	public void writeFragment(CharSequence fragment) throws IOException {
+		ensureOpen();
+		int n = fragment.length();
+		for (int i = 0; i < n; i += bufferSize) {
+			buf.append(fragment, i, Math.min(n, i + bufferSize));
+			drainBuffer();
+		}
+		// the layer of the last object of the fragment is unknown
+		pendingLayer = null;
+		currentLayer = null;
+	}
+
+	/**
+	 * Tells a writer for a fragment which layer the preceding objects are in,
+	 * so that the layer attribute is only written when the layer changes.
+	 */
+	void assumeLayer(String layer) {
+		pendingLayer = null;
+		currentLayer = layer;
+	}
+
+	/**
+	 * Returns the layer that the next object is put into, or null if no layer
+	 * has been set.
+	 */
+	String getLayer() {
+		return pendingLayer != null ? pendingLayer : currentLayer;
+	}
+
+	/**
+	 * Creates a writer for objects that are written by another thread into
+	 * the current layer of this writer. It has the settings of
+	 * newFragmentWriter(), and hands its buffer to the sink in pieces of
+	 * complete objects that each state their layer.
+	 */
+	IpeWriter newPieceWriter(Appendable out, int bufferSize) {
+		IpeWriter w = newFragmentWriter(out, bufferSize);
+		w.independentPieces = true;
+		String layer = getLayer();
+		if (layer != null)
+			w.setLayer(layer);
+		return w;
+	}
+
+	/**
+	 * Creates a writer for a fragment that is written into this writer later.
+	 * It has the number format, palette, simplification tolerance, mark
+	 * grouping and executor of this writer.
+	 */
+	IpeWriter newFragmentWriter(Appendable out, int bufferSize) {
+		IpeWriter w = new IpeWriter(out, bufferSize);
+		w.numberFormat = numberFormat;
+		w.palette = palette;
+		w.tolerance = tolerance;
+		w.groupMarks = groupMarks;
+		w.executor = executor;
+		return w;
+	}
+
+	/**
+	 * Opens a page. Without views, the page has a single view that shows all
+	 * layers with the first one active.
+	 */
+	private void openPage(String[] layers, String[][] views) throws IOException {
+		if (layers.length == 0)
+			throw new IllegalArgumentException("a page needs a layer");
+		if (views != null) {
+			if (views.length == 0)
+				throw new IllegalArgumentException("a page needs a view");
+			List<String> declared = Arrays.asList(layers);
+			for (String[] view : views) {
+				if (view.length == 0)
+					throw new IllegalArgumentException("a view needs a layer");
+				for (String layer : view)
+					if (!declared.contains(layer))
+						throw new IllegalArgumentException("undeclared layer: "
+								+ layer);
+			}
+		}
+		buf.append("<page>\n");
+		for (String layer : layers)
+			buf.append("<layer name=\"").append(layer).append("\"/>\n");
+		if (views == null) {
+			appendView(layers, layers[0]);
+		} else {
+			for (String[] view : views)
+				appendView(view, view[view.length - 1]);
+		}
+		pendingLayer = null;
+		currentLayer = layers[0];
+		drainBuffer();
+	}
+
+	private void appendView(String[] layers, String active) {
+		buf.append("<view layers=\"");
+		for (int i = 0; i < layers.length; i++)
+			buf.append(i == 0 ? "" : " ").append(layers[i]);
+		buf.append("\" active=\"").append(active).append("\"/>\n");
+	}
+
+	/**
+	 * Hands all buffered output to the sink and flushes the sink if possible.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		flushBuffer();
+		if (channel != null)
+			channel.flush();
+		else if (out instanceof Flushable)
+			((Flushable) out).flush();
+	}
+
+	/**
+	 * Writes getIpeEnd() if the header was written, hands all buffered output
+	 * to the sink and closes the sink if possible. Closing a closed writer has
+	 * no effect.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		try {
+			if (headerWritten)
+				buf.append(IpeDraw.getIpeEnd());
+			flushBuffer();
+			if (journal != null) {
+				channel.flush();
+				journal.commit();
+			}
+			if (metrics != null)
+				metrics.closed();
+		} finally {
+			closed = true;
+			if (channel != null)
+				channel.close();
+			else if (out instanceof Closeable)
+				((Closeable) out).close();
+		}
+	}
+
+	/**
+	 * Writes a path, spline or splinegon in chunks of CHUNK_POINTS points, so
+	 * that the buffer stays small even for very long paths.
+	 */
+	private void drawPoints(int kind, int[] x, int xOff, int[] y, int yOff,
+			int stride, int length, String color, String pen, String dash)
+			throws IOException {
+		beginObject(sceneKind(kind));
+		IpeDraw.checkPoints(x, xOff, y, yOff, stride, length);
+		if (metrics != null)
+			metrics.addPoints(length);
+		pathHeader(color, pen, dash);
+		if (tolerance > 0 && length > 2) {
+			drawSimplified(kind, x, null, xOff, y, null, yOff, stride, length);
+		} else {
+			for (int from = 0; from < length; from += CHUNK_POINTS) {
+				IpeDraw.appendPoints(buf, kind, x, xOff, y, yOff, stride,
+						from, Math.min(length, from + CHUNK_POINTS));
+				drainPart();
+			}
+		}
+		IpeDraw.appendPathEnd(buf, kind);
+		drain();
+	}
+
+	/**
+	 * Writes a path, spline or splinegon with double coordinates in chunks of
+	 * CHUNK_POINTS points.
+	 */
+	private void drawPoints(int kind, double[] x, int xOff, double[] y,
+			int yOff, int stride, int length, String color, String pen,
+			String dash) throws IOException {
+		beginObject(sceneKind(kind));
+		IpeDraw.checkPoints(x.length, xOff, y.length, yOff, stride, length);
+		pathHeader(color, pen, dash);
+		appendPoints(kind, x, xOff, y, yOff, stride, length);
+	}
+
+	/**
+	 * Appends the points and the end of a path, spline or splinegon with
+	 * double coordinates whose header is in the buffer.
+	 */
+	private void appendPoints(int kind, double[] x, int xOff, double[] y,
+			int yOff, int stride, int length) throws IOException {
+		if (metrics != null)
+			metrics.addPoints(length);
+		if (tolerance > 0 && length > 2) {
+			drawSimplified(kind, null, x, xOff, null, y, yOff, stride, length);
+		} else {
+			for (int from = 0; from < length; from += CHUNK_POINTS) {
+				IpeDraw.appendPoints(buf, numberFormat, kind, x, xOff, y, yOff,
+						stride, from, Math.min(length, from + CHUNK_POINTS));
+				drainPart();
+			}
+		}
+		IpeDraw.appendPathEnd(buf, kind);
+		drain();
+	}
+
+	/**
+	 * Writes a batch of marks. The coordinates are taken from the int arrays
+	 * xi and yi if they are not null, and from xd and yd otherwise; the points
+	 * have been checked. The tag of a mark is written as a prefix that
+	 * depends on the shape, the coordinates, and a suffix that depends on the
+	 * size and the color; both are built once per batch.
+	 */
+	private void drawMarks(int[] xi, double[] xd, int[] yi, double[] yd,
+			int offset, int length, String[] shapes, int[] shapeIndex,
+			String[] colors, int[] colorIndex, String[] sizes, int[] sizeIndex)
+			throws IOException {
+		int end = offset + length;
+		checkStyleIndex(shapes, shapeIndex, offset, end, "shape");
+		checkStyleIndex(colors, colorIndex, offset, end, "color");
+		checkStyleIndex(sizes, sizeIndex, offset, end, "size");
+		beginObject(IpeScene.MARK);
+		String[] prefixes = new String[shapes.length];
+		for (int s = 0; s < shapes.length; s++)
+			prefixes[s] = "<use name=\"mark/" + shapes[s] + "(sx)\" pos=\"";
+		String[] suffixes = new String[sizes.length * colors.length];
+		long count = 0;
+		int i = offset;
+		while (i < end) {
+			// the run of points with the style of point i
+			int shape = shapeIndex == null ? 0 : shapeIndex[i];
+			int color = colorIndex == null ? 0 : colorIndex[i];
+			int size = sizeIndex == null ? 0 : sizeIndex[i];
+			int runEnd = i + 1;
+			while (runEnd < end
+					&& (shapeIndex == null || shapeIndex[runEnd] == shape)
+					&& (colorIndex == null || colorIndex[runEnd] == color)
+					&& (sizeIndex == null || sizeIndex[runEnd] == size))
+				runEnd++;
+			String prefix = prefixes[shape];
+			int styleIndex = size * colors.length + color;
+			String suffix = suffixes[styleIndex];
+			if (suffix == null) {
+				suffix = "\" size=\"" + sizes[size] + "\" stroke=\""
+						+ colors[color] + "\"/>\n";
+				suffixes[styleIndex] = suffix;
+			}
+			// the group tag stays in the buffer until its first mark, since
+			// drainPart() is only called after a mark
+			int groupStart = buf.length();
+			long groupCount = 0;
+			if (groupMarks) {
+				objectStart = groupStart;
+				buf.append("<group>\n");
+			}
+			for (; i < runEnd; i++) {
+				if (deduplicator != null
+						&& !deduplicator.addMark(xi != null ? xi[i] : xd[i],
+								yi != null ? yi[i] : yd[i], shapes[shape],
+								colors[color], sizes[size]))
+					continue;
+				if (!groupMarks)
+					objectStart = buf.length();
+				buf.append(prefix);
+				if (xi != null)
+					buf.append(xi[i]).append(' ').append(yi[i]);
+				else
+					IpeDraw.appendPoint(buf, numberFormat, xd[i], yd[i]);
+				buf.append(suffix);
+				count++;
+				groupCount++;
+				if (groupMarks && independentPieces
+						&& buf.length() >= bufferSize) {
+					// a piece holds complete objects only, so the group ends
+					// here and the run goes on in a new one
+					buf.append("</group>\n");
+					drainBuffer();
+					groupStart = buf.length();
+					groupCount = 0;
+					objectStart = groupStart;
+					buf.append("<group>\n");
+				} else if (groupMarks)
+					drainPart();
+				else if (pendingLayer != null || buf.length() >= bufferSize)
+					drainBuffer();
+			}
+			if (groupMarks) {
+				// an empty group is valid, but useless
+				if (groupCount == 0)
+					buf.setLength(groupStart);
+				else
+					buf.append("</group>\n");
+				drainBuffer();
+			}
+		}
+		if (metrics != null)
+			metrics.endObjects(count);
+	}
+
+	private static void checkStyleIndex(String[] values, int[] index,
+			int from, int to, String name) {
+		if (values.length == 0)
+			throw new IllegalArgumentException("no " + name + " given");
+		if (index == null)
+			return;
+		if (index.length < to)
+			throw new IndexOutOfBoundsException(name + " index of point "
+					+ (to - 1) + " missing");
+		for (int i = from; i < to; i++)
+			if (index[i] < 0 || index[i] >= values.length)
+				throw new IndexOutOfBoundsException(name + " index "
+						+ index[i] + " of point " + i + " out of bounds");
+	}
+
+	/**
+	 * Simplifies the points of a path, spline or splinegon chunk by chunk and
+	 * appends the remaining points. The coordinates are taken from the int
+	 * arrays xi and yi if they are not null, and from xd and yd otherwise.
+	 */
+	private void drawSimplified(int kind, int[] xi, double[] xd, int xOff,
+			int[] yi, double[] yd, int yOff, int stride, int length)
+			throws IOException {
+		int chunk = Math.min(length, IpeSimplifier.CHUNK_POINTS);
+		if (simplifyX == null || simplifyX.length < chunk) {
+			simplifyX = new double[chunk];
+			simplifyY = new double[chunk];
+			simplifyKeep = new boolean[chunk];
+		}
+		if (simplifyStack == null)
+			simplifyStack = new int[64];
+		double[] sx = simplifyX, sy = simplifyY;
+		double sqTolerance = tolerance * tolerance;
+		for (int start = 0; start < length - 1; start += chunk - 1) {
+			int n = Math.min(length - start, chunk);
+			for (int i = 0, xj = xOff + start * stride, yj = yOff + start
+					* stride; i < n; i++, xj += stride, yj += stride) {
+				sx[i] = xi != null ? xi[xj] : xd[xj];
+				sy[i] = yi != null ? yi[yj] : yd[yj];
+			}
+			simplifyStack = IpeSimplifier.simplifyChunk(sx, sy, 0, n - 1,
+					sqTolerance, simplifyKeep, simplifyStack);
+			// keep the remaining points in place; in later chunks slot 0 is
+			// the point already written with the previous chunk
+			int first = start == 0 ? 0 : 1;
+			int k = first;
+			for (int i = first; i < n; i++) {
+				if (simplifyKeep[i]) {
+					sx[k] = sx[i];
+					sy[k] = sy[i];
+					k++;
+				}
+			}
+			removedPoints += n - k;
+			for (int from = first; from < k; from += CHUNK_POINTS) {
+				IpeDraw.appendPoints(buf, numberFormat, kind, sx, 0, sy, 0, 1,
+						from, Math.min(k, from + CHUNK_POINTS));
+				drainPart();
+			}
+		}
+	}
+
+	private void pathHeader(String color, String pen, String dash) {
+		IpeDraw.appendPathHeader(buf, color, pen, dash);
+	}
+
+	private String stylePathHeader(int style) {
+		if (palette == null)
+			throw new IllegalStateException("no palette");
+		return palette.getPathHeader(style);
+	}
+
+	/**
+	 * Appends the preamble and the style sheets. A channel gets the encoded
+	 * default header directly.
+	 */
+	private void appendHeader() throws IOException {
+		if (channel != null && palette == null && styleSheets.length() == 0) {
+			flushBuffer();
+			channel.writeHeader();
+			return;
+		}
+		buf.append(IpeDraw.getIpePreamble()).append(styleSheet())
+				.append(styleSheets);
+	}
+
+	/**
+	 * Returns the style sheet of IpeDraw, with the entries of the palette if
+	 * one was set, and freezes the palette.
+	 */
+	private String styleSheet() {
+		if (palette == null)
+			return IpeDraw.getIpeStyle();
+		palette.freeze();
+		return IpeDraw.getIpeStyle(palette);
+	}
+
+	private void ensureOpen() {
+		if (closed)
+			throw new IllegalStateException("writer is closed");
+	}
+
+	/**
+	 * Must be called before an object is appended to the buffer.
+	 */
+	private void beginObject(byte kind) {
+		ensureOpen();
+		objectStart = buf.length();
+		if (metrics != null)
+			metrics.beginObject(kind);
+	}
+
+	private static byte sceneKind(int kind) {
+		return kind == IpeDraw.PATH ? IpeScene.PATH
+				: kind == IpeDraw.SPLINE ? IpeScene.SPLINE : IpeScene.SPLINEGON;
+	}
+
+	private static byte symbolKind(String name) {
+		return name.startsWith("mark/") ? IpeScene.MARK : IpeMetrics.SYMBOL;
+	}
+
+	/**
+	 * Adds the layer attribute to the current object if its layer differs
+	 * from the one of the previous object, and hands the buffer to the sink if
+	 * it is full. The object must have been started with beginObject(), and
+	 * its opening tag must be in the buffer. Ends the object for the metrics.
+	 */
+	private void drain() throws IOException {
+		drainBuffer();
+		if (metrics != null)
+			metrics.endObject();
+	}
+
+	/**
+	 * Like drain(), in the middle of an object.
+	 */
+	private void drainPart() throws IOException {
+		if (!independentPieces)
+			drainBuffer();
+	}
+
+	/**
+	 * drain() without ending an object, for example after a page was opened.
+	 */
+	private void drainBuffer() throws IOException {
+		if (pendingLayer != null && objectStart >= 0) {
+			// after the element name
+			int space = objectStart + 1;
+			while (buf.charAt(space) != ' ' && buf.charAt(space) != '>')
+				space++;
+			buf.insert(space, "\"").insert(space, pendingLayer)
+					.insert(space, " layer=\"");
+			currentLayer = pendingLayer;
+			pendingLayer = null;
+		}
+		if (buf.length() >= bufferSize)
+			flushBuffer();
+	}
+
+	private void flushBuffer() throws IOException {
+		int n = buf.length();
+		if (n == 0)
+			return;
+		if (metrics == null) {
+			writeBuffer(n);
+		} else {
+			IpeMetrics.FlushEvent event = metrics.beginWrite();
+			long start = System.nanoTime();
+			writeBuffer(n);
+			metrics.wrote(event, n, channel != null ? channel.getByteCount()
+					: -1, System.nanoTime() - start);
+		}
+		buf.setLength(0);
+		objectStart = -1;
+		if (independentPieces && pendingLayer == null && currentLayer != null) {
+			pendingLayer = currentLayer;
+			currentLayer = null;
+		}
+	}
+
+	private void writeBuffer(int n) throws IOException {
+		if (writer != null || channel != null) {
+			if (chars == null || chars.length < n)
+				chars = new char[Math.max(n, bufferSize)];
+			buf.getChars(0, n, chars, 0);
+			if (channel != null)
+				channel.write(chars, 0, n);
+			else
+				writer.write(chars, 0, n);
+		} else {
+			out.append(buf);
+		}
+	}
+}
@@ -0,0 +1,454 @@
+package de.uniwue.smooth.draw.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.uniwue.smooth.draw.IpeDraw;
+import de.uniwue.smooth.draw.IpeGraphExport;
+import de.uniwue.smooth.draw.IpePalette;
+import de.uniwue.smooth.draw.IpeWriter;
+
+/**
+ * JMH benchmarks for the drawing primitives of IpeDraw and IpeWriter, and
+ * for the generation of complete documents of synthetic graphs.
+ *
+ * Build and run them with
+ *
+ * <pre>
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar -prof gc [regexp...]
+ * </pre>
+ *
+ * The gc profiler reports the allocated bytes per operation
+ * (gc.alloc.rate.norm). The secondary result "chars" is the number of
+ * output characters per second; divided by the score it gives the
+ * characters per operation.
+ *
+ * The documents are random geometric graphs with 10^exponent objects, a
+ * third of them vertex marks and the rest edges to nearby vertices. Only the
+ * graph of the exponent being measured is built; documents with 10^7
+ * objects need a heap of about 1 GB.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IpeDrawBenchmark {
+
+	private static final String[] COLORS = { "black", "red", "blue",
+			"darkgreen", "orange" };
+
+	/**
+	 * A Writer that only counts characters.
+	 */
+	static final class CountingWriter extends Writer {
+		long count;
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			count += len;
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			count += len;
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * Counts the output characters, reported next to the score.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Output {
+		public long chars;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			chars = 0;
+		}
+	}
+
+	/**
+	 * Random coordinates for the single primitives.
+	 */
+	@State(Scope.Thread)
+	public static class Values {
+		int[] v = new int[1024];
+		int counter;
+
+		@Setup
+		public void setUp() {
+			Random random = new Random(42);
+			for (int i = 0; i < v.length; i++)
+				v[i] = random.nextInt(1000);
+		}
+
+		/** Returns the index of the next operation. */
+		int next() {
+			return counter++ & (v.length - 1);
+		}
+
+		int at(int i) {
+			return v[i & (v.length - 1)];
+		}
+	}
+
+	@Benchmark
+	public int mark(Values s, Output out) {
+		int i = s.next();
+		return count(out, IpeDraw.drawIpeMark(s.at(i), s.at(i + 1), "disk",
+				"red", "normal"));
+	}
+
+	@Benchmark
+	public int markDouble(Values s, Output out) {
+		int i = s.next();
+		return count(out, IpeDraw.drawIpeMark(s.at(i) * 0.25,
+				s.at(i + 1) * 0.5, "disk", "red", "normal"));
+	}
+
+	@Benchmark
+	public int box(Values s, Output out) {
+		int i = s.next();
+		return count(out, IpeDraw.drawIpeBox(s.at(i), s.at(i + 1),
+				s.at(i + 2), s.at(i + 3)));
+	}
+
+	@Benchmark
+	public int edge(Values s, Output out) {
+		int i = s.next();
+		return count(out, IpeDraw.drawIpeEdge(s.at(i), s.at(i + 1),
+				s.at(i + 2), s.at(i + 3), "blue"));
+	}
+
+	@Benchmark
+	public int text(Values s, Output out) {
+		int i = s.next();
+		return count(out, IpeDraw.writeIpeText("$v_{" + i + "}$", s.at(i),
+				s.at(i + 1)));
+	}
+
+	@Benchmark
+	public int circle(Values s, Output out) {
+		int i = s.next();
+		return count(out, IpeDraw.drawIpeCircle(s.at(i), s.at(i + 1),
+				s.at(i + 2) / 7.0));
+	}
+
+	/**
+	 * The radius formatting of IpeDraw before IpeNumberFormat, as a baseline.
+	 */
+	@Benchmark
+	public int circleLegacyDecimalFormat(Values s, Output out) {
+		int i = s.next();
+		return count(out, new java.text.DecimalFormat("####.000").format(s
+				.at(i) / 7.0));
+	}
+
+	@Benchmark
+	public int arc(Values s, Output out) {
+		int i = s.next();
+		return count(out, IpeDraw.drawIpeCircularArc(s.at(i), s.at(i + 1),
+				s.at(i + 2), s.at(i + 3), s.at(i + 4), s.at(i + 5)));
+	}
+
+	/**
+	 * Random points for paths, splines and splinegons.
+	 */
+	@State(Scope.Benchmark)
+	public static class Points {
+		@Param({ "10", "1000", "100000" })
+		int n;
+		int[] x, y;
+
+		@Setup
+		public void setUp() {
+			Random random = new Random(42);
+			x = new int[n];
+			y = new int[n];
+			for (int i = 0; i < n; i++) {
+				x[i] = random.nextInt(1000);
+				y[i] = random.nextInt(1000);
+			}
+		}
+	}
+
+	@Benchmark
+	public int path(Points p, Output out) {
+		return count(out, IpeDraw.drawIpePath(p.x, p.y));
+	}
+
+	@Benchmark
+	public int spline(Points p, Output out) {
+		return count(out, IpeDraw.drawIpeSpline(p.x, p.y));
+	}
+
+	@Benchmark
+	public int splinegon(Points p, Output out) {
+		return count(out, IpeDraw.drawIpeSplinegon(p.x, p.y));
+	}
+
+	/**
+	 * 100000 marks in blocks of 1000 with the same color.
+	 */
+	@State(Scope.Benchmark)
+	public static class Marks {
+		static final int MARKS = 100000;
+		final String[] shapes = { "disk" };
+		final String[] sizes = { "normal" };
+		int[] x, y, color;
+
+		@Setup
+		public void setUp() {
+			Random random = new Random(42);
+			x = new int[MARKS];
+			y = new int[MARKS];
+			color = new int[MARKS];
+			for (int i = 0; i < MARKS; i++) {
+				x[i] = random.nextInt(1000);
+				y[i] = random.nextInt(1000);
+				color[i] = i / 1000 % COLORS.length;
+			}
+		}
+	}
+
+	@Benchmark
+	public long marksSingle(Marks m, Output out) throws IOException {
+		CountingWriter sink = new CountingWriter();
+		IpeWriter w = new IpeWriter(sink);
+		for (int i = 0; i < Marks.MARKS; i++)
+			w.drawMark(m.x[i], m.y[i], "disk", COLORS[m.color[i]], "normal");
+		w.close();
+		return count(out, sink);
+	}
+
+	@Benchmark
+	public long marksBatch(Marks m, Output out) throws IOException {
+		CountingWriter sink = new CountingWriter();
+		IpeWriter w = new IpeWriter(sink);
+		w.drawMarks(m.x, m.y, 0, Marks.MARKS, m.shapes, null, COLORS,
+				m.color, m.sizes, null);
+		w.close();
+		return count(out, sink);
+	}
+
+	/**
+	 * A densely sampled spiral, written as a polyline and as fitted curves.
+	 */
+	@State(Scope.Benchmark)
+	public static class Spiral {
+		static final int SAMPLES = 100000;
+		double[] x, y;
+
+		@Setup
+		public void setUp() {
+			x = new double[SAMPLES];
+			y = new double[SAMPLES];
+			for (int i = 0; i < SAMPLES; i++) {
+				double t = i * 0.0005;
+				x[i] = 500 + 10 * t * Math.cos(t);
+				y[i] = 500 + 10 * t * Math.sin(t);
+			}
+		}
+	}
+
+	@Benchmark
+	public long curvePolyline(Spiral s, Output out) throws IOException {
+		CountingWriter sink = new CountingWriter();
+		IpeWriter w = new IpeWriter(sink);
+		w.drawPath(s.x, s.y, 0, Spiral.SAMPLES, "black", "normal", "normal");
+		w.close();
+		return count(out, sink);
+	}
+
+	@Benchmark
+	public long curveFitted(Spiral s, Output out) throws IOException {
+		CountingWriter sink = new CountingWriter();
+		IpeWriter w = new IpeWriter(sink);
+		w.drawCurve(s.x, s.y, 0, Spiral.SAMPLES, 0.1, "black", "normal",
+				"normal");
+		w.close();
+		return count(out, sink);
+	}
+
+	/**
+	 * A random geometric graph with 10^exponent objects, as edge list and in
+	 * CSR form.
+	 */
+	static final class GraphData {
+		final int vertices, edges;
+		final int[] x, y, source, target;
+		final int[] offsets, targets, edgeStyle;
+		final String[][] edgeStyles;
+		final String[][] vertexStyles = { { "disk", "black", "normal" } };
+
+		GraphData(int exponent) {
+			long objects = 1;
+			for (int i = 0; i < exponent; i++)
+				objects *= 10;
+			vertices = (int) (objects / 3);
+			edges = (int) (objects - vertices);
+			x = new int[vertices];
+			y = new int[vertices];
+			source = new int[edges];
+			target = new int[edges];
+			Random random = new Random(exponent);
+			for (int i = 0; i < vertices; i++) {
+				x[i] = random.nextInt(1000);
+				y[i] = random.nextInt(1000);
+			}
+			for (int i = 0; i < edges; i++) {
+				source[i] = random.nextInt(vertices);
+				target[i] = Math.min(vertices - 1,
+						Math.max(0, source[i] + random.nextInt(21) - 10));
+			}
+			offsets = new int[vertices + 1];
+			targets = new int[edges];
+			edgeStyle = new int[edges];
+			for (int i = 0; i < edges; i++)
+				offsets[source[i] + 1]++;
+			for (int u = 0; u < vertices; u++)
+				offsets[u + 1] += offsets[u];
+			int[] fill = offsets.clone();
+			for (int i = 0; i < edges; i++) {
+				int pos = fill[source[i]]++;
+				targets[pos] = target[i];
+				edgeStyle[pos] = i % COLORS.length;
+			}
+			edgeStyles = new String[COLORS.length][];
+			for (int i = 0; i < COLORS.length; i++)
+				edgeStyles[i] = new String[] { COLORS[i], "normal", "normal" };
+		}
+	}
+
+	/**
+	 * The graph of the documents written by IpeWriter. It is built in the
+	 * setup of the trial, so only the graph being measured is in memory.
+	 */
+	@State(Scope.Benchmark)
+	public static class Graph {
+		@Param({ "3", "5", "7" })
+		int exponent;
+		GraphData g;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			g = new GraphData(exponent);
+		}
+	}
+
+	@Benchmark
+	public long documentWriter(Graph graph, Output out) throws IOException {
+		GraphData g = graph.g;
+		CountingWriter sink = new CountingWriter();
+		IpeWriter w = new IpeWriter(sink);
+		w.writeHeader();
+		for (int i = 0; i < g.edges; i++)
+			w.drawEdge(g.x[g.source[i]], g.y[g.source[i]], g.x[g.target[i]],
+					g.y[g.target[i]], COLORS[i % COLORS.length], "normal",
+					"normal");
+		for (int i = 0; i < g.vertices; i++)
+			w.drawMark(g.x[i], g.y[i], "disk", "black", "normal");
+		w.close();
+		return count(out, sink);
+	}
+
+	@Benchmark
+	public long documentStyle(Graph graph, Output out) throws IOException {
+		GraphData g = graph.g;
+		CountingWriter sink = new CountingWriter();
+		IpeWriter w = new IpeWriter(sink);
+		IpePalette palette = w.getPalette();
+		int[] styles = new int[COLORS.length];
+		for (int i = 0; i < styles.length; i++)
+			styles[i] = palette.style(COLORS[i], "normal", "normal");
+		w.writeHeader();
+		for (int i = 0; i < g.edges; i++)
+			w.drawEdge(g.x[g.source[i]], g.y[g.source[i]], g.x[g.target[i]],
+					g.y[g.target[i]], styles[i % styles.length]);
+		for (int i = 0; i < g.vertices; i++)
+			w.drawMark(g.x[i], g.y[i], "disk", "black", "normal");
+		w.close();
+		return count(out, sink);
+	}
+
+	@Benchmark
+	public long documentCsr(Graph graph, Output out) throws IOException {
+		GraphData g = graph.g;
+		CountingWriter sink = new CountingWriter();
+		IpeWriter w = new IpeWriter(sink);
+		w.writeHeader();
+		IpeGraphExport.drawGraph(w, g.x, g.y, g.offsets, g.targets, false,
+				g.vertexStyles, null, g.edgeStyles, g.edgeStyle);
+		w.close();
+		return count(out, sink);
+	}
+
+	/**
+	 * The graph of the documents built by concatenating IpeDraw Strings. A
+	 * String with 10^7 objects exceeds the maximum array length, so the
+	 * largest document has 10^6 objects.
+	 */
+	@State(Scope.Benchmark)
+	public static class StringGraph {
+		@Param({ "3", "5", "6" })
+		int exponent;
+		GraphData g;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			g = new GraphData(exponent);
+		}
+	}
+
+	@Benchmark
+	public int documentStrings(StringGraph graph, Output out) {
+		GraphData g = graph.g;
+		StringBuilder sb = new StringBuilder();
+		sb.append(IpeDraw.getIpePreamble()).append(IpeDraw.getIpeConf());
+		for (int i = 0; i < g.edges; i++)
+			sb.append(IpeDraw.drawIpeEdge(g.x[g.source[i]], g.y[g.source[i]],
+					g.x[g.target[i]], g.y[g.target[i]],
+					COLORS[i % COLORS.length]));
+		for (int i = 0; i < g.vertices; i++)
+			sb.append(IpeDraw.drawIpeMark(g.x[i], g.y[i]));
+		sb.append(IpeDraw.getIpeEnd());
+		return count(out, sb.toString());
+	}
+
+	private static int count(Output out, String s) {
+		out.chars += s.length();
+		return s.length();
+	}
+
+	private static long count(Output out, CountingWriter sink) {
+		out.chars += sink.count;
+		return sink.count;
+	}
+}
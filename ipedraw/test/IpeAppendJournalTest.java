@@ -0,0 +1,97 @@
+package de.uniwue.smooth.draw;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IpeAppendJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path newDocument() throws IOException {
+		Path file = folder.newFile("doc.ipe").toPath();
+		IpeWriter w = new IpeWriter(Files.newBufferedWriter(file,
+				StandardCharsets.UTF_8));
+		w.writeHeader();
+		w.drawMark(10, 20, "disk", "red", "normal");
+		w.close();
+		return file;
+	}
+
+	private static Path journalOf(Path file) {
+		return file.resolveSibling(file.getFileName() + ".journal");
+	}
+
+	private static void write(FileChannel channel, String s)
+			throws IOException {
+		ByteBuffer b = StandardCharsets.UTF_8.encode(s);
+		while (b.hasRemaining())
+			channel.write(b);
+	}
+
+	private static int count(String s, String part) {
+		int n = 0;
+		for (int i = s.indexOf(part); i >= 0; i = s.indexOf(part, i + 1))
+			n++;
+		return n;
+	}
+
+	@Test
+	public void appendAddsPage() throws IOException {
+		Path file = newDocument();
+		IpeWriter w = IpeWriter.openForAppend(file);
+		w.newPage();
+		w.drawMark(30, 40, "disk", "blue", "normal");
+		w.close();
+		assertFalse(Files.exists(journalOf(file)));
+		String s = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		assertEquals(2, count(s, "<page>"));
+		assertTrue(s.endsWith("</page>\n</ipe>\n"));
+	}
+
+	@Test
+	public void recoverRestoresInterruptedAppend() throws IOException {
+		Path file = newDocument();
+		byte[] before = Files.readAllBytes(file);
+		IpeAppendJournal journal = IpeAppendJournal.begin(file);
+		write(journal.getChannel(), "<use name=\"mark/disk(sx)\" pos=\"1 ");
+		journal.getChannel().close();
+		assertTrue(Files.exists(journalOf(file)));
+		assertTrue(IpeWriter.recoverAppend(file));
+		assertFalse(Files.exists(journalOf(file)));
+		assertArrayEquals(before, Files.readAllBytes(file));
+	}
+
+	@Test
+	public void recoverKeepsCompletedAppend() throws IOException {
+		Path file = newDocument();
+		IpeAppendJournal journal = IpeAppendJournal.begin(file);
+		String added = "</page>\n<page>\n<layer name=\"alpha\"/>\n"
+				+ "<view layers=\"alpha\" active=\"alpha\"/>\n"
+				+ "</page>\n</ipe>\n";
+		write(journal.getChannel(), added);
+		// the process dies between forcing the content and deleting the
+		// journal
+		journal.getChannel().force(true);
+		journal.getChannel().close();
+		byte[] after = Files.readAllBytes(file);
+		assertFalse(IpeWriter.recoverAppend(file));
+		assertFalse(Files.exists(journalOf(file)));
+		assertArrayEquals(after, Files.readAllBytes(file));
+		String s = new String(after, StandardCharsets.UTF_8);
+		assertEquals(2, count(s, "<page>"));
+	}
+}
@@ -0,0 +1,127 @@
+package de.uniwue.smooth.draw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class IpeAsyncSinkTest {
+
+	private static class Threads implements ThreadFactory {
+		Thread thread;
+
+		public Thread newThread(Runnable r) {
+			thread = new Thread(r);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	@Test
+	public void writesEverything() throws IOException {
+		StringWriter out = new StringWriter();
+		IpeAsyncSink sink = new IpeAsyncSink(out, 7, 2, Long.MAX_VALUE,
+				TimeUnit.NANOSECONDS, null);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sink.write("line " + i + "\n");
+			expected.append("line ").append(i).append('\n');
+		}
+		sink.close();
+		assertEquals(expected.toString(), out.toString());
+	}
+
+	@Test
+	public void threadEndsWhenClosingFails() throws Exception {
+		StringWriter out = new StringWriter() {
+			@Override
+			public void close() throws IOException {
+				throw new IOException("disk gone");
+			}
+		};
+		Threads threads = new Threads();
+		IpeAsyncSink sink = new IpeAsyncSink(out, 16, 2, Long.MAX_VALUE,
+				TimeUnit.NANOSECONDS, threads);
+		sink.write("some output");
+		try {
+			sink.close();
+			fail("close() must report the failure");
+		} catch (IOException e) {
+			// expected
+		}
+		threads.thread.join(10000);
+		assertFalse(threads.thread.isAlive());
+	}
+
+	@Test
+	public void flushReportsFailure() throws Exception {
+		StringWriter out = new StringWriter() {
+			@Override
+			public void flush() {
+				throw new IllegalStateException("disk gone");
+			}
+		};
+		IpeAsyncSink sink = new IpeAsyncSink(out, 16, 2, Long.MAX_VALUE,
+				TimeUnit.NANOSECONDS, null);
+		sink.write("some output");
+		try {
+			sink.flush();
+			fail("flush() must report the failure");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void closeWaitsDespiteTimeout() throws Exception {
+		final Object gate = new Object();
+		final boolean[] open = { false };
+		StringWriter out = new StringWriter() {
+			@Override
+			public void write(char[] cbuf, int off, int len) {
+				synchronized (gate) {
+					while (!open[0]) {
+						try {
+							gate.wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+				super.write(cbuf, off, len);
+			}
+		};
+		Threads threads = new Threads();
+		final IpeAsyncSink sink = new IpeAsyncSink(out, 4, 1, 0,
+				TimeUnit.NANOSECONDS, threads);
+		// the I/O thread blocks on the first chunk, the second one fills the
+		// queue, and the request to close has to wait
+		sink.write("abcd");
+		Thread.sleep(50);
+		sink.write("ef");
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					// open the gate anyway
+				}
+				synchronized (gate) {
+					open[0] = true;
+					gate.notifyAll();
+				}
+			}
+		}.start();
+		sink.close();
+		threads.thread.join(10000);
+		assertFalse(threads.thread.isAlive());
+		assertEquals("abcdef", out.toString());
+	}
+}
@@ -0,0 +1,113 @@
+package de.uniwue.smooth.draw;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+public class IpeBitmapEncoderTest {
+
+	/** Inflates a zlib stream, checking its Adler-32 checksum. */
+	private static byte[] inflate(byte[] zlib) throws DataFormatException {
+		Inflater inflater = new Inflater();
+		inflater.setInput(zlib);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[1 << 16];
+		while (!inflater.finished()) {
+			int n = inflater.inflate(b);
+			if (n == 0 && inflater.needsInput())
+				throw new DataFormatException("truncated stream");
+			out.write(b, 0, n);
+		}
+		assertEquals(0, inflater.getRemaining());
+		inflater.end();
+		return out.toByteArray();
+	}
+
+	private static byte[] concat(List<byte[]> data) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] d : data)
+			out.write(d, 0, d.length);
+		return out.toByteArray();
+	}
+
+	/** A gradient with noise, so that chunks compress differently. */
+	private static int[] pixels(int width, int height) {
+		Random random = new Random(width);
+		int[] rgb = new int[width * height];
+		for (int i = 0; i < rgb.length; i++)
+			rgb[i] = (i % width) * 0x10101 / 4 ^ random.nextInt(4);
+		return rgb;
+	}
+
+	private static byte[] bytes(int[] rgb) {
+		byte[] b = new byte[3 * rgb.length];
+		for (int i = 0; i < rgb.length; i++) {
+			b[3 * i] = (byte) (rgb[i] >> 16);
+			b[3 * i + 1] = (byte) (rgb[i] >> 8);
+			b[3 * i + 2] = (byte) rgb[i];
+		}
+		return b;
+	}
+
+	@Test
+	public void chunksInflateToThePixels() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			int width = 1000, height = 400;
+			int[] rgb = pixels(width, height);
+			assertTrue(3 * rgb.length > 4 * IpeBitmapEncoder.CHUNK_BYTES);
+			byte[] expected = bytes(rgb);
+			IpeBitmapEncoder.Pixels p = IpeBitmapEncoder.of(rgb, width, height);
+			assertArrayEquals(expected, inflate(concat(IpeBitmapEncoder.encode(
+					p, executor, Deflater.DEFAULT_COMPRESSION))));
+			assertArrayEquals(expected, inflate(concat(IpeBitmapEncoder.encode(
+					p, null, Deflater.BEST_SPEED))));
+			// a row longer than a chunk
+			int[] wide = pixels(200000, 2);
+			assertArrayEquals(bytes(wide), inflate(concat(IpeBitmapEncoder
+					.encode(IpeBitmapEncoder.of(wide, 200000, 2), executor,
+							Deflater.DEFAULT_COMPRESSION))));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void grayBitmap() throws Exception {
+		byte[] gray = new byte[300 * 1000];
+		new Random(1).nextBytes(gray);
+		assertArrayEquals(gray, inflate(concat(IpeBitmapEncoder.encode(
+				IpeBitmapEncoder.of(gray, 300, 1000, 1), null,
+				Deflater.DEFAULT_COMPRESSION))));
+	}
+
+	@Test
+	public void writerEmbedsTheStream() throws Exception {
+		int width = 700, height = 300;
+		int[] rgb = pixels(width, height);
+		StringBuilder out = new StringBuilder();
+		IpeWriter w = new IpeWriter(out);
+		w.writeHeader();
+		w.drawBitmap(width, height, rgb, 0, 0, 70, 30);
+		w.close();
+		String s = out.toString();
+		int start = s.indexOf('>', s.indexOf("<image")) + 1;
+		String base64 = s.substring(start, s.indexOf("</image>"));
+		byte[] zlib = Base64.getMimeDecoder().decode(base64);
+		assertTrue(s.contains("length=\"" + zlib.length + "\""));
+		assertArrayEquals(bytes(rgb), inflate(zlib));
+	}
+}
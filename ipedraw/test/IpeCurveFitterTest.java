@@ -0,0 +1,118 @@
+package de.uniwue.smooth.draw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IpeCurveFitterTest {
+
+	private static double bezier(double[] c, int s, int axis, double t) {
+		double u = 1 - t;
+		return u * u * u * c[s + axis] + 3 * u * u * t * c[s + 2 + axis] + 3
+				* u * t * t * c[s + 4 + axis] + t * t * t * c[s + 6 + axis];
+	}
+
+	private static double distance(double[] c, int s, double t, double x,
+			double y) {
+		return Math.hypot(bezier(c, s, 0, t) - x, bezier(c, s, 1, t) - y);
+	}
+
+	/**
+	 * Returns the distance of a point from the fitted curves, by sampling
+	 * every segment and refining around the nearest sample.
+	 */
+	private static double distance(double[] c, double x, double y) {
+		double best = Double.POSITIVE_INFINITY;
+		for (int s = 0; s + 8 <= c.length; s += 6) {
+			int samples = 200;
+			double bestT = 0, d = Double.POSITIVE_INFINITY;
+			for (int i = 0; i <= samples; i++) {
+				double e = distance(c, s, (double) i / samples, x, y);
+				if (e < d) {
+					d = e;
+					bestT = (double) i / samples;
+				}
+			}
+			for (double step = 1.0 / samples; step > 1e-12; step /= 2) {
+				for (double t : new double[] { bestT - step, bestT + step }) {
+					if (t < 0 || t > 1)
+						continue;
+					double e = distance(c, s, t, x, y);
+					if (e < d) {
+						d = e;
+						bestT = t;
+					}
+				}
+			}
+			best = Math.min(best, d);
+		}
+		return best;
+	}
+
+	private static void checkFit(double[] x, double[] y, double tolerance) {
+		double[] c = IpeCurveFitter.fit(x, y, tolerance);
+		assertEquals(0, (c.length - 2) % 6);
+		assertEquals(x[0], c[0], 0);
+		assertEquals(y[0], c[1], 0);
+		assertEquals(x[x.length - 1], c[c.length - 2], 0);
+		assertEquals(y[y.length - 1], c[c.length - 1], 0);
+		for (int i = 0; i < x.length; i++) {
+			double d = distance(c, x[i], y[i]);
+			assertTrue("point " + i + " is " + d + " from the curve",
+					d <= tolerance * (1 + 1e-9));
+		}
+	}
+
+	@Test
+	public void noisySpiralWithinTolerance() {
+		int n = 3000;
+		double[] x = new double[n], y = new double[n];
+		Random random = new Random(25);
+		for (int i = 0; i < n; i++) {
+			double t = i * 0.005;
+			x[i] = 100 + 5 * t * Math.cos(t) + random.nextGaussian() * 0.1;
+			y[i] = 100 + 5 * t * Math.sin(t) + random.nextGaussian() * 0.1;
+		}
+		for (double tolerance : new double[] { 0.5, 1, 2 })
+			checkFit(x, y, tolerance);
+	}
+
+	@Test
+	public void integerCircleWithinTolerance() {
+		int n = 2000;
+		int[] xi = new int[n], yi = new int[n];
+		double[] x = new double[n], y = new double[n];
+		for (int i = 0; i < n; i++) {
+			double t = 2 * Math.PI * i / n;
+			xi[i] = (int) Math.round(300 * Math.cos(t));
+			yi[i] = (int) Math.round(300 * Math.sin(t));
+			x[i] = xi[i];
+			y[i] = yi[i];
+		}
+		checkFit(x, y, 1);
+		double[] c = IpeCurveFitter.fit(xi, yi, 0, n, 1);
+		assertEquals(c.length, IpeCurveFitter.fit(x, y, 1).length);
+	}
+
+	@Test
+	public void fewPoints() {
+		// a single point gives a curve that starts and ends there
+		double[] c = IpeCurveFitter.fit(new double[] { 1 },
+				new double[] { 2 }, 1);
+		assertEquals(8, c.length);
+		for (int i = 0; i < c.length; i += 2) {
+			assertEquals(1, c[i], 0);
+			assertEquals(2, c[i + 1], 0);
+		}
+		checkFit(new double[] { 0, 10 }, new double[] { 0, 5 }, 0.1);
+		checkFit(new double[] { 0, 5, 10 }, new double[] { 0, 5, 0 }, 0.1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void noPoints() {
+		IpeCurveFitter.fit(new double[0], new double[0], 1);
+	}
+}
@@ -0,0 +1,62 @@
+package de.uniwue.smooth.draw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IpeDensityMapTest {
+
+	private static IpeDensityMap newMap(int shape) {
+		return new IpeDensityMap(new IpeWriter(new StringBuilder()), 0, 0,
+				100, 100, 1, shape);
+	}
+
+	@Test
+	public void batchEqualsSingleEdges() throws IOException {
+		for (int shape = IpeDensityMap.SQUARE; shape <= IpeDensityMap.HEX; shape++) {
+			int n = 1 << 18;
+			double[] x1 = new double[n], y1 = new double[n];
+			double[] x2 = new double[n], y2 = new double[n];
+			Random random = new Random(shape);
+			for (int i = 0; i < n; i++) {
+				x1[i] = random.nextDouble() * 120 - 10;
+				y1[i] = random.nextDouble() * 120 - 10;
+				x2[i] = x1[i] + random.nextDouble() * 10 - 5;
+				y2[i] = y1[i] + random.nextDouble() * 10 - 5;
+			}
+			IpeDensityMap single = newMap(shape);
+			for (int i = 0; i < n; i++)
+				single.drawEdge(x1[i], y1[i], x2[i], y2[i], "black", "normal",
+						"normal");
+			IpeDensityMap batch = newMap(shape);
+			batch.drawEdges(x1, y1, x2, y2, 0, n, "black", "normal",
+					"normal");
+			assertEquals(single.getOutsideCount(), batch.getOutsideCount());
+			for (double x = 0.5; x < 100; x++)
+				for (double y = 0.5; y < 100; y++)
+					assertEquals(single.getCount(x, y), batch.getCount(x, y));
+		}
+	}
+
+	@Test
+	public void edgeCountedOncePerBin() throws IOException {
+		Random random = new Random(1);
+		for (int shape = IpeDensityMap.SQUARE; shape <= IpeDensityMap.HEX; shape++) {
+			for (int i = 0; i < 200; i++) {
+				IpeDensityMap map = newMap(shape);
+				// edges along the borders of rows of square bins, and
+				// random ones
+				double y = i < 100 ? i : random.nextDouble() * 100;
+				map.drawEdge(0, y, 100, y + 1e-13 * random.nextInt(3),
+						"black", "normal", "normal");
+				for (double px = 0.05; px < 100; px += 0.1)
+					for (double py = y - 2; py < y + 2; py += 0.1)
+						assertTrue(map.getCount(px, py) <= 1);
+			}
+		}
+	}
+}
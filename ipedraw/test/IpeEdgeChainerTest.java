@@ -0,0 +1,69 @@
+package de.uniwue.smooth.draw;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class IpeEdgeChainerTest {
+
+	private static final String[][] STYLES = {
+			{ "black", "normal", "normal" }, { "red", "fat", "normal" } };
+
+	@Test
+	public void chainsEveryStyleIntoFewestPaths() throws IOException {
+		// a cycle 0-1-2-3-0 in black and a path 0-2-4 in red
+		double[] x = { 0, 10, 10, 0, 20 };
+		double[] y = { 0, 0, 10, 10, 20 };
+		int[] offsets = { 0, 3, 4, 6, 7, 7 };
+		int[] targets = { 1, 3, 2, 2, 3, 4, 0 };
+		int[] edgeStyle = { 0, 0, 1, 0, 0, 1, 0 };
+		StringBuilder out = new StringBuilder();
+		IpeWriter w = new IpeWriter(out);
+		assertEquals(2, IpeEdgeChainer.drawEdges(w, x, y, offsets, targets,
+				false, STYLES, edgeStyle));
+		w.close();
+	}
+
+	@Test
+	public void keepsDashedEdgesSeparate() throws IOException {
+		IpeEdgeChainer chainer = new IpeEdgeChainer();
+		for (int i = 0; i < 10; i++)
+			chainer.addEdge(i, 0, i + 1, 0, "black", "normal", "dashed");
+		StringBuilder out = new StringBuilder();
+		IpeWriter w = new IpeWriter(out);
+		assertEquals(10, chainer.write(w));
+		w.close();
+	}
+
+	@Test
+	public void reusesWorkingMemoryAcrossStyles() throws IOException {
+		IpeEdgeChainer chainer = new IpeEdgeChainer();
+		for (int i = 0; i < 100; i++) {
+			String[] style = STYLES[i % 2];
+			chainer.addEdge(i, 0, i + 1, 0, style[0], style[1], style[2]);
+		}
+		StringBuilder out = new StringBuilder();
+		IpeWriter w = new IpeWriter(out);
+		// every edge of one style is alone, since its neighbors have the
+		// other style
+		assertEquals(100, chainer.write(w));
+		w.close();
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void rejectsInvalidStyleIndex() throws IOException {
+		IpeEdgeChainer.drawEdges(new IpeWriter(new StringBuilder()),
+				new double[] { 0, 1 }, new double[] { 0, 1 }, new int[] { 0,
+						1, 1 }, new int[] { 1 }, false, STYLES,
+				new int[] { 2 });
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void rejectsInvalidTarget() throws IOException {
+		IpeEdgeChainer.drawEdges(new IpeWriter(new StringBuilder()),
+				new double[] { 0, 1 }, new double[] { 0, 1 }, new int[] { 0,
+						1, 1 }, new int[] { 2 }, false, STYLES, null);
+	}
+}
@@ -0,0 +1,82 @@
+package de.uniwue.smooth.draw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class IpeGraphExportTest {
+
+	private static final String[][] VERTEX_STYLES = { { "disk", "black",
+			"normal" } };
+	private static final String[][] EDGE_STYLES = {
+			{ "black", "normal", "normal" }, { "red", "fat", "dashed" } };
+
+	// a triangle 0-1-2, listed in both directions
+	private static final double[] X = { 0, 10, 0 };
+	private static final double[] Y = { 0, 0, 10 };
+	private static final int[] OFFSETS = { 0, 2, 4, 6 };
+	private static final int[] TARGETS = { 1, 2, 0, 2, 0, 1 };
+
+	@Test
+	public void drawsUndirectedEdgesOnce() throws IOException {
+		StringBuilder out = new StringBuilder();
+		IpeWriter w = new IpeWriter(out);
+		w.writeHeader();
+		IpeGraphExport.drawGraph(w, X, Y, OFFSETS, TARGETS, true);
+		w.close();
+		String page = out.substring(out.indexOf("<page>"));
+		assertEquals(3, count(page, "<path"));
+		assertEquals(3, count(page, "<use"));
+	}
+
+	@Test
+	public void rejectsBadTargetBeforeWriting() throws IOException {
+		assertRejected(X, Y, new int[] { 0, 2, 4, 6 }, new int[] { 1, 2, 0,
+				3, 0, 1 }, null, null);
+		assertRejected(X, Y, new int[] { 0, 2, 4, 6 }, new int[] { 1, 2, 0,
+				-1, 0, 1 }, null, null);
+	}
+
+	@Test
+	public void rejectsDecreasingOffsetsBeforeWriting() throws IOException {
+		assertRejected(X, Y, new int[] { 0, 4, 2, 6 }, TARGETS, null, null);
+	}
+
+	@Test
+	public void rejectsBadStyleIndexBeforeWriting() throws IOException {
+		assertRejected(X, Y, OFFSETS, TARGETS, new int[] { 0, 0, 1 }, null);
+		assertRejected(X, Y, OFFSETS, TARGETS, null, new int[] { 0, 1, 0, 1,
+				0, 2 });
+	}
+
+	private static void assertRejected(double[] x, double[] y, int[] offsets,
+			int[] targets, int[] vertexStyle, int[] edgeStyle)
+			throws IOException {
+		StringBuilder out = new StringBuilder();
+		IpeWriter w = new IpeWriter(out);
+		w.writeHeader();
+		w.flush();
+		int before = out.length();
+		try {
+			IpeGraphExport.drawGraph(w, x, y, offsets, targets, false,
+					VERTEX_STYLES, vertexStyle, EDGE_STYLES, edgeStyle);
+			fail("invalid graph accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		w.flush();
+		assertTrue(out.indexOf("<path", before) < 0);
+		assertTrue(out.indexOf("<use", before) < 0);
+	}
+
+	private static int count(String s, String part) {
+		int n = 0;
+		for (int i = s.indexOf(part); i >= 0; i = s.indexOf(part, i + 1))
+			n++;
+		return n;
+	}
+}
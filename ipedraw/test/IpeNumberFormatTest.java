@@ -0,0 +1,26 @@
+package de.uniwue.smooth.draw;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class IpeNumberFormatTest {
+
+	@Test
+	public void roundsHalvesAwayFromZero() {
+		IpeNumberFormat f = IpeNumberFormat.withPrecision(1);
+		assertEquals("0.3", f.format(0.25));
+		assertEquals("-0.3", f.format(-0.25));
+		assertEquals("1", f.format(0.96));
+		assertEquals("0", f.format(-0.04));
+	}
+
+	@Test
+	public void roundsLargeNumbersLikeSmallOnes() {
+		// 9e14 + 0.25 is exact, and scaled beyond the fast path
+		IpeNumberFormat f = IpeNumberFormat.withPrecision(1);
+		assertEquals("900000000000000.3", f.format(9e14 + 0.25));
+		assertEquals("-900000000000000.3", f.format(-9e14 - 0.25));
+		assertEquals("900000000000000.8", f.format(9e14 + 0.75));
+	}
+}
@@ -0,0 +1,81 @@
+package de.uniwue.smooth.draw;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class IpePageRendererTest {
+
+	/**
+	 * Pages with two layers, drawn with palette styles and with duplicate
+	 * marks.
+	 */
+	private static class Pages implements IpePageRenderer.PageSource {
+		final int style;
+
+		Pages(IpePalette palette) {
+			style = palette.style("red", "fat", "dashed");
+		}
+
+		public int getPageCount() {
+			return 20;
+		}
+
+		public String[] getLayerNames(int page) {
+			return new String[] { "edges", "vertices" };
+		}
+
+		public void writePage(IpeWriter w, int page) throws IOException {
+			for (int i = 0; i < 50 * page; i++)
+				w.drawEdge(i, page, i + 1.5, page + 2, style);
+			w.setLayer("vertices");
+			for (int i = 0; i < 30; i++)
+				w.drawMark(i % 10, page, "disk", "black", "normal");
+		}
+	}
+
+	private static IpeWriter newWriter(StringBuilder out) {
+		IpeWriter w = new IpeWriter(out, 64);
+		w.setMetrics(new IpeMetrics());
+		w.setDeduplicator(new IpeDeduplicator());
+		return w;
+	}
+
+	@Test
+	public void sameOutputAsSequential() throws IOException {
+		StringBuilder expected = new StringBuilder();
+		IpeWriter w = newWriter(expected);
+		Pages pages = new Pages(w.getPalette());
+		for (int page = 0; page < pages.getPageCount(); page++) {
+			// the renderer deduplicates every page on its own
+			w.getDeduplicator().clear();
+			if (page == 0)
+				w.writeHeader(pages.getLayerNames(page));
+			else
+				w.newPage(pages.getLayerNames(page));
+			pages.writePage(w, page);
+		}
+		w.close();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			StringBuilder actual = new StringBuilder();
+			IpeWriter r = newWriter(actual);
+			new IpePageRenderer(executor, 3).render(
+					new Pages(r.getPalette()), r);
+			r.close();
+			assertEquals(expected.toString(), actual.toString());
+			assertEquals(w.getMetrics().getObjectCount(), r.getMetrics()
+					.getObjectCount());
+			assertEquals(w.getMetrics().getPointCount(), r.getMetrics()
+					.getPointCount());
+			assertEquals(20 * 20, r.getDeduplicator().getDuplicateCount());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
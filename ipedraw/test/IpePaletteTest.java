@@ -0,0 +1,34 @@
+package de.uniwue.smooth.draw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class IpePaletteTest {
+
+	@Test
+	public void namesPredefinedAndStandardColors() {
+		IpePalette palette = new IpePalette();
+		assertEquals("black", palette.color(0x000000));
+		assertEquals("white", palette.color(0xffffff));
+		assertEquals("black", palette.color(0, 0, 0));
+		assertEquals("red", palette.color(1, 0, 0));
+		assertEquals("rgb-ff8000", palette.color(0xff8000));
+		assertEquals("rgb-ff8000", palette.color(1, 128 / 255.0, 0));
+	}
+
+	@Test
+	public void predefinedColorsAreNotInTheStyleSheet() throws IOException {
+		StringBuilder out = new StringBuilder();
+		IpeWriter w = new IpeWriter(out);
+		w.getPalette().color(0);
+		w.getPalette().color(0xffffff);
+		w.writeHeader();
+		w.close();
+		assertFalse(out.toString().contains("name=\"black\""));
+		assertFalse(out.toString().contains("name=\"white\""));
+	}
+}
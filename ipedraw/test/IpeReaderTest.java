@@ -0,0 +1,66 @@
+package de.uniwue.smooth.draw;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class IpeReaderTest {
+
+	private static String write(IpeScene scene) throws IOException {
+		StringBuilder out = new StringBuilder();
+		IpeWriter w = new IpeWriter(out);
+		scene.write(w);
+		w.close();
+		return out.toString();
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		IpeScene scene = new IpeScene();
+		scene.addMark(1, 2, "disk", "red", "normal");
+		scene.addBox(0, 0, 10.5, 20, "blue", "fat", "dashed");
+		scene.addEdge(3, 4, 5, 6.25, "black", "normal", "dotted");
+		scene.addText("$v_1$", 7, 8, "darkgreen", "large");
+		scene.addCircle(10, 10, 2.5, "black", "heavier", "normal");
+		scene.addCircularArc(0, 0, 5, 0, 0, 5, "orange", "normal", "normal");
+		int page = scene.addPage("edges", "vertices");
+		scene.setCurrentLayer(scene.getLayer(page, "vertices"));
+		double[] x = { 0, 10, 20, 30 };
+		double[] y = { 0, 5, 0, 5 };
+		scene.addPath(IpeScene.PATH, x, y, 0, 4, "black", "normal", "normal");
+		scene.setCurrentLayer(scene.getLayer(page, "edges"));
+		scene.addPath(IpeScene.SPLINE, x, y, 0, 4, "red", "normal", "normal");
+		scene.addPath(IpeScene.SPLINEGON, x, y, 0, 4, "blue", "normal",
+				"normal");
+		String document = write(scene);
+
+		IpeReader reader = new IpeReader();
+		IpeScene read = reader.readScene(new StringReader(document));
+		assertEquals(0, reader.getSkippedCount());
+		assertEquals(scene.getObjectCount(), reader.getObjectCount());
+		assertEquals(scene.getPageCount(), read.getPageCount());
+		assertEquals(document, write(read));
+	}
+
+	@Test
+	public void skipsCurves() throws IOException {
+		StringBuilder out = new StringBuilder();
+		IpeWriter w = new IpeWriter(out);
+		w.writeHeader();
+		double[] x = new double[100], y = new double[100];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = 10 * Math.cos(i * 0.05);
+			y[i] = 10 * Math.sin(i * 0.05);
+		}
+		w.drawCurve(x, y, 0, x.length, 0.1, "black", "normal", "normal");
+		w.drawMark(0, 0, "disk", "black", "normal");
+		w.close();
+		IpeReader reader = new IpeReader();
+		IpeScene read = reader.readScene(new StringReader(out.toString()));
+		assertEquals(1, reader.getSkippedCount());
+		assertEquals(1, read.getObjectCount());
+	}
+}
@@ -0,0 +1,57 @@
+package de.uniwue.smooth.draw;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class IpeSceneTest {
+
+	/** Returns the objects of the first page. */
+	private static String objects(StringBuilder document) {
+		int view = document.indexOf("<view");
+		return document.substring(document.indexOf("\n", view),
+				document.indexOf("</page>"));
+	}
+
+	@Test
+	public void pathsAfterCirclesKeepTheirPoints() throws IOException {
+		IpeScene scene = new IpeScene();
+		StringBuilder expected = new StringBuilder();
+		IpeWriter w = new IpeWriter(expected);
+		w.writeHeader();
+		double[] x = { 1, 2, 3.5 };
+		double[] y = { 4, 5.25, 6 };
+		for (int i = 0; i < 5; i++) {
+			// an odd number of circles before every path
+			for (int j = 0; j <= i % 2; j++) {
+				scene.addCircle(i, j, i + j + 0.5, "red", "normal", "normal");
+				w.drawCircle(i, j, i + j + 0.5, "red", "normal", "normal");
+			}
+			scene.addPath(IpeScene.SPLINE, x, y, 0, 3, "blue", "normal",
+					"normal");
+			w.drawSpline(x, y, 0, 3, "blue", "normal", "normal");
+		}
+		w.close();
+		StringBuilder actual = new StringBuilder();
+		IpeWriter v = new IpeWriter(actual);
+		scene.write(v);
+		v.close();
+		assertEquals(objects(expected), objects(actual));
+	}
+
+	@Test
+	public void radiusCanBeChanged() {
+		IpeScene scene = new IpeScene();
+		int id = scene.addCircle(1, 2, 3, "red", "normal", "normal");
+		assertEquals(3, scene.getRadius(id), 0);
+		scene.setRadius(id, 7);
+		assertEquals(7, scene.getRadius(id), 0);
+		assertEquals(1, scene.getPointCount(id));
+		double[] box = new double[4];
+		scene.getBoundingBox(id, box);
+		assertEquals(-6, box[0], 0);
+		assertEquals(9, box[3], 0);
+	}
+}
@@ -0,0 +1,118 @@
+package de.uniwue.smooth.draw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class IpeWriterTest {
+
+	private static String groupedMarks(String text, int marks, int bufferSize)
+			throws IOException {
+		StringBuilder out = new StringBuilder();
+		IpeWriter w = new IpeWriter(out, bufferSize);
+		w.setGroupMarks(true);
+		w.writeHeader();
+		w.writeText(text, 10, 20);
+		int[] x = new int[marks];
+		int[] y = new int[marks];
+		int[] color = new int[marks];
+		for (int i = 0; i < marks; i++) {
+			x[i] = i;
+			y[i] = 10 * i;
+			color[i] = 2 * i / marks;
+		}
+		w.drawMarks(x, y, 0, marks, new String[] { "disk" }, null,
+				new String[] { "red", "blue" }, color,
+				new String[] { "normal" }, null);
+		w.close();
+		return out.substring(out.indexOf("<page>"));
+	}
+
+	private static int count(String s, String part) {
+		int n = 0;
+		for (int i = s.indexOf(part); i >= 0; i = s.indexOf(part, i + 1))
+			n++;
+		return n;
+	}
+
+	@Test
+	public void groupedMarksAcrossFlushes() throws IOException {
+		String text = "";
+		for (int length = 0; length < 60; length++, text += "x") {
+			for (int marks = 2; marks <= 8; marks += 2) {
+				String expected = groupedMarks(text, marks, 1 << 16);
+				assertEquals(2, count(expected, "<group>"));
+				assertEquals(2, count(expected, "</group>"));
+				assertEquals(marks, count(expected, "<use "));
+				for (int bufferSize = 1; bufferSize < 400; bufferSize++)
+					assertEquals("buffer size " + bufferSize, expected,
+							groupedMarks(text, marks, bufferSize));
+			}
+		}
+	}
+
+	@Test
+	public void emptyGroupIsDropped() throws IOException {
+		StringBuilder out = new StringBuilder();
+		IpeWriter w = new IpeWriter(out, 1);
+		w.setGroupMarks(true);
+		w.setDeduplicator(new IpeDeduplicator());
+		w.writeHeader();
+		int[] x = { 1, 1 };
+		int[] y = { 2, 2 };
+		w.drawMarks(x, y, 0, 1, "disk", "red", "normal");
+		w.drawMarks(x, y, 1, 1, "disk", "red", "normal");
+		w.close();
+		String s = out.substring(out.indexOf("<page>"));
+		assertEquals(1, count(s, "<group>"));
+		assertEquals(1, count(s, "</group>"));
+		assertTrue(s.endsWith("</ipe>\n"));
+	}
+
+	@Test
+	public void groupedMarksOfPieceWriterStayBounded() throws IOException {
+		final List<String> pieces = new ArrayList<String>();
+		Appendable sink = new Appendable() {
+			public Appendable append(CharSequence csq) {
+				pieces.add(csq.toString());
+				return this;
+			}
+
+			public Appendable append(CharSequence csq, int start, int end) {
+				return append(csq.subSequence(start, end));
+			}
+
+			public Appendable append(char c) {
+				return append(String.valueOf(c));
+			}
+		};
+		IpeWriter target = new IpeWriter(new StringBuilder());
+		target.setGroupMarks(true);
+		IpeWriter w = target.newPieceWriter(sink, 1000);
+		int marks = 10000;
+		int[] x = new int[marks];
+		int[] y = new int[marks];
+		for (int i = 0; i < marks; i++) {
+			x[i] = i;
+			y[i] = 2 * i;
+		}
+		w.drawMarks(x, y, 0, marks, "disk", "red", "normal");
+		w.close();
+		assertTrue(pieces.size() > 1);
+		int total = 0;
+		for (String piece : pieces) {
+			assertTrue(piece.length() < 2000);
+			// every piece holds whole groups
+			assertTrue(piece.startsWith("<group>\n"));
+			assertTrue(piece.endsWith("</group>\n"));
+			assertEquals(count(piece, "<group>"), count(piece, "</group>"));
+			total += count(piece, "<use ");
+		}
+		assertEquals(marks, total);
+	}
+}